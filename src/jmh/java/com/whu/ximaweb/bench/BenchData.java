@@ -0,0 +1,259 @@
+package com.whu.ximaweb.bench;
+
+import com.whu.ximaweb.dto.Coordinate;
+import com.whu.ximaweb.model.BuildingFloorInfo;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * 基准测试用的合成数据生成器 (固定种子，结果可复现)
+ * 围栏、照片坐标、飞行日的激光距离、楼层标尺、带大疆 XMP 的 JPEG 都从这里生成，
+ * 照片规模按 1 万 ~ 100 万张设计。
+ */
+public final class BenchData {
+
+    // 围栏中心 (武汉附近)，米与经纬度的换算与 GeofenceService 保持同一量级即可
+    public static final double CENTER_LAT = 30.5400;
+    public static final double CENTER_LNG = 114.3600;
+    private static final double METERS_PER_DEG_LAT = 111320.0;
+
+    private BenchData() {
+    }
+
+    /**
+     * 一天的照片 (按拍摄顺序)
+     */
+    public record FlightDay(double[] distances, double[] droneAlts) {
+    }
+
+    /**
+     * 多顶点围栏：绕中心一圈，半径在 [0.7R, R] 间抖动，角度单调所以多边形不自交
+     * @param vertexCount 顶点数 (>= 3)，模拟手工描边或 CAD 导出的复杂轮廓
+     * @param radiusMeters 外接半径 R
+     */
+    public static List<Coordinate> fence(int vertexCount, double radiusMeters, long seed) {
+        Random random = new Random(seed);
+        double metersPerLng = METERS_PER_DEG_LAT * Math.cos(Math.toRadians(CENTER_LAT));
+        List<Coordinate> coords = new ArrayList<>(vertexCount);
+        for (int i = 0; i < vertexCount; i++) {
+            double angle = 2 * Math.PI * i / vertexCount;
+            double r = radiusMeters * (0.7 + 0.3 * random.nextDouble());
+            coords.add(new Coordinate(CENTER_LAT + r * Math.sin(angle) / METERS_PER_DEG_LAT,
+                    CENTER_LNG + r * Math.cos(angle) / metersPerLng));
+        }
+        return coords;
+    }
+
+    /**
+     * 照片坐标，返回 {lats, lngs}
+     * 比例接近真实航线：60% 在楼内，25% 落在围栏边缘到缓冲区外 10 米的环带，15% 在场地远处
+     */
+    public static double[][] photoPoints(int count, double radiusMeters, double bufferMeters, long seed) {
+        Random random = new Random(seed);
+        double metersPerLng = METERS_PER_DEG_LAT * Math.cos(Math.toRadians(CENTER_LAT));
+        double[] lats = new double[count];
+        double[] lngs = new double[count];
+        for (int i = 0; i < count; i++) {
+            double p = random.nextDouble();
+            double r;
+            if (p < 0.60) {
+                r = radiusMeters * 0.6 * Math.sqrt(random.nextDouble());
+            } else if (p < 0.85) {
+                r = radiusMeters * 0.7 + random.nextDouble() * (radiusMeters * 0.3 + bufferMeters + 10);
+            } else {
+                r = 200 + random.nextDouble() * 1800;
+            }
+            double angle = 2 * Math.PI * random.nextDouble();
+            lats[i] = CENTER_LAT + r * Math.sin(angle) / METERS_PER_DEG_LAT;
+            lngs[i] = CENTER_LNG + r * Math.cos(angle) / metersPerLng;
+        }
+        return new double[][]{lats, lngs};
+    }
+
+    /**
+     * 把 totalPhotos 张照片切成每天 photosPerDay 张的飞行日
+     * 距离分布：55% 楼顶 (H1)，35% 地面 (H2)，10% 塔吊等比楼顶还近的干扰点；楼顶随天数逐渐升高
+     */
+    public static List<FlightDay> flightDays(int totalPhotos, int photosPerDay, long seed) {
+        Random random = new Random(seed);
+        int perDay = Math.max(1, photosPerDay);
+        List<FlightDay> days = new ArrayList<>(totalPhotos / perDay + 1);
+        int remaining = totalPhotos;
+        int day = 0;
+        while (remaining > 0) {
+            int n = Math.min(perDay, remaining);
+            double flightAlt = 120 + random.nextGaussian() * 2;
+            double ground = flightAlt - 15 + random.nextGaussian();
+            double roof = Math.max(15, ground - 3.0 * (day % 300) / 10.0 - 5);
+            double[] distances = new double[n];
+            double[] alts = new double[n];
+            for (int i = 0; i < n; i++) {
+                double r = random.nextDouble();
+                if (r < 0.55) distances[i] = roof + random.nextGaussian() * 1.5;
+                else if (r < 0.90) distances[i] = ground + random.nextGaussian() * 3;
+                else distances[i] = roof - 3 - random.nextDouble() * 15;
+                alts[i] = flightAlt + random.nextGaussian() * 0.5;
+            }
+            days.add(new FlightDay(distances, alts));
+            remaining -= n;
+            day++;
+        }
+        return days;
+    }
+
+    /**
+     * 楼层标尺：首层 4.5 米，其余 2.9 ~ 3.6 米
+     */
+    public static List<BuildingFloorInfo> floorRuler(int floors, long seed) {
+        Random random = new Random(seed);
+        List<BuildingFloorInfo> ruler = new ArrayList<>(floors);
+        BigDecimal cumulative = BigDecimal.ZERO;
+        for (int i = 1; i <= floors; i++) {
+            BigDecimal height = BigDecimal.valueOf(i == 1 ? 4.5 : 2.9 + random.nextDouble() * 0.7)
+                    .setScale(2, RoundingMode.HALF_UP);
+            cumulative = cumulative.add(height);
+            BuildingFloorInfo info = new BuildingFloorInfo();
+            info.setFloorNumber(i);
+            info.setFloorHeight(height);
+            info.setCumulativeHeight(cumulative);
+            ruler.add(info);
+        }
+        return ruler;
+    }
+
+    /**
+     * 实测高度序列，覆盖 0 到楼顶以上 5 米
+     */
+    public static double[] heights(int count, double topMeters, long seed) {
+        Random random = new Random(seed);
+        double[] heights = new double[count];
+        for (int i = 0; i < count; i++) {
+            heights[i] = random.nextDouble() * (topMeters + 5);
+        }
+        return heights;
+    }
+
+    /**
+     * 合成一张结构上接近大疆 M3/M30 系列的 JPEG：
+     * SOI -> APP1 EXIF (含缩略图的大段，约 40KB) -> APP1 XMP (drone-dji 属性) -> DQT -> SOS -> 压缩数据 -> EOI
+     * @param tailBytes SOS 之后的数据量 (解析器读到 XMP 即停，这部分只影响流的总长度)
+     */
+    public static byte[] djiJpeg(long seed, int tailBytes) {
+        Random random = new Random(seed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024 + tailBytes);
+        out.write(0xFF);
+        out.write(0xD8);
+
+        byte[] exif = new byte[40 * 1024];
+        random.nextBytes(exif);
+        System.arraycopy("Exif\0\0".getBytes(StandardCharsets.US_ASCII), 0, exif, 0, 6);
+        writeSegment(out, 0xE1, exif);
+
+        byte[] xmpHeader = "http://ns.adobe.com/xap/1.0/\0".getBytes(StandardCharsets.US_ASCII);
+        byte[] xmp = djiXmp(random).getBytes(StandardCharsets.UTF_8);
+        byte[] app1 = new byte[xmpHeader.length + xmp.length];
+        System.arraycopy(xmpHeader, 0, app1, 0, xmpHeader.length);
+        System.arraycopy(xmp, 0, app1, xmpHeader.length, xmp.length);
+        writeSegment(out, 0xE1, app1);
+
+        byte[] dqt = new byte[130];
+        random.nextBytes(dqt);
+        writeSegment(out, 0xDB, dqt);
+        writeSegment(out, 0xDA, new byte[10]);
+
+        byte[] tail = new byte[tailBytes];
+        random.nextBytes(tail);
+        for (int i = 0; i < tail.length; i++) {
+            if ((tail[i] & 0xFF) == 0xFF) tail[i] = 0x00; // 避免出现伪标记
+        }
+        out.writeBytes(tail);
+        out.write(0xFF);
+        out.write(0xD9);
+        return out.toByteArray();
+    }
+
+    private static String djiXmp(Random random) {
+        double lat = CENTER_LAT + random.nextGaussian() * 0.0005;
+        double lng = CENTER_LNG + random.nextGaussian() * 0.0005;
+        double alt = 120 + random.nextGaussian() * 2;
+        double distance = 30 + random.nextDouble() * 60;
+        String time = OffsetDateTime.of(2025, 3, 1 + random.nextInt(28), 8 + random.nextInt(8),
+                random.nextInt(60), random.nextInt(60), 0, ZoneOffset.ofHours(8)).toString();
+        return "<?xpacket begin=\"﻿\" id=\"W5M0MpCehiHzreSzNTczkc9d\"?>\n"
+                + "<x:xmpmeta xmlns:x=\"adobe:ns:meta/\">\n"
+                + " <rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\">\n"
+                + "  <rdf:Description rdf:about=\"DJI Meta Data\"\n"
+                + "    xmlns:tiff=\"http://ns.adobe.com/tiff/1.0/\"\n"
+                + "    xmlns:exif=\"http://ns.adobe.com/exif/1.0/\"\n"
+                + "    xmlns:xmp=\"http://ns.adobe.com/xap/1.0/\"\n"
+                + "    xmlns:xmpMM=\"http://ns.adobe.com/xap/1.0/mm/\"\n"
+                + "    xmlns:dc=\"http://purl.org/dc/elements/1.1/\"\n"
+                + "    xmlns:crs=\"http://ns.adobe.com/camera-raw-settings/1.0/\"\n"
+                + "    xmlns:drone-dji=\"http://www.dji.com/drone-dji/1.0/\"\n"
+                + "   xmp:ModifyDate=\"" + time + "\"\n"
+                + "   xmp:CreateDate=\"" + time + "\"\n"
+                + "   tiff:Make=\"DJI\"\n"
+                + "   tiff:Model=\"M3TD\"\n"
+                + "   dc:format=\"image/jpeg\"\n"
+                + "   drone-dji:Version=\"1.0\"\n"
+                + "   drone-dji:ImageSource=\"WideCamera\"\n"
+                + "   drone-dji:GpsStatus=\"RTK\"\n"
+                + "   drone-dji:AltitudeType=\"RtkAlt\"\n"
+                + "   drone-dji:GpsLatitude=\"" + String.format(Locale.ROOT, "%.9f", lat) + "\"\n"
+                + "   drone-dji:GpsLongitude=\"" + String.format(Locale.ROOT, "%.9f", lng) + "\"\n"
+                + "   drone-dji:AbsoluteAltitude=\"" + String.format(Locale.ROOT, "+%.3f", alt) + "\"\n"
+                + "   drone-dji:RelativeAltitude=\"" + String.format(Locale.ROOT, "+%.3f", alt - 25) + "\"\n"
+                + "   drone-dji:GimbalRollDegree=\"+0.00\"\n"
+                + "   drone-dji:GimbalYawDegree=\"-45.30\"\n"
+                + "   drone-dji:GimbalPitchDegree=\"-89.90\"\n"
+                + "   drone-dji:FlightRollDegree=\"+1.10\"\n"
+                + "   drone-dji:FlightYawDegree=\"-44.90\"\n"
+                + "   drone-dji:FlightPitchDegree=\"+2.30\"\n"
+                + "   drone-dji:FlightXSpeed=\"+0.00\"\n"
+                + "   drone-dji:FlightYSpeed=\"+0.00\"\n"
+                + "   drone-dji:FlightZSpeed=\"+0.00\"\n"
+                + "   drone-dji:CamReverse=\"0\"\n"
+                + "   drone-dji:GimbalReverse=\"0\"\n"
+                + "   drone-dji:SelfData=\"Undefined\"\n"
+                + "   drone-dji:RtkFlag=\"50\"\n"
+                + "   drone-dji:RtkStdLon=\"0.01012\"\n"
+                + "   drone-dji:RtkStdLat=\"0.01207\"\n"
+                + "   drone-dji:RtkStdHgt=\"0.02131\"\n"
+                + "   drone-dji:DewarpFlag=\"0\"\n"
+                + "   drone-dji:LRFStatus=\"Normal\"\n"
+                + "   drone-dji:LRFTargetDistance=\"" + String.format(Locale.ROOT, "%.3f", distance) + "\"\n"
+                + "   drone-dji:LRFTargetLon=\"" + String.format(Locale.ROOT, "%.9f", lng + 0.00001) + "\"\n"
+                + "   drone-dji:LRFTargetLat=\"" + String.format(Locale.ROOT, "%.9f", lat + 0.00001) + "\"\n"
+                + "   drone-dji:LRFTargetAlt=\"" + String.format(Locale.ROOT, "%.3f", alt - distance - 25) + "\"\n"
+                + "   drone-dji:LRFTargetAbsAlt=\"" + String.format(Locale.ROOT, "%.3f", alt - distance) + "\"\n"
+                + "   drone-dji:DroneModel=\"M3TD\"\n"
+                + "   drone-dji:DroneSerialNumber=\"1581F5FHD23B000000\"\n"
+                + "   crs:Version=\"7.0\"\n"
+                + "   crs:HasSettings=\"False\"\n"
+                + "   crs:HasCrop=\"False\"\n"
+                + "   crs:AlreadyApplied=\"False\">\n"
+                + "  </rdf:Description>\n"
+                + " </rdf:RDF>\n"
+                + "</x:xmpmeta>\n"
+                + " ".repeat(2048) + "\n"
+                + "<?xpacket end=\"w\"?>";
+    }
+
+    private static void writeSegment(ByteArrayOutputStream out, int marker, byte[] payload) {
+        int length = payload.length + 2;
+        out.write(0xFF);
+        out.write(marker);
+        out.write(length >> 8);
+        out.write(length & 0xFF);
+        out.writeBytes(payload);
+    }
+}
@@ -0,0 +1,87 @@
+package com.whu.ximaweb.bench;
+
+import com.whu.ximaweb.dto.Coordinate;
+import com.whu.ximaweb.service.GeofenceService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 围栏判定：一栋楼的全部照片逐张做 点在多边形内 / 缓冲区距离 判定
+ * 参数：围栏顶点数 x 照片数，单次操作 = 处理完全部照片
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeofenceBenchmark {
+
+    private static final double FENCE_RADIUS_METERS = 60;
+
+    @Param({"8", "256", "4096"})
+    public int vertices;
+
+    @Param({"10000", "100000", "1000000"})
+    public int photos;
+
+    private List<Coordinate> coords;
+    private GeofenceService.CompiledFence fence;
+    private double[] lats;
+    private double[] lngs;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        coords = BenchData.fence(vertices, FENCE_RADIUS_METERS, 1L);
+        fence = new GeofenceService.CompiledFence(1, coords, GeofenceService.DEFAULT_BUFFER_METERS);
+        double[][] points = BenchData.photoPoints(photos, FENCE_RADIUS_METERS, GeofenceService.DEFAULT_BUFFER_METERS, 2L);
+        lats = points[0];
+        lngs = points[1];
+    }
+
+    /**
+     * 同步和进度计算实际走的入口：外包矩形粗筛 -> 点在多边形内 -> 到边界距离
+     */
+    @Benchmark
+    public int insideOrBuffered() {
+        int hits = 0;
+        for (int i = 0; i < lats.length; i++) {
+            if (fence.isInsideOrBuffered(lats[i], lngs[i])) hits++;
+        }
+        return hits;
+    }
+
+    /**
+     * 只做点在多边形内 (不含缓冲区)
+     */
+    @Benchmark
+    public int inside() {
+        int hits = 0;
+        for (int i = 0; i < lats.length; i++) {
+            if (fence.isInside(lats[i], lngs[i])) hits++;
+        }
+        return hits;
+    }
+
+    /**
+     * 围栏编译 (投影 + 建索引)，与照片数无关，只在最小规模下有意义
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public GeofenceService.CompiledFence compile() {
+        return new GeofenceService.CompiledFence(1, coords, GeofenceService.DEFAULT_BUFFER_METERS);
+    }
+}
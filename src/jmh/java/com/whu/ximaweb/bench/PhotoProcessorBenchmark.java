@@ -0,0 +1,100 @@
+package com.whu.ximaweb.bench;
+
+import com.whu.ximaweb.model.PhotoData;
+import com.whu.ximaweb.service.PhotoProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 照片 XMP 解析：PhotoProcessor.process 单张耗时
+ * 默认用合成的大疆 JPEG；传 -p jpegDir=/path 时改用目录下的真实样片 (*.jpg / *.jpeg)，
+ * 样片先整体读入内存，测的是解析本身而不是磁盘。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PhotoProcessorBenchmark {
+
+    private static final int SYNTHETIC_SAMPLES = 32;
+
+    @Param({""})
+    public String jpegDir;
+
+    /**
+     * 传给 process 的字节数：0 表示整张文件，65536 对应同步时只拉取文件头的做法
+     */
+    @Param({"0", "65536"})
+    public int headBytes;
+
+    private final PhotoProcessor processor = new PhotoProcessor();
+    private final List<byte[]> samples = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if (!jpegDir.isEmpty()) {
+            try (Stream<Path> files = Files.list(Paths.get(jpegDir))) {
+                for (Path file : files.sorted().toList()) {
+                    String name = file.getFileName().toString().toLowerCase();
+                    if (name.endsWith(".jpg") || name.endsWith(".jpeg")) {
+                        samples.add(head(Files.readAllBytes(file)));
+                        names.add(file.getFileName().toString());
+                    }
+                }
+            }
+            if (samples.isEmpty()) {
+                throw new IllegalStateException("目录中没有 JPEG 样片: " + jpegDir);
+            }
+        } else {
+            for (int i = 0; i < SYNTHETIC_SAMPLES; i++) {
+                samples.add(head(BenchData.djiJpeg(i, 4 * 1024 * 1024)));
+                names.add("DJI_SYN_" + i + ".JPG");
+            }
+        }
+        // 样片都能解析出来才有比较意义
+        for (int i = 0; i < samples.size(); i++) {
+            if (processor.process(new ByteArrayInputStream(samples.get(i)), names.get(i)).isEmpty()) {
+                throw new IllegalStateException("样片无法解析: " + names.get(i));
+            }
+        }
+    }
+
+    @Benchmark
+    public Optional<PhotoData> process() {
+        int i = cursor;
+        cursor = (i + 1) % samples.size();
+        return processor.process(new ByteArrayInputStream(samples.get(i)), names.get(i));
+    }
+
+    private byte[] head(byte[] bytes) {
+        if (headBytes <= 0 || bytes.length <= headBytes) return bytes;
+        byte[] head = new byte[headBytes];
+        System.arraycopy(bytes, 0, head, 0, headBytes);
+        return head;
+    }
+}
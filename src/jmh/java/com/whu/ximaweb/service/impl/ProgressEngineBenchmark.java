@@ -0,0 +1,95 @@
+package com.whu.ximaweb.service.impl;
+
+import com.whu.ximaweb.bench.BenchData;
+import com.whu.ximaweb.model.BuildingFloorInfo;
+import com.whu.ximaweb.util.ProgressKernel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进度引擎的纯计算部分 (放在 service.impl 包下以便调用包级可见的 calculateFloorLevel)
+ * cleanAllDays: 一栋楼全部照片按天做 V12 清洗 (与 ProgressServiceImpl.cleanDailyData 相同的填充 + 内核调用)
+ * floorLevel:   逐条实测高度按楼层标尺换算楼层
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProgressEngineBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Days {
+
+        @Param({"10000", "100000", "1000000"})
+        public int photos;
+
+        /**
+         * 每天照片数：常规巡检几十张，加密航线几千张
+         */
+        @Param({"60", "2000"})
+        public int photosPerDay;
+
+        List<BenchData.FlightDay> days;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            days = BenchData.flightDays(photos, photosPerDay, 3L);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Floors {
+
+        @Param({"10000", "100000", "1000000"})
+        public int photos;
+
+        @Param({"30", "100"})
+        public int floors;
+
+        List<BuildingFloorInfo> ruler;
+        double[] heights;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            ruler = BenchData.floorRuler(floors, 4L);
+            double top = ruler.get(ruler.size() - 1).getCumulativeHeight().doubleValue();
+            heights = BenchData.heights(photos, top, 5L);
+        }
+    }
+
+    @Benchmark
+    public void cleanAllDays(Days state, Blackhole bh) {
+        for (BenchData.FlightDay day : state.days) {
+            int n = day.distances().length;
+            double[] dist = ProgressKernel.distanceBuffer(n);
+            double[] alt = ProgressKernel.altitudeBuffer(n);
+            System.arraycopy(day.distances(), 0, dist, 0, n);
+            System.arraycopy(day.droneAlts(), 0, alt, 0, n);
+            bh.consume(ProgressKernel.clean(dist, alt, n));
+        }
+    }
+
+    @Benchmark
+    public long floorLevel(Floors state) {
+        long sum = 0;
+        for (double h : state.heights) {
+            sum += ProgressServiceImpl.calculateFloorLevel(h, state.ruler);
+        }
+        return sum;
+    }
+}
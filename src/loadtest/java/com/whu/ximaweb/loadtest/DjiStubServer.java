@@ -0,0 +1,271 @@
+package com.whu.ximaweb.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地 HTTP 桩服务器，替代压测时的外部服务：
+ *  - 大疆司空2 OpenAPI：项目 / 设备 / 飞行任务 / 媒体列表 (data.list + data.pagination 分页，与真实接口同构)；
+ *  - 媒体文件下载：按场景实时生成带 drone-dji XMP 的 JPEG，支持 Range (元数据优先只取头部)；
+ *  - Moonshot (Kimi) 对话接口：返回固定的日报正文。
+ * 可以为大疆接口和 AI 接口设置固定延迟，模拟公网往返与大模型生成耗时。
+ */
+class DjiStubServer {
+
+    private static final String API = "/openapi/v0.1";
+    private static final String CANNED_REPORT = "尊敬的用户：\n您好！我是您的智能工程管家——XiMA智造助手。\n"
+            + "【总体评价】\n压测环境固定回复，各楼栋施工进度符合预期计划。\n"
+            + "【原因诊断与建议】\n原因推测：\n1. 无\n管理建议：\n1. 无\n祝您项目顺利完工！";
+
+    private final LoadScenario scenario;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final long djiLatencyMs;
+    private final long aiLatencyMs;
+    private final byte[] noise = new byte[64 * 1024];
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    // 请求统计
+    final AtomicLong apiRequests = new AtomicLong();
+    final AtomicLong headRequests = new AtomicLong();
+    final AtomicLong fullDownloads = new AtomicLong();
+    final AtomicLong mediaBytes = new AtomicLong();
+    final AtomicLong aiRequests = new AtomicLong();
+
+    DjiStubServer(LoadScenario scenario, long djiLatencyMs, long aiLatencyMs) {
+        this.scenario = scenario;
+        this.djiLatencyMs = djiLatencyMs;
+        this.aiLatencyMs = aiLatencyMs;
+        // 压缩数据区用不含 0xFF 的伪随机字节，避免出现伪标记
+        for (int i = 0; i < noise.length; i++) {
+            noise[i] = (byte) ((i * 131 + 17) % 255);
+        }
+    }
+
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 256);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext(API + "/", this::handleApi);
+        server.createContext("/media/", this::handleMedia);
+        server.createContext("/v1/chat/completions", this::handleChat);
+        server.start();
+    }
+
+    void stop() {
+        if (server != null) server.stop(0);
+        if (executor != null) executor.shutdownNow();
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    // =========================================================
+    // 大疆 OpenAPI
+    // =========================================================
+
+    private void handleApi(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            apiRequests.incrementAndGet();
+            sleep(djiLatencyMs);
+            String path = exchange.getRequestURI().getPath().substring(API.length());
+            Map<String, String> query = query(exchange.getRequestURI());
+            int p = scenario.projectIndex(exchange.getRequestHeaders().getFirst("X-Project-Uuid"));
+
+            List<Object> items;
+            if (path.equals("/project")) {
+                items = new ArrayList<>();
+                for (int i = 0; i < scenario.projects; i++) {
+                    items.add(Map.of("uuid", scenario.projectUuid(i), "name", LoadScenario.PROJECT_NAME_PREFIX + i));
+                }
+            } else if (path.equals("/project/device")) {
+                items = p < 0 ? List.of() : List.of(Map.of(
+                        "drone", Map.of("sn", scenario.droneSn(p)),
+                        "gateway", Map.of("sn", scenario.dockSn(p))));
+            } else if (path.equals("/flight-task/list")) {
+                items = p < 0 ? List.of() : tasks(p, query);
+            } else if (path.startsWith("/flight-task/") && path.endsWith("/media")) {
+                String taskUuid = path.substring("/flight-task/".length(), path.length() - "/media".length());
+                items = media(p, taskUuid);
+            } else {
+                writeJson(exchange, 404, Map.of("code", 404, "message", "not found"));
+                return;
+            }
+            writeJson(exchange, 200, page(items, query));
+        }
+    }
+
+    /**
+     * 飞机和机场两个 SN 都返回同一批任务 (与真实司空一致，由调用方去重)
+     */
+    private List<Object> tasks(int p, Map<String, String> query) {
+        long beginAt = Long.parseLong(query.getOrDefault("begin_at", "0"));
+        long endAt = Long.parseLong(query.getOrDefault("end_at", String.valueOf(Long.MAX_VALUE)));
+        List<Object> tasks = new ArrayList<>();
+        for (int f = 0; f < scenario.flights; f++) {
+            long begin = scenario.flightBeginAt(f);
+            if (begin < beginAt || begin > endAt) continue;
+            Map<String, Object> task = new LinkedHashMap<>();
+            task.put("uuid", scenario.taskUuid(p, f));
+            task.put("name", scenario.taskName(f));
+            task.put("status", "success");
+            task.put("begin_at", Instant.ofEpochSecond(begin).toString());
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    private List<Object> media(int p, String taskUuid) {
+        String[] parts = taskUuid.split("-");
+        if (parts.length != 3 || !"lt".equals(parts[0])) return List.of();
+        int f = Integer.parseInt(parts[2]);
+        if (p < 0 || Integer.parseInt(parts[1]) != p || f >= scenario.flights) return List.of();
+        List<Object> files = new ArrayList<>(scenario.photosPerFlight);
+        for (int i = 0; i < scenario.photosPerFlight; i++) {
+            files.add(Map.of("name", scenario.fileName(i),
+                    "original_url", baseUrl() + "/media/" + p + "/" + f + "/" + i + ".JPG"));
+        }
+        return files;
+    }
+
+    private static Map<String, Object> page(List<Object> items, Map<String, String> query) {
+        int page = Math.max(1, Integer.parseInt(query.getOrDefault("page", "1")));
+        int pageSize = Math.max(1, Integer.parseInt(query.getOrDefault("page_size", "10")));
+        int from = Math.min(items.size(), (page - 1) * pageSize);
+        int to = Math.min(items.size(), from + pageSize);
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("list", items.subList(from, to));
+        data.put("pagination", Map.of("page", page, "page_size", pageSize, "total", items.size()));
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("code", 0);
+        body.put("message", "success");
+        body.put("data", data);
+        return body;
+    }
+
+    // =========================================================
+    // 媒体文件
+    // =========================================================
+
+    /**
+     * /media/{项目}/{飞行}/{照片}.JPG，支持 Range: bytes=a-b
+     */
+    private void handleMedia(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String[] parts = exchange.getRequestURI().getPath().substring("/media/".length()).split("[/.]");
+            byte[] head = scenario.photoHead(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+            long total = Math.max(scenario.photoBytes, head.length + 2L);
+
+            long from = 0;
+            long to = total - 1;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range != null && range.startsWith("bytes=")) {
+                String[] bounds = range.substring("bytes=".length()).split("-", 2);
+                from = bounds[0].isEmpty() ? 0 : Long.parseLong(bounds[0]);
+                if (bounds.length > 1 && !bounds[1].isEmpty()) to = Math.min(to, Long.parseLong(bounds[1]));
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + total);
+                headRequests.incrementAndGet();
+            } else {
+                fullDownloads.incrementAndGet();
+            }
+            long length = to - from + 1;
+            exchange.getResponseHeaders().set("Content-Type", "image/jpeg");
+            exchange.sendResponseHeaders(range != null ? 206 : 200, length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                writeRange(out, head, total, from, to);
+            }
+            mediaBytes.addAndGet(length);
+        }
+    }
+
+    /**
+     * 完整文件 = 头部 + 压缩数据 (循环填充 noise) + EOI，只输出 [from, to] 区间
+     */
+    private void writeRange(OutputStream out, byte[] head, long total, long from, long to) throws IOException {
+        long pos = from;
+        if (pos < head.length) {
+            int n = (int) Math.min(head.length, to + 1) - (int) pos;
+            out.write(head, (int) pos, n);
+            pos += n;
+        }
+        long bodyEnd = Math.min(to + 1, total - 2);
+        while (pos < bodyEnd) {
+            int offset = (int) ((pos - head.length) % noise.length);
+            int n = (int) Math.min(noise.length - offset, bodyEnd - pos);
+            out.write(noise, offset, n);
+            pos += n;
+        }
+        for (; pos <= to; pos++) {
+            out.write(pos == total - 2 ? 0xFF : 0xD9);
+        }
+    }
+
+    // =========================================================
+    // Kimi 对话接口
+    // =========================================================
+
+    private void handleChat(HttpExchange exchange) throws IOException {
+        try (exchange; InputStream in = exchange.getRequestBody()) {
+            in.readAllBytes();
+            aiRequests.incrementAndGet();
+            sleep(aiLatencyMs);
+            Map<String, Object> message = Map.of("role", "assistant", "content", CANNED_REPORT);
+            writeJson(exchange, 200, Map.of("choices", List.of(Map.of("index", 0, "message", message))));
+        }
+    }
+
+    // =========================================================
+
+    private void writeJson(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> query(URI uri) {
+        Map<String, String> result = new HashMap<>();
+        String raw = uri.getRawQuery();
+        if (raw == null) return result;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                result.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return result;
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
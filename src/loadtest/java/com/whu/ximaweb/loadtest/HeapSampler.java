@@ -0,0 +1,62 @@
+package com.whu.ximaweb.loadtest;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * 分阶段记录堆内存峰值
+ * 后台线程每 20ms 采样一次已用堆，同时记录各堆内存池的峰值之和 (JVM 精确记录，但各池峰值不一定同时出现，是上界)
+ */
+class HeapSampler implements AutoCloseable {
+
+    private static final long INTERVAL_MS = 20;
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final Thread thread;
+    private volatile long sampledPeak;
+    private volatile boolean running = true;
+
+    HeapSampler() {
+        thread = Thread.ofPlatform().daemon().name("loadtest-heap-sampler").start(() -> {
+            while (running) {
+                long used = memory.getHeapMemoryUsage().getUsed();
+                if (used > sampledPeak) sampledPeak = used;
+                try {
+                    Thread.sleep(INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+    }
+
+    /**
+     * 开始一个新阶段：清零采样峰值和各内存池的峰值
+     */
+    void reset() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+        sampledPeak = memory.getHeapMemoryUsage().getUsed();
+    }
+
+    long sampledPeakBytes() {
+        return sampledPeak;
+    }
+
+    long poolPeakBytes() {
+        long sum = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) sum += pool.getPeakUsage().getUsed();
+        }
+        return sum;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        thread.interrupt();
+    }
+}
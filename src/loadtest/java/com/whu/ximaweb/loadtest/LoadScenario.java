@@ -0,0 +1,251 @@
+package com.whu.ximaweb.loadtest;
+
+import com.whu.ximaweb.dto.Coordinate;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 压测场景：N 个项目 x 每个项目 M 次飞行 x 每次 K 张照片
+ * 所有数据 (任务、照片坐标、激光距离、JPEG 字节) 都由 (项目, 飞行, 照片) 下标确定性地算出，
+ * 桩服务器按需生成，不需要预先落盘。
+ *
+ * 每个项目 B 栋楼，楼与楼相距 200 米；每次飞行轮流拍摄各栋楼，楼高随飞行次序从 3 米涨到 60 米，
+ * 距离分布与真实航线相近：60% 楼顶、35% 地面、5% 塔吊等干扰点。
+ * 飞行均匀分布在最近 80 天内 (司空查询默认只看 90 天)。
+ */
+public final class LoadScenario {
+
+    public static final String PROJECT_NAME_PREFIX = "LOADTEST-";
+    public static final String KEYWORD = "激光测距";
+
+    private static final double BASE_LAT = 30.5400;
+    private static final double BASE_LNG = 114.3600;
+    private static final double METERS_PER_DEG_LAT = 111320.0;
+    private static final double FENCE_RADIUS_METERS = 25.0;
+    private static final double GROUND_ELEVATION = 20.0;
+    private static final ZoneOffset CST = ZoneOffset.ofHours(8);
+
+    final int projects;
+    final int flights;
+    final int photosPerFlight;
+    final int buildings;
+    final int fenceVertices;
+    final int photoBytes;
+    private final long firstFlightAt;   // epoch 秒
+    private final long flightSpacing;   // 秒
+
+    LoadScenario(int projects, int flights, int photosPerFlight, int buildings, int fenceVertices, int photoBytes) {
+        this.projects = Math.max(1, projects);
+        this.flights = Math.max(1, flights);
+        this.photosPerFlight = Math.max(1, photosPerFlight);
+        this.buildings = Math.max(1, buildings);
+        this.fenceVertices = Math.max(3, fenceVertices);
+        this.photoBytes = photoBytes;
+        this.flightSpacing = Math.max(600, Math.min(86400, 80L * 86400 / this.flights));
+        long now = Instant.now().getEpochSecond();
+        this.firstFlightAt = now - 3600 - this.flights * flightSpacing;
+    }
+
+    /**
+     * 从 --loadtest.xxx=value 形式的参数读取场景
+     */
+    static LoadScenario fromArgs(Map<String, String> options) {
+        return new LoadScenario(
+                intOption(options, "projects", 4),
+                intOption(options, "flights", 20),
+                intOption(options, "photos-per-flight", 60),
+                intOption(options, "buildings", 2),
+                intOption(options, "fence-vertices", 8),
+                intOption(options, "photo-bytes", 2 * 1024 * 1024));
+    }
+
+    static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value);
+    }
+
+    int totalPhotos() {
+        return projects * flights * photosPerFlight;
+    }
+
+    // =========================================================
+    // 大疆侧的标识
+    // =========================================================
+
+    String projectUuid(int p) {
+        return "loadtest-project-" + p;
+    }
+
+    /**
+     * 项目 UUID -> 项目下标，不是压测项目返回 -1
+     */
+    int projectIndex(String projectUuid) {
+        if (projectUuid == null || !projectUuid.startsWith("loadtest-project-")) return -1;
+        try {
+            int p = Integer.parseInt(projectUuid.substring("loadtest-project-".length()));
+            return p >= 0 && p < projects ? p : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    String droneSn(int p) {
+        return String.format(Locale.ROOT, "LTDRONE%04d", p);
+    }
+
+    String dockSn(int p) {
+        return String.format(Locale.ROOT, "LTDOCK%04d", p);
+    }
+
+    String taskUuid(int p, int f) {
+        return "lt-" + p + "-" + f;
+    }
+
+    String taskName(int f) {
+        return String.format(Locale.ROOT, "%s-%03d", KEYWORD, f);
+    }
+
+    long flightBeginAt(int f) {
+        return firstFlightAt + (long) f * flightSpacing;
+    }
+
+    String fileName(int i) {
+        return String.format(Locale.ROOT, "DJI_%04d_W.JPG", i + 1);
+    }
+
+    // =========================================================
+    // 楼栋与围栏
+    // =========================================================
+
+    private double centerLng(int b) {
+        return BASE_LNG + b * 200 / metersPerLng();
+    }
+
+    private static double metersPerLng() {
+        return METERS_PER_DEG_LAT * Math.cos(Math.toRadians(BASE_LAT));
+    }
+
+    /**
+     * 第 b 栋楼的围栏 (正多边形，外接半径 25 米)
+     */
+    List<Coordinate> fence(int b) {
+        List<Coordinate> coords = new ArrayList<>(fenceVertices);
+        for (int k = 0; k < fenceVertices; k++) {
+            double angle = 2 * Math.PI * k / fenceVertices;
+            coords.add(new Coordinate(BASE_LAT + FENCE_RADIUS_METERS * Math.sin(angle) / METERS_PER_DEG_LAT,
+                    centerLng(b) + FENCE_RADIUS_METERS * Math.cos(angle) / metersPerLng()));
+        }
+        return coords;
+    }
+
+    // =========================================================
+    // 照片
+    // =========================================================
+
+    /**
+     * 一张照片的 XMP 数据
+     */
+    record PhotoSpec(double lat, double lng, double droneAlt, double distance, OffsetDateTime createdAt) {
+    }
+
+    PhotoSpec photo(int p, int f, int i) {
+        Random random = new Random(((long) p * 1_000_003L + f) * 1_000_033L + i);
+        Random flightRandom = new Random((long) p * 1_000_003L + f);
+        double droneAlt = 150 + flightRandom.nextGaussian() * 0.3;
+
+        int b = i % buildings;
+        double r = FENCE_RADIUS_METERS * 0.6 * Math.sqrt(random.nextDouble());
+        double angle = 2 * Math.PI * random.nextDouble();
+        double lat = BASE_LAT + r * Math.sin(angle) / METERS_PER_DEG_LAT;
+        double lng = centerLng(b) + r * Math.cos(angle) / metersPerLng();
+
+        double height = 3 + 57.0 * (f + 1) / flights;
+        double roofDistance = droneAlt - GROUND_ELEVATION - height;
+        double pick = random.nextDouble();
+        double distance;
+        if (pick < 0.60) distance = roofDistance + random.nextGaussian() * 0.3;
+        else if (pick < 0.95) distance = droneAlt - GROUND_ELEVATION + random.nextGaussian();
+        else distance = roofDistance - 8 - random.nextDouble() * 10;
+
+        OffsetDateTime createdAt = Instant.ofEpochSecond(flightBeginAt(f) + 2L * i).atOffset(CST);
+        return new PhotoSpec(lat, lng, droneAlt, distance, createdAt);
+    }
+
+    /**
+     * JPEG 文件头部：SOI -> APP1 EXIF (32KB 占位，模拟缩略图) -> APP1 XMP -> SOS 段头
+     * 完整文件在此之后是压缩数据，由桩服务器按 photoBytes 补齐
+     */
+    byte[] photoHead(int p, int f, int i) {
+        PhotoSpec spec = photo(p, f, i);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(40 * 1024);
+        out.write(0xFF);
+        out.write(0xD8);
+
+        byte[] exif = new byte[32 * 1024];
+        System.arraycopy("Exif\0\0".getBytes(StandardCharsets.US_ASCII), 0, exif, 0, 6);
+        writeSegment(out, 0xE1, exif);
+
+        byte[] header = "http://ns.adobe.com/xap/1.0/\0".getBytes(StandardCharsets.US_ASCII);
+        byte[] xmp = xmp(spec).getBytes(StandardCharsets.UTF_8);
+        byte[] app1 = new byte[header.length + xmp.length];
+        System.arraycopy(header, 0, app1, 0, header.length);
+        System.arraycopy(xmp, 0, app1, header.length, xmp.length);
+        writeSegment(out, 0xE1, app1);
+
+        writeSegment(out, 0xDA, new byte[10]);
+        return out.toByteArray();
+    }
+
+    private static String xmp(PhotoSpec spec) {
+        String time = spec.createdAt().toString();
+        return "<x:xmpmeta xmlns:x=\"adobe:ns:meta/\">\n"
+                + " <rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\">\n"
+                + "  <rdf:Description rdf:about=\"DJI Meta Data\"\n"
+                + "    xmlns:xmp=\"http://ns.adobe.com/xap/1.0/\"\n"
+                + "    xmlns:drone-dji=\"http://www.dji.com/drone-dji/1.0/\"\n"
+                + "   xmp:CreateDate=\"" + time + "\"\n"
+                + "   drone-dji:GpsStatus=\"RTK\"\n"
+                + "   drone-dji:GpsLatitude=\"" + format("%.9f", spec.lat()) + "\"\n"
+                + "   drone-dji:GpsLongitude=\"" + format("%.9f", spec.lng()) + "\"\n"
+                + "   drone-dji:AbsoluteAltitude=\"" + format("+%.3f", spec.droneAlt()) + "\"\n"
+                + "   drone-dji:RelativeAltitude=\"" + format("+%.3f", spec.droneAlt() - GROUND_ELEVATION) + "\"\n"
+                + "   drone-dji:GimbalPitchDegree=\"-89.90\"\n"
+                + "   drone-dji:LRFStatus=\"Normal\"\n"
+                + "   drone-dji:LRFTargetDistance=\"" + format("%.3f", spec.distance()) + "\"\n"
+                + "   drone-dji:LRFTargetLon=\"" + format("%.9f", spec.lng()) + "\"\n"
+                + "   drone-dji:LRFTargetLat=\"" + format("%.9f", spec.lat()) + "\"\n"
+                + "   drone-dji:LRFTargetAbsAlt=\"" + format("%.3f", spec.droneAlt() - spec.distance()) + "\"\n"
+                + "   drone-dji:DroneModel=\"M3TD\">\n"
+                + "  </rdf:Description>\n"
+                + " </rdf:RDF>\n"
+                + "</x:xmpmeta>";
+    }
+
+    private static String format(String pattern, double value) {
+        return String.format(Locale.ROOT, pattern, value);
+    }
+
+    private static void writeSegment(ByteArrayOutputStream out, int marker, byte[] payload) {
+        int length = payload.length + 2;
+        out.write(0xFF);
+        out.write(marker);
+        out.write(length >> 8);
+        out.write(length & 0xFF);
+        out.writeBytes(payload);
+    }
+
+    @Override
+    public String toString() {
+        return projects + " 个项目 x " + flights + " 次飞行 x " + photosPerFlight + " 张/次 = " + totalPhotos()
+                + " 张照片 (每项目 " + buildings + " 栋楼，围栏 " + fenceVertices + " 个顶点，单张 " + photoBytes / 1024 + "KB)";
+    }
+}
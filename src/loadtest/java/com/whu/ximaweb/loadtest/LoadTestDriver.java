@@ -0,0 +1,442 @@
+package com.whu.ximaweb.loadtest;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.whu.ximaweb.XiMaWebApplication;
+import com.whu.ximaweb.mapper.ActualProgressMapper;
+import com.whu.ximaweb.mapper.BuildingFloorInfoMapper;
+import com.whu.ximaweb.mapper.SysBuildingMapper;
+import com.whu.ximaweb.mapper.SysProjectMapper;
+import com.whu.ximaweb.mapper.SysTaskLogMapper;
+import com.whu.ximaweb.mapper.SysUserMapper;
+import com.whu.ximaweb.mapper.SysUserProjectMapper;
+import com.whu.ximaweb.model.ActualProgress;
+import com.whu.ximaweb.model.BuildingFloorInfo;
+import com.whu.ximaweb.model.SysBuilding;
+import com.whu.ximaweb.model.SysProject;
+import com.whu.ximaweb.model.SysTaskLog;
+import com.whu.ximaweb.model.SysUser;
+import com.whu.ximaweb.model.SysUserProject;
+import com.whu.ximaweb.service.ObsService;
+import com.whu.ximaweb.service.ProgressService;
+import com.whu.ximaweb.service.ProjectService;
+import com.whu.ximaweb.service.SyncScheduler;
+import com.whu.ximaweb.task.DailyReportTask;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.util.FileSystemUtils;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 离线端到端压测驱动 (mvn -Ploadtest -DskipTests verify)
+ *
+ * 启动本地桩服务器 (大疆 / 媒体下载 / Kimi)，以 loadtest profile 启动完整应用 (OBS 落本地目录、邮件只记录)，
+ * 在数据库中建立 N 个压测项目，然后依次回放：
+ *  1. 首次同步：全部项目同时手动同步 M 次飞行的照片，统计入库吞吐、单项目同步耗时、后台传输完成时间；
+ *  2. 重复同步：水位生效后再同步一次，统计"无新照片"时的耗时；
+ *  3. 进度计算：逐个项目全量重算，统计耗时分布；
+ *  4. 每日报告：把压测用户的报告时间设为当前分钟并执行日报任务 (AI 与邮件都走替身)。
+ * 每个阶段记录堆内存峰值，最后打印汇总。
+ *
+ * 仍然需要一个本地 MySQL (表结构与生产一致，建议单独的库，用 --spring.datasource.url=... 指定)；
+ * 压测数据以 LOADTEST- 前缀的项目名区分，开始前清理上一次的残留，结束后默认删除 (--loadtest.keep-data=true 保留)。
+ *
+ * 场景参数 (均为 --loadtest.xxx=value)：projects, flights, photos-per-flight, buildings, fence-vertices, photo-bytes,
+ * dji-latency-ms (默认 20), ai-latency-ms (默认 500), obs-dir, keep-data。例如：
+ *   mvn -Ploadtest -DskipTests verify -Dloadtest.args="--spring.datasource.url=jdbc:mysql://localhost:3306/ximalu_loadtest
+ *       --spring.datasource.password=*** --loadtest.projects=8 --loadtest.flights=30 --loadtest.photos-per-flight=100"
+ */
+public class LoadTestDriver {
+
+    private static final String USERNAME = "loadtest";
+    private static final long TRANSFER_IDLE_TIMEOUT_MS = 60_000;
+
+    @Autowired
+    private SyncScheduler syncScheduler;
+
+    @Autowired
+    private ProgressService progressService;
+
+    @Autowired
+    private ProjectService projectService;
+
+    @Autowired
+    private DailyReportTask dailyReportTask;
+
+    @Autowired
+    private SysUserMapper sysUserMapper;
+
+    @Autowired
+    private SysProjectMapper sysProjectMapper;
+
+    @Autowired
+    private SysUserProjectMapper sysUserProjectMapper;
+
+    @Autowired
+    private SysBuildingMapper sysBuildingMapper;
+
+    @Autowired
+    private BuildingFloorInfoMapper buildingFloorInfoMapper;
+
+    @Autowired
+    private ActualProgressMapper actualProgressMapper;
+
+    @Autowired
+    private SysTaskLogMapper sysTaskLogMapper;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ObsService obsService;
+
+    @Autowired
+    private JavaMailSender mailSender;
+
+    private LoadScenario scenario;
+    private DjiStubServer stub;
+    private HeapSampler heap;
+    private final List<String> report = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = options(args);
+        LoadScenario scenario = LoadScenario.fromArgs(options);
+        Path obsDir = Paths.get(options.getOrDefault("obs-dir", "target/loadtest-obs")).toAbsolutePath();
+        FileSystemUtils.deleteRecursively(obsDir);
+
+        DjiStubServer stub = new DjiStubServer(scenario,
+                LoadScenario.intOption(options, "dji-latency-ms", 20),
+                LoadScenario.intOption(options, "ai-latency-ms", 500));
+        stub.start();
+        System.out.println("🧪 [压测] 桩服务器已启动: " + stub.baseUrl());
+
+        // 命令行参数优先级最高，保证不被 prod 等 profile 覆盖
+        List<String> springArgs = new ArrayList<>(Arrays.asList(args));
+        springArgs.add("--dji.api.base-url=" + stub.baseUrl());
+        springArgs.add("--ai.kimi.api-url=" + stub.baseUrl() + "/v1/chat/completions");
+        springArgs.add("--xima.scheduling.enabled=false");
+        springArgs.add("--loadtest.obs-dir=" + obsDir);
+        springArgs.add("--mybatis-plus.configuration.log-impl=org.apache.ibatis.logging.nologging.NoLoggingImpl");
+
+        int exitCode = 0;
+        try (HeapSampler heap = new HeapSampler();
+             ConfigurableApplicationContext context = new SpringApplicationBuilder(XiMaWebApplication.class)
+                     .profiles("loadtest")
+                     .web(WebApplicationType.NONE)
+                     .run(springArgs.toArray(new String[0]))) {
+            LoadTestDriver driver = new LoadTestDriver();
+            context.getAutowireCapableBeanFactory().autowireBean(driver);
+            driver.scenario = scenario;
+            driver.stub = stub;
+            driver.heap = heap;
+            driver.run(Boolean.parseBoolean(options.getOrDefault("keep-data", "false")));
+        } catch (Exception e) {
+            System.err.println("❌ [压测] 执行失败: " + e.getMessage());
+            e.printStackTrace();
+            exitCode = 1;
+        } finally {
+            stub.stop();
+        }
+        System.exit(exitCode);
+    }
+
+    private void run(boolean keepData) throws Exception {
+        System.out.println("🧪 [压测] 场景: " + scenario);
+        SysUser user = prepareUser();
+        cleanUp(user);
+        List<SysProject> projects = seed(user);
+
+        heap.reset();
+        syncRound("首次同步", projects, true);
+        heap.reset();
+        syncRound("重复同步 (无新照片)", projects, false);
+        heap.reset();
+        progressRound(projects);
+        heap.reset();
+        reportRound(user, projects.size());
+
+        printReport();
+        if (!keepData) cleanUp(user);
+    }
+
+    // =========================================================
+    // 数据准备
+    // =========================================================
+
+    private SysUser prepareUser() {
+        SysUser user = sysUserMapper.selectOne(new QueryWrapper<SysUser>().eq("username", USERNAME));
+        if (user == null) {
+            user = new SysUser();
+            user.setUsername(USERNAME);
+            user.setPassword("loadtest");
+            user.setRealName("压测用户");
+            user.setEmail("loadtest@example.invalid");
+            user.setCreatedAt(LocalDateTime.now());
+            sysUserMapper.insert(user);
+        }
+        return user;
+    }
+
+    /**
+     * 删除压测用户名下 LOADTEST- 开头的项目及其进度、楼层标尺、任务日志
+     */
+    private void cleanUp(SysUser user) {
+        List<SysProject> stale = sysProjectMapper.selectList(new QueryWrapper<SysProject>()
+                .eq("created_by", user.getId()).likeRight("project_name", LoadScenario.PROJECT_NAME_PREFIX));
+        for (SysProject project : stale) {
+            actualProgressMapper.delete(new QueryWrapper<ActualProgress>().eq("project_id", project.getId()));
+            buildingFloorInfoMapper.delete(new QueryWrapper<BuildingFloorInfo>().eq("project_id", project.getId()));
+            sysTaskLogMapper.delete(new QueryWrapper<SysTaskLog>().eq("project_id", project.getId()));
+            projectService.deleteProject(project.getId());
+        }
+        if (!stale.isEmpty()) {
+            System.out.println("🧹 [压测] 已清理压测项目 " + stale.size() + " 个");
+        }
+    }
+
+    private List<SysProject> seed(SysUser user) throws Exception {
+        List<SysProject> projects = new ArrayList<>();
+        for (int p = 0; p < scenario.projects; p++) {
+            SysProject project = new SysProject();
+            project.setProjectName(LoadScenario.PROJECT_NAME_PREFIX + p);
+            project.setPhotoFolderKeyword(LoadScenario.KEYWORD);
+            project.setDjiProjectUuid(scenario.projectUuid(p));
+            project.setDjiOrgKey("loadtest-org-key");
+            project.setObsBucketName("loadtest");
+            project.setObsAk("loadtest");
+            project.setObsSk("loadtest");
+            project.setObsEndpoint("local");
+            project.setEnableAiReport(1);
+            project.setCreatedBy(user.getId());
+            project.setCreatedAt(LocalDateTime.now());
+            sysProjectMapper.insert(project);
+
+            SysUserProject relation = new SysUserProject();
+            relation.setUserId(user.getId());
+            relation.setProjectId(project.getId());
+            sysUserProjectMapper.insert(relation);
+
+            for (int b = 0; b < scenario.buildings; b++) {
+                SysBuilding building = new SysBuilding();
+                building.setProjectId(project.getId());
+                building.setName("压测楼-" + b);
+                building.setBoundaryCoords(objectMapper.writeValueAsString(scenario.fence(b)));
+                building.setCreatedAt(LocalDateTime.now());
+                sysBuildingMapper.insert(building);
+                seedFloorRuler(project, building);
+            }
+            projects.add(project);
+        }
+        System.out.println("🧪 [压测] 已创建压测项目 " + projects.size() + " 个");
+        return projects;
+    }
+
+    /**
+     * 楼层标尺：首层 4.5 米，其余每层 3 米，共 25 层
+     */
+    private void seedFloorRuler(SysProject project, SysBuilding building) {
+        BigDecimal cumulative = BigDecimal.ZERO;
+        for (int floor = 1; floor <= 25; floor++) {
+            BigDecimal height = floor == 1 ? new BigDecimal("4.50") : new BigDecimal("3.00");
+            cumulative = cumulative.add(height);
+            BuildingFloorInfo info = new BuildingFloorInfo();
+            info.setProjectId(project.getId());
+            info.setBuildingId(building.getId());
+            info.setProjectName(project.getProjectName());
+            info.setFloorNumber(floor);
+            info.setFloorHeight(height);
+            info.setCumulativeHeight(cumulative);
+            buildingFloorInfoMapper.insert(info);
+        }
+    }
+
+    // =========================================================
+    // 各阶段
+    // =========================================================
+
+    /**
+     * 全部项目同时提交手动同步 (经同一调度队列，受 max-concurrent 限制)
+     * @param waitTransfers 是否等待后台 OBS 传输全部完成
+     */
+    private void syncRound(String name, List<SysProject> projects, boolean waitTransfers) throws InterruptedException {
+        LocalObsService obs = (LocalObsService) obsService;
+        long uploadedBefore = obs.uploadedObjects.get();
+        long bytesBefore = stub.mediaBytes.get();
+        long apiBefore = stub.apiRequests.get();
+        System.out.println("🧪 [压测] " + name + " 开始...");
+
+        long start = System.nanoTime();
+        List<CompletableFuture<Long>> latencies = new ArrayList<>();
+        List<CompletableFuture<SyncScheduler.SyncOutcome>> outcomes = new ArrayList<>();
+        for (SysProject project : projects) {
+            CompletableFuture<SyncScheduler.SyncOutcome> future = syncScheduler.submitManual(project, null, false);
+            outcomes.add(future);
+            latencies.add(future.handle((outcome, error) -> System.nanoTime() - start));
+        }
+        int listed = 0;
+        int ingested = 0;
+        int failed = 0;
+        for (CompletableFuture<SyncScheduler.SyncOutcome> future : outcomes) {
+            try {
+                SyncScheduler.SyncOutcome outcome = future.join();
+                listed += outcome.listedCount();
+                ingested += outcome.successCount();
+            } catch (Exception e) {
+                failed++;
+                System.err.println("   -> 项目同步失败: " + e.getMessage());
+            }
+        }
+        long wallNanos = System.nanoTime() - start;
+        double wallSeconds = wallNanos / 1e9;
+
+        report.add("【" + name + "】");
+        report.add(String.format(Locale.ROOT, "  项目 %d 个 (失败 %d)，列出文件 %d，新入库 %d 张，耗时 %.2fs，入库吞吐 %.1f 张/s",
+                projects.size(), failed, listed, ingested, wallSeconds, ingested / Math.max(wallSeconds, 1e-9)));
+        report.add("  单项目同步耗时 (提交到完成，含增量进度计算): " + distribution(collect(latencies)));
+        report.add(String.format(Locale.ROOT, "  大疆接口请求 %d 次，媒体下载 %.1f MB",
+                stub.apiRequests.get() - apiBefore, (stub.mediaBytes.get() - bytesBefore) / 1048576.0));
+
+        if (waitTransfers && ingested > 0) {
+            long expected = uploadedBefore + ingested;
+            long lastCount = obs.uploadedObjects.get();
+            long lastChange = System.currentTimeMillis();
+            while (obs.uploadedObjects.get() < expected
+                    && System.currentTimeMillis() - lastChange < TRANSFER_IDLE_TIMEOUT_MS) {
+                TimeUnit.MILLISECONDS.sleep(100);
+                long count = obs.uploadedObjects.get();
+                if (count != lastCount) {
+                    lastCount = count;
+                    lastChange = System.currentTimeMillis();
+                }
+            }
+            double transferSeconds = (System.nanoTime() - start) / 1e9;
+            long uploaded = obs.uploadedObjects.get() - uploadedBefore;
+            report.add(String.format(Locale.ROOT, "  OBS 上传 %d/%d 个 (%.1f MB)，全部落盘耗时 %.2fs (从同步开始计)",
+                    uploaded, ingested, obs.uploadedBytes.get() / 1048576.0, transferSeconds));
+        }
+        reportHeap();
+    }
+
+    /**
+     * 逐个项目全量重算进度
+     */
+    private void progressRound(List<SysProject> projects) {
+        System.out.println("🧪 [压测] 全量进度计算开始...");
+        List<Long> latencies = new ArrayList<>();
+        long start = System.nanoTime();
+        for (SysProject project : projects) {
+            long t = System.nanoTime();
+            progressService.calculateProjectProgress(project.getId());
+            latencies.add(System.nanoTime() - t);
+        }
+        long rows = actualProgressMapper.selectCount(new QueryWrapper<ActualProgress>()
+                .in("project_id", projects.stream().map(SysProject::getId).toList()));
+        report.add("【全量进度计算】");
+        report.add(String.format(Locale.ROOT, "  %d 个项目共 %.2fs，生成进度记录 %d 条，单项目: %s",
+                projects.size(), (System.nanoTime() - start) / 1e9, rows, distribution(latencies)));
+        reportHeap();
+    }
+
+    /**
+     * 把压测用户的报告时间设为当前分钟，直接执行日报任务
+     */
+    private void reportRound(SysUser user, int projectCount) throws InterruptedException {
+        // 避免设置时间和任务查询之间跨过整分钟
+        if (LocalTime.now().getSecond() >= 50) {
+            TimeUnit.SECONDS.sleep(61 - LocalTime.now().getSecond());
+        }
+        user.setReportTime(LocalTime.now().format(DateTimeFormatter.ofPattern("HH:mm")));
+        sysUserMapper.updateById(user);
+
+        RecordingMailSender mails = (RecordingMailSender) mailSender;
+        int mailsBefore = mails.subjects.size();
+        long aiBefore = stub.aiRequests.get();
+        System.out.println("🧪 [压测] 每日报告开始...");
+        long start = System.nanoTime();
+        try {
+            dailyReportTask.executeDailyReport();
+        } finally {
+            user.setReportTime(null);
+            sysUserMapper.update(null, new UpdateWrapper<SysUser>()
+                    .eq("id", user.getId()).set("report_time", null));
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int sent = mails.subjects.size() - mailsBefore;
+        report.add("【每日报告】");
+        report.add(String.format(Locale.ROOT, "  项目 %d 个，AI 请求 %d 次，邮件 %d 封，耗时 %.2fs (平均 %.0fms/份)",
+                projectCount, stub.aiRequests.get() - aiBefore, sent, seconds, sent > 0 ? seconds * 1000 / sent : 0));
+        reportHeap();
+    }
+
+    // =========================================================
+    // 汇总
+    // =========================================================
+
+    private void reportHeap() {
+        report.add(String.format(Locale.ROOT, "  堆内存峰值: 采样 %.1f MB，各内存池峰值之和 %.1f MB (上界)",
+                heap.sampledPeakBytes() / 1048576.0, heap.poolPeakBytes() / 1048576.0));
+    }
+
+    private void printReport() {
+        System.out.println();
+        System.out.println("📊 ================= 压测结果 =================");
+        System.out.println("场景: " + scenario);
+        System.out.println("最大堆: " + Runtime.getRuntime().maxMemory() / 1048576 + " MB");
+        report.forEach(System.out::println);
+        System.out.println("📊 ============================================");
+    }
+
+    private static List<Long> collect(List<CompletableFuture<Long>> futures) {
+        List<Long> values = new ArrayList<>(futures.size());
+        for (CompletableFuture<Long> future : futures) values.add(future.join());
+        return values;
+    }
+
+    /**
+     * 纳秒耗时 -> "p50 / p95 / max"
+     */
+    private static String distribution(List<Long> nanos) {
+        if (nanos.isEmpty()) return "-";
+        List<Long> sorted = new ArrayList<>(nanos);
+        sorted.sort(null);
+        return String.format(Locale.ROOT, "p50 %.0fms / p95 %.0fms / max %.0fms",
+                percentile(sorted, 0.50) / 1e6, percentile(sorted, 0.95) / 1e6, sorted.get(sorted.size() - 1) / 1e6);
+    }
+
+    private static double percentile(List<Long> sorted, double q) {
+        int index = (int) Math.ceil(q * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index)));
+    }
+
+    /**
+     * 取出 --loadtest.xxx=value 形式的参数
+     */
+    private static Map<String, String> options(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--loadtest.")) continue;
+            int eq = arg.indexOf('=');
+            if (eq < 0) options.put(arg.substring("--loadtest.".length()), "true");
+            else options.put(arg.substring("--loadtest.".length(), eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+}
@@ -0,0 +1,34 @@
+package com.whu.ximaweb.loadtest;
+
+import com.whu.ximaweb.service.ObsService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.mail.javamail.JavaMailSender;
+
+import java.nio.file.Paths;
+
+/**
+ * loadtest profile 下替换外部依赖的 Bean
+ * 大疆与 Kimi 走 DjiStubServer (改 base-url 即可，不替换 Bean)；OBS 与 SMTP 在这里换成本地实现
+ */
+@Configuration
+@Profile("loadtest")
+public class LoadTestStandIns {
+
+    @Bean
+    @Primary
+    public ObsService localObsService(@Value("${loadtest.obs-dir:target/loadtest-obs}") String dir) {
+        return new LocalObsService(Paths.get(dir).toAbsolutePath());
+    }
+
+    /**
+     * 存在 JavaMailSender Bean 时 Spring Boot 不再创建连接 163 SMTP 的默认实现
+     */
+    @Bean
+    public JavaMailSender recordingMailSender() {
+        return new RecordingMailSender();
+    }
+}
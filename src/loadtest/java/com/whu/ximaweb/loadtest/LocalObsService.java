@@ -0,0 +1,110 @@
+package com.whu.ximaweb.loadtest;
+
+import com.whu.ximaweb.service.ObsService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 基于本地目录的 ObsService (压测替身)
+ * 对象存放在 根目录/桶名/对象Key，AK/SK/Endpoint 忽略；
+ * 列举与真实 OBS 一致按 Key 字典序返回，统计上传的对象数和字节数供压测报告使用。
+ */
+class LocalObsService implements ObsService {
+
+    private final Path root;
+
+    final AtomicLong uploadedObjects = new AtomicLong();
+    final AtomicLong uploadedBytes = new AtomicLong();
+
+    LocalObsService(Path root) {
+        this.root = root;
+    }
+
+    @Override
+    public boolean validateConnection(String ak, String sk, String endpoint, String bucketName) {
+        return true;
+    }
+
+    @Override
+    public boolean doesObjectExist(String ak, String sk, String endpoint, String bucketName, String objectKey) {
+        return Files.exists(resolve(bucketName, objectKey));
+    }
+
+    @Override
+    public void uploadStream(String ak, String sk, String endpoint, String bucketName, String objectKey, InputStream stream) {
+        try {
+            Path target = prepare(bucketName, objectKey);
+            long bytes = Files.copy(stream, target, StandardCopyOption.REPLACE_EXISTING);
+            uploadedObjects.incrementAndGet();
+            uploadedBytes.addAndGet(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void uploadFile(String ak, String sk, String endpoint, String bucketName, String objectKey, Path file) {
+        try {
+            Path target = prepare(bucketName, objectKey);
+            Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+            uploadedObjects.incrementAndGet();
+            uploadedBytes.addAndGet(Files.size(target));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public List<String> listFiles(String ak, String sk, String endpoint, String bucketName, String projectRoot, String keyword) {
+        List<String> result = new ArrayList<>();
+        for (String key : listKeys(ak, sk, endpoint, bucketName, projectRoot, null)) {
+            if (keyword == null || keyword.isEmpty() || key.contains(keyword)) result.add(key);
+        }
+        return result;
+    }
+
+    @Override
+    public InputStream downloadFile(String ak, String sk, String endpoint, String bucketName, String objectKey) {
+        try {
+            return Files.newInputStream(resolve(bucketName, objectKey));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public List<String> listKeys(String ak, String sk, String endpoint, String bucketName, String prefix, String marker) {
+        Path bucket = root.resolve(bucketName);
+        if (!Files.isDirectory(bucket)) return new ArrayList<>();
+        try (Stream<Path> files = Files.walk(bucket)) {
+            return files.filter(Files::isRegularFile)
+                    .map(file -> bucket.relativize(file).toString().replace('\\', '/'))
+                    .filter(key -> prefix == null || key.startsWith(prefix))
+                    .filter(key -> marker == null || marker.isEmpty() || key.compareTo(marker) > 0)
+                    .sorted()
+                    .collect(Collectors.toCollection(ArrayList::new));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path prepare(String bucketName, String objectKey) throws IOException {
+        Path target = resolve(bucketName, objectKey);
+        Files.createDirectories(target.getParent());
+        return target;
+    }
+
+    private Path resolve(String bucketName, String objectKey) {
+        return root.resolve(bucketName).resolve(objectKey);
+    }
+}
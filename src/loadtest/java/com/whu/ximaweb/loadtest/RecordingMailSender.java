@@ -0,0 +1,25 @@
+package com.whu.ximaweb.loadtest;
+
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import javax.mail.internet.MimeMessage;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 不连接 SMTP 的邮件发送器 (压测替身)
+ * 消息照常组装成 MimeMessage，只在最后一步记录下来而不投递
+ */
+class RecordingMailSender extends JavaMailSenderImpl {
+
+    final List<String> subjects = new CopyOnWriteArrayList<>();
+
+    @Override
+    protected void doSend(MimeMessage[] mimeMessages, Object[] originalMessages) {
+        for (int i = 0; i < mimeMessages.length; i++) {
+            Object original = originalMessages != null ? originalMessages[i] : null;
+            subjects.add(original instanceof SimpleMailMessage simple ? simple.getSubject() : "(MimeMessage)");
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.whu.ximaweb.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 线程池配置类
+ * 集中管理后台计算使用的有界线程池，避免各处随手 new Thread
+ */
+@Configuration
+public class ExecutorConfig {
+
+    /**
+     * 进度计算线程池：一栋楼一个任务，楼栋之间并行
+     * 并行度即同时占用的数据库连接数上限，需小于连接池大小 (HikariCP 默认 10)
+     */
+    @Bean(name = "progressExecutor", destroyMethod = "shutdown")
+    public ExecutorService progressExecutor(@Value("${xima.progress.parallelism:4}") int parallelism) {
+        return new ForkJoinPool(Math.max(1, parallelism), pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("progress-worker-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * 照片入库流水线 - 下载阶段 (网络 IO，边下边落临时文件)
+     */
+    @Bean(name = "ingestDownloadExecutor", destroyMethod = "shutdown")
+    public ExecutorService ingestDownloadExecutor(@Value("${xima.ingest.download-threads:4}") int threads) {
+        return Executors.newFixedThreadPool(Math.max(1, threads), namedThreadFactory("ingest-download-"));
+    }
+
+    /**
+     * 照片入库流水线 - 上传 OBS 阶段
+     */
+    @Bean(name = "ingestUploadExecutor", destroyMethod = "shutdown")
+    public ExecutorService ingestUploadExecutor(@Value("${xima.ingest.upload-threads:4}") int threads) {
+        return Executors.newFixedThreadPool(Math.max(1, threads), namedThreadFactory("ingest-upload-"));
+    }
+
+    /**
+     * 照片入库流水线 - XMP 解析阶段 (CPU 为主)
+     */
+    @Bean(name = "ingestParseExecutor", destroyMethod = "shutdown")
+    public ExecutorService ingestParseExecutor(@Value("${xima.ingest.parse-threads:2}") int threads) {
+        return Executors.newFixedThreadPool(Math.max(1, threads), namedThreadFactory("ingest-parse-"));
+    }
+
+    /**
+     * 照片入库流水线 - 后台传输通道 (元数据优先模式下搬运完整文件，支持延迟重试)
+     */
+    @Bean(name = "ingestTransferExecutor", destroyMethod = "shutdown")
+    public ScheduledExecutorService ingestTransferExecutor(@Value("${xima.ingest.transfer-threads:2}") int threads) {
+        return Executors.newScheduledThreadPool(Math.max(1, threads), namedThreadFactory("ingest-transfer-"));
+    }
+
+    /**
+     * 照片同步调度：每个线程同步一个项目，线程数即全局并发上限
+     */
+    @Bean(name = "syncExecutor", destroyMethod = "shutdown")
+    public ExecutorService syncExecutor(@Value("${xima.sync.max-concurrent:4}") int threads) {
+        return Executors.newFixedThreadPool(Math.max(1, threads), namedThreadFactory("photo-sync-"));
+    }
+
+    /**
+     * 大疆 OpenAPI 扇出请求 (设备 -> 任务 -> 媒体)：纯网络等待，用虚拟线程，
+     * 实际并发由 DjiServiceImpl 按组织 Key 的额度控制
+     */
+    @Bean(name = "djiFanoutExecutor", destroyMethod = "shutdown")
+    public ExecutorService djiFanoutExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("dji-fanout-", 0).factory());
+    }
+
+    /**
+     * 定时任务租约续约 (只发轻量 UPDATE，单线程足够)
+     */
+    @Bean(name = "leaseRenewalExecutor", destroyMethod = "shutdown")
+    public ScheduledExecutorService leaseRenewalExecutor() {
+        return Executors.newSingleThreadScheduledExecutor(namedThreadFactory("lease-renewal-"));
+    }
+
+    private static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger index = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,16 @@
+package com.whu.ximaweb.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * 定时任务总开关
+ * xima.scheduling.enabled=false 时所有 @Scheduled 任务 (照片同步、日报、令牌刷新、各类清理) 以及萤石云开机自检都不触发，
+ * 供压测等由外部驱动调用的场景使用；默认开启。
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "xima.scheduling.enabled", havingValue = "true", matchIfMissing = true)
+public class SchedulingConfig {
+}
@@ -0,0 +1,268 @@
+package com.whu.ximaweb.config;
+
+import com.whu.ximaweb.config.migration.JavaMigration;
+import com.whu.ximaweb.config.migration.V2ProjectPhotoUniqueUrl;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 数据库结构版本迁移
+ * 按版本号顺序执行 classpath:db/migration/V{版本}__{说明}.sql 脚本和 JAVA_MIGRATIONS 中尚未执行过的版本，
+ * 已执行的版本记录在 sys_schema_version 表里。
+ *
+ * 迁移在 DataSource 初始化完成时执行，早于任何 Mapper、@PostConstruct、定时任务和 Web 请求拿到数据源；
+ * 数据库连不上或任一版本失败都直接让启动失败，避免新代码跑在旧表结构上 (失败的版本不记录，修复后重启会重试)。
+ * 多副本同时启动时用 MySQL GET_LOCK 串行执行，拿到锁后重新读取已执行的版本。
+ */
+@Component
+public class SchemaMigrationRunner implements BeanPostProcessor {
+
+    private static final Pattern SCRIPT_NAME = Pattern.compile("V(\\d+)__(.+)\\.sql");
+    private static final String LOCK_NAME = "xima_schema_migration";
+
+    /**
+     * 需要先检查现有数据、按情况执行的版本
+     */
+    private static final List<JavaMigration> JAVA_MIGRATIONS = List.of(new V2ProjectPhotoUniqueUrl());
+
+    @Value("${xima.db.migrate.enabled:true}")
+    private boolean enabled;
+
+    @Value("${xima.db.migrate.lock-timeout-seconds:300}")
+    private int lockTimeoutSeconds;
+
+    private final AtomicBoolean migrated = new AtomicBoolean();
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource && enabled && migrated.compareAndSet(false, true)) {
+            migrate((DataSource) bean);
+        }
+        return bean;
+    }
+
+    private void migrate(DataSource dataSource) {
+        List<Migration> migrations;
+        try {
+            migrations = findMigrations();
+        } catch (IOException e) {
+            throw new IllegalStateException("[结构迁移] 读取迁移脚本失败", e);
+        }
+        if (migrations.isEmpty()) return;
+
+        try (Connection connection = dataSource.getConnection()) {
+            acquireLock(connection);
+            try {
+                ensureVersionTable(connection);
+                Set<Integer> applied = appliedVersions(connection);
+                for (Migration migration : migrations) {
+                    if (!applied.contains(migration.version)) {
+                        apply(connection, migration);
+                    }
+                }
+            } finally {
+                releaseLock(connection);
+            }
+        } catch (SQLException e) {
+            System.err.println("❌ [结构迁移] 数据库不可用或迁移失败，停止启动: " + e.getMessage());
+            throw new IllegalStateException("[结构迁移] 失败: " + e.getMessage(), e);
+        }
+    }
+
+    private void apply(Connection connection, Migration migration) throws SQLException {
+        long start = System.currentTimeMillis();
+        System.out.println(">>> [结构迁移] 执行 V" + migration.version + " " + migration.description + " ...");
+        try {
+            if (migration.java != null) {
+                migration.java.migrate(connection);
+            } else {
+                executeScript(connection, migration.resource);
+            }
+        } catch (SQLException e) {
+            System.err.println("❌ [结构迁移] V" + migration.version + " 执行失败: " + e.getMessage());
+            throw e;
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        recordVersion(connection, migration, elapsed);
+        System.out.println("✅ [结构迁移] V" + migration.version + " 完成，耗时 " + elapsed + "ms");
+    }
+
+    /**
+     * 逐条执行脚本，打印增删改语句影响的行数 (清理历史数据的脚本据此留下记录)
+     */
+    private void executeScript(Connection connection, Resource resource) throws SQLException {
+        String script;
+        try {
+            script = StreamUtils.copyToString(resource.getInputStream(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new SQLException("读取脚本失败: " + resource.getFilename(), e);
+        }
+        for (String sql : splitStatements(script)) {
+            try (Statement st = connection.createStatement()) {
+                st.execute(sql);
+                int count = st.getUpdateCount();
+                if (count > 0) {
+                    String head = sql.replaceAll("\\s+", " ");
+                    System.out.println("       ↳ 影响 " + count + " 行: " + (head.length() > 80 ? head.substring(0, 80) + "..." : head));
+                }
+            }
+        }
+    }
+
+    /**
+     * 按分号拆分脚本并去掉注释 (-- 、# 与块注释)；引号内的分号和注释符号原样保留
+     */
+    static List<String> splitStatements(String script) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        int n = script.length();
+        int i = 0;
+        while (i < n) {
+            char c = script.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                // 引号内容整体拷贝 (反斜杠转义；连续两个引号相当于先结束再开始，结果一致)
+                int end = i + 1;
+                while (end < n && script.charAt(end) != c) {
+                    if (script.charAt(end) == '\\' && c != '`') end++;
+                    end++;
+                }
+                end = Math.min(end + 1, n);
+                current.append(script, i, end);
+                i = end;
+            } else if ((c == '-' && script.startsWith("--", i)) || c == '#') {
+                int end = script.indexOf('\n', i);
+                i = end < 0 ? n : end;
+            } else if (c == '/' && script.startsWith("/*", i)) {
+                int end = script.indexOf("*/", i + 2);
+                i = end < 0 ? n : end + 2;
+                current.append(' ');
+            } else if (c == ';') {
+                addStatement(statements, current);
+                i++;
+            } else {
+                current.append(c);
+                i++;
+            }
+        }
+        addStatement(statements, current);
+        return statements;
+    }
+
+    private static void addStatement(List<String> statements, StringBuilder current) {
+        String sql = current.toString().trim();
+        if (!sql.isEmpty()) statements.add(sql);
+        current.setLength(0);
+    }
+
+    private List<Migration> findMigrations() throws IOException {
+        Resource[] resources = new PathMatchingResourcePatternResolver().getResources("classpath*:db/migration/V*__*.sql");
+        List<Migration> migrations = new ArrayList<>();
+        for (Resource resource : resources) {
+            Matcher m = SCRIPT_NAME.matcher(resource.getFilename() == null ? "" : resource.getFilename());
+            if (m.matches()) {
+                migrations.add(new Migration(Integer.parseInt(m.group(1)), m.group(2).replace('_', ' '),
+                        resource.getFilename(), resource, null));
+            }
+        }
+        for (JavaMigration java : JAVA_MIGRATIONS) {
+            migrations.add(new Migration(java.version(), java.description(), java.getClass().getSimpleName(), null, java));
+        }
+        migrations.sort(Comparator.comparingInt(mig -> mig.version));
+        for (int i = 1; i < migrations.size(); i++) {
+            if (migrations.get(i).version == migrations.get(i - 1).version) {
+                throw new IllegalStateException("[结构迁移] 版本号重复: V" + migrations.get(i).version);
+            }
+        }
+        return migrations;
+    }
+
+    private void acquireLock(Connection connection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            ps.setString(1, LOCK_NAME);
+            ps.setInt(2, lockTimeoutSeconds);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) != 1) {
+                    throw new SQLException("等待迁移锁超时 (" + lockTimeoutSeconds + "s)，可能有其他节点正在迁移");
+                }
+            }
+        }
+    }
+
+    private void releaseLock(Connection connection) {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            ps.setString(1, LOCK_NAME);
+            ps.executeQuery().close();
+        } catch (SQLException e) {
+            // 连接关闭时锁也会释放
+            System.err.println("⚠️ [结构迁移] 释放迁移锁失败: " + e.getMessage());
+        }
+    }
+
+    private void ensureVersionTable(Connection connection) throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS sys_schema_version (" +
+                    "version INT NOT NULL PRIMARY KEY, " +
+                    "description VARCHAR(200) NOT NULL, " +
+                    "script VARCHAR(200) NOT NULL, " +
+                    "execution_ms BIGINT NOT NULL, " +
+                    "applied_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+        }
+    }
+
+    private Set<Integer> appliedVersions(Connection connection) throws SQLException {
+        Set<Integer> versions = new HashSet<>();
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT version FROM sys_schema_version")) {
+            while (rs.next()) versions.add(rs.getInt(1));
+        }
+        return versions;
+    }
+
+    private void recordVersion(Connection connection, Migration migration, long elapsed) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO sys_schema_version (version, description, script, execution_ms) VALUES (?, ?, ?, ?)")) {
+            ps.setInt(1, migration.version);
+            ps.setString(2, migration.description);
+            ps.setString(3, migration.script);
+            ps.setLong(4, elapsed);
+            ps.executeUpdate();
+        }
+    }
+
+    private static class Migration {
+        final int version;
+        final String description;
+        final String script;
+        final Resource resource;   // SQL 脚本
+        final JavaMigration java;  // 或 Java 迁移
+
+        Migration(int version, String description, String script, Resource resource, JavaMigration java) {
+            this.version = version;
+            this.description = description;
+            this.script = script;
+            this.resource = resource;
+            this.java = java;
+        }
+    }
+}
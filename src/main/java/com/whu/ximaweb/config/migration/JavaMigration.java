@@ -0,0 +1,19 @@
+package com.whu.ximaweb.config.migration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 用 Java 写的结构迁移
+ * 纯 SQL 脚本表达不了"先检查现有数据再决定怎么改"的版本写成这种形式，
+ * 与 db/migration 下的 SQL 脚本共用版本号序列，由 SchemaMigrationRunner 统一调度。
+ * 抛出异常即视为该版本失败 (不记录版本，启动失败)。
+ */
+public interface JavaMigration {
+
+    int version();
+
+    String description();
+
+    void migrate(Connection connection) throws SQLException;
+}
@@ -0,0 +1,164 @@
+package com.whu.ximaweb.config.migration;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * V2: 同一 OBS 路径只允许一条照片记录 (定时同步与手动同步并发时由数据库兜底去重)
+ *
+ * 1. 检查现有数据：任何路径超过 768 字符 (utf8mb4 下唯一索引上限 3072 字节) 都直接失败，交给人工处理，不截断；
+ * 2. 重复路径每个只保留最早的一条，其余行先整行备份到 project_photo_v2_duplicates 再删除，并打印数量和 ID；
+ * 3. 只有列类型放不下唯一索引 (TEXT、超过 768 的 VARCHAR 等) 时才改成 VARCHAR(768)，
+ *    原有的可空性、字符集、排序规则和注释保持不变；已经是 768 以内的 VARCHAR/CHAR 不动；
+ * 4. 建唯一索引 uk_photo_url (已存在则跳过)。
+ */
+public class V2ProjectPhotoUniqueUrl implements JavaMigration {
+
+    static final int MAX_URL_LENGTH = 768;
+    private static final String ARCHIVE_TABLE = "project_photo_v2_duplicates";
+
+    @Override
+    public int version() {
+        return 2;
+    }
+
+    @Override
+    public String description() {
+        return "project photo unique url";
+    }
+
+    @Override
+    public void migrate(Connection connection) throws SQLException {
+        Column column = readColumn(connection);
+        checkLengths(connection);
+        archiveAndDeleteDuplicates(connection);
+        if (!column.fitsUniqueIndex()) {
+            try (Statement st = connection.createStatement()) {
+                st.execute("ALTER TABLE project_photo MODIFY COLUMN photo_url " + column.varcharDefinition());
+            }
+            System.out.println("       ↳ photo_url 由 " + column.columnType + " 改为 VARCHAR(" + MAX_URL_LENGTH + ")"
+                    + (column.nullable ? "" : " NOT NULL"));
+        }
+        if (!indexExists(connection)) {
+            try (Statement st = connection.createStatement()) {
+                st.execute("CREATE UNIQUE INDEX uk_photo_url ON project_photo (photo_url)");
+            }
+        }
+    }
+
+    private static Column readColumn(Connection connection) throws SQLException {
+        String sql = "SELECT DATA_TYPE, COLUMN_TYPE, CHARACTER_MAXIMUM_LENGTH, IS_NULLABLE, COLUMN_DEFAULT, " +
+                "CHARACTER_SET_NAME, COLLATION_NAME, COLUMN_COMMENT FROM information_schema.COLUMNS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'project_photo' AND COLUMN_NAME = 'photo_url'";
+        try (Statement st = connection.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            if (!rs.next()) {
+                throw new SQLException("project_photo.photo_url 列不存在");
+            }
+            Column column = new Column();
+            column.dataType = rs.getString("DATA_TYPE").toLowerCase();
+            column.columnType = rs.getString("COLUMN_TYPE");
+            column.maxLength = rs.getLong("CHARACTER_MAXIMUM_LENGTH");
+            column.nullable = "YES".equalsIgnoreCase(rs.getString("IS_NULLABLE"));
+            column.defaultValue = rs.getString("COLUMN_DEFAULT");
+            column.charset = rs.getString("CHARACTER_SET_NAME");
+            column.collation = rs.getString("COLLATION_NAME");
+            column.comment = rs.getString("COLUMN_COMMENT");
+            return column;
+        }
+    }
+
+    private static void checkLengths(Connection connection) throws SQLException {
+        String sql = "SELECT COUNT(*), MAX(CHAR_LENGTH(photo_url)) FROM project_photo WHERE CHAR_LENGTH(photo_url) > " + MAX_URL_LENGTH;
+        try (Statement st = connection.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            rs.next();
+            long tooLong = rs.getLong(1);
+            if (tooLong > 0) {
+                throw new SQLException("project_photo 有 " + tooLong + " 条 photo_url 超过 " + MAX_URL_LENGTH
+                        + " 字符 (最长 " + rs.getLong(2) + ")，唯一索引放不下，请人工处理后再启动");
+            }
+        }
+    }
+
+    private static void archiveAndDeleteDuplicates(Connection connection) throws SQLException {
+        String duplicates = "SELECT x.id FROM project_photo x JOIN (" +
+                "SELECT photo_url, MIN(id) AS keep_id FROM project_photo WHERE photo_url IS NOT NULL " +
+                "GROUP BY photo_url HAVING COUNT(*) > 1) d ON x.photo_url = d.photo_url AND x.id <> d.keep_id";
+        List<Long> ids = new ArrayList<>();
+        try (Statement st = connection.createStatement(); ResultSet rs = st.executeQuery(duplicates)) {
+            while (rs.next()) ids.add(rs.getLong(1));
+        }
+        if (ids.isEmpty()) return;
+
+        try (Statement st = connection.createStatement()) {
+            // 结构与原表相同 (此时还没有唯一索引)；失败重跑时已备份过的行不再重复插入
+            st.execute("CREATE TABLE IF NOT EXISTS " + ARCHIVE_TABLE + " LIKE project_photo");
+            int archived = st.executeUpdate("INSERT INTO " + ARCHIVE_TABLE + " SELECT p.* FROM project_photo p " +
+                    "WHERE p.id IN (" + duplicates + ") AND p.id NOT IN (SELECT id FROM " + ARCHIVE_TABLE + ")");
+            int deleted;
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "DELETE p FROM project_photo p JOIN " + ARCHIVE_TABLE + " a ON a.id = p.id")) {
+                deleted = ps.executeUpdate();
+            }
+            System.out.println("       ↳ 重复路径的照片记录 " + ids.size() + " 条：备份 " + archived + " 条到 " + ARCHIVE_TABLE
+                    + "，删除 " + deleted + " 条，ID: " + preview(ids));
+        }
+    }
+
+    private static boolean indexExists(Connection connection) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM information_schema.STATISTICS WHERE TABLE_SCHEMA = DATABASE() " +
+                "AND TABLE_NAME = 'project_photo' AND INDEX_NAME = 'uk_photo_url'";
+        try (Statement st = connection.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            return rs.next() && rs.getLong(1) > 0;
+        }
+    }
+
+    private static String preview(List<Long> ids) {
+        return ids.size() <= 50 ? ids.toString() : ids.subList(0, 50) + " 等";
+    }
+
+    /**
+     * photo_url 现有的列定义
+     */
+    private static class Column {
+        String dataType;
+        String columnType;
+        long maxLength;
+        boolean nullable;
+        String defaultValue;
+        String charset;
+        String collation;
+        String comment;
+
+        boolean fitsUniqueIndex() {
+            return ("varchar".equals(dataType) || "char".equals(dataType)) && maxLength <= MAX_URL_LENGTH;
+        }
+
+        /**
+         * VARCHAR(768) + 原有的字符集、排序规则、可空性、默认值和注释
+         */
+        String varcharDefinition() {
+            StringBuilder sb = new StringBuilder("VARCHAR(").append(MAX_URL_LENGTH).append(')');
+            if (charset != null) sb.append(" CHARACTER SET ").append(charset);
+            if (collation != null) sb.append(" COLLATE ").append(collation);
+            sb.append(nullable ? " NULL" : " NOT NULL");
+            // MySQL 对无默认值返回 NULL，MariaDB 返回字符串 NULL，字符串默认值带引号
+            if (defaultValue != null && !"NULL".equalsIgnoreCase(defaultValue)) {
+                String raw = defaultValue.length() >= 2 && defaultValue.startsWith("'") && defaultValue.endsWith("'")
+                        ? defaultValue.substring(1, defaultValue.length() - 1).replace("''", "'")
+                        : defaultValue;
+                sb.append(" DEFAULT ").append(quote(raw));
+            }
+            if (comment != null && !comment.isEmpty()) sb.append(" COMMENT ").append(quote(comment));
+            return sb.toString();
+        }
+
+        private static String quote(String value) {
+            return "'" + value.replace("\\", "\\\\").replace("'", "''") + "'";
+        }
+    }
+}
@@ -10,6 +10,7 @@ import com.whu.ximaweb.mapper.PlanProgressMapper;
 import com.whu.ximaweb.mapper.SysUserMapper;
 import com.whu.ximaweb.model.PlanProgress;
 import com.whu.ximaweb.model.SysUser;
+import com.whu.ximaweb.service.DashboardService;
 import com.whu.ximaweb.service.EmailService;
 import com.whu.ximaweb.service.KimiAiService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -28,7 +29,7 @@ import java.util.Map;
 public class AiController {
 
     @Autowired
-    private ProgressController progressController;
+    private DashboardService dashboardService; // 直接读看板快照，不再绕道 Controller
 
     @Autowired
     private KimiAiService kimiAiService;
@@ -56,11 +57,11 @@ public class AiController {
         Integer projectId = body.get("projectId");
         if (projectId == null) return ApiResponse.error("缺少 projectId");
 
-        ApiResponse<DashboardVo> dashboardData = progressController.getDashboardData(projectId);
-        if (dashboardData.getStatus() != 200) {
+        DashboardService.DashboardSnapshot snapshot = dashboardService.getSnapshot(projectId);
+        if (snapshot == null) {
             return ApiResponse.error("无法获取项目数据");
         }
-        DashboardVo vo = dashboardData.getData();
+        DashboardVo vo = snapshot.data();
 
         try {
             String context = simplifyDataForAi(vo);
@@ -12,9 +12,12 @@ import com.whu.ximaweb.mapper.SysBuildingMapper;
 import com.whu.ximaweb.model.ActualProgress;
 import com.whu.ximaweb.model.ProjectPhoto;
 import com.whu.ximaweb.model.SysBuilding;
+import com.whu.ximaweb.service.DashboardService;
+import com.whu.ximaweb.service.GeofenceService;
 import com.whu.ximaweb.service.ProgressService;
 import lombok.Data;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
@@ -50,6 +53,12 @@ public class BuildingController {
     @Autowired
     private ProgressService progressService;
 
+    @Autowired
+    private GeofenceService geofenceService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher; // 楼栋变更后通知看板失效
+
     /**
      * 1. 获取已保存的楼栋围栏列表
      */
@@ -137,6 +146,8 @@ public class BuildingController {
                 building.setMarkerPhotoIds(photoIdsStr); // ✅ 更新关联ID
                 sysBuildingMapper.updateById(building);
             }
+            // 围栏已变，丢弃旧的编译结果
+            geofenceService.evict(building.getId());
 
             // 标记新选中的照片为"拐点" (is_marker=1)
             if (request.getPhotoIds() != null && !request.getPhotoIds().isEmpty()) {
@@ -147,7 +158,7 @@ public class BuildingController {
                 projectPhotoMapper.update(updatePhoto, photoQuery);
             }
 
-            // 触发计算
+            // 触发计算 (本方法带事务，计算会推迟到事务提交之后)
             try {
                 System.out.println(">>> 围栏更新成功，触发项目 [" + request.getProjectId() + "] 进度重算...");
                 progressService.calculateProjectProgress(request.getProjectId());
@@ -200,6 +211,7 @@ public class BuildingController {
         if (displayName != null && !displayName.isEmpty()) building.setName(displayName);
         building.setPlanBuildingName(planName);
         sysBuildingMapper.updateById(building);
+        eventPublisher.publishEvent(new DashboardService.ProjectDataChangedEvent(building.getProjectId(), "绑定计划"));
 
         return ApiResponse.success("绑定成功");
     }
@@ -225,6 +237,8 @@ public class BuildingController {
 
         // 删除楼栋
         sysBuildingMapper.deleteById(id);
+        geofenceService.evict(id);
+        eventPublisher.publishEvent(new DashboardService.ProjectDataChangedEvent(building.getProjectId(), "删除楼栋"));
 
         return ApiResponse.success("删除成功");
     }
@@ -6,7 +6,9 @@ import com.whu.ximaweb.mapper.BuildingFloorInfoMapper;
 import com.whu.ximaweb.mapper.SysProjectMapper;
 import com.whu.ximaweb.model.BuildingFloorInfo;
 import com.whu.ximaweb.model.SysProject;
+import com.whu.ximaweb.service.DashboardService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
@@ -22,6 +24,9 @@ public class BuildingFloorController {
     @Autowired
     private SysProjectMapper sysProjectMapper;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher; // 楼层配置变更后通知看板失效
+
     /**
      * 获取指定楼栋的楼层配置列表
      */
@@ -65,6 +70,7 @@ public class BuildingFloorController {
             info.setProjectName(projectName);
             floorMapper.insert(info);
         }
+        eventPublisher.publishEvent(new DashboardService.ProjectDataChangedEvent(projectId, "楼层配置保存"));
 
         return ApiResponse.success("楼层配置保存成功，共保存 " + floorList.size() + " 层");
     }
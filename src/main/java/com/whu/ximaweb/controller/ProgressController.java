@@ -1,36 +1,33 @@
 package com.whu.ximaweb.controller;
 
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
-import com.obs.services.ObsClient;
-import com.obs.services.model.HttpMethodEnum;
-import com.obs.services.model.TemporarySignatureRequest;
-import com.obs.services.model.TemporarySignatureResponse;
 import com.whu.ximaweb.dto.ApiResponse;
 import com.whu.ximaweb.dto.DashboardVo;
 import com.whu.ximaweb.mapper.*;
 import com.whu.ximaweb.model.*;
+import com.whu.ximaweb.service.DashboardService;
 import com.whu.ximaweb.service.ProgressService;
-import com.whu.ximaweb.service.impl.ProgressServiceImpl;
+import com.whu.ximaweb.service.SignedUrlCache;
 import lombok.Data;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
-import com.fasterxml.jackson.databind.ObjectMapper; // 👈 选这个！不要选 shade 开头的
-import com.fasterxml.jackson.core.type.TypeReference; // 👈 这个也不能少
-import com.whu.ximaweb.dto.Coordinate; // 确保这个也在
+import org.springframework.web.context.request.WebRequest;
+import com.whu.ximaweb.service.GeofenceService;
+import com.whu.ximaweb.service.GeofenceService.CompiledFence;
 
-import java.io.IOException;
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import com.whu.ximaweb.dto.BuildingHistoryVo;
 import com.whu.ximaweb.mapper.ProjectPhotoMapper;
 import com.whu.ximaweb.model.ProjectPhoto;
 import java.time.format.DateTimeFormatter;
-import javax.annotation.PostConstruct; // 用于初始化
-import javax.annotation.PreDestroy;    // 用于销毁
+import java.time.format.DateTimeParseException;
 
 
 /**
@@ -49,60 +46,24 @@ public class ProgressController {
 
     // --- 新增依赖 (用于 Dashboard) ---
     @Autowired
-    private ProgressServiceImpl progressServiceImpl; // 用于调用 analyzeStatus
-    @Autowired
     private SysProjectMapper sysProjectMapper;
     @Autowired
     private SysBuildingMapper sysBuildingMapper;
     @Autowired
+    private GeofenceService geofenceService;
+    @Autowired
     private PlanProgressMapper planProgressMapper;
     @Autowired
     private ProjectPhotoMapper projectPhotoMapper; // 👈 必须注入它，否则无法查照片
+    @Autowired
+    private DashboardService dashboardService; // 看板快照
+    @Autowired
+    private ApplicationEventPublisher eventPublisher; // 计划变更后通知看板失效
 
 
-    // --- OBS 配置注入 ---
-    @Value("${xima.obs.default-endpoint}")
-    private String obsEndpoint;
-
-    @Value("${xima.obs.default-bucket}")
-    private String obsBucket;
-
-    // 使用配置文件里已有的 default-ak
-    @Value("${xima.obs.default-ak}")
-    private String obsAccessKey;
-
-    // 🔥使用配置文件里已有的 default-sk
-    @Value("${xima.obs.default-sk}")
-    private String obsSecretKey;
-
-    // OBS 客户端实例
-    private ObsClient obsClient;
-
-
-    /**
-     * 初始化 ObsClient (在服务启动时执行一次)
-     */
-    @PostConstruct
-    public void initObsClient() {
-        this.obsClient = new ObsClient(obsAccessKey, obsSecretKey, obsEndpoint);
-    }
-
-    /**
-     * 销毁 ObsClient (在服务关闭时执行)
-     */
-    @PreDestroy
-    public void closeObsClient() {
-        if (this.obsClient != null) {
-            try {
-                this.obsClient.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-    }
-
-
-
+    // 照片签名 URL 缓存 (替代每次请求逐张签名)
+    @Autowired
+    private SignedUrlCache signedUrlCache;
 
 
     /**
@@ -151,146 +112,20 @@ public class ProgressController {
 
     /**
      * 👉 3. [已修改] 获取项目看板详情数据
-     * 逻辑变更：无论数据是否过期，都计算滞后/超前状态并统计。过期仅作为标记。
+     * 直接返回预先算好的快照；带 ETag，浏览器轮询时数据没变就回 304
      */
     @GetMapping("/dashboard/{projectId}")
-    public ApiResponse<DashboardVo> getDashboardData(@PathVariable Integer projectId) {
-        DashboardVo vo = new DashboardVo();
+    public ResponseEntity<ApiResponse<DashboardVo>> getDashboardData(@PathVariable Integer projectId, WebRequest webRequest) {
+        DashboardService.DashboardSnapshot snapshot = dashboardService.getSnapshot(projectId);
+        if (snapshot == null) return ResponseEntity.ok(ApiResponse.error("项目不存在"));
 
-        SysProject project = sysProjectMapper.selectById(projectId);
-        if (project == null) return ApiResponse.error("项目不存在");
-
-        vo.setProjectId(project.getId()); // 确保传回ID
-        vo.setProjectName(project.getProjectName());
-        long days = ChronoUnit.DAYS.between(project.getCreatedAt().toLocalDate(), LocalDate.now());
-        vo.setSafeRunDays(days);
-
-        List<SysBuilding> buildings = sysBuildingMapper.selectList(
-            new QueryWrapper<SysBuilding>().eq("project_id", projectId)
-        );
-        vo.setTotalBuildings(buildings.size());
-
-        List<DashboardVo.BuildingProgressVo> buildingVos = new ArrayList<>();
-        int delayed = 0, normal = 0, ahead = 0;
-        // 注意：waiting 不再用于表示“过期”，只表示“从未测过”
-        int waiting = 0;
-        LocalDate maxDate = LocalDate.MIN;
-
-        for (SysBuilding b : buildings) {
-            DashboardVo.BuildingProgressVo bVo = new DashboardVo.BuildingProgressVo();
-            bVo.setBuildingId(b.getId());
-            bVo.setBuildingName(b.getName());
-            bVo.setPlanName(b.getPlanBuildingName());
-
-            List<ActualProgress> history = actualProgressMapper.selectList(
-                new QueryWrapper<ActualProgress>()
-                    .eq("building_id", b.getId())
-                    .orderByAsc("measurement_date")
-            );
-
-            // 初始化图表数据容器
-            List<String> dates = new ArrayList<>();
-            List<Integer> actualFloors = new ArrayList<>();
-            List<Integer> planFloors = new ArrayList<>();
-            List<Double> actualHeights = new ArrayList<>();
-            List<Integer> deviations = new ArrayList<>();
-            List<Integer> photoCounts = new ArrayList<>(); // 支持 Dashboard 照片数预警
-
-            if (!history.isEmpty()) {
-                ActualProgress latest = history.get(history.size() - 1);
-                bVo.setCurrentFloor(latest.getFloorLevel());
-                bVo.setCurrentHeight(latest.getActualHeight().doubleValue());
-                bVo.setLastMeasureDate(latest.getMeasurementDate().toString());
-
-                if (latest.getMeasurementDate().isAfter(maxDate)) maxDate = latest.getMeasurementDate();
-
-                // 1. 判定过时 (逻辑：超过7天) - 仅作为 UI 标记
-                long gap = ChronoUnit.DAYS.between(latest.getMeasurementDate(), LocalDate.now());
-                boolean isOutdated = gap > 7;
-                bVo.setOutdated(isOutdated);
-
-                // 2. 计算状态 (无论是否过时，都算)
-                String status = "暂无计划";
-                String color = "info";
-
-                if (b.getPlanBuildingName() != null) {
-                    status = progressServiceImpl.analyzeStatus(b.getPlanBuildingName(), latest.getFloorLevel(), latest.getMeasurementDate());
-                }
-
-                // 3. 统计归类
-                if (status.contains("滞后")) {
-                    color = "danger";
-                    delayed++;
-                } else if (status.contains("超前")) {
-                    color = "success";
-                    ahead++;
-                } else if (status.contains("正常")) {
-                    color = "primary";
-                    normal++;
-                } else {
-                    waiting++; // 有数据但无计划
-                }
-
-                bVo.setStatusTag(status);
-                bVo.setStatusColor(color);
-
-                // 填充历史数据
-                for (ActualProgress ap : history) {
-                    dates.add(ap.getMeasurementDate().toString());
-                    actualFloors.add(ap.getFloorLevel());
-                    actualHeights.add(ap.getActualHeight().doubleValue());
-                    // 假设 ActualProgress 有 photoCount 字段，若没有需处理 null
-                    photoCounts.add(ap.getPhotoCount() == null ? 0 : ap.getPhotoCount());
-
-                    int planFloor = getPlanFloorAtDate(b.getPlanBuildingName(), ap.getMeasurementDate());
-                    planFloors.add(planFloor);
-                    deviations.add(ap.getFloorLevel() - planFloor);
-                }
-            } else {
-                // 真·暂无数据
-                bVo.setCurrentFloor(0);
-                bVo.setCurrentHeight(0.0);
-                bVo.setStatusTag("等待首次测量");
-                bVo.setStatusColor("info");
-                bVo.setLastMeasureDate("-");
-                bVo.setOutdated(false);
-                waiting++; // 真正的等待中
-            }
-
-            bVo.setDates(dates);
-            bVo.setActualFloors(actualFloors);
-            bVo.setPlanFloors(planFloors);
-            bVo.setActualHeights(actualHeights);
-            bVo.setDeviations(deviations);
-            bVo.setPhotoCounts(photoCounts);
-
-            buildingVos.add(bVo);
+        if (webRequest.checkNotModified(snapshot.etag())) {
+            return null; // Spring 已写好 304 响应
         }
-
-        vo.setBuildings(buildingVos);
-        vo.setDelayedCount(delayed);
-        vo.setNormalCount(normal);
-        vo.setAheadCount(ahead);
-        vo.setWaitingCount(waiting); // 这里现在仅代表“无数据或无计划”的楼栋
-        vo.setLastUpdateDate(maxDate == LocalDate.MIN ? "暂无" : maxDate.toString());
-
-        return ApiResponse.success("获取成功", vo);
-    }
-
-    // 辅助：查某天计划楼层 (简化版，仅用于图表连线)
-    private int getPlanFloorAtDate(String planName, LocalDate date) {
-        if (planName == null) return 0;
-        List<PlanProgress> plans = planProgressMapper.selectList(new QueryWrapper<PlanProgress>()
-                .eq("Building", planName)
-                .le("PlannedEnd", date.atTime(23, 59, 59)));
-        int max = 0;
-        for (PlanProgress p : plans) {
-            try {
-                String fStr = p.getFloor().replaceAll("[^0-9]", "");
-                if (!fStr.isEmpty()) max = Math.max(max, Integer.parseInt(fStr));
-            } catch (Exception e) {}
-        }
-        return max;
+        return ResponseEntity.ok()
+                .eTag(snapshot.etag())
+                .cacheControl(CacheControl.noCache())
+                .body(ApiResponse.success("获取成功", snapshot.data()));
     }
 
     /**
@@ -339,6 +174,7 @@ public class ProgressController {
 
             planProgressMapper.insert(p);
         }
+        eventPublisher.publishEvent(new DashboardService.ProjectDataChangedEvent(building.getProjectId(), "计划保存"));
 
         return ApiResponse.success("计划保存成功！已更新 " + dto.getItems().size() + " 层数据");
     }
@@ -398,17 +234,8 @@ public class ProgressController {
         SysBuilding building = sysBuildingMapper.selectById(buildingId);
         if (building == null) return ApiResponse.error("楼栋不存在");
 
-        List<Coordinate> fence = null;
-        try {
-            // 解析围栏 JSON
-            ObjectMapper mapper = new ObjectMapper();
-            String boundaryJson = building.getBoundaryCoords();
-            if (boundaryJson != null && !boundaryJson.isEmpty()) {
-                fence = mapper.readValue(boundaryJson, new TypeReference<List<Coordinate>>() {});
-            }
-        } catch (Exception e) {
-            e.printStackTrace(); // 围栏解析失败，但这不影响查数据，只是没法配照片
-        }
+        // 已编译围栏 (缓存)；解析失败时为 null，不影响查数据，只是没法配照片
+        CompiledFence fence = geofenceService.getFence(building);
 
         // 2. 查询该楼栋的实测进度记录 (作为时间轴)
         QueryWrapper<ActualProgress> progressQuery = new QueryWrapper<>();
@@ -422,6 +249,7 @@ public class ProgressController {
 
         DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd");
         List<BuildingHistoryVo> historyList = new ArrayList<>();
+        List<String> matchedKeys = new ArrayList<>(); // 与 historyList 一一对应，最后统一签名
 
         // 3. 遍历每一天的进度，去匹配当天的照片
         for (ActualProgress progress : progressList) {
@@ -440,14 +268,15 @@ public class ProgressController {
             String matchedUrl = "";
 
             // 如果有围栏数据，且日期有效，就开始找照片
-            if (fence != null && fence.size() >= 3 && !dateStr.isEmpty()) {
+            if (fence != null && !dateStr.isEmpty()) {
 
                 // A. 查出【整个项目】在【这一天】的所有照片
                 QueryWrapper<ProjectPhoto> photoQuery = new QueryWrapper<>();
                 photoQuery.select("photo_url", "gps_lat", "gps_lng", "lrf_target_lat", "lrf_target_lng");
                 photoQuery.eq("project_id", progress.getProjectId());
-                // 精确匹配日期
-                photoQuery.apply("DATE_FORMAT(shoot_time, '%Y-%m-%d') = {0}", dateStr);
+                // 精确匹配日期：半开区间 [当天 0 点, 次日 0 点)，可走 (project_id, shoot_time) 索引
+                LocalDate day = progress.getMeasurementDate();
+                photoQuery.ge("shoot_time", day.atStartOfDay()).lt("shoot_time", day.plusDays(1).atStartOfDay());
                 // 限制条数，防止单日照片过多炸内存 (取前100张匹配即可)
                 photoQuery.last("LIMIT 100");
 
@@ -462,42 +291,25 @@ public class ProgressController {
                     // 坐标无效跳过
                     if (lat == 0.0 || lng == 0.0) continue;
 
-                    // 🔥 [核心调用] 使用你刚才复制进去的几何算法！
-                    // 缓冲区设为 20.0 米 (和 ProgressServiceImpl 保持一致)
-                    if (isInsideOrBuffered(lat, lng, fence, 20.0)) {
+                    // 🔥 [核心调用] 与 ProgressServiceImpl 共用同一个已编译围栏 (含 20 米缓冲区)
+                    if (fence.isInsideOrBuffered(lat, lng)) {
                         matchedUrl = p.getPhotoUrl(); // 找到了！
                         break; // 只要一张作为封面即可，跳出循环
                     }
                 }
             }
 
-            // 3.3 处理 OBS 签名 (私有桶访问权限)
-            if (matchedUrl != null && !matchedUrl.isEmpty()) {
-                String objectKey = matchedUrl;
-                // 去掉开头的 "/" (如果有)
-                if (objectKey.startsWith("/")) {
-                    objectKey = objectKey.substring(1);
-                }
-
-                try {
-                    // 生成临时签名 URL (有效期 1 小时)
-                    TemporarySignatureRequest request = new TemporarySignatureRequest(HttpMethodEnum.GET, 3600L);
-                    request.setBucketName(obsBucket); // 确保使用了配置里的桶名
-                    request.setObjectKey(objectKey);
-
-                    TemporarySignatureResponse response = obsClient.createTemporarySignature(request);
-                    vo.setPhotoUrl(response.getSignedUrl());
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    vo.setPhotoUrl(""); // 签名失败降级为空
-                }
-            } else {
-                vo.setPhotoUrl(""); // 没匹配到照片
-            }
-
+            matchedKeys.add(matchedUrl);
             historyList.add(vo);
         }
 
+        // 3.3 处理 OBS 签名 (私有桶访问权限)：走签名缓存，未命中的一次批量签名
+        Map<String, String> signedUrls = signedUrlCache.signAll(matchedKeys);
+        for (int i = 0; i < historyList.size(); i++) {
+            // 没匹配到照片或签名失败降级为空
+            historyList.get(i).setPhotoUrl(signedUrls.getOrDefault(matchedKeys.get(i), ""));
+        }
+
         return ApiResponse.success("获取生长历史成功", historyList);
     }
 
@@ -512,30 +324,27 @@ public class ProgressController {
         SysBuilding building = sysBuildingMapper.selectById(buildingId);
         if (building == null) return ApiResponse.error("楼栋不存在");
 
-        List<Coordinate> fence = null;
-        try {
-            ObjectMapper mapper = new ObjectMapper();
-            String boundaryJson = building.getBoundaryCoords();
-            if (boundaryJson != null && !boundaryJson.isEmpty()) {
-                fence = mapper.readValue(boundaryJson, new TypeReference<List<Coordinate>>() {});
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+        CompiledFence fence = geofenceService.getFence(building);
+        if (fence == null) {
+            return ApiResponse.error("该楼栋未设置电子围栏，无法筛选照片");
         }
 
-        if (fence == null || fence.size() < 3) {
-            return ApiResponse.error("该楼栋未设置电子围栏，无法筛选照片");
+        LocalDate day;
+        try {
+            day = LocalDate.parse(dateStr);
+        } catch (DateTimeParseException e) {
+            return ApiResponse.error("日期格式错误，应为 yyyy-MM-dd");
         }
 
-        // 2. 查出当天的所有照片
+        // 2. 查出当天的所有照片 (半开区间范围查询，可走索引)
         QueryWrapper<ProjectPhoto> photoQuery = new QueryWrapper<>();
         photoQuery.select("photo_url", "gps_lat", "gps_lng", "lrf_target_lat", "lrf_target_lng");
         photoQuery.eq("project_id", building.getProjectId());
-        photoQuery.apply("DATE_FORMAT(shoot_time, '%Y-%m-%d') = {0}", dateStr);
+        photoQuery.ge("shoot_time", day.atStartOfDay()).lt("shoot_time", day.plusDays(1).atStartOfDay());
         photoQuery.orderByAsc("shoot_time"); // 按拍摄时间排序
 
         List<ProjectPhoto> dailyPhotos = projectPhotoMapper.selectList(photoQuery);
-        List<String> validUrls = new ArrayList<>();
+        List<String> matchedKeys = new ArrayList<>();
 
         // 3. 空间筛选 (保留围栏内的)
         for (ProjectPhoto p : dailyPhotos) {
@@ -544,119 +353,24 @@ public class ProgressController {
 
             if (lat == 0 || lng == 0) continue;
 
-            // 复用之前的几何算法
-            if (isInsideOrBuffered(lat, lng, fence, 20.0)) {
-                // 4. 签名 URL
-                String signedUrl = "";
-                try {
-                    String objectKey = p.getPhotoUrl();
-                    if (objectKey.startsWith("/")) objectKey = objectKey.substring(1);
-                    TemporarySignatureRequest request = new TemporarySignatureRequest(HttpMethodEnum.GET, 3600L);
-                    request.setBucketName(obsBucket);
-                    request.setObjectKey(objectKey);
-                    TemporarySignatureResponse response = obsClient.createTemporarySignature(request);
-                    signedUrl = response.getSignedUrl();
-                } catch (Exception e) {
-                    signedUrl = p.getPhotoUrl(); // 降级
-                }
-                validUrls.add(signedUrl);
+            // 复用已编译围栏
+            if (fence.isInsideOrBuffered(lat, lng)) {
+                matchedKeys.add(p.getPhotoUrl());
             }
         }
 
-        return ApiResponse.success("获取当日照片成功", validUrls);
-    }
-
-
-
-    // =========================================================================
-    // 🔥 [核心算法区] 电子围栏判定 (包含缓冲区逻辑，解决高层投影偏差)
-    // =========================================================================
-
-    /**
-     * 判断点是否在多边形内或缓冲区内 (核心入口)
-     * @param lat 纬度
-     * @param lng 经度
-     * @param polygon 围栏坐标点集合
-     * @param bufferMeters 缓冲区距离 (例如 20.0米)
-     */
-    private boolean isInsideOrBuffered(double lat, double lng, List<Coordinate> polygon, double bufferMeters) {
-        if (polygon == null || polygon.size() < 3) return false;
-
-        // 1. 先判断是否精准在围栏内部 (射线法)
-        if (isPointInPolygon(lat, lng, polygon)) return true;
-
-        // 2. 如果不在内部，判断是否在边缘缓冲区内 (解决高楼投影偏差)
-        return getMinDistanceToBoundary(lat, lng, polygon) <= bufferMeters;
-    }
-
-    /**
-     * 射线法判断点是否在多边形内部
-     */
-    private boolean isPointInPolygon(double lat, double lng, List<Coordinate> polygon) {
-        boolean result = false;
-        for (int i = 0, j = polygon.size() - 1; i < polygon.size(); j = i++) {
-            if ((polygon.get(i).getLat() > lat) != (polygon.get(j).getLat() > lat) &&
-                (lng < (polygon.get(j).getLng() - polygon.get(i).getLng()) * (lat - polygon.get(i).getLat()) / (polygon.get(j).getLat() - polygon.get(i).getLat()) + polygon.get(i).getLng())) {
-                result = !result;
-            }
-        }
-        return result;
-    }
-
-    /**
-     * 计算点到多边形边界的最小距离 (米)
-     */
-    private double getMinDistanceToBoundary(double lat, double lng, List<Coordinate> polygon) {
-        double minDistance = Double.MAX_VALUE;
-        // 简易墨卡托投影系数 (适用于小范围计算)
-        double mPerLat = 111132.92;
-        double mPerLng = 111412.84 * Math.cos(Math.toRadians(lat));
-
-        for (int i = 0; i < polygon.size(); i++) {
-            Coordinate p1 = polygon.get(i);
-            Coordinate p2 = polygon.get((i + 1) % polygon.size());
-
-            // 将经纬度差转换为米
-            double x1 = (p1.getLng() - lng) * mPerLng;
-            double y1 = (p1.getLat() - lat) * mPerLat;
-            double x2 = (p2.getLng() - lng) * mPerLng;
-            double y2 = (p2.getLat() - lat) * mPerLat;
-
-            // 计算点到线段的距离
-            double dist = pointToSegmentDistance(0, 0, x1, y1, x2, y2);
-            if (dist < minDistance) minDistance = dist;
+        // 4. 签名 URL (缓存 + 批量)，签名失败降级为原始路径
+        Map<String, String> signedUrls = signedUrlCache.signAll(matchedKeys);
+        List<String> validUrls = new ArrayList<>(matchedKeys.size());
+        for (String key : matchedKeys) {
+            validUrls.add(signedUrls.getOrDefault(key, key));
         }
-        return minDistance;
-    }
-
-    /**
-     * 计算点 (px,py) 到线段 (x1,y1)-(x2,y2) 的最短距离
-     */
-    private double pointToSegmentDistance(double px, double py, double x1, double y1, double x2, double y2) {
-        double dx = x2 - x1;
-        double dy = y2 - y1;
-
-        // 如果线段是一个点
-        if (dx == 0 && dy == 0) return Math.hypot(px - x1, py - y1);
 
-        // 计算投影比例 t
-        double t = ((px - x1) * dx + (py - y1) * dy) / (dx * dx + dy * dy);
-
-        // 限制 t 在线段范围内 [0, 1]
-        if (t < 0) t = 0;
-        if (t > 1) t = 1;
-
-        // 计算最近点坐标
-        double nearestX = x1 + t * dx;
-        double nearestY = y1 + t * dy;
-
-        // 返回距离
-        return Math.hypot(px - nearestX, py - nearestY);
+        return ApiResponse.success("获取当日照片成功", validUrls);
     }
 
 
 
-
     // --- DTO 内部类 ---
     @Data
     public static class PlanConfigDto {
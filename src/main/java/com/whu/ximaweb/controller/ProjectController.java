@@ -5,7 +5,6 @@ import com.whu.ximaweb.dto.ApiResponse;
 import com.whu.ximaweb.dto.Coordinate;
 import com.whu.ximaweb.dto.MonitorVo; // ✅ 新增
 import com.whu.ximaweb.dto.ProjectImportRequest;
-import com.whu.ximaweb.dto.dji.DjiMediaFileDto;
 import com.whu.ximaweb.dto.dji.DjiProjectDto;
 import com.whu.ximaweb.mapper.ProjectPhotoMapper;
 import com.whu.ximaweb.mapper.SysProjectMapper;
@@ -13,24 +12,21 @@ import com.whu.ximaweb.mapper.SysTaskLogMapper; // ✅ 新增
 import com.whu.ximaweb.mapper.SysUserMapper;    // ✅ 新增
 import com.whu.ximaweb.model.*;
 import com.whu.ximaweb.service.DjiService;
-import com.whu.ximaweb.service.ObsService;
-import com.whu.ximaweb.service.PhotoProcessor;
 import com.whu.ximaweb.service.ProgressService;
 import com.whu.ximaweb.service.ProjectService;
+import com.whu.ximaweb.service.SyncScheduler;
 import com.whu.ximaweb.service.impl.ProjectServiceImpl;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
 
 import javax.servlet.http.HttpServletRequest;
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
-import java.math.BigDecimal;
 import java.text.SimpleDateFormat;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import com.whu.ximaweb.model.SysTaskLog;
 
 @RestController
@@ -59,13 +55,10 @@ public class ProjectController {
     private SysUserMapper sysUserMapper; // ✅ 注入用户操作(用于获取日报时间)
 
     @Autowired
-    private OkHttpClient okHttpClient;
+    private SyncScheduler syncScheduler; // 照片同步调度 (与定时任务共用队列)
 
-    @Autowired
-    private ObsService obsService;
-
-    @Autowired
-    private PhotoProcessor photoProcessor;
+    @Value("${xima.sync.manual-wait-seconds:60}")
+    private long manualSyncWaitSeconds; // 手动同步接口最长等待时间，超时返回"排队/执行中"
 
     @Autowired
     private com.whu.ximaweb.service.EzvizService ezvizService; // 🔥 [新增]
@@ -123,7 +116,7 @@ public class ProjectController {
 
             Calendar cal = Calendar.getInstance();
             cal.setTime(lastSync);
-            cal.add(Calendar.HOUR_OF_DAY, 1);
+            cal.add(Calendar.MINUTE, syncScheduler.intervalMinutes(project));
 
             if (cal.getTime().before(new Date())) {
                 vo.setNextSyncTime("任务执行中...");
@@ -335,6 +328,8 @@ public class ProjectController {
 
     /**
      * 手动触发同步接口 (已修复日志记录功能)
+     * 进入与定时同步相同的调度队列：同一项目不会与定时同步并发执行，排队中的同类请求会合并
+     * body.deepRescan=true 时忽略同步水位，重新检查最近 90 天的任务 (补漏用)
      */
     @PostMapping("/{projectId}/sync")
     public ApiResponse<String> manualSyncPhotos(@PathVariable Integer projectId, @RequestBody Map<String, String> body) {
@@ -345,114 +340,31 @@ public class ProjectController {
         String targetKeyword = (tempKeyword != null && !tempKeyword.trim().isEmpty())
                                 ? tempKeyword.trim()
                                 : project.getPhotoFolderKeyword();
-
-        // 1. [新增] 准备日志对象
-        SysTaskLog log = new SysTaskLog();
-        log.setProjectId(projectId);
-        log.setTaskType(SysTaskLog.TYPE_PHOTO_SYNC);
+        // 深度重扫：忽略同步水位，重新检查最近 90 天的全部任务
+        boolean deepRescan = Boolean.parseBoolean(body.get("deepRescan"));
 
         try {
-            List<DjiMediaFileDto> djiFiles = djiService.getPhotosFromFolder(
-                project.getDjiProjectUuid(),
-                project.getDjiOrgKey(),
-                targetKeyword
-            );
-
-            if (djiFiles.isEmpty()) {
-                // 2. [新增] 即使没找到文件，也记录一条"成功"日志，证明系统检查过了
-                log.setStatus(1);
-                log.setMessage("手动检查完毕，司空平台无新文件");
-                sysTaskLogMapper.insert(log);
+            // 日志记录、进度计算都在调度器内完成
+            // 最多等待 manual-wait-seconds：排在其他项目后面或同步耗时较长时先返回，任务继续在后台执行
+            SyncScheduler.SyncOutcome outcome = syncScheduler.submitManual(project, targetKeyword, deepRescan)
+                    .get(manualSyncWaitSeconds, TimeUnit.SECONDS);
 
+            if (outcome.listedCount() == 0) {
                 return ApiResponse.success("同步完成，未找到包含关键词 [" + targetKeyword + "] 的新照片。");
             }
-
-            int successCount = 0;
-            for (DjiMediaFileDto djiFile : djiFiles) {
-                // --- 原有的过滤逻辑 (保持不变) ---
-                String fileName = djiFile.getFileName();
-                if ("Remote-Control".equals(fileName) || fileName.endsWith(".MRK") || fileName.endsWith(".NAV")
-                        || fileName.endsWith(".OBS") || fileName.endsWith(".RTK") || fileName.endsWith("_D")) {
-                    continue;
-                }
-                if (!fileName.toLowerCase().endsWith(".jpg") && !fileName.toLowerCase().endsWith(".jpeg")) {
-                    fileName = fileName + ".jpeg";
-                }
-
-                String relativePath = djiFile.getFilePath();
-                if (relativePath.startsWith("/")) relativePath = relativePath.substring(1);
-                String objectKey = "projects/" + project.getId() + "/" + relativePath + "/" + fileName;
-
-                if (projectPhotoMapper.selectCount(new QueryWrapper<ProjectPhoto>().eq("photo_url", objectKey)) > 0) continue;
-
-                // --- 原有的下载与解析逻辑 (保持不变) ---
-                try {
-                    Request request = new Request.Builder().url(djiFile.getDownloadUrl()).get().build();
-                    try (Response response = okHttpClient.newCall(request).execute()) {
-                        if (response.isSuccessful() && response.body() != null) {
-                            byte[] fileBytes = response.body().bytes();
-
-                            if (!obsService.doesObjectExist(project.getObsAk(), project.getObsSk(), project.getObsEndpoint(), project.getObsBucketName(), objectKey)) {
-                                obsService.uploadStream(project.getObsAk(), project.getObsSk(), project.getObsEndpoint(), project.getObsBucketName(), objectKey, new ByteArrayInputStream(fileBytes));
-                            }
-
-                            try (InputStream xmpStream = new ByteArrayInputStream(fileBytes)) {
-                                Optional<PhotoData> photoDataOpt = photoProcessor.process(xmpStream, fileName);
-                                if (photoDataOpt.isPresent()) {
-                                    PhotoData data = photoDataOpt.get();
-                                    ProjectPhoto photo = new ProjectPhoto();
-                                    photo.setProjectId(project.getId());
-                                    photo.setPhotoUrl(objectKey);
-                                    photo.setShootTime(data.getCaptureTime());
-
-                                    // 存飞机坐标
-                                    photo.setGpsLat(BigDecimal.valueOf(data.getLatitude()));
-                                    photo.setGpsLng(BigDecimal.valueOf(data.getLongitude()));
-
-                                    // 存目标点坐标
-                                    if (data.getLrfTargetLat() != -1 && data.getLrfTargetLng() != -1) {
-                                        photo.setLrfTargetLat(BigDecimal.valueOf(data.getLrfTargetLat()));
-                                        photo.setLrfTargetLng(BigDecimal.valueOf(data.getLrfTargetLng()));
-                                    }
-
-                                    photo.setLaserDistance(BigDecimal.valueOf(data.getDistance()));
-                                    photo.setAbsoluteAltitude(BigDecimal.valueOf(data.getDroneAbsoluteAltitude()));
-                                    photo.setIsMarker(false);
-
-                                    projectPhotoMapper.insert(photo);
-                                    successCount++;
-                                }
-                            }
-                        }
-                    }
-                } catch (Exception e) {
-                    System.err.println("手动同步文件失败: " + fileName + ", " + e.getMessage());
-                }
-            }
-
-            // 3. [新增] 循环结束后，记录最终结果日志
-            log.setStatus(1);
-            if (successCount > 0) {
-                progressService.calculateProjectProgress(projectId);
-                log.setMessage("手动同步完成，新增 " + successCount + " 张");
-                sysTaskLogMapper.insert(log);
-
-                return ApiResponse.success("同步成功，新增 " + successCount + " 张照片，进度已自动更新。");
-            } else {
-                log.setMessage("手动检查完毕，云端文件均已同步");
-                sysTaskLogMapper.insert(log);
-
-                return ApiResponse.success("同步完成，找到 " + djiFiles.size() + " 张照片，但都是已存在的，无新增。");
+            if (outcome.successCount() > 0) {
+                return ApiResponse.success("同步成功，新增 " + outcome.successCount() + " 张照片，进度已自动更新。");
             }
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            // 4. [新增] 异常情况也记录日志
-            log.setStatus(0);
-            log.setMessage("手动同步异常: " + e.getMessage());
-            sysTaskLogMapper.insert(log);
-
-            return ApiResponse.error("同步过程中发生错误: " + e.getMessage());
+            return ApiResponse.success("同步完成，找到 " + outcome.listedCount() + " 张照片，但都是已存在的，无新增。");
+
+        } catch (TimeoutException e) {
+            return ApiResponse.success("同步任务已在排队或执行中，完成后进度会自动更新，请稍后刷新查看同步日志。");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ApiResponse.error("同步被中断");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            return ApiResponse.error("同步过程中发生错误: " + cause.getMessage());
         }
     }
 
@@ -6,6 +6,7 @@ import com.whu.ximaweb.model.ProjectPhoto;
 import com.whu.ximaweb.model.SysProject;
 import com.whu.ximaweb.mapper.ProjectPhotoMapper;
 import com.whu.ximaweb.mapper.SysProjectMapper;
+import com.whu.ximaweb.service.ObsKeyIndex;
 import com.whu.ximaweb.service.ObsService;
 import com.whu.ximaweb.service.PhotoProcessor;
 import com.whu.ximaweb.model.PhotoData;
@@ -39,6 +40,9 @@ public class RescueController {
     @Autowired
     private PhotoProcessor photoProcessor;
 
+    @Autowired
+    private ObsKeyIndex obsKeyIndex;
+
     /**
      * 导入本地文件夹下的所有照片
      * @param projectId 项目ID
@@ -63,12 +67,15 @@ public class RescueController {
         System.out.println(dryRun ? "🚦 [预演] 开始扫描 (只读模式)..." : "🚀 [实战] 开始执行 (断点续传模式)...");
         System.out.println("==============================================");
 
-        int count = processDirectory(rootDir, rootDir.getName(), project, dryRun);
+        // 实战模式先列举一次 OBS 已有对象，逐个文件只查内存 (列举失败时为 null，退回逐个检查)
+        ObsKeyIndex.KeySet obsKeys = dryRun ? null : obsKeyIndex.refresh(project);
+
+        int count = processDirectory(rootDir, rootDir.getName(), project, dryRun, obsKeys);
 
         return ApiResponse.success((dryRun ? "[预演] " : "[实战] ") + "处理完成。新增/扫描照片: " + count + " 张。");
     }
 
-    private int processDirectory(File currentDir, String relativePath, SysProject project, boolean dryRun) {
+    private int processDirectory(File currentDir, String relativePath, SysProject project, boolean dryRun, ObsKeyIndex.KeySet obsKeys) {
         int count = 0;
         File[] files = currentDir.listFiles();
         if (files == null) return 0;
@@ -79,7 +86,7 @@ public class RescueController {
 
         for (File file : files) {
             if (file.isDirectory()) {
-                count += processDirectory(file, relativePath + "/" + file.getName(), project, dryRun);
+                count += processDirectory(file, relativePath + "/" + file.getName(), project, dryRun, obsKeys);
             } else {
                 String fileName = file.getName().toLowerCase();
                 if (fileName.endsWith(".jpg") || fileName.endsWith(".jpeg") || fileName.endsWith(".png")) {
@@ -103,11 +110,14 @@ public class RescueController {
                             System.out.println("   🚀 [处理新文件] " + file.getName());
 
                             // 2. 检查OBS去重 + 上传
-                            if (!obsService.doesObjectExist(project.getObsAk(), project.getObsSk(), project.getObsEndpoint(), project.getObsBucketName(), objectKey)) {
-                                try (FileInputStream fis = new FileInputStream(file)) {
-                                    obsService.uploadStream(project.getObsAk(), project.getObsSk(), project.getObsEndpoint(), project.getObsBucketName(), objectKey, fis);
-                                    System.out.println("      -> OBS上传成功");
-                                }
+                            boolean existsInObs = obsKeys != null
+                                    ? obsKeys.contains(objectKey)
+                                    : obsService.doesObjectExist(project.getObsAk(), project.getObsSk(), project.getObsEndpoint(), project.getObsBucketName(), objectKey);
+                            if (!existsInObs) {
+                                // 直接从磁盘上传，大文件分段并行、失败可续传
+                                obsService.uploadFile(project.getObsAk(), project.getObsSk(), project.getObsEndpoint(), project.getObsBucketName(), objectKey, file.toPath());
+                                if (obsKeys != null) obsKeys.markPresent(objectKey);
+                                System.out.println("      -> OBS上传成功");
                             } else {
                                 System.out.println("      -> OBS已存在 (跳过上传)");
                             }
@@ -0,0 +1,24 @@
+package com.whu.ximaweb.dto.dji;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 单个飞行任务及其媒体文件 (按任务分组的扫描结果，用于推进同步水位)
+ */
+@Data
+@AllArgsConstructor
+public class DjiTaskMedia {
+
+    /** 发现该任务的设备 SN */
+    private String deviceSn;
+
+    private DjiTaskDto task;
+
+    private List<DjiMediaFileDto> files;
+
+    /** 媒体列表是否拉取成功 (失败时 files 为空，该任务不能算作已入库) */
+    private boolean mediaComplete;
+}
@@ -2,7 +2,13 @@ package com.whu.ximaweb.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.whu.ximaweb.model.ActualProgress;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDate;
+import java.util.List;
 
 /**
  * ActualProgress 表的数据访问接口 (Mapper)
@@ -10,5 +16,27 @@ import org.apache.ibatis.annotations.Mapper;
 @Mapper // @Mapper 注解告诉 Spring Boot，这是一个 Mybatis 的 Mapper 接口，需要被扫描和注入。
 public interface ActualProgressMapper extends BaseMapper<ActualProgress> {
     // 继承了 BaseMapper<ActualProgress> 之后，这个接口就自动拥有了对 ActualProgress 实体类（也就是 actual_progress 表）的常用增删改查能力。
-    // 目前我们不需要在这里添加任何自定义的方法。
-}
\ No newline at end of file
+
+    /**
+     * 按 (building_id, measurement_date) 批量写入或更新 (多行 VALUES)
+     * 已存在的行只更新测量结果，保留 id、created_at 与 is_alert_sent
+     */
+    @Insert("<script>" +
+            "INSERT INTO actual_progress (project_id, project_name, building_id, measurement_date, actual_height, " +
+            "h1_val, h2_val, drone_alt, is_h2_measured, floor_level, photo_count, created_at) VALUES " +
+            "<foreach collection='list' item='p' separator=','>" +
+            "(#{p.projectId}, #{p.projectName}, #{p.buildingId}, #{p.measurementDate}, #{p.actualHeight}, " +
+            "#{p.h1Val}, #{p.h2Val}, #{p.droneAlt}, #{p.isH2Measured}, #{p.floorLevel}, #{p.photoCount}, #{p.createdAt})" +
+            "</foreach>" +
+            " ON DUPLICATE KEY UPDATE project_name = VALUES(project_name), actual_height = VALUES(actual_height), " +
+            "h1_val = VALUES(h1_val), h2_val = VALUES(h2_val), drone_alt = VALUES(drone_alt), " +
+            "is_h2_measured = VALUES(is_h2_measured), floor_level = VALUES(floor_level), photo_count = VALUES(photo_count)" +
+            "</script>")
+    int upsertBatch(@Param("list") List<ActualProgress> rows);
+
+    /**
+     * 标记某栋楼某天的滞后预警邮件已发送
+     */
+    @Update("UPDATE actual_progress SET is_alert_sent = 1 WHERE building_id = #{buildingId} AND measurement_date = #{date}")
+    int markAlertSent(@Param("buildingId") Integer buildingId, @Param("date") LocalDate date);
+}
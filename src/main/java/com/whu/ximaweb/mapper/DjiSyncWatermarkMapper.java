@@ -0,0 +1,27 @@
+package com.whu.ximaweb.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.whu.ximaweb.model.DjiSyncWatermark;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+/**
+ * 大疆任务同步水位 Mapper
+ */
+@Mapper
+public interface DjiSyncWatermarkMapper extends BaseMapper<DjiSyncWatermark> {
+
+    /**
+     * 按 (project_id, device_sn) 写入或更新水位
+     */
+    @Insert("INSERT INTO dji_sync_watermark (project_id, device_sn, last_task_begin_at, ingested_tasks, updated_at) " +
+            "VALUES (#{w.projectId}, #{w.deviceSn}, #{w.lastTaskBeginAt}, #{w.ingestedTasks}, NOW()) " +
+            "ON DUPLICATE KEY UPDATE last_task_begin_at = VALUES(last_task_begin_at), " +
+            "ingested_tasks = VALUES(ingested_tasks), updated_at = VALUES(updated_at)")
+    int upsert(@Param("w") DjiSyncWatermark watermark);
+
+    @Delete("DELETE FROM dji_sync_watermark WHERE project_id = #{projectId}")
+    int deleteByProjectId(@Param("projectId") Integer projectId);
+}
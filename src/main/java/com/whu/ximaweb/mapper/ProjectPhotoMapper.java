@@ -2,7 +2,9 @@ package com.whu.ximaweb.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.whu.ximaweb.model.ProjectPhoto;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 
@@ -20,4 +22,19 @@ public interface ProjectPhotoMapper extends BaseMapper<ProjectPhoto> {
      */
     @Select("SELECT * FROM project_photo WHERE project_id = #{projectId} ORDER BY shoot_time DESC")
     List<ProjectPhoto> selectByProjectId(@Param("projectId") Integer projectId);
-}
\ No newline at end of file
+
+    /**
+     * 批量插入 (多行 VALUES)，自增ID会回填到每个对象的 id 字段
+     * 供照片入库流水线按批写库，替代逐行 insert
+     */
+    @Insert("<script>" +
+            "INSERT INTO project_photo (project_id, photo_url, xmp_metadata, laser_distance, absolute_altitude, shoot_time, " +
+            "gps_lat, gps_lng, lrf_target_lat, lrf_target_lng, is_marker, obs_pending) VALUES " +
+            "<foreach collection='list' item='p' separator=','>" +
+            "(#{p.projectId}, #{p.photoUrl}, #{p.xmpMetadata}, #{p.laserDistance}, #{p.absoluteAltitude}, #{p.shootTime}, " +
+            "#{p.gpsLat}, #{p.gpsLng}, #{p.lrfTargetLat}, #{p.lrfTargetLng}, #{p.isMarker}, #{p.obsPending})" +
+            "</foreach>" +
+            "</script>")
+    @Options(useGeneratedKeys = true, keyProperty = "id", keyColumn = "id")
+    int insertBatch(@Param("list") List<ProjectPhoto> photos);
+}
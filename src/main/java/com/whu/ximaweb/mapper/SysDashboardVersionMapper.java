@@ -0,0 +1,28 @@
+package com.whu.ximaweb.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.whu.ximaweb.model.SysDashboardVersion;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+/**
+ * 项目看板数据版本号 Mapper
+ */
+@Mapper
+public interface SysDashboardVersionMapper extends BaseMapper<SysDashboardVersion> {
+
+    /**
+     * 版本号 +1 (没有记录时从 1 开始)
+     */
+    @Insert("INSERT INTO sys_dashboard_version (project_id, version, updated_at) VALUES (#{projectId}, 1, NOW(3)) " +
+            "ON DUPLICATE KEY UPDATE version = version + 1, updated_at = NOW(3)")
+    int bump(@Param("projectId") Integer projectId);
+
+    /**
+     * 当前版本号；从未变更过的项目返回 null
+     */
+    @Select("SELECT version FROM sys_dashboard_version WHERE project_id = #{projectId}")
+    Long selectVersion(@Param("projectId") Integer projectId);
+}
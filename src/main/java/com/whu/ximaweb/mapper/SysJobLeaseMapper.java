@@ -0,0 +1,52 @@
+package com.whu.ximaweb.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.whu.ximaweb.model.SysJobLease;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
+
+/**
+ * 定时任务租约 Mapper
+ * 所有时间比较都用数据库的 NOW(3)，不依赖各节点本地时钟
+ */
+@Mapper
+public interface SysJobLeaseMapper extends BaseMapper<SysJobLease> {
+
+    /**
+     * 租约不存在时创建；返回 1 表示拿到
+     */
+    @Insert("INSERT IGNORE INTO sys_job_lease (lease_key, owner, expires_at, acquired_at, renewed_at) " +
+            "VALUES (#{key}, #{owner}, DATE_ADD(NOW(3), INTERVAL #{ttlMillis} * 1000 MICROSECOND), NOW(3), NOW(3))")
+    int insertIfAbsent(@Param("key") String key, @Param("owner") String owner, @Param("ttlMillis") long ttlMillis);
+
+    /**
+     * 自己持有或已过期时接管；返回 1 表示拿到
+     * 注意 SET 按从左到右求值，acquired_at 必须写在 owner 之前
+     */
+    @Update("UPDATE sys_job_lease SET " +
+            "acquired_at = IF(owner = #{owner}, acquired_at, NOW(3)), " +
+            "owner = #{owner}, renewed_at = NOW(3), " +
+            "expires_at = DATE_ADD(NOW(3), INTERVAL #{ttlMillis} * 1000 MICROSECOND) " +
+            "WHERE lease_key = #{key} AND (owner = #{owner} OR expires_at < NOW(3))")
+    int takeOver(@Param("key") String key, @Param("owner") String owner, @Param("ttlMillis") long ttlMillis);
+
+    /**
+     * 续约；返回 0 表示租约已被其他节点接管
+     */
+    @Update("UPDATE sys_job_lease SET renewed_at = NOW(3), " +
+            "expires_at = DATE_ADD(NOW(3), INTERVAL #{ttlMillis} * 1000 MICROSECOND) " +
+            "WHERE lease_key = #{key} AND owner = #{owner}")
+    int renew(@Param("key") String key, @Param("owner") String owner, @Param("ttlMillis") long ttlMillis);
+
+    @Delete("DELETE FROM sys_job_lease WHERE lease_key = #{key} AND owner = #{owner}")
+    int release(@Param("key") String key, @Param("owner") String owner);
+
+    /**
+     * 清理过期超过一天的租约 (带日期/时间段的 Key 会不断产生新行)
+     */
+    @Delete("DELETE FROM sys_job_lease WHERE expires_at < DATE_SUB(NOW(3), INTERVAL 1 DAY)")
+    int purgeExpired();
+}
@@ -0,0 +1,33 @@
+package com.whu.ximaweb.model;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 大疆任务同步水位实体
+ * 对应数据库表: dji_sync_watermark
+ */
+@Data
+@TableName("dji_sync_watermark")
+public class DjiSyncWatermark {
+
+    @TableId(type = IdType.AUTO)
+    private Integer id;
+
+    private Integer projectId;
+
+    /** 设备 SN (飞机或机场) */
+    private String deviceSn;
+
+    /** 水位 (epoch 秒)：在此之前开始的任务都已完整入库，下次从这里开始查 */
+    private Long lastTaskBeginAt;
+
+    /** 水位之后已完整入库的任务 JSON {uuid: 开始时间} */
+    private String ingestedTasks;
+
+    private LocalDateTime updatedAt;
+}
@@ -37,4 +37,8 @@ public class ProjectPhoto {
 
     @TableField("is_marker")
     private Boolean isMarker;
+
+    /** 元数据优先入库后，原图还没确认传到 OBS (传完清零；失败则由下次同步重新下载) */
+    @TableField("obs_pending")
+    private Boolean obsPending;
 }
\ No newline at end of file
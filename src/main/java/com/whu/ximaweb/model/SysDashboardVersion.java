@@ -0,0 +1,25 @@
+package com.whu.ximaweb.model;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 项目看板数据版本号实体
+ * 对应数据库表: sys_dashboard_version
+ */
+@Data
+@TableName("sys_dashboard_version")
+public class SysDashboardVersion {
+
+    @TableId(type = IdType.INPUT)
+    private Integer projectId;
+
+    /** 项目数据每变更一次 +1 */
+    private Long version;
+
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,30 @@
+package com.whu.ximaweb.model;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 定时任务租约实体
+ * 对应数据库表: sys_job_lease
+ */
+@Data
+@TableName("sys_job_lease")
+public class SysJobLease {
+
+    /** 任务 (或任务 + 项目) 标识，例如 photo-sync:run:12 */
+    @TableId(type = IdType.INPUT)
+    private String leaseKey;
+
+    /** 当前持有者节点ID */
+    private String owner;
+
+    /** 到期时间 (数据库时间)，过期后其他节点可接管 */
+    private LocalDateTime expiresAt;
+
+    private LocalDateTime acquiredAt;
+    private LocalDateTime renewedAt;
+}
@@ -32,6 +32,11 @@ public class SysProject {
      */
     private Integer enableAiReport;
 
+    /**
+     * 照片同步间隔 (分钟)，为空时使用全局默认
+     */
+    private Integer syncIntervalMinutes;
+
 
     // ==========================================
     // 🔥 [新增] 萤石云摄像头配置字段
@@ -0,0 +1,32 @@
+package com.whu.ximaweb.service;
+
+import com.whu.ximaweb.dto.DashboardVo;
+
+/**
+ * 项目看板快照服务
+ * 每个项目缓存一份已算好的 DashboardVo，读取时只查一次版本号；
+ * 进度重算、项目信息/围栏/计划/楼层/楼栋变更后通过 {@link ProjectDataChangedEvent} 让版本号 +1，所有节点的快照随之失效。
+ */
+public interface DashboardService {
+
+    /**
+     * 获取项目看板快照 (过期或失效时会先重建)
+     * @return 项目不存在时返回 null
+     */
+    DashboardSnapshot getSnapshot(Integer projectId);
+
+    /**
+     * 让某个项目的快照失效 (数据库版本号 +1)，各节点下一次读取时重建
+     */
+    void invalidate(Integer projectId);
+
+    /**
+     * 看板快照：数据 + 版本号 + ETag (给浏览器轮询做 304 协商)
+     */
+    record DashboardSnapshot(DashboardVo data, long version, String etag) {}
+
+    /**
+     * 项目数据变更事件 (由 ApplicationEventPublisher 发布，在发布方的事务里处理)
+     */
+    record ProjectDataChangedEvent(Integer projectId, String reason) {}
+}
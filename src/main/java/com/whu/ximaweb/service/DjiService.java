@@ -2,7 +2,11 @@ package com.whu.ximaweb.service;
 
 import com.whu.ximaweb.dto.dji.DjiMediaFileDto;
 import com.whu.ximaweb.dto.dji.DjiProjectDto;
+import com.whu.ximaweb.dto.dji.DjiTaskMedia;
+
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * 负责与大疆司空2 OpenAPI 交互的服务接口
@@ -23,4 +27,12 @@ public interface DjiService {
      * 获取指定项目下的媒体文件列表 (适配 ProjectController)
      */
     List<DjiMediaFileDto> getPhotosFromFolder(String projectUuid, String apiKey, String folderNameKeyword);
+
+    /**
+     * 增量扫描，按任务分组返回媒体文件
+     * @param sinceBySn 每个设备只查询该时间 (epoch 秒) 之后开始的任务；为空或没有该设备时查最近 90 天
+     * @param skipTaskUuids 已完整入库的任务，不再拉取媒体列表
+     */
+    List<DjiTaskMedia> scanTaskMedia(String projectUuid, String apiKey, String folderNameKeyword,
+                                     Map<String, Long> sinceBySn, Set<String> skipTaskUuids);
 }
\ No newline at end of file
@@ -0,0 +1,195 @@
+package com.whu.ximaweb.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.whu.ximaweb.dto.dji.DjiMediaFileDto;
+import com.whu.ximaweb.dto.dji.DjiTaskMedia;
+import com.whu.ximaweb.mapper.DjiSyncWatermarkMapper;
+import com.whu.ximaweb.model.DjiSyncWatermark;
+import com.whu.ximaweb.model.SysProject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 大疆任务同步水位 (每个项目、每个设备一条，存在 dji_sync_watermark 表)
+ * 水位之前开始的任务都已完整入库，下次同步只向司空查询水位之后的任务；
+ * 水位之后已完整入库的任务记下 UUID，不再拉取媒体列表。
+ *
+ * "完整入库" 需同时满足：任务已结束 (success / terminated)、开始时间超过 settle-hours
+ * (机场回传媒体有延迟，刚飞完的任务文件可能还没传齐)、媒体列表拉取成功、没有文件下载/上传/入库失败。
+ * 水位取仍未完整入库的任务中最早的开始时间，全部完成时取已知任务中最晚的开始时间。
+ */
+@Service
+public class DjiSyncWatermarkService {
+
+    @Autowired
+    private DjiSyncWatermarkMapper djiSyncWatermarkMapper;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${xima.dji.watermark.enabled:true}")
+    private boolean enabled;
+
+    @Value("${xima.dji.watermark.settle-hours:6}")
+    private long settleHours;
+
+    /**
+     * 读取项目的水位
+     * @return 未启用或读取失败时返回 null，调用方按全量扫描处理
+     */
+    public Snapshot load(Integer projectId) {
+        if (!enabled) return null;
+        try {
+            List<DjiSyncWatermark> rows = djiSyncWatermarkMapper.selectList(
+                    new QueryWrapper<DjiSyncWatermark>().eq("project_id", projectId));
+            Snapshot snapshot = new Snapshot();
+            for (DjiSyncWatermark row : rows) {
+                Map<String, Long> known = readTasks(row.getIngestedTasks());
+                snapshot.sinceBySn.put(row.getDeviceSn(), row.getLastTaskBeginAt());
+                snapshot.knownBySn.put(row.getDeviceSn(), known);
+                snapshot.ingestedTaskUuids.addAll(known.keySet());
+            }
+            return snapshot;
+        } catch (Exception e) {
+            System.err.println("⚠️ [同步水位] 读取失败，本次全量扫描: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 同步入库完成后推进水位
+     * @param previous 本次扫描所依据的水位 (深度重扫时传 null，按扫描结果重建)
+     * @param scanned 本次扫描到的任务 (已跳过的任务不在其中)
+     * @param failedKeys 本次入库失败、需要重试的 OBS 路径
+     */
+    public void advance(SysProject project, Snapshot previous, List<DjiTaskMedia> scanned, Set<String> failedKeys) {
+        if (!enabled) return;
+        long settledBefore = System.currentTimeMillis() / 1000 - settleHours * 3600;
+
+        // 按设备分组
+        Map<String, List<DjiTaskMedia>> bySn = new HashMap<>();
+        for (DjiTaskMedia taskMedia : scanned) {
+            bySn.computeIfAbsent(taskMedia.getDeviceSn(), sn -> new ArrayList<>()).add(taskMedia);
+        }
+        Set<String> sns = new HashSet<>(bySn.keySet());
+        if (previous != null) sns.addAll(previous.sinceBySn.keySet());
+
+        int updated = 0;
+        for (String sn : sns) {
+            Map<String, Long> known = new HashMap<>(previous != null
+                    ? previous.knownBySn.getOrDefault(sn, Collections.emptyMap()) : Collections.emptyMap());
+            Long since = previous != null ? previous.sinceBySn.get(sn) : null;
+            Long earliestPending = null;
+
+            for (DjiTaskMedia taskMedia : bySn.getOrDefault(sn, Collections.emptyList())) {
+                Long beginAt = toEpochSecond(taskMedia.getTask().getBeginAt());
+                if (beginAt == null) continue; // 开始时间解析不了的任务不参与水位
+                if (isSettled(taskMedia, beginAt, settledBefore) && allIngested(project, taskMedia, failedKeys)) {
+                    known.put(taskMedia.getTask().getUuid(), beginAt);
+                } else if (earliestPending == null || beginAt < earliestPending) {
+                    earliestPending = beginAt;
+                }
+            }
+
+            Long watermark = earliestPending;
+            if (watermark == null) {
+                for (Long beginAt : known.values()) {
+                    if (watermark == null || beginAt > watermark) watermark = beginAt;
+                }
+                if (since != null && (watermark == null || since > watermark)) watermark = since;
+            }
+            if (watermark == null) continue;
+
+            // 水位之前的任务下次不会再被查到，不用再记
+            long w = watermark;
+            known.values().removeIf(beginAt -> beginAt < w);
+
+            if (watermark.equals(since) && previous != null
+                    && known.equals(previous.knownBySn.getOrDefault(sn, Collections.emptyMap()))) {
+                continue;
+            }
+            try {
+                DjiSyncWatermark row = new DjiSyncWatermark();
+                row.setProjectId(project.getId());
+                row.setDeviceSn(sn);
+                row.setLastTaskBeginAt(watermark);
+                row.setIngestedTasks(objectMapper.writeValueAsString(known));
+                djiSyncWatermarkMapper.upsert(row);
+                updated++;
+            } catch (Exception e) {
+                System.err.println("⚠️ [同步水位] 设备 " + sn + " 水位保存失败: " + e.getMessage());
+            }
+        }
+        if (updated > 0) {
+            System.out.println("    🔖 [" + project.getProjectName() + "] 同步水位已更新 " + updated + " 个设备");
+        }
+    }
+
+    /**
+     * 删除项目时一并清理
+     */
+    public void deleteByProject(Integer projectId) {
+        djiSyncWatermarkMapper.deleteByProjectId(projectId);
+    }
+
+    private static boolean isSettled(DjiTaskMedia taskMedia, long beginAt, long settledBefore) {
+        String status = taskMedia.getTask().getStatus();
+        boolean finished = "success".equalsIgnoreCase(status) || "terminated".equalsIgnoreCase(status);
+        return finished && taskMedia.isMediaComplete() && beginAt < settledBefore;
+    }
+
+    private static boolean allIngested(SysProject project, DjiTaskMedia taskMedia, Set<String> failedKeys) {
+        if (failedKeys == null || failedKeys.isEmpty()) return true;
+        for (DjiMediaFileDto file : taskMedia.getFiles()) {
+            String objectKey = PhotoIngestPipeline.toObjectKey(project, file);
+            if (objectKey != null && failedKeys.contains(objectKey)) return false;
+        }
+        return true;
+    }
+
+    private Map<String, Long> readTasks(String json) {
+        if (json == null || json.isEmpty()) return new HashMap<>();
+        try {
+            return objectMapper.readValue(json, new TypeReference<HashMap<String, Long>>() {});
+        } catch (Exception e) {
+            // 记录损坏时只丢失 "已入库" 标记，水位本身仍有效，最多多拉一次媒体列表
+            return new HashMap<>();
+        }
+    }
+
+    private static Long toEpochSecond(String beginAt) {
+        if (beginAt == null) return null;
+        try {
+            return ZonedDateTime.parse(beginAt).toEpochSecond();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 某个项目在一次同步开始时的水位
+     */
+    public static class Snapshot {
+        private final Map<String, Long> sinceBySn = new HashMap<>();
+        private final Map<String, Map<String, Long>> knownBySn = new HashMap<>();
+        private final Set<String> ingestedTaskUuids = new HashSet<>();
+
+        /** 设备 SN -> 水位 (epoch 秒) */
+        public Map<String, Long> getSinceBySn() { return sinceBySn; }
+
+        /** 水位之后已完整入库的任务 (全部设备) */
+        public Set<String> getIngestedTaskUuids() { return ingestedTaskUuids; }
+    }
+}
@@ -0,0 +1,185 @@
+package com.whu.ximaweb.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.whu.ximaweb.dto.Coordinate;
+import com.whu.ximaweb.model.SysBuilding;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.operation.distance.IndexedFacetDistance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 电子围栏服务 (进度计算与照片检视共用)
+ * 把楼栋的 boundaryCoords JSON 编译成"投影到米制平面的预处理多边形"，按楼栋ID缓存，
+ * 之后的点判定只做几何查询，不再重复解析 JSON 和逐边射线计算。
+ * 围栏变更时由 BuildingController / ProjectServiceImpl 调用 {@link #evict(Integer)} 失效缓存。
+ */
+@Service
+public class GeofenceService {
+
+    /** 围栏缓冲区 (米)：高楼投影偏差导致激光点落在围栏外侧时仍算作该楼 */
+    public static final double DEFAULT_BUFFER_METERS = 20.0;
+
+    /** 简易墨卡托投影系数 (适用于小范围计算) */
+    private static final double METERS_PER_DEG_LAT = 111132.92;
+    private static final double METERS_PER_DEG_LNG_AT_EQUATOR = 111412.84;
+
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // 缓存：楼栋ID -> 编译结果 (连同原始 JSON，一旦 JSON 变了就自动重编译)
+    private final Map<Integer, CacheEntry> cache = new ConcurrentHashMap<>();
+
+    /**
+     * 获取楼栋的已编译围栏
+     * @return 未设置围栏、JSON 无法解析或少于 3 个点时返回 null
+     */
+    public CompiledFence getFence(SysBuilding building) {
+        if (building == null || building.getId() == null) return null;
+        String json = building.getBoundaryCoords();
+        CacheEntry entry = cache.get(building.getId());
+        if (entry != null && Objects.equals(entry.sourceJson, json)) {
+            return entry.fence;
+        }
+        CompiledFence fence = compile(building.getId(), json);
+        cache.put(building.getId(), new CacheEntry(json, fence));
+        return fence;
+    }
+
+    /**
+     * 围栏被修改或楼栋被删除后调用
+     */
+    public void evict(Integer buildingId) {
+        if (buildingId != null) cache.remove(buildingId);
+    }
+
+    private CompiledFence compile(Integer buildingId, String json) {
+        if (json == null || json.isEmpty()) return null;
+        List<Coordinate> coords;
+        try {
+            coords = objectMapper.readValue(json, new TypeReference<List<Coordinate>>() {});
+        } catch (Exception e) {
+            System.err.println("围栏解析失败 [楼栋 " + buildingId + "]: " + e.getMessage());
+            return null;
+        }
+        if (coords == null || coords.size() < 3) return null;
+        try {
+            return new CompiledFence(buildingId, coords, DEFAULT_BUFFER_METERS);
+        } catch (RuntimeException e) {
+            System.err.println("围栏几何无效 [楼栋 " + buildingId + "]: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private record CacheEntry(String sourceJson, CompiledFence fence) {}
+
+    /**
+     * 编译后的围栏 (不可变，线程安全)
+     * 以围栏中心为原点做局部等距投影，多边形、缓冲区距离和外包矩形都在米制平面上预先算好
+     */
+    public static class CompiledFence {
+        private final Integer buildingId;
+        private final double originLat;
+        private final double originLng;
+        private final double metersPerLng;
+        private final double bufferMeters;
+        private final PreparedGeometry prepared;
+        private final IndexedFacetDistance boundaryDistance;
+        private final Envelope bufferedEnvelope;  // 米制平面
+        private final Envelope latLngEnvelope;    // 经纬度 (x=lng, y=lat)，供空间索引使用
+
+        public CompiledFence(Integer buildingId, List<Coordinate> coords, double bufferMeters) {
+            this.buildingId = buildingId;
+            this.bufferMeters = bufferMeters;
+
+            double sumLat = 0, sumLng = 0;
+            for (Coordinate c : coords) {
+                sumLat += c.getLat();
+                sumLng += c.getLng();
+            }
+            this.originLat = sumLat / coords.size();
+            this.originLng = sumLng / coords.size();
+            this.metersPerLng = METERS_PER_DEG_LNG_AT_EQUATOR * Math.cos(Math.toRadians(originLat));
+
+            // 闭合环：首尾不同则补上首点
+            boolean closed = coords.get(0).getLat().equals(coords.get(coords.size() - 1).getLat())
+                    && coords.get(0).getLng().equals(coords.get(coords.size() - 1).getLng());
+            int n = closed ? coords.size() : coords.size() + 1;
+            if (n < 4) throw new IllegalArgumentException("围栏至少需要 3 个不同的点");
+            org.locationtech.jts.geom.Coordinate[] ring = new org.locationtech.jts.geom.Coordinate[n];
+            for (int i = 0; i < coords.size(); i++) {
+                ring[i] = project(coords.get(i).getLat(), coords.get(i).getLng());
+            }
+            if (!closed) ring[n - 1] = ring[0].copy();
+
+            Polygon polygon = GEOMETRY_FACTORY.createPolygon(ring);
+            this.prepared = PreparedGeometryFactory.prepare(polygon);
+            this.boundaryDistance = new IndexedFacetDistance(polygon);
+
+            this.bufferedEnvelope = new Envelope(polygon.getEnvelopeInternal());
+            this.bufferedEnvelope.expandBy(bufferMeters);
+            this.latLngEnvelope = new Envelope(
+                    originLng + bufferedEnvelope.getMinX() / metersPerLng,
+                    originLng + bufferedEnvelope.getMaxX() / metersPerLng,
+                    originLat + bufferedEnvelope.getMinY() / METERS_PER_DEG_LAT,
+                    originLat + bufferedEnvelope.getMaxY() / METERS_PER_DEG_LAT);
+
+            // 预热内部索引，避免多线程首次查询时并发构建
+            prepared.covers(GEOMETRY_FACTORY.createPoint(ring[0]));
+        }
+
+        /**
+         * 是否在围栏内部 (含边界)
+         */
+        public boolean isInside(double lat, double lng) {
+            return prepared.covers(toPoint(lat, lng));
+        }
+
+        /**
+         * 是否在围栏内部或缓冲区内 (核心入口)
+         */
+        public boolean isInsideOrBuffered(double lat, double lng) {
+            org.locationtech.jts.geom.Coordinate c = project(lat, lng);
+            if (!bufferedEnvelope.contains(c)) return false;
+            Point p = GEOMETRY_FACTORY.createPoint(c);
+            // 1. 先判断是否精准在围栏内部
+            if (prepared.covers(p)) return true;
+            // 2. 如果不在内部，判断到边界的距离是否在缓冲区内 (解决高楼投影偏差)
+            return boundaryDistance.isWithinDistance(p, bufferMeters);
+        }
+
+        public Integer getBuildingId() {
+            return buildingId;
+        }
+
+        /**
+         * 外扩缓冲区后的经纬度外包矩形
+         */
+        public Envelope getLatLngEnvelope() {
+            return latLngEnvelope;
+        }
+
+        private Point toPoint(double lat, double lng) {
+            return GEOMETRY_FACTORY.createPoint(project(lat, lng));
+        }
+
+        private org.locationtech.jts.geom.Coordinate project(double lat, double lng) {
+            return new org.locationtech.jts.geom.Coordinate(
+                    (lng - originLng) * metersPerLng,
+                    (lat - originLat) * METERS_PER_DEG_LAT);
+        }
+    }
+}
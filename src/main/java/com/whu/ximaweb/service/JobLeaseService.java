@@ -0,0 +1,176 @@
+package com.whu.ximaweb.service;
+
+import com.whu.ximaweb.mapper.SysJobLeaseMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 定时任务租约 (基于 MySQL 的 sys_job_lease 表)
+ * 多个副本同时运行时，同一个任务 / 同一个项目分片同一时刻只交给一个节点：
+ *  - 拿租约：不存在则插入，已过期或本来就是自己的则接管 (每一步都是单条语句，由数据库保证原子性)；
+ *  - 持有期间后台每 1/3 TTL 续约一次，节点宕机后租约到期即可被其他节点接管；
+ *  - "每个周期只执行一次" 的任务 (日报、定时同步) 执行完不释放，让租约自然到期；
+ *  - 续约发现租约已被接管，或超过一个 TTL 没能续约成功时，租约标记为丢失，
+ *    任务在写库等关键步骤前调用 {@link Lease#check()} 中止，避免两个节点同时执行。
+ * xima.cluster.lease.enabled=false 时退化为单机模式，总是拿到租约。
+ */
+@Service
+public class JobLeaseService {
+
+    @Autowired
+    private SysJobLeaseMapper sysJobLeaseMapper;
+
+    @Autowired
+    @Qualifier("leaseRenewalExecutor")
+    private ScheduledExecutorService renewalExecutor;
+
+    @Value("${xima.cluster.lease.enabled:true}")
+    private boolean enabled;
+
+    // 本节点标识：主机名 + 进程号 + 随机后缀 (同一主机重启后也不会误认旧租约)
+    private final String nodeId = buildNodeId();
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 尝试拿租约 (不续约)
+     * 数据库不可用时视为没拿到
+     */
+    public boolean tryAcquire(String key, Duration ttl) {
+        if (!enabled) return true;
+        try {
+            long ttlMillis = ttl.toMillis();
+            return sysJobLeaseMapper.insertIfAbsent(key, nodeId, ttlMillis) > 0
+                    || sysJobLeaseMapper.takeOver(key, nodeId, ttlMillis) > 0;
+        } catch (Exception e) {
+            System.err.println("⚠️ [任务租约] 获取失败 [" + key + "]: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 在租约保护下执行任务，执行期间自动续约
+     * 任务拿到的 Lease 在租约丢失后 check() 抛出 LeaseLostException，任务应在写库等关键步骤前检查
+     * @param releaseWhenDone true: 执行完立即释放 (互斥型任务)；false: 保留到 TTL 到期 (每周期一次型任务)
+     * @return 是否执行了 (false 表示租约在其他节点手里)
+     */
+    public boolean runExclusive(String key, Duration ttl, boolean releaseWhenDone, Consumer<Lease> task) {
+        // 单机模式不续约，租约也不会丢失
+        Lease lease = new Lease(key, enabled ? ttl : null);
+        if (!tryAcquire(key, ttl)) return false;
+        ScheduledFuture<?> renewal = enabled ? scheduleRenewal(lease) : null;
+        try {
+            task.accept(lease);
+            return true;
+        } finally {
+            if (renewal != null) renewal.cancel(false);
+            if (releaseWhenDone) release(key);
+        }
+    }
+
+    public void release(String key) {
+        if (!enabled) return;
+        try {
+            sysJobLeaseMapper.release(key, nodeId);
+        } catch (Exception e) {
+            // 释放失败也无妨，到期后自然失效
+            System.err.println("⚠️ [任务租约] 释放失败 [" + key + "]: " + e.getMessage());
+        }
+    }
+
+    private ScheduledFuture<?> scheduleRenewal(Lease lease) {
+        long ttlMillis = lease.ttlNanos / 1_000_000;
+        long period = Math.max(1000, ttlMillis / 3);
+        return renewalExecutor.scheduleAtFixedRate(() -> {
+            if (lease.lost) return;
+            long start = System.nanoTime();
+            try {
+                if (sysJobLeaseMapper.renew(lease.key, nodeId, ttlMillis) == 0) {
+                    lease.lost = true;
+                    System.err.println("⚠️ [任务租约] 租约已被其他节点接管，任务将中止: " + lease.key);
+                } else {
+                    lease.renewedAtNanos = start;
+                }
+            } catch (Exception e) {
+                System.err.println("⚠️ [任务租约] 续约失败 [" + lease.key + "]: " + e.getMessage());
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 每小时清理一次早已过期的租约行
+     */
+    @Scheduled(fixedDelay = 3600000, initialDelay = 300000)
+    public void purgeExpired() {
+        if (!enabled) return;
+        try {
+            int purged = sysJobLeaseMapper.purgeExpired();
+            if (purged > 0) {
+                System.out.println(">>> [任务租约] 清理过期租约 " + purged + " 条");
+            }
+        } catch (Exception e) {
+            System.err.println("⚠️ [任务租约] 清理失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 一次 runExclusive 持有的租约 (围栏令牌)
+     * 续约返回 0 (已被接管)，或距上次成功续约超过一个 TTL (数据库故障、进程长时间停顿，其他节点可能已接管) 时视为丢失
+     */
+    public static class Lease {
+        private final String key;
+        private final long ttlNanos;
+        // 拿租约之前取时间：按最保守的到期时间判断
+        private volatile long renewedAtNanos = System.nanoTime();
+        private volatile boolean lost;
+
+        Lease(String key, Duration ttl) {
+            this.key = key;
+            this.ttlNanos = ttl != null ? ttl.toNanos() : Long.MAX_VALUE;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public boolean isHeld() {
+            return !lost && System.nanoTime() - renewedAtNanos < ttlNanos;
+        }
+
+        /**
+         * 租约已丢失时抛出 LeaseLostException
+         */
+        public void check() {
+            if (!isHeld()) throw new LeaseLostException(key);
+        }
+    }
+
+    public static class LeaseLostException extends IllegalStateException {
+        public LeaseLostException(String key) {
+            super("任务租约已丢失 (可能已由其他节点接管): " + key);
+        }
+    }
+
+    private static String buildNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        return host + ":" + ProcessHandle.current().pid() + ":" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
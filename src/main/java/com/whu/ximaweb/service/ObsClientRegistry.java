@@ -0,0 +1,188 @@
+package com.whu.ximaweb.service;
+
+import com.obs.services.ObsClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * ObsClient 复用池
+ * 按 (AK, Endpoint) 保留长期存活的客户端，所有项目的 OBS 调用共用热连接，避免每次调用都重新握手、建线程池。
+ *  - SK 变更 (同一 AK 轮换密钥) 时旧客户端退役，新请求使用新客户端；
+ *  - 打开的客户端数量有上限，超出时按最久未使用淘汰空闲的；
+ *  - 空闲超过 idle-minutes 的客户端由定时任务关闭；
+ *  - 正在使用中的客户端不会被关闭，等最后一个调用结束后再关。
+ */
+@Component
+public class ObsClientRegistry {
+
+    @Value("${xima.obs.client.max-open:32}")
+    private int maxOpen;
+
+    @Value("${xima.obs.client.idle-minutes:10}")
+    private long idleMinutes;
+
+    // 访问顺序的 LinkedHashMap 即 LRU；所有读写都在 synchronized(this) 中
+    private final LinkedHashMap<String, Entry> clients = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * 借用客户端执行一次 OBS 调用
+     */
+    public <T> T withClient(String ak, String sk, String endpoint, Function<ObsClient, T> action) {
+        Entry entry = acquire(ak, sk, endpoint);
+        try {
+            return action.apply(entry.client);
+        } finally {
+            release(entry);
+        }
+    }
+
+    private synchronized Entry acquire(String ak, String sk, String endpoint) {
+        String key = ak + "@" + endpoint;
+        String skDigest = digest(sk);
+        Entry entry = clients.get(key);
+        if (entry != null && entry.skDigest.equals(skDigest)) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            if (entry != null) {
+                // 密钥已轮换：旧客户端退役
+                clients.remove(key);
+                retire(entry);
+            }
+            entry = new Entry(new ObsClient(ak, sk, endpoint), skDigest);
+            clients.put(key, entry);
+            evictOverCapacity();
+        }
+        entry.leases.incrementAndGet();
+        entry.lastUsed = System.currentTimeMillis();
+        return entry;
+    }
+
+    private synchronized void release(Entry entry) {
+        entry.lastUsed = System.currentTimeMillis();
+        if (entry.leases.decrementAndGet() == 0 && entry.retired) {
+            close(entry);
+        }
+    }
+
+    /**
+     * 超过上限时淘汰最久未使用的空闲客户端；全部都在使用中则暂时允许超出
+     */
+    private void evictOverCapacity() {
+        Iterator<Map.Entry<String, Entry>> it = clients.entrySet().iterator();
+        while (clients.size() > Math.max(1, maxOpen) && it.hasNext()) {
+            Entry candidate = it.next().getValue();
+            if (candidate.leases.get() == 0) {
+                it.remove();
+                retire(candidate);
+            }
+        }
+    }
+
+    /**
+     * 定时关闭长时间空闲的客户端
+     */
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void evictIdle() {
+        long deadline = System.currentTimeMillis() - idleMinutes * 60_000L;
+        int closed = 0;
+        synchronized (this) {
+            Iterator<Map.Entry<String, Entry>> it = clients.entrySet().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next().getValue();
+                if (entry.leases.get() == 0 && entry.lastUsed < deadline) {
+                    it.remove();
+                    retire(entry);
+                    closed++;
+                }
+            }
+        }
+        if (closed > 0) {
+            System.out.println(">>> [OBS客户端池] 关闭空闲客户端 " + closed + " 个，" + getStats());
+        }
+    }
+
+    /**
+     * 命中 / 未命中 / 淘汰 / 当前打开数
+     */
+    public synchronized String getStats() {
+        long h = hits.get(), m = misses.get();
+        double hitRate = (h + m) == 0 ? 0 : h * 100.0 / (h + m);
+        return String.format("命中 %d, 未命中 %d (命中率 %.1f%%), 淘汰 %d, 当前打开 %d",
+                h, m, hitRate, evictions.get(), clients.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        List<Entry> all;
+        synchronized (this) {
+            all = new ArrayList<>(clients.values());
+            clients.clear();
+        }
+        for (Entry entry : all) {
+            close(entry);
+        }
+        System.out.println(">>> [OBS客户端池] 已关闭，" + getStats());
+    }
+
+    private void retire(Entry entry) {
+        evictions.incrementAndGet();
+        entry.retired = true;
+        if (entry.leases.get() == 0) {
+            close(entry);
+        }
+    }
+
+    private static void close(Entry entry) {
+        try {
+            entry.client.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    // 只保存 SK 的摘要用于比对
+    private static String digest(String sk) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] hash = md.digest((sk == null ? "" : sk).getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : hash) sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Entry {
+        final ObsClient client;
+        final String skDigest;
+        final AtomicInteger leases = new AtomicInteger();
+        volatile long lastUsed = System.currentTimeMillis();
+        volatile boolean retired;
+
+        Entry(ObsClient client, String skDigest) {
+            this.client = client;
+            this.skDigest = skDigest;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.whu.ximaweb.service;
+
+import com.whu.ximaweb.model.SysProject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * OBS 已有对象索引 (批量存在性判断)
+ * 每次同步前把 projects/{id}/ 前缀列举一遍，之后"对象是否已在 OBS"直接查内存集合，
+ * 不再对每个新文件发一次 HEAD 请求。
+ *
+ * 增量刷新：OBS 按字典序返回 Key，记住上次列举到的最后一个 Key 作为 marker，
+ * 下次只列举它之后的部分；超过 full-refresh-minutes 再完整重建一次 (捕获 marker 之前新增或被删除的对象)。
+ * 索引漏判只会导致重复上传 (putObject 覆盖同名对象)，不会漏传。
+ */
+@Component
+public class ObsKeyIndex {
+
+    @Autowired
+    private ObsService obsService;
+
+    @Value("${xima.obs.key-index.enabled:true}")
+    private boolean enabled;
+
+    @Value("${xima.obs.key-index.full-refresh-minutes:60}")
+    private long fullRefreshMinutes;
+
+    private final Map<Integer, KeySet> indexes = new ConcurrentHashMap<>();
+
+    /**
+     * 同步前调用：刷新并返回项目的对象集合
+     * @return 未启用或列举失败时返回 null，调用方应退回逐个 doesObjectExist
+     */
+    public KeySet refresh(SysProject project) {
+        if (!enabled) return null;
+        KeySet keySet = indexes.computeIfAbsent(project.getId(), id -> new KeySet());
+        synchronized (keySet) {
+            long now = System.currentTimeMillis();
+            boolean full = keySet.marker == null || now - keySet.fullListedAt > fullRefreshMinutes * 60_000L;
+            String prefix = "projects/" + project.getId() + "/";
+            long start = System.currentTimeMillis();
+            try {
+                List<String> listed = obsService.listKeys(project.getObsAk(), project.getObsSk(),
+                        project.getObsEndpoint(), project.getObsBucketName(), prefix, full ? null : keySet.marker);
+                if (full) {
+                    keySet.keys.retainAll(new HashSet<>(listed));
+                    keySet.fullListedAt = now;
+                }
+                keySet.keys.addAll(listed);
+                if (!listed.isEmpty()) {
+                    keySet.marker = listed.get(listed.size() - 1);
+                } else if (full) {
+                    // 空前缀也视为完成一次完整列举，之后走增量
+                    keySet.marker = prefix;
+                }
+                System.out.println("    🗂️ OBS 对象索引" + (full ? "重建" : "增量刷新") + ": 新列举 " + listed.size()
+                        + " 个，共 " + keySet.keys.size() + " 个，耗时 " + (System.currentTimeMillis() - start) + "ms");
+                return keySet;
+            } catch (Exception e) {
+                System.err.println("    OBS 对象列举失败，本次退回逐个检查: " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 项目 OBS 配置变更或删除时丢弃索引
+     */
+    public void evict(Integer projectId) {
+        indexes.remove(projectId);
+    }
+
+    /**
+     * 单个项目的已有对象集合 (可被上传线程并发读写)
+     */
+    public static class KeySet {
+        private final Set<String> keys = ConcurrentHashMap.newKeySet();
+        private volatile String marker;
+        private volatile long fullListedAt;
+
+        public boolean contains(String objectKey) {
+            return keys.contains(objectKey);
+        }
+
+        /**
+         * 上传成功后登记，同一轮后续重复的 Key 不再上传
+         */
+        public void markPresent(String objectKey) {
+            keys.add(objectKey);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.whu.ximaweb.service;
 
 import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.List;
 
 /**
@@ -24,6 +25,12 @@ public interface ObsService {
      */
     void uploadStream(String ak, String sk, String endpoint, String bucketName, String objectKey, InputStream stream);
 
+    /**
+     * 上传本地文件到 OBS (长度已知，直接从磁盘读取)
+     * 大文件自动分段并行上传，失败后再次调用同一文件会从已完成的分段断点续传
+     */
+    void uploadFile(String ak, String sk, String endpoint, String bucketName, String objectKey, Path file);
+
 /**
      * 修正：列举并过滤文件
      * @param projectRoot 项目根目录前缀 (如 "西马路项目/")，用于缩小扫描范围
@@ -36,5 +43,12 @@ public interface ObsService {
      */
     InputStream downloadFile(String ak, String sk, String endpoint, String bucketName, String objectKey);
 
+    /**
+     * 按字典序列举前缀下 marker 之后的全部对象 Key (用于批量存在性判断)
+     * 与 listFiles 不同，列举失败时直接抛出异常，由调用方决定是否退回逐个检查
+     * @param marker 上次列举到的最后一个 Key，为空则从头列举
+     */
+    List<String> listKeys(String ak, String sk, String endpoint, String bucketName, String prefix, String marker);
+
 
 }
\ No newline at end of file
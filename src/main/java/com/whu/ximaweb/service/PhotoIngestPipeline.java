@@ -0,0 +1,851 @@
+package com.whu.ximaweb.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.whu.ximaweb.dto.dji.DjiMediaFileDto;
+import com.whu.ximaweb.mapper.ProjectPhotoMapper;
+import com.whu.ximaweb.model.PhotoData;
+import com.whu.ximaweb.model.ProjectPhoto;
+import com.whu.ximaweb.model.SysProject;
+import com.whu.ximaweb.util.JpegXmpReader;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 照片入库流水线 (定时同步与手动同步共用)
+ * 列表 -> 批量去重 -> 下载(落临时文件) -> 分叉: 上传 OBS / 解析 XMP -> 批量入库
+ *
+ * 元数据优先模式 (xima.ingest.metadata-first=true)：
+ * 先用 HTTP Range 只取文件头部解析 XMP 并立即入库，完整文件的 下载->上传OBS 放到后台传输通道，
+ * 失败按指数退避重试。这样飞行落地后进度数据不必等大文件传完。
+ * 头部里没找到 XMP (例如 EXIF 缩略图过大) 的文件自动退回完整流程。
+ * 传输未完成的记录带 obs_pending 标记，所在任务也不算入库完成 (见 IngestResult.failedKeys)；
+ * 重试用尽或进程重启后，下次同步再列出该文件时用新的下载地址续传。
+ *
+ * 内存控制：
+ *  - 下载直接流式写入临时文件，堆上只有拷贝缓冲区；
+ *  - 每次运行同时在途的文件数受 max-in-flight 限制 (也限制了临时文件占用的磁盘)；
+ *  - XMP 解析只读 JPEG 头部：Range 头部最多 head-bytes，完整文件最多读 parse-max-bytes (读取流按此截断)，
+ *    按实际可能读入的字节数从全局 memory-budget 中申请额度，超出预算的解析排队等待；
+ *    非 JPEG 文件要整文件交给 Imaging 解析，按文件大小申请额度。
+ */
+@Service
+public class PhotoIngestPipeline {
+
+    private static final int DEDUP_CHUNK_SIZE = 500;
+
+    @Autowired
+    private ProjectPhotoMapper projectPhotoMapper;
+
+    @Autowired
+    private ObsService obsService;
+
+    @Autowired
+    private OkHttpClient okHttpClient;
+
+    @Autowired
+    private PhotoProcessor photoProcessor;
+
+    @Autowired
+    private ObsKeyIndex obsKeyIndex;
+
+    @Autowired
+    @Qualifier("ingestDownloadExecutor")
+    private ExecutorService downloadExecutor;
+
+    @Autowired
+    @Qualifier("ingestUploadExecutor")
+    private ExecutorService uploadExecutor;
+
+    @Autowired
+    @Qualifier("ingestParseExecutor")
+    private ExecutorService parseExecutor;
+
+    @Autowired
+    @Qualifier("ingestTransferExecutor")
+    private ScheduledExecutorService transferExecutor;
+
+    @Value("${xima.ingest.max-in-flight:16}")
+    private int maxInFlight;
+
+    @Value("${xima.ingest.memory-budget-mb:256}")
+    private int memoryBudgetMb;
+
+    @Value("${xima.ingest.batch-size:50}")
+    private int batchSize;
+
+    @Value("${xima.ingest.metadata-first:true}")
+    private boolean metadataFirst;
+
+    @Value("${xima.ingest.head-bytes:131072}")
+    private int headBytes;
+
+    @Value("${xima.ingest.parse-max-bytes:1048576}")
+    private int parseMaxBytes;
+
+    @Value("${xima.ingest.transfer-retries:3}")
+    private int transferRetries;
+
+    // 解析阶段的全局内存额度 (单位 KB，所有并发运行共享)
+    private Semaphore memoryBudget;
+    private int memoryBudgetKb;
+
+    // 本节点正在后台传输的路径 (续传时避免同一文件重复排队)
+    private final Set<String> activeTransfers = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        this.memoryBudgetKb = Math.max(1, memoryBudgetMb) * 1024;
+        this.memoryBudget = new Semaphore(memoryBudgetKb, true);
+    }
+
+    /**
+     * 把大疆文件列表同步进 OBS 与 project_photo 表
+     * 元数据优先模式下返回时照片已入库，OBS 传输可能仍在后台进行
+     * @param keepUnparsed XMP 解析失败时是否仍然入库 (仅记录路径，不参与进度计算)
+     */
+    public IngestResult ingest(SysProject project, List<DjiMediaFileDto> djiFiles, boolean keepUnparsed) {
+        return ingest(project, djiFiles, keepUnparsed, () -> { });
+    }
+
+    /**
+     * @param checkpoint 每提交一个文件、每批写库前调用，抛出异常即中止本次入库 (例如同步租约已丢失)
+     */
+    public IngestResult ingest(SysProject project, List<DjiMediaFileDto> djiFiles, boolean keepUnparsed, Runnable checkpoint) {
+        Run run = new Run(project, keepUnparsed, checkpoint);
+
+        // 1. 过滤无关文件并生成云存储路径 (同一路径只保留一份)
+        long t = System.nanoTime();
+        Map<String, DjiMediaFileDto> candidates = new LinkedHashMap<>();
+        for (DjiMediaFileDto djiFile : djiFiles) {
+            String objectKey = toObjectKey(project, djiFile);
+            if (objectKey != null) candidates.putIfAbsent(objectKey, djiFile);
+        }
+        run.listStage.record(t, candidates.size(), 0);
+
+        // 2. 批量查库去重 (每 500 个路径一次 IN 查询，替代逐个 selectCount)
+        //    已入库但原图还没传到 OBS 的记录不再入库，只续传原图
+        t = System.nanoTime();
+        Map<String, Boolean> existing = findExistingUrls(candidates.keySet());
+        Map<String, DjiMediaFileDto> resumable = new LinkedHashMap<>();
+        for (Map.Entry<String, Boolean> row : existing.entrySet()) {
+            if (row.getValue()) resumable.put(row.getKey(), candidates.get(row.getKey()));
+        }
+        candidates.keySet().removeAll(existing.keySet());
+        run.dedupStage.record(t, existing.size(), 0);
+
+        run.result = new IngestResult(djiFiles.size(), existing.size());
+        if (candidates.isEmpty() && resumable.isEmpty()) {
+            return run.result;
+        }
+        // OBS 存在性改为一次列举 + 内存判断 (列举失败时 obsKeys 为 null，退回逐个 HEAD)
+        run.obsKeys = obsKeyIndex.refresh(project);
+        resumeTransfers(run, resumable);
+        if (candidates.isEmpty()) {
+            return run.result;
+        }
+
+        System.out.println("    🔥 待同步新照片 " + candidates.size() + " 张 (已存在 " + existing.size() + " 张)，启动入库流水线"
+                + (metadataFirst ? " [元数据优先]" : "") + "...");
+
+        // 3. 提交流水线任务；在途数量受信号量约束，调用线程兼任批量写库
+        int submitted = 0;
+        int completed = 0;
+        try {
+            for (Map.Entry<String, DjiMediaFileDto> entry : candidates.entrySet()) {
+                while (!run.inFlight.tryAcquire(200, TimeUnit.MILLISECONDS)) {
+                    completed += drain(run);
+                }
+                run.checkpoint.run();
+                if (metadataFirst) {
+                    submitHeadFirst(run, entry.getKey(), entry.getValue());
+                } else {
+                    submitFull(run, entry.getKey(), entry.getValue());
+                }
+                submitted++;
+                completed += drain(run);
+            }
+            while (completed < submitted) {
+                Outcome outcome = run.outcomes.poll(200, TimeUnit.MILLISECONDS);
+                if (outcome != null) {
+                    handle(run, outcome);
+                    completed++;
+                }
+            }
+            flush(run);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("照片同步被中断", e);
+        }
+
+        double wallSeconds = (System.nanoTime() - run.startNanos) / 1e9;
+        System.out.printf("    📊 流水线完成: 新增 %d 张, 失败 %d 张, 后台待传 %d 个, 总耗时 %.1fs%n",
+                run.result.getNewPhotoIds().size(), run.result.getFailed(), run.pendingTransfers.get(), wallSeconds);
+        for (StageMetrics stage : List.of(run.listStage, run.dedupStage, run.headStage, run.downloadStage,
+                run.uploadStage, run.parseStage, run.insertStage)) {
+            System.out.println("       " + stage.summary(wallSeconds));
+        }
+        return run.result;
+    }
+
+    /**
+     * 大疆文件 -> OBS 对象路径；无关的定位辅助文件返回 null
+     */
+    public static String toObjectKey(SysProject project, DjiMediaFileDto djiFile) {
+        String fileName = djiFile.getFileName();
+        if (fileName == null) return null;
+
+        // 文件名黑名单过滤
+        if ("Remote-Control".equals(fileName)
+                || fileName.endsWith(".MRK") || fileName.endsWith(".NAV")
+                || fileName.endsWith(".OBS") || fileName.endsWith(".RTK")
+                || fileName.endsWith("_D")) {
+            return null;
+        }
+        // 强制后缀名补全 (防止部分文件没有后缀)
+        if (!fileName.toLowerCase().endsWith(".jpg") && !fileName.toLowerCase().endsWith(".jpeg")) {
+            fileName = fileName + ".jpeg";
+        }
+        String relativePath = djiFile.getFilePath() == null ? "" : djiFile.getFilePath();
+        if (relativePath.startsWith("/")) {
+            relativePath = relativePath.substring(1);
+        }
+        return "projects/" + project.getId() + "/" + relativePath + "/" + fileName;
+    }
+
+    /**
+     * 库里已有的路径 -> 原图是否仍待传输 (obs_pending)
+     */
+    private Map<String, Boolean> findExistingUrls(Collection<String> objectKeys) {
+        Map<String, Boolean> existing = new HashMap<>();
+        List<String> keys = new ArrayList<>(objectKeys);
+        for (int i = 0; i < keys.size(); i += DEDUP_CHUNK_SIZE) {
+            List<String> chunk = keys.subList(i, Math.min(i + DEDUP_CHUNK_SIZE, keys.size()));
+            QueryWrapper<ProjectPhoto> query = new QueryWrapper<>();
+            query.select("photo_url", "obs_pending").in("photo_url", chunk);
+            for (Map<String, Object> row : projectPhotoMapper.selectMaps(query)) {
+                Object url = row.get("photo_url");
+                Object pending = row.get("obs_pending");
+                if (url != null) {
+                    existing.put(url.toString(), Boolean.TRUE.equals(pending)
+                            || (pending instanceof Number && ((Number) pending).intValue() != 0));
+                }
+            }
+        }
+        return existing;
+    }
+
+    // =========================================================
+    // 提交：元数据优先 / 完整流程
+    // =========================================================
+
+    /**
+     * 元数据优先：Range 取头部 -> 解析 -> 交给写库线程 (入库后再排队后台传输)
+     * 头部取不到或头部里没有 XMP 时退回完整流程
+     */
+    private void submitHeadFirst(Run run, String objectKey, DjiMediaFileDto djiFile) {
+        String fileName = fileNameOf(objectKey);
+        try {
+            CompletableFuture
+                    .supplyAsync(() -> fetchHead(djiFile.getDownloadUrl(), run.headStage), downloadExecutor)
+                    .thenApplyAsync(head -> parseHead(head, fileName, run.parseStage), parseExecutor)
+                    .whenComplete((data, error) -> {
+                        if (error == null && data.isPresent()) {
+                            run.outcomes.add(new Outcome(run.project.getId(), objectKey, fileName,
+                                    djiFile.getDownloadUrl(), data.get(), null, true));
+                            return;
+                        }
+                        // 回调里抛出的异常没人接，必须在这里落成失败结果，否则在途名额不归还，写库线程一直等
+                        try {
+                            submitFull(run, objectKey, djiFile);
+                        } catch (RuntimeException e) {
+                            reject(run, objectKey, fileName, e);
+                        }
+                    });
+        } catch (RejectedExecutionException e) {
+            reject(run, objectKey, fileName, e);
+        }
+    }
+
+    /**
+     * 完整流程：下载完成后上传与解析并行，两者都结束后删除临时文件并交给写库线程
+     */
+    private void submitFull(Run run, String objectKey, DjiMediaFileDto djiFile) {
+        String fileName = fileNameOf(objectKey);
+        SysProject project = run.project;
+
+        CompletableFuture<Path> download;
+        try {
+            download = CompletableFuture.supplyAsync(
+                    () -> downloadToTemp(djiFile.getDownloadUrl(), run.downloadStage), downloadExecutor);
+        } catch (RejectedExecutionException e) {
+            // 线程池已关闭 (停机中)；后续阶段被拒绝时 CompletableFuture 会自己以异常结束，不用额外处理
+            reject(run, objectKey, fileName, e);
+            return;
+        }
+        CompletableFuture<Void> upload = download.thenAcceptAsync(
+                file -> upload(run, objectKey, file, run.uploadStage), uploadExecutor);
+        CompletableFuture<Optional<PhotoData>> parse = download.thenApplyAsync(
+                file -> parseFile(file, fileName, run.parseStage), parseExecutor);
+
+        CompletableFuture.allOf(upload, parse).whenComplete((ignored, error) -> {
+            if (!download.isCompletedExceptionally()) {
+                deleteQuietly(download.join());
+            }
+            if (error != null) {
+                run.outcomes.add(new Outcome(project.getId(), objectKey, fileName, null, null, unwrap(error), false));
+            } else {
+                run.outcomes.add(new Outcome(project.getId(), objectKey, fileName, null, parse.join().orElse(null), null, false));
+            }
+        });
+    }
+
+    /**
+     * 提交不出去的文件记为失败：归还在途名额，路径进 failedKeys 留给下次同步
+     */
+    private void reject(Run run, String objectKey, String fileName, Throwable error) {
+        run.outcomes.add(new Outcome(run.project.getId(), objectKey, fileName, null, null, error, false));
+    }
+
+    // =========================================================
+    // 各阶段实现
+    // =========================================================
+
+    /**
+     * Range 请求文件头部；服务端不支持 Range (返回 200) 时也只读前 head-bytes 字节就断开
+     */
+    private byte[] fetchHead(String url, StageMetrics stage) {
+        long start = System.nanoTime();
+        requireUrl(url, stage);
+        Request request = new Request.Builder().url(url).header("Range", "bytes=0-" + (headBytes - 1)).get().build();
+        try (Response response = okHttpClient.newCall(request).execute()) {
+            if (!response.isSuccessful() || response.body() == null) {
+                throw new IOException("头部下载失败: HTTP " + response.code());
+            }
+            try (InputStream in = response.body().byteStream()) {
+                byte[] head = in.readNBytes(headBytes);
+                stage.record(start, 1, head.length);
+                return head;
+            }
+        } catch (IOException e) {
+            stage.fail();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path downloadToTemp(String url, StageMetrics stage) {
+        long start = System.nanoTime();
+        requireUrl(url, stage);
+        Request request = new Request.Builder().url(url).get().build();
+        try (Response response = okHttpClient.newCall(request).execute()) {
+            if (!response.isSuccessful() || response.body() == null) {
+                throw new IOException("下载失败: HTTP " + response.code());
+            }
+            Path file = Files.createTempFile("xima-ingest-", ".jpg");
+            try (InputStream in = response.body().byteStream()) {
+                long bytes = Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+                stage.record(start, 1, bytes);
+                return file;
+            } catch (IOException e) {
+                deleteQuietly(file);
+                throw e;
+            }
+        } catch (IOException e) {
+            stage.fail();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void upload(Run run, String objectKey, Path file, StageMetrics stage) {
+        long start = System.nanoTime();
+        SysProject project = run.project;
+        try {
+            // 先检查是否存在，不存在再上传 (有对象索引时查内存，否则逐个 HEAD)
+            boolean existsInObs = run.obsKeys != null
+                    ? run.obsKeys.contains(objectKey)
+                    : obsService.doesObjectExist(
+                            project.getObsAk(), project.getObsSk(),
+                            project.getObsEndpoint(), project.getObsBucketName(), objectKey);
+            if (!existsInObs) {
+                obsService.uploadFile(
+                        project.getObsAk(), project.getObsSk(),
+                        project.getObsEndpoint(), project.getObsBucketName(),
+                        objectKey, file);
+                if (run.obsKeys != null) run.obsKeys.markPresent(objectKey);
+            }
+            stage.record(start, 1, existsInObs ? 0 : Files.size(file));
+        } catch (IOException e) {
+            stage.fail();
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            stage.fail();
+            throw e;
+        }
+    }
+
+    private Optional<PhotoData> parseHead(byte[] head, String fileName, StageMetrics stage) {
+        return withMemoryBudget(head.length, stage,
+                () -> photoProcessor.process(new ByteArrayInputStream(head), fileName));
+    }
+
+    private Optional<PhotoData> parseFile(Path file, String fileName, StageMetrics stage) {
+        long size;
+        try {
+            size = Files.size(file);
+        } catch (IOException e) {
+            stage.fail();
+            throw new UncheckedIOException(e);
+        }
+        boolean jpeg;
+        try (InputStream in = Files.newInputStream(file)) {
+            jpeg = JpegXmpReader.isJpeg(in.readNBytes(2));
+        } catch (IOException e) {
+            stage.fail();
+            throw new UncheckedIOException(e);
+        }
+        // JPEG 只跳读到 XMP 段，读取量截断在 parse-max-bytes 内；其他格式整文件读入内存
+        long readLimit = jpeg ? Math.min(size, parseMaxBytes) : size;
+        return withMemoryBudget(readLimit, stage, () -> {
+            try (InputStream in = Files.newInputStream(file)) {
+                return photoProcessor.process(jpeg ? new LimitedInputStream(in, readLimit) : in, fileName);
+            }
+        });
+    }
+
+    /**
+     * 按读入字节数申请解析内存额度后执行
+     */
+    private Optional<PhotoData> withMemoryBudget(long bytes, StageMetrics stage, Callable<Optional<PhotoData>> task) {
+        long start = System.nanoTime();
+        int permits = (int) Math.min(memoryBudgetKb, Math.max(1, (bytes + 1023) / 1024));
+        try {
+            memoryBudget.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stage.fail();
+            throw new CompletionException(e);
+        }
+        try {
+            Optional<PhotoData> data = task.call();
+            stage.record(start, 1, bytes);
+            return data;
+        } catch (Exception e) {
+            stage.fail();
+            throw new CompletionException(e);
+        } finally {
+            memoryBudget.release(permits);
+        }
+    }
+
+    // =========================================================
+    // 后台传输通道 (元数据优先模式下，入库之后再把完整文件搬到 OBS)
+    // =========================================================
+
+    /**
+     * 库里已有记录、原图还没确认传到 OBS 的文件 (上次传输重试用尽或进程重启)，用本次列表里的新下载地址重新排队
+     */
+    private void resumeTransfers(Run run, Map<String, DjiMediaFileDto> resumable) {
+        if (resumable.isEmpty()) return;
+        System.out.println("    🔁 续传原图 " + resumable.size() + " 个 (已入库，OBS 尚缺原图)");
+        for (Map.Entry<String, DjiMediaFileDto> entry : resumable.entrySet()) {
+            String objectKey = entry.getKey();
+            scheduleTransfer(run, new Outcome(run.project.getId(), objectKey, fileNameOf(objectKey),
+                    entry.getValue().getDownloadUrl(), null, null, true));
+        }
+    }
+
+    /**
+     * 排队后台传输 (调用线程)；传完之前该路径计入 failedKeys，所在任务不算入库完成
+     */
+    private void scheduleTransfer(Run run, Outcome outcome) {
+        run.result.failedKeys.add(outcome.objectKey);
+        if (!activeTransfers.add(outcome.objectKey)) {
+            return; // 本节点上一次同步排的传输还没结束
+        }
+        run.pendingTransfers.incrementAndGet();
+        try {
+            transferExecutor.execute(() -> transfer(run, outcome, 1));
+        } catch (RejectedExecutionException e) {
+            // 停机中：记录保留 obs_pending 标记，下次启动后的同步续传
+            finishTransfer(run, outcome);
+        }
+    }
+
+    private void transfer(Run run, Outcome outcome, int attempt) {
+        Path file = null;
+        try {
+            file = downloadToTemp(outcome.downloadUrl, run.transferStage);
+            upload(run, outcome.objectKey, file, run.transferStage);
+            markTransferred(outcome.objectKey);
+            finishTransfer(run, outcome);
+        } catch (RuntimeException e) {
+            Throwable cause = unwrap(e);
+            if (attempt < transferRetries) {
+                long delaySeconds = 1L << attempt; // 2s, 4s, 8s ...
+                System.out.println("       ⏳ 后台传输失败，" + delaySeconds + "s 后重试 (" + attempt + "/" + transferRetries + "): "
+                        + outcome.fileName + ", " + cause.getMessage());
+                try {
+                    transferExecutor.schedule(() -> transfer(run, outcome, attempt + 1), delaySeconds, TimeUnit.SECONDS);
+                } catch (RejectedExecutionException rejected) {
+                    finishTransfer(run, outcome);
+                }
+            } else {
+                run.transferFailures.incrementAndGet();
+                System.err.println("       ❌ 后台传输放弃: " + outcome.objectKey
+                        + " (照片记录已入库并保留待传输标记，下次同步重新下载): " + cause.getMessage());
+                finishTransfer(run, outcome);
+            }
+        } finally {
+            if (file != null) deleteQuietly(file);
+        }
+    }
+
+    /**
+     * 原图已在 OBS：清除待传输标记 (失败也无妨，下次同步会发现对象已存在并再次清除)
+     */
+    private void markTransferred(String objectKey) {
+        try {
+            UpdateWrapper<ProjectPhoto> update = new UpdateWrapper<>();
+            update.set("obs_pending", false).eq("photo_url", objectKey);
+            projectPhotoMapper.update(null, update);
+        } catch (Exception e) {
+            System.err.println("       ⚠️ 清除待传输标记失败: " + objectKey + ", " + e.getMessage());
+        }
+    }
+
+    private void finishTransfer(Run run, Outcome outcome) {
+        activeTransfers.remove(outcome.objectKey);
+        if (run.pendingTransfers.decrementAndGet() == 0) {
+            double wallSeconds = (System.nanoTime() - run.startNanos) / 1e9;
+            System.out.println(">>> [后台传输] 项目 [" + run.project.getProjectName() + "] 本轮完整文件已全部处理，失败 "
+                    + run.transferFailures.get() + " 个");
+            System.out.println("       " + run.transferStage.summary(wallSeconds));
+        }
+    }
+
+    // =========================================================
+    // 写库 (调用线程)
+    // =========================================================
+
+    private int drain(Run run) {
+        int n = 0;
+        Outcome outcome;
+        while ((outcome = run.outcomes.poll()) != null) {
+            handle(run, outcome);
+            n++;
+        }
+        return n;
+    }
+
+    private void handle(Run run, Outcome outcome) {
+        run.inFlight.release();
+        if (outcome.error != null) {
+            run.result.failed++;
+            run.result.failedKeys.add(outcome.objectKey);
+            System.out.println("       ⚪ [跳过] " + outcome.fileName + ": " + outcome.error.getMessage());
+            return;
+        }
+        if (outcome.data == null && !run.keepUnparsed) {
+            // 没入库也要计入 failedKeys：否则手动同步把所在任务算作已入库、推进水位，定时同步 (保留无 XMP 照片) 就再也看不到它
+            run.result.failed++;
+            run.result.failedKeys.add(outcome.objectKey);
+            System.out.println("       ⚠️ 无 XMP 数据，未入库: " + outcome.fileName);
+            return;
+        }
+        run.batch.add(outcome);
+        if (run.batch.size() >= batchSize) {
+            flush(run);
+        }
+    }
+
+    /**
+     * 批量写库；整批失败时退化为逐行插入，避免一行坏数据拖垮整批
+     */
+    private void flush(Run run) {
+        List<Outcome> batch = run.batch;
+        if (batch.isEmpty()) return;
+        run.checkpoint.run();
+        long start = System.nanoTime();
+        List<ProjectPhoto> photos = new ArrayList<>(batch.size());
+        for (Outcome outcome : batch) {
+            photos.add(outcome.toPhoto());
+        }
+        try {
+            projectPhotoMapper.insertBatch(photos);
+        } catch (Exception e) {
+            System.err.println("       批量入库失败，改为逐行插入: " + e.getMessage());
+            List<ProjectPhoto> inserted = new ArrayList<>();
+            List<Outcome> insertedOutcomes = new ArrayList<>();
+            for (int i = 0; i < photos.size(); i++) {
+                try {
+                    projectPhotoMapper.insert(photos.get(i));
+                    inserted.add(photos.get(i));
+                    insertedOutcomes.add(batch.get(i));
+                } catch (Exception rowError) {
+                    run.result.failed++;
+                    run.result.failedKeys.add(batch.get(i).objectKey);
+                    run.insertStage.fail();
+                    System.err.println("       入库失败: " + batch.get(i).fileName + ", " + rowError.getMessage());
+                }
+            }
+            photos = inserted;
+            batch.clear();
+            batch.addAll(insertedOutcomes);
+        }
+        for (int i = 0; i < photos.size(); i++) {
+            Outcome outcome = batch.get(i);
+            if (outcome.data != null) {
+                run.result.newPhotoIds.add(photos.get(i).getId());
+            } else {
+                run.result.unparsedCount++;
+            }
+            // 记录已落库，再把完整文件交给后台传输
+            if (outcome.transferPending) {
+                scheduleTransfer(run, outcome);
+            }
+        }
+        run.insertStage.record(start, photos.size(), 0);
+        batch.clear();
+    }
+
+    // =========================================================
+    // 工具方法与内部类
+    // =========================================================
+
+    private static String fileNameOf(String objectKey) {
+        return objectKey.substring(objectKey.lastIndexOf('/') + 1);
+    }
+
+    private static void requireUrl(String url, StageMetrics stage) {
+        if (url == null || url.isEmpty()) {
+            stage.fail();
+            throw new IllegalStateException("无下载地址");
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("       临时文件删除失败: " + e.getMessage());
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException
+                || error instanceof UncheckedIOException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    /**
+     * 最多读出 limit 字节的输入流 (之后视为流结束)
+     */
+    static class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = super.read();
+            if (b >= 0) remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) remaining -= n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            if (skipped > 0) remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    /**
+     * 一次同步运行的上下文
+     */
+    private class Run {
+        final SysProject project;
+        final boolean keepUnparsed;
+        final Runnable checkpoint;
+        final long startNanos = System.nanoTime();
+        final Semaphore inFlight = new Semaphore(Math.max(1, maxInFlight));
+        final BlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<>();
+        final List<Outcome> batch = new ArrayList<>();
+        final AtomicInteger pendingTransfers = new AtomicInteger();
+        final AtomicInteger transferFailures = new AtomicInteger();
+        IngestResult result;
+        volatile ObsKeyIndex.KeySet obsKeys;  // null 表示逐个检查 OBS
+
+        final StageMetrics listStage = new StageMetrics("过滤");
+        final StageMetrics dedupStage = new StageMetrics("去重");
+        final StageMetrics headStage = new StageMetrics("头部");
+        final StageMetrics downloadStage = new StageMetrics("下载");
+        final StageMetrics uploadStage = new StageMetrics("上传");
+        final StageMetrics parseStage = new StageMetrics("解析");
+        final StageMetrics insertStage = new StageMetrics("入库");
+        final StageMetrics transferStage = new StageMetrics("后台传输");
+
+        Run(SysProject project, boolean keepUnparsed, Runnable checkpoint) {
+            this.project = project;
+            this.keepUnparsed = keepUnparsed;
+            this.checkpoint = checkpoint;
+        }
+    }
+
+    /**
+     * 单个文件的流水线产出
+     */
+    private static class Outcome {
+        final Integer projectId;
+        final String objectKey;
+        final String fileName;
+        final String downloadUrl;       // 仅后台传输需要
+        final PhotoData data;           // null 表示没有 XMP 数据
+        final Throwable error;          // 下载或上传失败
+        final boolean transferPending;  // 入库后还需要后台传输完整文件
+
+        Outcome(Integer projectId, String objectKey, String fileName, String downloadUrl,
+                PhotoData data, Throwable error, boolean transferPending) {
+            this.projectId = projectId;
+            this.objectKey = objectKey;
+            this.fileName = fileName;
+            this.downloadUrl = downloadUrl;
+            this.data = data;
+            this.error = error;
+            this.transferPending = transferPending;
+        }
+
+        ProjectPhoto toPhoto() {
+            ProjectPhoto photo = new ProjectPhoto();
+            photo.setProjectId(projectId);
+            photo.setPhotoUrl(objectKey);
+            // 默认为非拐点，参与计算
+            photo.setIsMarker(false);
+            photo.setObsPending(transferPending);
+            if (data == null) {
+                // 解析失败也入库，但没有详细数据
+                photo.setShootTime(LocalDateTime.now());
+                return photo;
+            }
+            photo.setShootTime(data.getCaptureTime());
+
+            // 存入飞机坐标 (用于地图显示飞机位置)
+            photo.setGpsLat(BigDecimal.valueOf(data.getLatitude()));
+            photo.setGpsLng(BigDecimal.valueOf(data.getLongitude()));
+
+            // 存入激光目标点坐标 (用于进度计算判定)，-1 为无效
+            if (data.getLrfTargetLat() != -1 && data.getLrfTargetLng() != -1) {
+                photo.setLrfTargetLat(BigDecimal.valueOf(data.getLrfTargetLat()));
+                photo.setLrfTargetLng(BigDecimal.valueOf(data.getLrfTargetLng()));
+            }
+
+            photo.setLaserDistance(BigDecimal.valueOf(data.getDistance()));
+            photo.setAbsoluteAltitude(BigDecimal.valueOf(data.getDroneAbsoluteAltitude()));
+            return photo;
+        }
+    }
+
+    /**
+     * 单个阶段的吞吐统计
+     */
+    private static class StageMetrics {
+        private final String name;
+        private final AtomicLong items = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+
+        StageMetrics(String name) {
+            this.name = name;
+        }
+
+        void record(long startNanos, long count, long byteCount) {
+            busyNanos.addAndGet(System.nanoTime() - startNanos);
+            items.addAndGet(count);
+            bytes.addAndGet(byteCount);
+        }
+
+        void fail() {
+            failures.incrementAndGet();
+        }
+
+        String summary(double wallSeconds) {
+            double mb = bytes.get() / 1024.0 / 1024.0;
+            double busySeconds = busyNanos.get() / 1e9;
+            double wall = Math.max(wallSeconds, 1e-3);
+            return String.format("[%s] %d 项, %.1f MB, 失败 %d, 累计耗时 %.1fs, 吞吐 %.1f 项/s, %.1f MB/s",
+                    name, items.get(), mb, failures.get(), busySeconds, items.get() / wall, mb / wall);
+        }
+    }
+
+    /**
+     * 一次同步的结果
+     */
+    public static class IngestResult {
+        private final int listedCount;        // 大疆返回的文件数
+        private final int alreadySyncedCount; // 库里已有、被去重跳过的数量
+        private final List<Long> newPhotoIds = new ArrayList<>(); // 带 XMP 数据的新照片 (触发增量计算)
+        private int unparsedCount;            // 无 XMP 数据但仍入库的数量
+        private int failed;
+        // 下载/上传/入库失败、无 XMP 未入库，或原图仍在后台传输 (OBS 未确认) 的路径：所在任务不推进水位，下次同步重新列出
+        private final Set<String> failedKeys = new HashSet<>();
+
+        IngestResult(int listedCount, int alreadySyncedCount) {
+            this.listedCount = listedCount;
+            this.alreadySyncedCount = alreadySyncedCount;
+        }
+
+        public int getListedCount() { return listedCount; }
+        public int getAlreadySyncedCount() { return alreadySyncedCount; }
+        public List<Long> getNewPhotoIds() { return newPhotoIds; }
+        public int getSuccessCount() { return newPhotoIds.size(); }
+        public int getUnparsedCount() { return unparsedCount; }
+        public int getFailed() { return failed; }
+        public Set<String> getFailedKeys() { return failedKeys; }
+    }
+}
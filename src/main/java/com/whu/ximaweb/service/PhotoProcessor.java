@@ -1,6 +1,7 @@
 package com.whu.ximaweb.service;
 
 import com.whu.ximaweb.model.PhotoData;
+import com.whu.ximaweb.util.JpegXmpReader;
 import org.apache.commons.imaging.Imaging;
 import org.springframework.stereotype.Component;
 
@@ -8,40 +9,48 @@ import java.io.InputStream;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
 import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 @Component
 public class PhotoProcessor {
 
     private static final DateTimeFormatter XMP_DATE_FORMATTER = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
 
+    /** 需要的 XMP 属性：drone-dji 命名空间下全部 + 两个时间字段 */
+    private static final String DJI_PREFIX = "drone-dji:";
+    private static final String[] EXTRA_ATTRIBUTES = {"xmp:CreateDate", "photoshop:DateCreated"};
+
+    /**
+     * 解析照片 XMP
+     * JPEG 只读到 APP1 中的 XMP 段为止，可以传入完整文件，也可以只传文件头部 (如 Range 取到的前 head-bytes 字节)
+     */
     public Optional<PhotoData> process(InputStream inputStream, String fileName) {
         try {
-            byte[] imageBytes = inputStream.readAllBytes();
-            final String xmpXml = Imaging.getXmpXml(imageBytes);
+            final String xmpXml = readXmp(inputStream);
 
             if (xmpXml == null || xmpXml.isEmpty()) {
                 return Optional.empty();
             }
+            // 单遍扫描出全部需要的属性，后面按名取值
+            final Map<String, String> attributes = JpegXmpReader.scanAttributes(xmpXml, DJI_PREFIX, EXTRA_ATTRIBUTES);
 
             // 1. 解析时间
-            LocalDateTime captureTime = parseXmpAttributeAsTime(xmpXml, "xmp:CreateDate");
+            LocalDateTime captureTime = parseXmpAttributeAsTime(attributes, "xmp:CreateDate");
 
             // 2. 解析距离和高度
-            double distance = parseXmpAttributeAsDouble(xmpXml, "drone-dji:LRFTargetDistance");
-            double targetAbsAltitude = parseXmpAttributeAsDouble(xmpXml, "drone-dji:LRFTargetAbsAlt");
-            double droneAbsAltitude = parseXmpAttributeAsDouble(xmpXml, "drone-dji:AbsoluteAltitude");
+            double distance = parseXmpAttributeAsDouble(attributes, "drone-dji:LRFTargetDistance");
+            double targetAbsAltitude = parseXmpAttributeAsDouble(attributes, "drone-dji:LRFTargetAbsAlt");
+            double droneAbsAltitude = parseXmpAttributeAsDouble(attributes, "drone-dji:AbsoluteAltitude");
 
             // 3. 解析两套坐标
             // Set A: 飞机自身坐标
-            double droneLat = parseXmpAttributeAsDouble(xmpXml, "drone-dji:GpsLatitude");
-            double droneLng = parseXmpAttributeAsDouble(xmpXml, "drone-dji:GpsLongitude");
+            double droneLat = parseXmpAttributeAsDouble(attributes, "drone-dji:GpsLatitude");
+            double droneLng = parseXmpAttributeAsDouble(attributes, "drone-dji:GpsLongitude");
 
             // Set B: 激光目标点坐标 (新增)
-            double targetLat = parseXmpAttributeAsDouble(xmpXml, "drone-dji:LRFTargetLat");
-            double targetLng = parseXmpAttributeAsDouble(xmpXml, "drone-dji:LRFTargetLon");
+            double targetLat = parseXmpAttributeAsDouble(attributes, "drone-dji:LRFTargetLat");
+            double targetLng = parseXmpAttributeAsDouble(attributes, "drone-dji:LRFTargetLon");
 
             // 兜底：如果飞机坐标没解析到，尝试用目标点填充
             if (droneLat == -1) droneLat = targetLat;
@@ -49,7 +58,7 @@ public class PhotoProcessor {
 
             // 4. 时间兜底
             if (captureTime == null) {
-                captureTime = parseXmpAttributeAsTime(xmpXml, "photoshop:DateCreated");
+                captureTime = parseXmpAttributeAsTime(attributes, "photoshop:DateCreated");
             }
             if (captureTime == null) {
                  return Optional.empty();
@@ -76,8 +85,23 @@ public class PhotoProcessor {
         }
     }
 
-    private LocalDateTime parseXmpAttributeAsTime(String xmpXml, String attributeName) {
-        String dateString = findXmpAttributeValue(xmpXml, attributeName);
+    /**
+     * JPEG：流式跳读到 XMP 段；其他格式 (少见) 退回整文件解析
+     */
+    private String readXmp(InputStream inputStream) throws Exception {
+        byte[] soi = inputStream.readNBytes(2);
+        if (JpegXmpReader.isJpeg(soi)) {
+            return JpegXmpReader.readXmpAfterSoi(inputStream);
+        }
+        byte[] rest = inputStream.readAllBytes();
+        byte[] imageBytes = new byte[soi.length + rest.length];
+        System.arraycopy(soi, 0, imageBytes, 0, soi.length);
+        System.arraycopy(rest, 0, imageBytes, soi.length, rest.length);
+        return Imaging.getXmpXml(imageBytes);
+    }
+
+    private LocalDateTime parseXmpAttributeAsTime(Map<String, String> attributes, String attributeName) {
+        String dateString = attributes.get(attributeName);
         if (dateString != null) {
             try {
                 return OffsetDateTime.parse(dateString, XMP_DATE_FORMATTER).toLocalDateTime();
@@ -86,8 +110,8 @@ public class PhotoProcessor {
         return null;
     }
 
-    private double parseXmpAttributeAsDouble(String xmpXml, String attributeName) {
-        String valueStr = findXmpAttributeValue(xmpXml, attributeName);
+    private double parseXmpAttributeAsDouble(Map<String, String> attributes, String attributeName) {
+        String valueStr = attributes.get(attributeName);
         if (valueStr != null) {
             try {
                 return Double.parseDouble(valueStr);
@@ -95,12 +119,4 @@ public class PhotoProcessor {
         }
         return -1;
     }
-
-    private String findXmpAttributeValue(String xmpXml, String attributeName) {
-        if (xmpXml == null) return null;
-        Pattern pattern = Pattern.compile(attributeName + "=\"([^\"]*)\"");
-        Matcher matcher = pattern.matcher(xmpXml);
-        if (matcher.find()) return matcher.group(1);
-        return null;
-    }
-}
\ No newline at end of file
+}
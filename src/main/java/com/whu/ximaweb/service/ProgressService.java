@@ -1,5 +1,7 @@
 package com.whu.ximaweb.service;
 
+import java.util.Collection;
+
 public interface ProgressService {
     void updateProgress(String key, int percent);
     Integer getProgress(String key);
@@ -7,6 +9,9 @@ public interface ProgressService {
     // 如果用了上面代码里的status功能，这里也要加上定义
     void updateStatus(String key, String status);
     String getStatus(String key);
+    // 全量重算：用全部历史照片重跑每栋楼的每一天
     void calculateProjectProgress(Integer projectId);
+    // 增量计算：只重算新照片命中的 (楼栋, 日期) 以及其后的天
+    void calculateProjectProgressIncremental(Integer projectId, Collection<Long> newPhotoIds);
     String getProjectFullStatusJson(Integer projectId);
 }
\ No newline at end of file
@@ -0,0 +1,172 @@
+package com.whu.ximaweb.service;
+
+import com.obs.services.model.HttpMethodEnum;
+import com.obs.services.model.TemporarySignatureRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 照片临时访问链接 (签名 URL) 缓存
+ * 同一张照片的签名 URL 在有效期的前 80% 内直接复用，图库反复点开时不再逐张重新签名；
+ * 剩余 20% 的有效期留给前端加载和浏览，避免拿到马上过期的链接。
+ * 容量有上限，按最久未使用淘汰。
+ */
+@Component
+public class SignedUrlCache {
+
+    @Autowired
+    private ObsClientRegistry obsClientRegistry;
+
+    // 照片统一存放在系统默认桶
+    @Value("${xima.obs.default-endpoint}")
+    private String obsEndpoint;
+
+    @Value("${xima.obs.default-bucket}")
+    private String obsBucket;
+
+    @Value("${xima.obs.default-ak}")
+    private String obsAccessKey;
+
+    @Value("${xima.obs.default-sk}")
+    private String obsSecretKey;
+
+    @Value("${xima.obs.signed-url.ttl-seconds:3600}")
+    private long ttlSeconds;
+
+    @Value("${xima.obs.signed-url.reuse-ratio:0.8}")
+    private double reuseRatio;
+
+    @Value("${xima.obs.signed-url.max-entries:20000}")
+    private int maxEntries;
+
+    // 访问顺序 LinkedHashMap 实现 LRU，所有读写在 synchronized(cache) 中
+    private final LinkedHashMap<String, Entry> cache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > maxEntries) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong reportedRequests = new AtomicLong();
+
+    /**
+     * 批量获取签名 URL
+     * 先查缓存，未命中的一次性借用客户端集中签名
+     * @return objectKey -> 签名 URL；签名失败的 Key 不在结果中，由调用方决定降级方式
+     */
+    public Map<String, String> signAll(Collection<String> objectKeys) {
+        Map<String, String> result = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        synchronized (cache) {
+            for (String key : objectKeys) {
+                if (key == null || key.isEmpty() || result.containsKey(key)) continue;
+                Entry entry = cache.get(normalize(key));
+                if (entry != null && entry.reuseUntil > now) {
+                    hits.incrementAndGet();
+                    result.put(key, entry.url);
+                } else {
+                    misses.incrementAndGet();
+                    missing.add(key);
+                }
+            }
+        }
+        if (missing.isEmpty()) return result;
+
+        long reuseMillis = (long) (ttlSeconds * 1000 * Math.min(1.0, Math.max(0.0, reuseRatio)));
+        Map<String, Entry> signed = new LinkedHashMap<>();
+        try {
+            obsClientRegistry.withClient(obsAccessKey, obsSecretKey, obsEndpoint, client -> {
+                for (String key : missing) {
+                    try {
+                        TemporarySignatureRequest request = new TemporarySignatureRequest(HttpMethodEnum.GET, ttlSeconds);
+                        request.setBucketName(obsBucket);
+                        request.setObjectKey(normalize(key));
+                        String url = client.createTemporarySignature(request).getSignedUrl();
+                        signed.put(key, new Entry(url, now + reuseMillis));
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                        System.err.println("签名URL生成失败 [" + key + "]: " + e.getMessage());
+                    }
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            failures.addAndGet(missing.size() - signed.size());
+            System.err.println("签名URL生成失败: " + e.getMessage());
+        }
+
+        synchronized (cache) {
+            for (Map.Entry<String, Entry> e : signed.entrySet()) {
+                cache.put(normalize(e.getKey()), e.getValue());
+                result.put(e.getKey(), e.getValue().url);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 单张照片的签名 URL，失败返回 null
+     */
+    public String sign(String objectKey) {
+        return signAll(List.of(objectKey)).get(objectKey);
+    }
+
+    /**
+     * 命中 / 未命中 / 淘汰 / 失败 / 当前条目数
+     */
+    public String getStats() {
+        long h = hits.get(), m = misses.get();
+        double hitRate = (h + m) == 0 ? 0 : h * 100.0 / (h + m);
+        int size;
+        synchronized (cache) {
+            size = cache.size();
+        }
+        return String.format("命中 %d, 未命中(已签名) %d (命中率 %.1f%%), 淘汰 %d, 失败 %d, 缓存条目 %d",
+                h, m, hitRate, evictions.get(), failures.get(), size);
+    }
+
+    /**
+     * 定时输出命中率 (期间没有请求则不输出)
+     */
+    @Scheduled(fixedDelay = 600000, initialDelay = 600000)
+    public void reportStats() {
+        long total = hits.get() + misses.get();
+        if (reportedRequests.getAndSet(total) != total) {
+            System.out.println(">>> [签名URL缓存] " + getStats());
+        }
+    }
+
+    // 去掉开头的 "/" (如果有)
+    private static String normalize(String objectKey) {
+        return objectKey.startsWith("/") ? objectKey.substring(1) : objectKey;
+    }
+
+    private static class Entry {
+        final String url;
+        final long reuseUntil;
+
+        Entry(String url, long reuseUntil) {
+            this.url = url;
+            this.reuseUntil = reuseUntil;
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package com.whu.ximaweb.service;
+
+import com.whu.ximaweb.dto.dji.DjiMediaFileDto;
+import com.whu.ximaweb.dto.dji.DjiTaskMedia;
+import com.whu.ximaweb.mapper.SysProjectMapper;
+import com.whu.ximaweb.mapper.SysTaskLogMapper;
+import com.whu.ximaweb.model.SysProject;
+import com.whu.ximaweb.model.SysTaskLog;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 照片同步调度器 (定时同步与手动同步共用一个工作队列)
+ *  - 全局并发上限：同时同步的项目数不超过 max-concurrent，一个大疆租户慢不会拖住其他项目；
+ *  - 项目间公平：每个项目同一时刻最多一个同步在跑，有排队任务的项目轮流获得空闲名额；
+ *  - 每个项目可单独设置同步间隔 (sys_project.sync_interval_minutes，为空用全局默认)；
+ *  - 合并：同一项目、同一关键词已有排队中的任务时，新请求 (定时或手动) 直接等待那次的结果，不重复跑；
+ *  - 增量：使用项目默认关键词时只扫描同步水位之后的任务 (见 DjiSyncWatermarkService)，深度重扫忽略水位并重建。
+ */
+@Service
+public class SyncScheduler {
+
+    @Autowired
+    private SysProjectMapper sysProjectMapper;
+
+    @Autowired
+    private SysTaskLogMapper sysTaskLogMapper;
+
+    @Autowired
+    private DjiService djiService;
+
+    @Autowired
+    private PhotoIngestPipeline photoIngestPipeline;
+
+    @Autowired
+    private ProgressService progressService;
+
+    @Autowired
+    private JobLeaseService jobLeaseService;
+
+    @Autowired
+    private DjiSyncWatermarkService djiSyncWatermarkService;
+
+    @Autowired
+    @Qualifier("syncExecutor")
+    private ExecutorService syncExecutor;
+
+    @Value("${xima.sync.max-concurrent:4}")
+    private int maxConcurrent;
+
+    @Value("${xima.sync.default-interval-minutes:60}")
+    private int defaultIntervalMinutes;
+
+    // 单次同步的租约时长 (执行期间自动续约)
+    private static final Duration RUN_LEASE_TTL = Duration.ofMinutes(5);
+
+    // 以下队列状态都在 synchronized(this) 中读写
+    private final Map<Integer, ArrayDeque<SyncJob>> queues = new HashMap<>();
+    private final ArrayDeque<Integer> readyProjects = new ArrayDeque<>(); // 有排队任务且当前空闲的项目 (轮转顺序)
+    private final Set<Integer> runningProjects = new HashSet<>();
+
+    // 上次定时入队时间 (项目ID -> 毫秒)
+    private final Map<Integer, Long> lastScheduledAt = new ConcurrentHashMap<>();
+
+    /**
+     * 定时检查：把到了同步间隔的项目放入队列
+     */
+    public void enqueueDueProjects() {
+        List<SysProject> projects = sysProjectMapper.selectList(null);
+        if (projects == null || projects.isEmpty()) {
+            System.out.println("⚠️ 数据库中没有项目，无需同步。");
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int enqueued = 0;
+        for (SysProject project : projects) {
+            Long last = lastScheduledAt.get(project.getId());
+            if (last != null && now - last < intervalMinutes(project) * 60_000L) continue;
+            // 多节点部署时每个同步周期只由一个节点入队：周期租约持有到下个周期前 30 秒，执行完不释放
+            Duration slot = Duration.ofMinutes(intervalMinutes(project)).minusSeconds(30);
+            if (!jobLeaseService.tryAcquire("photo-sync:slot:" + project.getId(), slot)) continue;
+            lastScheduledAt.put(project.getId(), now);
+            submit(project, defaultKeyword(project), false, false);
+            enqueued++;
+        }
+        if (enqueued > 0) {
+            System.out.println("⏰ [同步调度] 本轮到期项目 " + enqueued + " 个，" + describeQueue());
+        }
+    }
+
+    /**
+     * 手动同步：进入同一队列，与定时同步串行、可合并
+     * @param keyword 临时关键词，为空时使用项目配置
+     * @param deepRescan 忽略同步水位，重新扫描最近 90 天
+     */
+    public CompletableFuture<SyncOutcome> submitManual(SysProject project, String keyword, boolean deepRescan) {
+        String target = (keyword != null && !keyword.trim().isEmpty()) ? keyword.trim() : defaultKeyword(project);
+        return submit(project, target, true, deepRescan);
+    }
+
+    /**
+     * 项目的同步间隔 (分钟)
+     */
+    public int intervalMinutes(SysProject project) {
+        Integer minutes = project.getSyncIntervalMinutes();
+        return minutes != null && minutes > 0 ? minutes : defaultIntervalMinutes;
+    }
+
+    private synchronized CompletableFuture<SyncOutcome> submit(SysProject project, String keyword, boolean manual, boolean deepRescan) {
+        ArrayDeque<SyncJob> queue = queues.computeIfAbsent(project.getId(), id -> new ArrayDeque<>());
+        for (SyncJob pending : queue) {
+            if (pending.keyword.equals(keyword) && pending.deepRescan == deepRescan && pending.manual == manual) {
+                // 已有同样的排队任务，合并 (手动与定时的入库规则、结果处理不同，不互相合并)
+                return pending.future;
+            }
+        }
+        SyncJob job = new SyncJob(project, keyword, manual, deepRescan);
+        queue.add(job);
+        if (!runningProjects.contains(project.getId()) && !readyProjects.contains(project.getId())) {
+            readyProjects.add(project.getId());
+        }
+        dispatch();
+        return job.future;
+    }
+
+    /**
+     * 在并发上限内按项目轮转派发
+     */
+    private synchronized void dispatch() {
+        while (runningProjects.size() < Math.max(1, maxConcurrent) && !readyProjects.isEmpty()) {
+            Integer projectId = readyProjects.poll();
+            SyncJob job = queues.get(projectId).poll();
+            if (job == null) continue;
+            runningProjects.add(projectId);
+            try {
+                syncExecutor.execute(() -> execute(job));
+            } catch (RejectedExecutionException e) {
+                // 线程池已关闭 (停机中)：撤销运行标记，该项目排队中的请求一并结束，避免调用方一直等
+                runningProjects.remove(projectId);
+                job.future.completeExceptionally(e);
+                ArrayDeque<SyncJob> queue = queues.remove(projectId);
+                if (queue != null) {
+                    for (SyncJob queued : queue) queued.future.completeExceptionally(e);
+                }
+                System.err.println("⚠️ [同步调度] 同步线程池拒绝任务，项目 " + projectId + " 的同步请求已取消: " + e.getMessage());
+            }
+        }
+    }
+
+    private void execute(SyncJob job) {
+        try {
+            // 同一项目在整个集群内同一时刻只有一个节点在同步
+            // 租约丢失 (续约失败超过 TTL 或已被接管) 时在下一次写库前中止，避免两个节点同时写同一项目
+            boolean ran = jobLeaseService.runExclusive("photo-sync:run:" + job.project.getId(), RUN_LEASE_TTL, true,
+                    lease -> job.future.complete(job.manual ? runManual(job, lease) : runScheduled(job, lease)));
+            if (!ran) {
+                System.out.println("    ⏭️ [" + job.project.getProjectName() + "] 其他节点正在同步该项目，本次跳过。");
+                if (job.manual) {
+                    job.future.completeExceptionally(new IllegalStateException("该项目正在其他节点同步中，请稍后再试"));
+                } else {
+                    job.future.complete(new SyncOutcome(0, 0));
+                }
+            }
+        } catch (Exception e) {
+            job.future.completeExceptionally(e);
+        } finally {
+            finish(job.project.getId());
+        }
+    }
+
+    private synchronized void finish(Integer projectId) {
+        runningProjects.remove(projectId);
+        ArrayDeque<SyncJob> queue = queues.get(projectId);
+        if (queue != null && !queue.isEmpty()) {
+            // 排到队尾，让其他等待中的项目先跑
+            readyProjects.add(projectId);
+        } else {
+            queues.remove(projectId);
+        }
+        dispatch();
+    }
+
+    private synchronized String describeQueue() {
+        int queued = 0;
+        for (ArrayDeque<SyncJob> queue : queues.values()) queued += queue.size();
+        return "运行中 " + runningProjects.size() + " 个，排队 " + queued + " 个";
+    }
+
+    // =========================================================
+    // 单个项目的同步
+    // =========================================================
+
+    /**
+     * 定时同步：大疆文件列表 -> 入库流水线 (保留无 XMP 的照片) -> 增量计算 -> 记录日志
+     */
+    private SyncOutcome runScheduled(SyncJob job, JobLeaseService.Lease lease) {
+        SysProject project = job.project;
+        try {
+            System.out.println(">>> 正在扫描项目: " + project.getProjectName());
+
+            Scan scan = scan(job);
+            List<DjiMediaFileDto> djiFiles = scan.files();
+
+            if (djiFiles.isEmpty()) {
+                lease.check();
+                advanceWatermark(job, scan, null);
+                // 即使没有新照片，也记录一次"连接成功"的心跳日志，让面板显示"最近同步：刚刚"
+                writeLog(project.getId(), 1, "连接正常，当前无新照片");
+                System.out.println("    ⚪ [" + project.getProjectName() + "] 未发现新照片，跳过后续处理。");
+                return new SyncOutcome(0, 0);
+            }
+
+            System.out.println("    🔥 [" + project.getProjectName() + "] 发现 " + djiFiles.size() + " 张潜在照片，开始处理...");
+
+            PhotoIngestPipeline.IngestResult ingestResult = photoIngestPipeline.ingest(project, djiFiles, true, lease::check);
+            int successCount = ingestResult.getSuccessCount();
+            lease.check();
+            advanceWatermark(job, scan, ingestResult.getFailedKeys());
+
+            System.out.println("    ✅ [" + project.getProjectName() + "] 项目同步完成，新增入库: " + successCount + " 张");
+
+            // 智能计算触发逻辑：只有新照片入库才计算
+            if (successCount > 0) {
+                System.out.println("    ⚡ 监测到有新照片入库，正在触发 [Actual表增量计算]...");
+                lease.check();
+                try {
+                    progressService.calculateProjectProgressIncremental(project.getId(), ingestResult.getNewPhotoIds());
+                    System.out.println("    ✅ 实际进度 (ActualProgress) 计算并更新完成！");
+                } catch (Exception e) {
+                    System.err.println("    ❌ 进度计算发生异常: " + e.getMessage());
+                    e.printStackTrace();
+                }
+            } else {
+                System.out.println("    💤 本次无新照片，跳过 Actual 表计算以节约资源。");
+            }
+
+            writeLog(project.getId(), 1, successCount > 0 ? "同步完成，新增照片 " + successCount + " 张" : "检查完毕，无新内容");
+            return new SyncOutcome(djiFiles.size(), successCount);
+
+        } catch (Exception e) {
+            System.err.println("❌ 项目处理异常 [" + project.getProjectName() + "]: " + e.getMessage());
+            try {
+                writeLog(project.getId(), 0, "同步异常: " + e.getMessage());
+            } catch (Exception ex) {
+                // 防止日志记录本身失败导致循环报错，吞掉
+            }
+            e.printStackTrace();
+            throw e;
+        }
+    }
+
+    /**
+     * 手动同步：不保留无 XMP 的照片，结果返回给接口
+     */
+    private SyncOutcome runManual(SyncJob job, JobLeaseService.Lease lease) {
+        SysProject project = job.project;
+        try {
+            Scan scan = scan(job);
+            List<DjiMediaFileDto> djiFiles = scan.files();
+
+            if (djiFiles.isEmpty()) {
+                lease.check();
+                advanceWatermark(job, scan, null);
+                // 即使没找到文件，也记录一条"成功"日志，证明系统检查过了
+                writeLog(project.getId(), 1, "手动检查完毕，司空平台无新文件");
+                return new SyncOutcome(0, 0);
+            }
+
+            PhotoIngestPipeline.IngestResult ingestResult = photoIngestPipeline.ingest(project, djiFiles, false, lease::check);
+            int successCount = ingestResult.getSuccessCount();
+            lease.check();
+            advanceWatermark(job, scan, ingestResult.getFailedKeys());
+
+            if (successCount > 0) {
+                lease.check();
+                progressService.calculateProjectProgressIncremental(project.getId(), ingestResult.getNewPhotoIds());
+                writeLog(project.getId(), 1, "手动同步完成，新增 " + successCount + " 张");
+            } else {
+                writeLog(project.getId(), 1, "手动检查完毕，云端文件均已同步");
+            }
+            return new SyncOutcome(djiFiles.size(), successCount);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            // 异常情况也记录日志
+            writeLog(project.getId(), 0, "手动同步异常: " + e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * 向司空查询待同步的任务与文件
+     * 只有项目默认关键词才使用水位 (临时关键词的手动同步按全量扫描，也不改动水位)
+     * 扫描结果 (全部任务的媒体条目) 收齐后再一次交给入库流水线：去重查询和 OBS 列举按整批做一次，
+     * 水位也要按任务判断是否全部入库；单次扫描的条目数由水位 (只查水位之后的任务) 控制。
+     */
+    private Scan scan(SyncJob job) {
+        SysProject project = job.project;
+        boolean useWatermark = job.keyword.equals(defaultKeyword(project));
+        DjiSyncWatermarkService.Snapshot watermark = useWatermark && !job.deepRescan
+                ? djiSyncWatermarkService.load(project.getId()) : null;
+        if (job.deepRescan) {
+            System.out.println("    🔍 [" + project.getProjectName() + "] 深度重扫，忽略同步水位");
+        }
+
+        List<DjiTaskMedia> tasks = djiService.scanTaskMedia(
+                project.getDjiProjectUuid(),
+                project.getDjiOrgKey(),
+                job.keyword,
+                watermark != null ? watermark.getSinceBySn() : null,
+                watermark != null ? watermark.getIngestedTaskUuids() : null
+        );
+        List<DjiMediaFileDto> files = new ArrayList<>();
+        for (DjiTaskMedia task : tasks) {
+            files.addAll(task.getFiles());
+        }
+        return new Scan(useWatermark, watermark, tasks, files);
+    }
+
+    private void advanceWatermark(SyncJob job, Scan scan, Set<String> failedKeys) {
+        if (!scan.useWatermark()) return;
+        try {
+            djiSyncWatermarkService.advance(job.project, scan.watermark(), scan.tasks(), failedKeys);
+        } catch (Exception e) {
+            // 水位没推进只会让下次多扫一些，不影响本次结果
+            System.err.println("    ⚠️ 同步水位更新失败: " + e.getMessage());
+        }
+    }
+
+    private void writeLog(Integer projectId, int status, String message) {
+        SysTaskLog log = new SysTaskLog();
+        log.setProjectId(projectId);
+        log.setTaskType(SysTaskLog.TYPE_PHOTO_SYNC);
+        log.setStatus(status);
+        log.setMessage(message);
+        sysTaskLogMapper.insert(log);
+    }
+
+    // 如果关键词为空，使用默认空字符串搜索
+    private static String defaultKeyword(SysProject project) {
+        return Objects.toString(project.getPhotoFolderKeyword(), "");
+    }
+
+    /**
+     * 一次同步的结果
+     * @param listedCount 大疆返回的文件数
+     * @param successCount 新增入库 (带 XMP 数据) 的照片数
+     */
+    public record SyncOutcome(int listedCount, int successCount) {
+    }
+
+    /**
+     * 一次扫描的结果
+     * @param watermark 扫描所依据的水位，null 表示全量扫描
+     */
+    private record Scan(boolean useWatermark, DjiSyncWatermarkService.Snapshot watermark,
+                        List<DjiTaskMedia> tasks, List<DjiMediaFileDto> files) {
+    }
+
+    private static class SyncJob {
+        final SysProject project;
+        final String keyword;
+        final boolean manual;
+        final boolean deepRescan;
+        final CompletableFuture<SyncOutcome> future = new CompletableFuture<>();
+
+        SyncJob(SysProject project, String keyword, boolean manual, boolean deepRescan) {
+            this.project = project;
+            this.keyword = keyword;
+            this.manual = manual;
+            this.deepRescan = deepRescan;
+        }
+    }
+}
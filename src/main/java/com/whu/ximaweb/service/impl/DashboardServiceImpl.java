@@ -0,0 +1,266 @@
+package com.whu.ximaweb.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.whu.ximaweb.dto.DashboardVo;
+import com.whu.ximaweb.mapper.ActualProgressMapper;
+import com.whu.ximaweb.mapper.PlanProgressMapper;
+import com.whu.ximaweb.mapper.SysBuildingMapper;
+import com.whu.ximaweb.mapper.SysDashboardVersionMapper;
+import com.whu.ximaweb.mapper.SysProjectMapper;
+import com.whu.ximaweb.model.ActualProgress;
+import com.whu.ximaweb.model.PlanProgress;
+import com.whu.ximaweb.model.SysBuilding;
+import com.whu.ximaweb.model.SysProject;
+import com.whu.ximaweb.service.DashboardService;
+import com.whu.ximaweb.util.PlanSchedule;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 项目看板快照服务实现
+ * 版本号存在 sys_dashboard_version 表里，由所有节点共用：项目数据变更时 +1，与业务数据在同一事务里提交。
+ * 每个节点按项目缓存一份快照，读取时先查一次版本号 (主键查询)，与快照的版本号或构建日期不一致就重建。
+ * ETag = 项目ID + 版本号 + 日期，由数据库版本号推出，同一份数据在任何节点、重启前后都相同。
+ */
+@Service
+public class DashboardServiceImpl implements DashboardService {
+
+    @Autowired
+    private SysProjectMapper sysProjectMapper;
+
+    @Autowired
+    private SysBuildingMapper sysBuildingMapper;
+
+    @Autowired
+    private ActualProgressMapper actualProgressMapper;
+
+    @Autowired
+    private PlanProgressMapper planProgressMapper;
+
+    @Autowired
+    private SysDashboardVersionMapper dashboardVersionMapper;
+
+    private final Map<Integer, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final Map<Integer, Object> buildLocks = new ConcurrentHashMap<>();
+
+    @Override
+    public DashboardSnapshot getSnapshot(Integer projectId) {
+        long version = currentVersion(projectId);
+        LocalDate today = LocalDate.now();
+        Snapshot cached = snapshots.get(projectId);
+        if (isFresh(cached, version, today)) return cached.view;
+
+        // 同一项目只允许一个线程重建，其余线程等它建完直接复用
+        synchronized (buildLocks.computeIfAbsent(projectId, k -> new Object())) {
+            cached = snapshots.get(projectId);
+            if (isFresh(cached, version, today)) return cached.view;
+
+            // 先读版本号再读数据：数据只会比版本号新，之后的变更会让版本号失配，不会把旧数据当成新版本
+            long start = System.currentTimeMillis();
+            DashboardVo vo = buildDashboard(projectId);
+            if (vo == null) {
+                snapshots.remove(projectId);
+                return null;
+            }
+
+            // 跨天：安全运行天数、过期标记都会变，日期一起进 ETag
+            String etag = "\"" + projectId + "-" + version + "-" + today + "\"";
+            Snapshot built = new Snapshot(new DashboardSnapshot(vo, version, etag), today);
+            snapshots.put(projectId, built);
+            System.out.println(">>> [看板快照] 项目 " + projectId + " 重建完成，版本 " + version
+                    + "，耗时 " + (System.currentTimeMillis() - start) + "ms");
+            return built.view;
+        }
+    }
+
+    @Override
+    public void invalidate(Integer projectId) {
+        if (projectId == null) return;
+        dashboardVersionMapper.bump(projectId);
+        snapshots.remove(projectId);
+    }
+
+    /**
+     * 项目数据变更：在发布方的事务提交前把版本号 +1，数据和版本号一起提交或一起回滚，
+     * 其他节点看到新数据的同时也看到新版本号；无事务的调用方 (如进度引擎) 直接执行
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onProjectDataChanged(ProjectDataChangedEvent event) {
+        invalidate(event.projectId());
+        System.out.println(">>> [看板快照] 项目 " + event.projectId() + " 已失效 (" + event.reason() + ")");
+    }
+
+    private long currentVersion(Integer projectId) {
+        Long version = dashboardVersionMapper.selectVersion(projectId);
+        return version != null ? version : 0L;
+    }
+
+    private static boolean isFresh(Snapshot s, long version, LocalDate today) {
+        return s != null && s.view.version() == version && s.builtOn.equals(today);
+    }
+
+    private record Snapshot(DashboardSnapshot view, LocalDate builtOn) {}
+
+    /**
+     * 从数据库完整计算一次看板 (原 ProgressController.getDashboardData 的逻辑)
+     * 逻辑：无论数据是否过期，都计算滞后/超前状态并统计。过期仅作为标记。
+     */
+    private DashboardVo buildDashboard(Integer projectId) {
+        DashboardVo vo = new DashboardVo();
+
+        SysProject project = sysProjectMapper.selectById(projectId);
+        if (project == null) return null;
+
+        vo.setProjectId(project.getId()); // 确保传回ID
+        vo.setProjectName(project.getProjectName());
+        long days = ChronoUnit.DAYS.between(project.getCreatedAt().toLocalDate(), LocalDate.now());
+        vo.setSafeRunDays(days);
+
+        List<SysBuilding> buildings = sysBuildingMapper.selectList(
+            new QueryWrapper<SysBuilding>().eq("project_id", projectId)
+        );
+        vo.setTotalBuildings(buildings.size());
+
+        // 集合查询：一次取全项目实测记录、一次取所有已绑定模型的计划，查询次数与历史长度无关
+        Map<Integer, List<ActualProgress>> historyByBuilding = new HashMap<>();
+        for (ActualProgress ap : actualProgressMapper.selectList(
+                new QueryWrapper<ActualProgress>()
+                    .eq("project_id", projectId)
+                    .orderByAsc("measurement_date"))) {
+            historyByBuilding.computeIfAbsent(ap.getBuildingId(), k -> new ArrayList<>()).add(ap);
+        }
+        Map<String, PlanSchedule> scheduleByPlan = loadPlanSchedules(buildings);
+
+        List<DashboardVo.BuildingProgressVo> buildingVos = new ArrayList<>();
+        int delayed = 0, normal = 0, ahead = 0;
+        // 注意：waiting 不再用于表示“过期”，只表示“从未测过”
+        int waiting = 0;
+        LocalDate maxDate = LocalDate.MIN;
+
+        for (SysBuilding b : buildings) {
+            DashboardVo.BuildingProgressVo bVo = new DashboardVo.BuildingProgressVo();
+            bVo.setBuildingId(b.getId());
+            bVo.setBuildingName(b.getName());
+            bVo.setPlanName(b.getPlanBuildingName());
+
+            List<ActualProgress> history = historyByBuilding.getOrDefault(b.getId(), Collections.emptyList());
+            PlanSchedule schedule = b.getPlanBuildingName() != null
+                    ? scheduleByPlan.getOrDefault(b.getPlanBuildingName(), PlanSchedule.empty())
+                    : null;
+
+            // 初始化图表数据容器
+            List<String> dates = new ArrayList<>();
+            List<Integer> actualFloors = new ArrayList<>();
+            List<Integer> planFloors = new ArrayList<>();
+            List<Double> actualHeights = new ArrayList<>();
+            List<Integer> deviations = new ArrayList<>();
+            List<Integer> photoCounts = new ArrayList<>(); // 支持 Dashboard 照片数预警
+
+            if (!history.isEmpty()) {
+                ActualProgress latest = history.get(history.size() - 1);
+                bVo.setCurrentFloor(latest.getFloorLevel());
+                bVo.setCurrentHeight(latest.getActualHeight().doubleValue());
+                bVo.setLastMeasureDate(latest.getMeasurementDate().toString());
+
+                if (latest.getMeasurementDate().isAfter(maxDate)) maxDate = latest.getMeasurementDate();
+
+                // 1. 判定过时 (逻辑：超过7天) - 仅作为 UI 标记
+                long gap = ChronoUnit.DAYS.between(latest.getMeasurementDate(), LocalDate.now());
+                boolean isOutdated = gap > 7;
+                bVo.setOutdated(isOutdated);
+
+                // 2. 计算状态 (无论是否过时，都算)
+                String status = "暂无计划";
+                String color = "info";
+
+                if (schedule != null) {
+                    status = schedule.statusAt(latest.getFloorLevel(), latest.getMeasurementDate());
+                }
+
+                // 3. 统计归类
+                if (status.contains("滞后")) {
+                    color = "danger";
+                    delayed++;
+                } else if (status.contains("超前")) {
+                    color = "success";
+                    ahead++;
+                } else if (status.contains("正常")) {
+                    color = "primary";
+                    normal++;
+                } else {
+                    waiting++; // 有数据但无计划
+                }
+
+                bVo.setStatusTag(status);
+                bVo.setStatusColor(color);
+
+                // 填充历史数据
+                for (ActualProgress ap : history) {
+                    dates.add(ap.getMeasurementDate().toString());
+                    actualFloors.add(ap.getFloorLevel());
+                    actualHeights.add(ap.getActualHeight().doubleValue());
+                    // 假设 ActualProgress 有 photoCount 字段，若没有需处理 null
+                    photoCounts.add(ap.getPhotoCount() == null ? 0 : ap.getPhotoCount());
+
+                    int planFloor = schedule != null ? schedule.floorAt(ap.getMeasurementDate()) : 0;
+                    planFloors.add(planFloor);
+                    deviations.add(ap.getFloorLevel() - planFloor);
+                }
+            } else {
+                // 真·暂无数据
+                bVo.setCurrentFloor(0);
+                bVo.setCurrentHeight(0.0);
+                bVo.setStatusTag("等待首次测量");
+                bVo.setStatusColor("info");
+                bVo.setLastMeasureDate("-");
+                bVo.setOutdated(false);
+                waiting++; // 真正的等待中
+            }
+
+            bVo.setDates(dates);
+            bVo.setActualFloors(actualFloors);
+            bVo.setPlanFloors(planFloors);
+            bVo.setActualHeights(actualHeights);
+            bVo.setDeviations(deviations);
+            bVo.setPhotoCounts(photoCounts);
+
+            buildingVos.add(bVo);
+        }
+
+        vo.setBuildings(buildingVos);
+        vo.setDelayedCount(delayed);
+        vo.setNormalCount(normal);
+        vo.setAheadCount(ahead);
+        vo.setWaitingCount(waiting); // 这里现在仅代表“无数据或无计划”的楼栋
+        vo.setLastUpdateDate(maxDate == LocalDate.MIN ? "暂无" : maxDate.toString());
+
+        return vo;
+    }
+
+    // 辅助：一次查出所有已绑定模型名的计划行，按模型名构建阶梯函数
+    private Map<String, PlanSchedule> loadPlanSchedules(List<SysBuilding> buildings) {
+        Set<String> planNames = new HashSet<>();
+        for (SysBuilding b : buildings) {
+            if (b.getPlanBuildingName() != null) planNames.add(b.getPlanBuildingName());
+        }
+        Map<String, PlanSchedule> result = new HashMap<>();
+        if (planNames.isEmpty()) return result;
+
+        Map<String, List<PlanProgress>> grouped = new HashMap<>();
+        for (PlanProgress p : planProgressMapper.selectList(
+                new QueryWrapper<PlanProgress>().in("Building", planNames))) {
+            grouped.computeIfAbsent(p.getBuildingName(), k -> new ArrayList<>()).add(p);
+        }
+        for (String name : planNames) {
+            result.put(name, PlanSchedule.of(grouped.get(name)));
+        }
+        return result;
+    }
+}
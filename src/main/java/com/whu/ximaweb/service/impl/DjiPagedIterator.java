@@ -0,0 +1,194 @@
+package com.whu.ximaweb.service.impl;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 大疆 OpenAPI 分页列表 (data.list + data.pagination) 的惰性迭代器
+ * 当前页的元素消费完才取下一页，内存里只保留一页；
+ * 开启预取时，拿到当前页后立即在后台请求下一页，与调用方处理当前页并行。
+ *
+ * 结束条件：已取数量达到 pagination.total；接口没有返回 total 时以"不满一页"为准；
+ * 另有最大页数兜底，防止接口忽略分页参数时反复拿到同一页。
+ * 任何一页失败 (非 2xx、code 不为 0、没有 list、超过最大页数) 都会在 hasNext()/next() 抛出 RuntimeException。
+ */
+class DjiPagedIterator<T> implements Iterator<T> {
+
+    /**
+     * 请求某一页 (一般由 readPage 解析响应流)
+     */
+    interface PageFetcher<T> {
+        Page<T> fetch(int page, int pageSize) throws Exception;
+    }
+
+    /**
+     * 一页数据
+     * @param total pagination.total，接口没返回时为 null
+     */
+    record Page<T>(List<T> items, Long total) {
+    }
+
+    private final PageFetcher<T> fetcher;
+    private final int pageSize;
+    private final int maxPages;
+    private final ExecutorService prefetchExecutor; // null 表示不预取
+    private final String name;                      // 仅用于日志
+
+    private int nextPage = 1;
+    private long fetchedCount;
+    private boolean lastPageLoaded;
+    private Iterator<T> current = Collections.emptyIterator();
+    private CompletableFuture<Page<T>> prefetched;
+
+    DjiPagedIterator(String name, PageFetcher<T> fetcher, int pageSize, int maxPages, ExecutorService prefetchExecutor) {
+        this.name = name;
+        this.fetcher = fetcher;
+        this.pageSize = Math.max(1, pageSize);
+        this.maxPages = Math.max(1, maxPages);
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (lastPageLoaded) return false;
+            loadNextPage();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return current.next();
+    }
+
+    /**
+     * 用流式 JsonParser 直接把响应解析成 DTO 列表，不经过 String 和 JsonNode 树
+     * 只认 code / message / data.list / data.pagination.total，其余字段跳过
+     */
+    static <T> Page<T> readPage(ObjectMapper objectMapper, InputStream in, Class<T> type) throws IOException {
+        List<T> items = null;
+        Long total = null;
+        Integer code = null;
+        String message = null;
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("响应不是 JSON 对象");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("code".equals(field)) {
+                    code = parser.getValueAsInt();
+                } else if ("message".equals(field)) {
+                    message = parser.getValueAsString();
+                } else if ("data".equals(field) && token == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String dataField = parser.getCurrentName();
+                        JsonToken dataToken = parser.nextToken();
+                        if ("list".equals(dataField) && dataToken == JsonToken.START_ARRAY) {
+                            items = new ArrayList<>();
+                            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                                T item = objectMapper.readValue(parser, type);
+                                if (item != null) items.add(item);
+                            }
+                        } else if ("pagination".equals(dataField) && dataToken == JsonToken.START_OBJECT) {
+                            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                                String pageField = parser.getCurrentName();
+                                JsonToken pageToken = parser.nextToken();
+                                if ("total".equals(pageField) && pageToken.isNumeric()) {
+                                    total = parser.getLongValue();
+                                } else {
+                                    parser.skipChildren();
+                                }
+                            }
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        if (code != null && code != 0) {
+            throw new IOException("code=" + code + ", message=" + message);
+        }
+        if (items == null) {
+            throw new IOException("响应中没有 data.list");
+        }
+        return new Page<>(items, total);
+    }
+
+    private void loadNextPage() {
+        int page = nextPage++;
+        Page<T> result;
+        if (prefetched != null) {
+            try {
+                result = prefetched.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                throw cause instanceof PageException ? (PageException) cause : pageFailed(page, cause);
+            } finally {
+                prefetched = null;
+            }
+        } else {
+            result = fetch(page);
+        }
+
+        int size = result.items().size();
+        fetchedCount += size;
+        boolean more;
+        if (result.total() != null) {
+            more = size > 0 && fetchedCount < result.total();
+        } else {
+            // 没有 total：满一页才可能还有下一页；超过一页说明接口忽略了分页参数，已是全部
+            more = size == pageSize;
+        }
+        if (more && page >= maxPages) {
+            // 宁可整体失败也不返回被截断的列表 (截断的任务列表会让同步水位越过没看到的任务)
+            throw pageFailed(page, new IllegalStateException("超过最大页数 " + maxPages));
+        }
+
+        lastPageLoaded = !more;
+        if (more && prefetchExecutor != null) {
+            int following = nextPage;
+            prefetched = CompletableFuture.supplyAsync(() -> fetch(following), prefetchExecutor);
+        }
+        current = result.items().iterator();
+    }
+
+    private Page<T> fetch(int page) {
+        try {
+            return fetcher.fetch(page, pageSize);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw pageFailed(page, e);
+        } catch (Exception e) {
+            throw pageFailed(page, e);
+        }
+    }
+
+    private PageException pageFailed(int page, Throwable cause) {
+        return new PageException(name + " 第 " + page + " 页请求失败: " + cause.getMessage(), cause);
+    }
+
+    private static class PageException extends RuntimeException {
+        PageException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
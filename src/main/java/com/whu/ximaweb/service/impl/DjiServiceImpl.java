@@ -1,16 +1,17 @@
 package com.whu.ximaweb.service.impl;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.whu.ximaweb.dto.dji.DjiMediaFileDto;
 import com.whu.ximaweb.dto.dji.DjiProjectDto;
 import com.whu.ximaweb.dto.dji.DjiTaskDto;
+import com.whu.ximaweb.dto.dji.DjiTaskMedia;
 import com.whu.ximaweb.service.DjiService;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -22,7 +23,14 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
 
 @Service
 public class DjiServiceImpl implements DjiService {
@@ -39,6 +47,32 @@ public class DjiServiceImpl implements DjiService {
     @Value("${dji.api.base-url}")
     private String djiApiBaseUrl;
 
+    // 同一组织 Key 同时在途的请求数上限 (避免触发司空2限流)
+    @Value("${dji.api.max-in-flight-per-org:8}")
+    private int maxInFlightPerOrg;
+
+    // 分页列表：处理当前页时是否在后台预取下一页；单个列表的最大页数 (兜底)
+    @Value("${dji.api.prefetch-next-page:true}")
+    private boolean prefetchNextPage;
+
+    @Value("${dji.api.max-pages:200}")
+    private int maxPages;
+
+    @Autowired
+    @Qualifier("djiFanoutExecutor")
+    private ExecutorService djiFanoutExecutor;
+
+    // 各列表接口的每页条数
+    private static final int PROJECT_PAGE_SIZE = 100;
+    private static final int DEVICE_PAGE_SIZE = 100;
+    private static final int TASK_PAGE_SIZE = 50;
+    private static final int MEDIA_PAGE_SIZE = 100;
+
+    private static final DateTimeFormatter FOLDER_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH_mm_ss");
+
+    // 组织 Key -> 在途请求额度
+    private final Map<String, Semaphore> orgPermits = new ConcurrentHashMap<>();
+
     @Override
     public String getProjects() {
         return fetchProjectsRaw(this.defaultOrganizationKey);
@@ -46,23 +80,23 @@ public class DjiServiceImpl implements DjiService {
 
     @Override
     public List<DjiProjectDto> getProjects(String apiKey) {
-        String json = fetchProjectsRaw(apiKey);
-        if (json == null) return new ArrayList<>();
+        List<DjiProjectDto> projects = new ArrayList<>();
         try {
-            JsonNode root = objectMapper.readTree(json);
-            if (root.has("code") && root.get("code").asInt() != 0) return new ArrayList<>();
-            JsonNode listNode = root.path("data").path("list");
-            if (listNode.isArray()) {
-                return objectMapper.convertValue(listNode, new TypeReference<List<DjiProjectDto>>() {});
-            }
+            DjiPagedIterator<DjiProjectDto> pages = paged("项目列表", djiApiBaseUrl + "/openapi/v0.1/project",
+                    apiKey, null, PROJECT_PAGE_SIZE, DjiProjectDto.class);
+            pages.forEachRemaining(projects::add);
         } catch (Exception e) {
             e.printStackTrace();
+            return new ArrayList<>();
         }
-        return new ArrayList<>();
+        return projects;
     }
 
+    /**
+     * 原始 JSON (只取第一页，供调试查看)
+     */
     private String fetchProjectsRaw(String apiKey) {
-        String url = djiApiBaseUrl + "/openapi/v0.1/project?page=1&page_size=100";
+        String url = djiApiBaseUrl + "/openapi/v0.1/project?page=1&page_size=" + PROJECT_PAGE_SIZE;
         try (Response response = executeRequest(url, apiKey, null)) {
             if (response.isSuccessful() && response.body() != null) {
                 return response.body().string();
@@ -76,113 +110,201 @@ public class DjiServiceImpl implements DjiService {
     @Override
     public List<DjiMediaFileDto> getPhotosFromFolder(String projectUuid, String apiKey, String folderNameKeyword) {
         List<DjiMediaFileDto> resultList = new ArrayList<>();
+        for (DjiTaskMedia taskMedia : scanTaskMedia(projectUuid, apiKey, folderNameKeyword, null, null)) {
+            resultList.addAll(taskMedia.getFiles());
+        }
+        return resultList;
+    }
 
-        System.out.println("    [DEBUG] 🚀 开始全量扫描 (修正路径版)...");
+    /**
+     * 设备 -> 任务 -> 媒体 三级扇出并发执行：
+     * 每个设备的任务列表并行查询，任务列表逐页翻取，每匹配到一个任务就立即并行拉取它的媒体文件；
+     * 同一组织 Key 同时在途的请求数受 max-in-flight-per-org 限制。
+     * 结果按 设备SN 字典序 -> 任务返回顺序 排列，多次调用顺序一致；
+     * 同一任务同时出现在飞机和机场两个 SN 下时只拉取、只返回一次。
+     * 注意：各页响应是边读边解析的，但每个任务的媒体会翻完全部页后收进列表，整次扫描的结果一起返回；
+     * 内存占用按媒体条目 (DTO) 数量计，不随响应体大小增长。入库流水线在扫描结束后才开始。
+     */
+    @Override
+    public List<DjiTaskMedia> scanTaskMedia(String projectUuid, String apiKey, String folderNameKeyword,
+                                            Map<String, Long> sinceBySn, Set<String> skipTaskUuids) {
+        List<DjiTaskMedia> resultList = new ArrayList<>();
+        Set<String> skip = skipTaskUuids != null ? skipTaskUuids : Collections.emptySet();
+
+        System.out.println("    [DEBUG] 🚀 开始" + (sinceBySn == null || sinceBySn.isEmpty() ? "全量" : "增量") + "扫描 (并发扇出)...");
+        long start = System.currentTimeMillis();
 
         // 1. 获取设备
-        String devicesUrl = djiApiBaseUrl + "/openapi/v0.1/project/device?page=1&page_size=100";
-        Set<String> allDeviceSns = new HashSet<>();
-        try (Response response = executeRequest(devicesUrl, apiKey, projectUuid)) {
-            if (response.isSuccessful() && response.body() != null) {
-                String json = response.body().string();
-                JsonNode root = objectMapper.readTree(json);
-                JsonNode listNode = root.path("data").path("list");
-                if (listNode != null && listNode.isArray()) {
-                    for (JsonNode deviceNode : listNode) {
-                        JsonNode droneNode = deviceNode.path("drone");
-                        if (!droneNode.isMissingNode() && droneNode.has("sn")) {
-                            allDeviceSns.add(droneNode.get("sn").asText());
-                        }
-                        JsonNode gatewayNode = deviceNode.path("gateway");
-                        if (!gatewayNode.isMissingNode() && gatewayNode.has("sn")) {
-                            allDeviceSns.add(gatewayNode.get("sn").asText());
-                        }
-                    }
+        Set<String> allDeviceSns = fetchDeviceSns(projectUuid, apiKey);
+        if (allDeviceSns.isEmpty()) return Collections.emptyList();
+
+        // 2. 查询任务 (默认最近 90 天；有水位的设备从水位开始)
+        long now = System.currentTimeMillis() / 1000;
+        long endTime = now + 24 * 60 * 60;
+        long defaultStart = now - 90 * 24 * 60 * 60;
+
+        // 任务UUID -> 媒体列表 (谁先发现谁发起请求，其余直接复用)
+        Map<String, CompletableFuture<List<DjiMediaFileDto>>> mediaByTask = new ConcurrentHashMap<>();
+
+        List<String> snOrder = new ArrayList<>(allDeviceSns);
+        List<CompletableFuture<List<DjiTaskDto>>> taskFutures = new ArrayList<>();
+        for (String sn : snOrder) {
+            Long since = sinceBySn != null ? sinceBySn.get(sn) : null;
+            long startTime = since != null ? Math.max(defaultStart, since) : defaultStart;
+            // 任务列表逐页返回，每匹配到一个任务就立即发起它的媒体请求，不等整个列表翻完
+            taskFutures.add(CompletableFuture.supplyAsync(() -> fetchMatchedTasks(
+                    sn, startTime, endTime, projectUuid, apiKey, folderNameKeyword, skip,
+                    task -> mediaByTask.computeIfAbsent(task.getUuid(), uuid -> CompletableFuture.supplyAsync(
+                            () -> fetchTaskMedia(task, projectUuid, apiKey, folderNameKeyword), djiFanoutExecutor))),
+                    djiFanoutExecutor));
+        }
+
+        // 3. 按固定顺序汇总
+        Set<String> seenTasks = new HashSet<>();
+        int fileCount = 0;
+        for (int i = 0; i < snOrder.size(); i++) {
+            for (DjiTaskDto task : taskFutures.get(i).join()) {
+                if (!seenTasks.add(task.getUuid())) continue;
+                List<DjiMediaFileDto> files = mediaByTask.get(task.getUuid()).join();
+                boolean mediaComplete = files != null;
+                if (files == null) files = Collections.emptyList();
+                resultList.add(new DjiTaskMedia(snOrder.get(i), task, files, mediaComplete));
+                fileCount += files.size();
+            }
+        }
+        System.out.println("    [DEBUG] 扫描完成: 设备 " + allDeviceSns.size() + " 个, 待处理任务 " + resultList.size()
+                + " 个, 媒体 " + fileCount + " 个, 耗时 " + (System.currentTimeMillis() - start) + "ms");
+        return resultList;
+    }
+
+    /**
+     * 项目下所有设备 (飞机 + 机场) 的 SN，按字典序排列
+     */
+    private Set<String> fetchDeviceSns(String projectUuid, String apiKey) {
+        Set<String> allDeviceSns = new TreeSet<>();
+        try {
+            // 设备条目很小且结构嵌套，逐条读成树即可
+            DjiPagedIterator<JsonNode> devices = paged("设备列表", djiApiBaseUrl + "/openapi/v0.1/project/device",
+                    apiKey, projectUuid, DEVICE_PAGE_SIZE, JsonNode.class);
+            while (devices.hasNext()) {
+                JsonNode deviceNode = devices.next();
+                JsonNode droneNode = deviceNode.path("drone");
+                if (!droneNode.isMissingNode() && droneNode.has("sn")) {
+                    allDeviceSns.add(droneNode.get("sn").asText());
+                }
+                JsonNode gatewayNode = deviceNode.path("gateway");
+                if (!gatewayNode.isMissingNode() && gatewayNode.has("sn")) {
+                    allDeviceSns.add(gatewayNode.get("sn").asText());
                 }
             }
         } catch (Exception e) {
-             e.printStackTrace();
+            // 已拿到的设备照常扫描，其余设备下次同步再查
+            e.printStackTrace();
         }
+        return allDeviceSns;
+    }
 
-        if (allDeviceSns.isEmpty()) return Collections.emptyList();
-
-        // 2. 查询任务
-        long now = System.currentTimeMillis() / 1000;
-        long endTime = now + 24 * 60 * 60;
-        long startTime = now - 90 * 24 * 60 * 60;
-
-        // 准备时间格式化器：将 UTC 转换为 北京时间格式 (yyyy-MM-dd HH_mm_ss)
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH_mm_ss");
-
-        for (String sn : allDeviceSns) {
-            String taskListUrl = djiApiBaseUrl + "/openapi/v0.1/flight-task/list" +
-                    "?page=1&page_size=50" +
-                    "&begin_at=" + startTime +
-                    "&end_at=" + endTime +
-                    "&sn=" + sn;
-
-            try (Response response = executeRequest(taskListUrl, apiKey, projectUuid)) {
-                if (response.isSuccessful() && response.body() != null) {
-                    String json = response.body().string();
-                    JsonNode root = objectMapper.readTree(json);
-                    JsonNode listNode = root.path("data").path("list");
-
-                    if (listNode != null && listNode.isArray()) {
-                        List<DjiTaskDto> tasks = objectMapper.convertValue(listNode, new TypeReference<List<DjiTaskDto>>() {});
-
-                        for (DjiTaskDto task : tasks) {
-                            boolean nameMatched = folderNameKeyword == null || (task.getName() != null && task.getName().contains(folderNameKeyword));
-                            boolean statusMatched = !"failed".equalsIgnoreCase(task.getStatus());
-
-                            if (nameMatched && statusMatched) {
-                                // 获取媒体文件
-                                String mediaUrl = djiApiBaseUrl + "/openapi/v0.1/flight-task/" + task.getUuid() + "/media";
-                                try (Response mediaResp = executeRequest(mediaUrl, apiKey, projectUuid)) {
-                                    if (mediaResp.isSuccessful() && mediaResp.body() != null) {
-                                        String mediaJson = mediaResp.body().string();
-                                        JsonNode mediaRoot = objectMapper.readTree(mediaJson);
-                                        JsonNode mediaList = mediaRoot.path("data").path("list");
-
-                                        if (mediaList != null && mediaList.isArray()) {
-                                            List<DjiMediaFileDto> files = objectMapper.convertValue(mediaList, new TypeReference<List<DjiMediaFileDto>>() {});
-
-                                            // ✅ 核心修正：构造与本地SD卡一致的文件夹名称
-                                            // 1. 解析 UTC 时间
-                                            String beginAt = task.getBeginAt(); // 2025-12-12T05:29:02...Z
-                                            String safeTimeStr;
-                                            try {
-                                                if (beginAt != null) {
-                                                    ZonedDateTime utcTime = ZonedDateTime.parse(beginAt);
-                                                    // 2. 转换为北京时间 (Asia/Shanghai)
-                                                    ZonedDateTime cstTime = utcTime.withZoneSameInstant(ZoneId.of("Asia/Shanghai"));
-                                                    // 3. 格式化为 "2025-12-12 13_29_02"
-                                                    safeTimeStr = cstTime.format(formatter) + " (UTC+08)";
-                                                } else {
-                                                    safeTimeStr = "unknown-time";
-                                                }
-                                            } catch (Exception ex) {
-                                                safeTimeStr = beginAt.replaceAll("[: ]", "-"); // 兜底
-                                            }
-
-                                            // 最终路径: /激光测距/激光测距 2025-12-12 13_29_02 (UTC+08)
-                                            String virtualPath = "/" + folderNameKeyword + "/" + task.getName() + " " + safeTimeStr;
-
-                                            for (DjiMediaFileDto f : files) {
-                                                f.setFilePath(virtualPath);
-                                                resultList.add(f);
-                                            }
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    }
+    /**
+     * 某设备在时间窗内、名称含关键词且未失败的任务 (翻完所有页)
+     * 每匹配到一个不在 skip 中的任务就回调 onMatched；任何一页失败都返回空列表，
+     * 避免不完整的任务列表推进同步水位。
+     */
+    private List<DjiTaskDto> fetchMatchedTasks(String sn, long startTime, long endTime, String projectUuid,
+                                               String apiKey, String folderNameKeyword, Set<String> skip,
+                                               Consumer<DjiTaskDto> onMatched) {
+        String taskListUrl = djiApiBaseUrl + "/openapi/v0.1/flight-task/list" +
+                "?begin_at=" + startTime +
+                "&end_at=" + endTime +
+                "&sn=" + sn;
+        List<DjiTaskDto> matched = new ArrayList<>();
+        try {
+            DjiPagedIterator<DjiTaskDto> tasks = paged("设备 " + sn + " 任务列表", taskListUrl,
+                    apiKey, projectUuid, TASK_PAGE_SIZE, DjiTaskDto.class);
+            while (tasks.hasNext()) {
+                DjiTaskDto task = tasks.next();
+                boolean nameMatched = folderNameKeyword == null || (task.getName() != null && task.getName().contains(folderNameKeyword));
+                boolean statusMatched = !"failed".equalsIgnoreCase(task.getStatus());
+                if (nameMatched && statusMatched && task.getUuid() != null && !skip.contains(task.getUuid())) {
+                    matched.add(task);
+                    onMatched.accept(task);
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
             }
+        } catch (Exception e) {
+            System.err.println("    查询设备 [" + sn + "] 任务列表失败: " + e.getMessage());
+            return Collections.emptyList();
+        }
+        return matched;
+    }
+
+    /**
+     * 拉取任务的媒体文件 (失败返回 null)，并补上与本地SD卡一致的虚拟文件夹路径
+     */
+    private List<DjiMediaFileDto> fetchTaskMedia(DjiTaskDto task, String projectUuid, String apiKey, String folderNameKeyword) {
+        String mediaUrl = djiApiBaseUrl + "/openapi/v0.1/flight-task/" + task.getUuid() + "/media";
+        try {
+            // 最终路径: /激光测距/激光测距 2025-12-12 13_29_02 (UTC+08)
+            String virtualPath = "/" + folderNameKeyword + "/" + task.getName() + " " + toFolderTime(task.getBeginAt());
+
+            // 响应流直接解析成 DTO，逐页追加 (翻页是惰性的，但结果要交给水位判断，整个任务收齐后才返回)
+            List<DjiMediaFileDto> files = new ArrayList<>();
+            DjiPagedIterator<DjiMediaFileDto> media = paged("任务 " + task.getName() + " 媒体列表", mediaUrl,
+                    apiKey, projectUuid, MEDIA_PAGE_SIZE, DjiMediaFileDto.class);
+            while (media.hasNext()) {
+                DjiMediaFileDto f = media.next();
+                f.setFilePath(virtualPath);
+                files.add(f);
+            }
+            return files;
+        } catch (Exception e) {
+            System.err.println("    拉取任务 [" + task.getName() + "] 媒体列表失败: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * ✅ 核心修正：构造与本地SD卡一致的文件夹名称
+     * 将 UTC 时间 (2025-12-12T05:29:02...Z) 转换为北京时间格式 "2025-12-12 13_29_02 (UTC+08)"
+     */
+    private static String toFolderTime(String beginAt) {
+        try {
+            if (beginAt != null) {
+                ZonedDateTime utcTime = ZonedDateTime.parse(beginAt);
+                ZonedDateTime cstTime = utcTime.withZoneSameInstant(ZoneId.of("Asia/Shanghai"));
+                return cstTime.format(FOLDER_TIME_FORMATTER) + " (UTC+08)";
+            }
+            return "unknown-time";
+        } catch (Exception ex) {
+            return beginAt.replaceAll("[: ]", "-"); // 兜底
+        }
+    }
+
+    /**
+     * 分页列表迭代器：在 url 后追加 page / page_size，按配置预取下一页
+     */
+    private <T> DjiPagedIterator<T> paged(String name, String url, String apiKey, String projectUuid,
+                                          int pageSize, Class<T> type) {
+        String separator = url.contains("?") ? "&" : "?";
+        return new DjiPagedIterator<>(name,
+                (page, size) -> getPage(url + separator + "page=" + page + "&page_size=" + size, apiKey, projectUuid, type),
+                pageSize, maxPages, prefetchNextPage ? djiFanoutExecutor : null);
+    }
+
+    /**
+     * 在组织 Key 的并发额度内请求一页，边读响应流边解析；非 2xx 抛出 IOException
+     */
+    private <T> DjiPagedIterator.Page<T> getPage(String url, String apiKey, String projectUuid, Class<T> type)
+            throws IOException, InterruptedException {
+        Semaphore permits = orgPermits.computeIfAbsent(apiKey == null ? "" : apiKey,
+                key -> new Semaphore(Math.max(1, maxInFlightPerOrg), true));
+        permits.acquire();
+        try (Response response = executeRequest(url, apiKey, projectUuid)) {
+            if (!response.isSuccessful() || response.body() == null) {
+                throw new IOException("HTTP " + response.code());
+            }
+            return DjiPagedIterator.readPage(objectMapper, response.body().byteStream(), type);
+        } finally {
+            permits.release();
         }
-        return resultList;
     }
 
     private Response executeRequest(String url, String apiKey, String projectUuid) throws IOException {
@@ -1,60 +1,106 @@
 package com.whu.ximaweb.service.impl;
 
-import com.obs.services.ObsClient;
 import com.obs.services.model.ListObjectsRequest;
 import com.obs.services.model.ObjectListing;
 import com.obs.services.model.ObsObject;
+import com.obs.services.model.UploadFileRequest;
+import com.whu.ximaweb.service.ObsClientRegistry;
 import com.whu.ximaweb.service.ObsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
+/**
+ * OBS 服务实现
+ * 客户端从 {@link ObsClientRegistry} 借用 (按 AK + Endpoint 复用)，不再每次调用 new / close
+ */
 @Service
 public class ObsServiceImpl implements ObsService {
 
+    @Autowired
+    private ObsClientRegistry obsClientRegistry;
+
+    // 超过该大小的文件走分段上传
+    @Value("${xima.obs.upload.multipart-threshold-mb:16}")
+    private long multipartThresholdMb;
+
+    @Value("${xima.obs.upload.part-size-mb:8}")
+    private long partSizeMb;
+
+    // 单个文件同时上传的分段数
+    @Value("${xima.obs.upload.part-threads:4}")
+    private int partThreads;
+
+    // 分段上传的断点记录目录
+    @Value("${xima.obs.upload.checkpoint-dir:${java.io.tmpdir}/xima-obs-checkpoint}")
+    private String checkpointDir;
+
     @Override
     public boolean validateConnection(String ak, String sk, String endpoint, String bucketName) {
-        ObsClient obsClient = null;
         try {
-            obsClient = new ObsClient(ak, sk, endpoint);
-            return obsClient.headBucket(bucketName);
+            return obsClientRegistry.withClient(ak, sk, endpoint, client -> client.headBucket(bucketName));
         } catch (Exception e) {
             System.err.println("OBS连接验证失败: " + e.getMessage());
             return false;
-        } finally {
-            closeClient(obsClient);
         }
     }
 
     @Override
     public boolean doesObjectExist(String ak, String sk, String endpoint, String bucketName, String objectKey) {
-        ObsClient obsClient = null;
         try {
-            obsClient = new ObsClient(ak, sk, endpoint);
-            return obsClient.doesObjectExist(bucketName, objectKey);
+            return obsClientRegistry.withClient(ak, sk, endpoint, client -> client.doesObjectExist(bucketName, objectKey));
         } catch (Exception e) {
             e.printStackTrace();
             return false;
-        } finally {
-            closeClient(obsClient);
         }
     }
 
     @Override
     public void uploadStream(String ak, String sk, String endpoint, String bucketName, String objectKey, InputStream stream) {
-        ObsClient obsClient = null;
         try {
-            obsClient = new ObsClient(ak, sk, endpoint);
-            obsClient.putObject(bucketName, objectKey, stream);
+            obsClientRegistry.withClient(ak, sk, endpoint, client -> client.putObject(bucketName, objectKey, stream));
         } catch (Exception e) {
             System.err.println("上传OBS失败: " + e.getMessage());
             throw new RuntimeException("OBS上传失败", e);
-        } finally {
-            closeClient(obsClient);
+        }
+    }
+
+    @Override
+    public void uploadFile(String ak, String sk, String endpoint, String bucketName, String objectKey, Path file) {
+        try {
+            long size = Files.size(file);
+            if (size < multipartThresholdMb * 1024 * 1024) {
+                // 小文件一次 PUT，长度已知，无需先缓冲
+                obsClientRegistry.withClient(ak, sk, endpoint, client -> client.putObject(bucketName, objectKey, file.toFile()));
+                return;
+            }
+            Path checkpoints = Paths.get(checkpointDir);
+            Files.createDirectories(checkpoints);
+            // 同一 桶/Key 使用固定的断点文件，上次失败留下的记录会被 SDK 用来跳过已完成的分段
+            String checkpointName = UUID.nameUUIDFromBytes((bucketName + "/" + objectKey).getBytes(StandardCharsets.UTF_8)) + ".ucp";
+
+            UploadFileRequest request = new UploadFileRequest(bucketName, objectKey);
+            request.setUploadFile(file.toString());
+            request.setPartSize(partSizeMb * 1024 * 1024);
+            request.setTaskNum(Math.max(1, partThreads));
+            request.setEnableCheckpoint(true);
+            request.setCheckpointFile(checkpoints.resolve(checkpointName).toString());
+            obsClientRegistry.withClient(ak, sk, endpoint, client -> client.uploadFile(request));
+        } catch (Exception e) {
+            System.err.println("分段上传OBS失败 [" + objectKey + "]: " + e.getMessage());
+            throw new RuntimeException("OBS上传失败", e);
         }
     }
 
@@ -65,81 +111,91 @@ public class ObsServiceImpl implements ObsService {
      */
     @Override
     public List<String> listFiles(String ak, String sk, String endpoint, String bucketName, String projectRoot, String keyword) {
-        ObsClient obsClient = null;
         List<String> fileKeys = new ArrayList<>();
         try {
-            obsClient = new ObsClient(ak, sk, endpoint);
-            ListObjectsRequest request = new ListObjectsRequest(bucketName);
+            obsClientRegistry.withClient(ak, sk, endpoint, obsClient -> {
+                ListObjectsRequest request = new ListObjectsRequest(bucketName);
 
-            // 1. 设置搜索范围为当前项目目录 (例如 "西马路项目/")
-            // 如果 projectRoot 为空，则扫描整个桶
-            if (projectRoot != null && !projectRoot.isEmpty()) {
-                // 确保以 / 结尾，避免匹配到类似 "西马路项目二期" 的前缀
-                String prefix = projectRoot.endsWith("/") ? projectRoot : projectRoot + "/";
-                request.setPrefix(prefix);
-            }
+                // 1. 设置搜索范围为当前项目目录 (例如 "西马路项目/")
+                // 如果 projectRoot 为空，则扫描整个桶
+                if (projectRoot != null && !projectRoot.isEmpty()) {
+                    // 确保以 / 结尾，避免匹配到类似 "西马路项目二期" 的前缀
+                    String prefix = projectRoot.endsWith("/") ? projectRoot : projectRoot + "/";
+                    request.setPrefix(prefix);
+                }
 
-            request.setMaxKeys(1000);
+                request.setMaxKeys(1000);
 
-            ObjectListing result;
-            do {
-                result = obsClient.listObjects(request);
-                for (ObsObject obsObject : result.getObjects()) {
-                    String key = obsObject.getObjectKey();
-                    // 过滤文件夹自身 (以/结尾的对象通常是文件夹占位符)
-                    if (key.endsWith("/")) {
-                        continue;
-                    }
+                ObjectListing result;
+                do {
+                    result = obsClient.listObjects(request);
+                    for (ObsObject obsObject : result.getObjects()) {
+                        String key = obsObject.getObjectKey();
+                        // 过滤文件夹自身 (以/结尾的对象通常是文件夹占位符)
+                        if (key.endsWith("/")) {
+                            continue;
+                        }
 
-                    // 2. 核心过滤逻辑：路径中是否包含关键词
-                    if (keyword != null && !keyword.isEmpty()) {
-                        if (key.contains(keyword)) {
+                        // 2. 核心过滤逻辑：路径中是否包含关键词
+                        if (keyword != null && !keyword.isEmpty()) {
+                            if (key.contains(keyword)) {
+                                fileKeys.add(key);
+                            }
+                        } else {
+                            // 没有关键词则全部加入
                             fileKeys.add(key);
                         }
-                    } else {
-                        // 没有关键词则全部加入
-                        fileKeys.add(key);
                     }
-                }
-                request.setMarker(result.getNextMarker());
-            } while (result.isTruncated());
-
+                    request.setMarker(result.getNextMarker());
+                } while (result.isTruncated());
+                return null;
+            });
         } catch (Exception e) {
             System.err.println("列举OBS文件失败: " + e.getMessage());
-        } finally {
-            closeClient(obsClient);
         }
         return fileKeys;
     }
 
     @Override
     public InputStream downloadFile(String ak, String sk, String endpoint, String bucketName, String objectKey) {
-        ObsClient obsClient = null;
         try {
-            obsClient = new ObsClient(ak, sk, endpoint);
-            // 获取对象
-            ObsObject obsObject = obsClient.getObject(bucketName, objectKey);
-            if (obsObject != null && obsObject.getObjectContent() != null) {
+            return obsClientRegistry.withClient(ak, sk, endpoint, client -> {
+                // 获取对象
+                ObsObject obsObject = client.getObject(bucketName, objectKey);
+                if (obsObject == null || obsObject.getObjectContent() == null) {
+                    return null;
+                }
                 try (InputStream content = obsObject.getObjectContent()) {
-                    // 内存转存：将流读入 byte数组，避免连接关闭后流不可用
+                    // 内存转存：将流读入 byte数组，避免连接归还后流不可用
                     return new ByteArrayInputStream(content.readAllBytes());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
-            }
+            });
         } catch (Exception e) {
             System.err.println("下载OBS文件失败 [" + objectKey + "]: " + e.getMessage());
-        } finally {
-            closeClient(obsClient);
         }
         return null;
     }
 
-    private void closeClient(ObsClient client) {
-        if (client != null) {
-            try {
-                client.close();
-            } catch (IOException e) {
-                // ignore
-            }
-        }
+    @Override
+    public List<String> listKeys(String ak, String sk, String endpoint, String bucketName, String prefix, String marker) {
+        return obsClientRegistry.withClient(ak, sk, endpoint, obsClient -> {
+            List<String> keys = new ArrayList<>();
+            ListObjectsRequest request = new ListObjectsRequest(bucketName);
+            request.setPrefix(prefix);
+            request.setMarker(marker);
+            request.setMaxKeys(1000);
+
+            ObjectListing result;
+            do {
+                result = obsClient.listObjects(request);
+                for (ObsObject obsObject : result.getObjects()) {
+                    keys.add(obsObject.getObjectKey());
+                }
+                request.setMarker(result.getNextMarker());
+            } while (result.isTruncated());
+            return keys;
+        });
     }
-}
\ No newline at end of file
+}
@@ -1,18 +1,28 @@
 package com.whu.ximaweb.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.whu.ximaweb.dto.Coordinate;
 import com.whu.ximaweb.mapper.*;
 import com.whu.ximaweb.model.*;
+import com.whu.ximaweb.service.DashboardService;
 import com.whu.ximaweb.service.EmailService;
+import com.whu.ximaweb.service.GeofenceService;
+import com.whu.ximaweb.service.GeofenceService.CompiledFence;
 import com.whu.ximaweb.service.ProgressService;
+import com.whu.ximaweb.util.PlanSchedule;
+import com.whu.ximaweb.util.ProgressKernel;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.strtree.STRtree;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -21,6 +31,9 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 /**
@@ -58,6 +71,9 @@ public class ProgressServiceImpl implements ProgressService {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private GeofenceService geofenceService; // 已编译围栏缓存 (与 ProgressController 共用)
+
     @Autowired
     private BuildingFloorInfoMapper floorInfoMapper;
 
@@ -67,6 +83,19 @@ public class ProgressServiceImpl implements ProgressService {
     @Autowired
     private SysUserMapper sysUserMapper; // 注入用户查询服务
 
+    @Autowired
+    @Qualifier("progressExecutor")
+    private ExecutorService progressExecutor; // 楼栋级并行计算线程池 (见 ExecutorConfig)
+
+    @Autowired
+    private TransactionTemplate transactionTemplate; // 每栋楼的写入阶段独立一个事务
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher; // 计算完成后通知看板快照失效
+
+    // 每条 upsert 语句最多写入的天数
+    private static final int UPSERT_BATCH_SIZE = 500;
+
     @Override
     public void updateProgress(String key, int percent) {
         progressMap.put(key, percent);
@@ -97,10 +126,79 @@ public class ProgressServiceImpl implements ProgressService {
     // 2. 核心业务：全自动施工进度计算 (V12 升级版)
     // =========================================================
 
+    /**
+     * 全量重算 (Rebuild)：用项目全部历史照片把每栋楼的每一天重新跑一遍。
+     * 用于围栏变更、手动"刷新计算"等需要推倒重来的场景。
+     * 楼栋之间并行计算，每栋楼的写入在各自的事务中提交，一栋楼失败不会回滚其它楼栋。
+     * 在调用方的事务里被调用时 (例如保存围栏) 推迟到该事务提交之后执行。
+     */
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public void calculateProjectProgress(Integer projectId) {
-        System.out.println(">>> 开始执行进度计算 (V12)，项目ID: " + projectId);
+        runAfterCommit("进度计算", () -> {
+            System.out.println(">>> 开始执行进度计算 (V12 全量重算)，项目ID: " + projectId);
+            runProgressEngine(projectId, null);
+        });
+    }
+
+    /**
+     * 增量计算：只重算新照片落入的 (楼栋, 日期) 桶，以及这些日期之后的天。
+     * 之后的天必须一起重算，因为棘轮修正 (历史最大高度) 和理论 H2 (最近一次实测地面) 都依赖更早的记录。
+     * 更早的天保持数据库里的结果不动，直接作为棘轮/H2 的历史基准。
+     */
+    @Override
+    public void calculateProjectProgressIncremental(Integer projectId, Collection<Long> newPhotoIds) {
+        if (newPhotoIds == null || newPhotoIds.isEmpty()) return;
+        runAfterCommit("增量进度计算", () -> {
+            System.out.println(">>> 开始执行进度计算 (V12 增量)，项目ID: " + projectId + "，新照片: " + newPhotoIds.size() + " 张");
+            runProgressEngine(projectId, newPhotoIds);
+        });
+    }
+
+    /**
+     * 楼栋计算在 progressExecutor 线程里用各自的事务写库，看不到调用方未提交的数据 (新围栏、新楼栋)，
+     * 调用方回滚时也撤不回已经提交的结果，两边还可能互相等锁。
+     * 所以调用方处于事务中时，登记到事务提交之后再算 (仍在调用线程里同步执行)；回滚则不算。
+     */
+    private void runAfterCommit(String what, Runnable task) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            task.run();
+            return;
+        }
+        System.out.println(">>> 调用方事务尚未提交，" + what + "推迟到事务提交后执行");
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                // 此时原事务的连接和同步器仍绑定在当前线程上，先挂起再算，计算里的写库和看板事件不会落到已提交的事务里；
+                // 事务已提交，异常不能再抛回调用方 (会把已成功的请求变成失败)
+                try {
+                    TransactionTemplate outside = new TransactionTemplate(transactionTemplate.getTransactionManager());
+                    outside.setPropagationBehavior(TransactionDefinition.PROPAGATION_NOT_SUPPORTED);
+                    outside.executeWithoutResult(status -> task.run());
+                } catch (RuntimeException e) {
+                    System.err.println("❌ 事务提交后的" + what + "失败: " + e.getMessage());
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * 计算引擎主体
+     * @param newPhotoIds 为 null 时全量重算；否则只从新照片最早的拍摄日起，重算被新照片命中的楼栋
+     */
+    private void runProgressEngine(Integer projectId, Collection<Long> newPhotoIds) {
+        try {
+            computeProgress(projectId, newPhotoIds);
+        } finally {
+            // 无论提前结束 (没有楼栋/照片)、部分楼栋失败还是全部成功都让看板快照失效：
+            // 触发计算的围栏/楼栋变更本身就要刷新看板，失败时成功的楼栋也已各自提交
+            eventPublisher.publishEvent(new DashboardService.ProjectDataChangedEvent(projectId, "进度计算完成"));
+        }
+    }
+
+    private void computeProgress(Integer projectId, Collection<Long> newPhotoIds) {
+        boolean incremental = newPhotoIds != null;
         SysProject project = sysProjectMapper.selectById(projectId);
         String projectName = (project != null) ? project.getProjectName() : "未知项目";
 
@@ -109,11 +207,29 @@ public class ProgressServiceImpl implements ProgressService {
         );
         if (buildings == null || buildings.isEmpty()) return;
 
-        // 1. 获取照片
-        QueryWrapper<ProjectPhoto> photoQuery = new QueryWrapper<>();
-        photoQuery.eq("project_id", projectId);
-        photoQuery.isNotNull("laser_distance").isNotNull("absolute_altitude");
-        photoQuery.and(w -> w.eq("is_marker", 0).or().isNull("is_marker"));
+        // 0. 增量模式：先找出新照片里最早的拍摄日，之前的照片不需要再加载
+        Set<Long> newIdSet = incremental ? new HashSet<>(newPhotoIds) : Collections.emptySet();
+        LocalDateTime loadFrom = null;
+        if (incremental) {
+            QueryWrapper<ProjectPhoto> newQuery = validPhotoQuery(projectId);
+            newQuery.in("id", newIdSet);
+            newQuery.select("id", "shoot_time");
+            List<ProjectPhoto> newPhotos = projectPhotoMapper.selectList(newQuery);
+            if (newPhotos.isEmpty()) {
+                System.out.println(">>> 新照片中没有可参与计算的有效数据，增量计算结束。");
+                return;
+            }
+            LocalDate earliest = newPhotos.stream()
+                    .map(p -> p.getShootTime().toLocalDate())
+                    .min(Comparator.naturalOrder()).get();
+            loadFrom = earliest.atStartOfDay();
+        }
+
+        // 1. 获取照片 (增量模式只取起算日之后的)
+        QueryWrapper<ProjectPhoto> photoQuery = validPhotoQuery(projectId);
+        if (loadFrom != null) {
+            photoQuery.ge("shoot_time", loadFrom);
+        }
         photoQuery.orderByAsc("shoot_time");
 
         List<ProjectPhoto> photos = projectPhotoMapper.selectList(photoQuery);
@@ -123,277 +239,279 @@ public class ProgressServiceImpl implements ProgressService {
         }
 
         Map<Integer, Map<String, List<RawData>>> aggregation = new HashMap<>();
-
-        // 2. 空间初筛
+        // 增量模式下：每栋楼被新照片命中的最早日期 (即该楼栋的重算起点)
+        Map<Integer, String> rebuildFrom = new HashMap<>();
+
+        // 2. 空间初筛 (STRtree 空间索引)
+        //    先把每个已编译围栏"外扩缓冲区后的外包矩形"放进 R 树，每张照片只和包住它的那几个围栏做精确判定，
+        //    避免 照片数 × 楼栋数 × 顶点数 的全量嵌套循环
+        long assignStart = System.nanoTime();
+        STRtree fenceIndex = new STRtree();
+        int indexedFences = 0;
         for (SysBuilding building : buildings) {
-            String boundaryJson = building.getBoundaryCoords();
-            if (boundaryJson == null || boundaryJson.isEmpty()) continue;
-
-            List<Coordinate> fence;
-            try {
-                fence = objectMapper.readValue(boundaryJson, new TypeReference<>() {
-                });
-            } catch (Exception e) { continue; }
-            if (fence.size() < 3) continue;
-
-            for (ProjectPhoto photo : photos) {
-                double lat = (photo.getLrfTargetLat() != null) ? photo.getLrfTargetLat().doubleValue() : photo.getGpsLat().doubleValue();
-                double lng = (photo.getLrfTargetLng() != null) ? photo.getLrfTargetLng().doubleValue() : photo.getGpsLng().doubleValue();
-
-                // 缓冲区判定 (保持你原来的25.0米)
-                if (isInsideOrBuffered(lat, lng, fence, 20.0)) {
-                    String dateStr = photo.getShootTime().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-
-                    RawData data = new RawData();
-                    data.id = photo.getId();
-                    data.dist = photo.getLaserDistance().doubleValue();
-                    data.droneAlt = photo.getAbsoluteAltitude().doubleValue();
-                    // 这里的 initialType 仅作标记，不参与核心计算
-                    data.initialType = isPointInPolygon(lat, lng, fence) ? DataType.H1_ROOF : DataType.H2_GROUND;
-
-                    aggregation
-                        .computeIfAbsent(building.getId(), k -> new HashMap<>())
-                        .computeIfAbsent(dateStr, k -> new ArrayList<>())
-                        .add(data);
+            CompiledFence fence = geofenceService.getFence(building);
+            if (fence == null) continue;
+            fenceIndex.insert(fence.getLatLngEnvelope(), fence);
+            indexedFences++;
+        }
+        fenceIndex.build();
+
+        long exactTests = 0;
+        DateTimeFormatter dayFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+        for (ProjectPhoto photo : photos) {
+            BigDecimal latVal = (photo.getLrfTargetLat() != null) ? photo.getLrfTargetLat() : photo.getGpsLat();
+            BigDecimal lngVal = (photo.getLrfTargetLng() != null) ? photo.getLrfTargetLng() : photo.getGpsLng();
+            if (latVal == null || lngVal == null) continue;
+            double lat = latVal.doubleValue();
+            double lng = lngVal.doubleValue();
+
+            List<CompiledFence> candidates = fenceIndex.query(new Envelope(lng, lng, lat, lat));
+            for (CompiledFence candidate : candidates) {
+                exactTests++;
+                // 缓冲区判定 (20 米)
+                if (!candidate.isInsideOrBuffered(lat, lng)) continue;
+
+                String dateStr = photo.getShootTime().format(dayFormatter);
+                if (newIdSet.contains(photo.getId())) {
+                    rebuildFrom.merge(candidate.getBuildingId(), dateStr, (a, b) -> a.compareTo(b) <= 0 ? a : b);
                 }
+
+                RawData data = new RawData();
+                data.id = photo.getId();
+                data.dist = photo.getLaserDistance().doubleValue();
+                data.droneAlt = photo.getAbsoluteAltitude().doubleValue();
+                // 这里的 initialType 仅作标记，不参与核心计算
+                data.initialType = candidate.isInside(lat, lng) ? DataType.H1_ROOF : DataType.H2_GROUND;
+
+                aggregation
+                    .computeIfAbsent(candidate.getBuildingId(), k -> new HashMap<>())
+                    .computeIfAbsent(dateStr, k -> new ArrayList<>())
+                    .add(data);
             }
         }
+        System.out.printf(">>> 空间分配完成: 照片 %d 张, 围栏 %d 个, 精确判定 %d 次 (全量嵌套需 %d 次), 耗时 %.1fms%n",
+                photos.size(), indexedFences, exactTests, (long) photos.size() * indexedFences,
+                (System.nanoTime() - assignStart) / 1_000_000.0);
+
+        // 2.5 增量裁剪：没被新照片命中的楼栋整栋跳过；命中的楼栋只保留重算起点及之后的日期
+        if (incremental) {
+            aggregation.keySet().retainAll(rebuildFrom.keySet());
+            for (Map.Entry<Integer, Map<String, List<RawData>>> entry : aggregation.entrySet()) {
+                String from = rebuildFrom.get(entry.getKey());
+                entry.getValue().keySet().removeIf(d -> d.compareTo(from) < 0);
+            }
+            System.out.println(">>> 增量范围: " + rebuildFrom);
+        }
 
-        // 3. 计算逻辑
+        // 3. 并行计算：楼栋之间互不依赖，每栋楼作为一个任务提交到有界线程池
+        //    每个任务内部先做纯内存的清洗计算，最后在该楼栋自己的事务里统一写库
+        Map<Integer, SysBuilding> buildingMap = buildings.stream()
+                .collect(Collectors.toMap(SysBuilding::getId, b -> b));
+        Map<Integer, Future<Long>> futures = new LinkedHashMap<>();
+        long engineStart = System.currentTimeMillis();
         for (Map.Entry<Integer, Map<String, List<RawData>>> buildingEntry : aggregation.entrySet()) {
-            Integer buildingId = buildingEntry.getKey();
-            SysBuilding buildingInfo = sysBuildingMapper.selectById(buildingId);
-            String planName = buildingInfo.getPlanBuildingName();
-            System.out.println("--- 正在计算楼栋: " + buildingInfo.getName() + " ---");
-
+            SysBuilding buildingInfo = buildingMap.get(buildingEntry.getKey());
             Map<String, List<RawData>> dailyData = buildingEntry.getValue();
-            List<BuildingFloorInfo> floorRuler = floorInfoMapper.selectList(
-                new QueryWrapper<BuildingFloorInfo>().eq("building_id", buildingId).orderByAsc("floor_number")
-            );
-
-            List<String> sortedDates = new ArrayList<>(dailyData.keySet());
-            Collections.sort(sortedDates);
-
-            for (String dateStr : sortedDates) {
-                List<RawData> allCandidates = dailyData.get(dateStr);
-                if (allCandidates.isEmpty()) continue;
-
-                LocalDate measureDate = LocalDate.parse(dateStr);
-                double avgDroneAlt = allCandidates.stream().mapToDouble(d -> d.droneAlt).average().orElse(0.0);
-
-                // 记录照片数量 (用于前端展示和算法分支)
-                int photoCount = allCandidates.size();
-
-                // =============================================================
-                // 🔥 步骤 A: 混合清洗策略 (V12 新增核心 - P25/中位数)
-                // =============================================================
-                if (photoCount > 0) {
-                    // 1. 提取所有距离并排序
-                    List<Double> distances = allCandidates.stream()
-                            .map(d -> d.dist).sorted().toList();
-
-                    double benchmark;
-
-                    // 2. 确定基准锚点 (Benchmark)
-                    if (photoCount <= 3) {
-                        // 小样本 -> 使用【中位数】
-                        if (photoCount % 2 == 0) {
-                            benchmark = (distances.get(photoCount/2 - 1) + distances.get(photoCount/2)) / 2.0;
-                        } else {
-                            benchmark = distances.get(photoCount/2);
-                        }
-                    } else {
-                        // 大样本 -> 使用【P25 分位数】 (防止地面点干扰)
-                        int p25Index = (int) Math.floor(photoCount * 0.25);
-                        if (p25Index < 0) p25Index = 0;
-                        benchmark = distances.get(p25Index);
-                    }
-
-                    // 3. 设定阈值：剔除比基准值还小 5米 的突兀点 (塔吊/干扰)
-                    double safeThreshold = benchmark - 5.0;
-
-                    // 4. 执行过滤
-                    List<RawData> cleanCandidates = allCandidates.stream()
-                            .filter(d -> d.dist >= safeThreshold)
-                            .collect(Collectors.toList());
-
-                    if (!cleanCandidates.isEmpty()) {
-                        if (cleanCandidates.size() < allCandidates.size()) {
-                            System.out.println("   [清洗] 剔除高空噪点 " + (allCandidates.size() - cleanCandidates.size()) + " 个 (Benchmark=" + benchmark + ")");
-                        }
-                        allCandidates = cleanCandidates;
-                    }
-                }
-
-                // =============================================================
-                // 步骤 B: 距离分层 (Distance Clustering)
-                // =============================================================
-
-                // 1. 找 D_min
-                double dMin = allCandidates.stream().mapToDouble(d -> d.dist).min().orElse(0);
-
-                // 2. 强制分层
-                List<RawData> h1List = new ArrayList<>();
-                List<RawData> h2List = new ArrayList<>();
-
-                for (RawData d : allCandidates) {
-                    if (d.dist <= dMin + 5.0) {
-                        h1List.add(d);
-                    } else if (d.dist > dMin + 5.0) {
-                        h2List.add(d);
-                    }
-                }
-
-                // 调试日志
-                System.out.printf("[%s] D_min=%.2f | H1数量=%d | H2数量=%d%n", dateStr, dMin, h1List.size(), h2List.size());
+            futures.put(buildingInfo.getId(), progressExecutor.submit(
+                    () -> computeBuilding(projectId, projectName, buildingInfo, dailyData)));
+        }
 
-                // --- 步骤 C: H1 均值清洗 (剔除小杂物) ---
-                if (h1List.size() > 2) {
-                    for (int i = 0; i < 3; i++) {
-                        double avgH1 = h1List.stream().mapToDouble(d -> d.dist).average().orElse(0);
-                        List<RawData> noisePoints = new ArrayList<>();
-                        for (RawData d : h1List) {
-                            if (Math.abs(d.dist - avgH1) > 2.0) noisePoints.add(d);
-                        }
-                        if (noisePoints.isEmpty()) break;
-                        h1List.removeAll(noisePoints);
-                    }
-                }
+        List<String> failures = new ArrayList<>();
+        long slowest = 0;
+        for (Map.Entry<Integer, Future<Long>> entry : futures.entrySet()) {
+            String name = buildingMap.get(entry.getKey()).getName();
+            try {
+                slowest = Math.max(slowest, entry.getValue().get());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                System.err.println("   ❌ 楼栋 [" + name + "] 计算失败: " + cause.getMessage());
+                cause.printStackTrace();
+                failures.add(name + ": " + cause.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("进度计算被中断", e);
+            }
+        }
+        System.out.println(">>> 进度计算完成。楼栋数: " + futures.size()
+                + "，总耗时: " + (System.currentTimeMillis() - engineStart) + "ms，最慢楼栋: " + slowest + "ms");
+        if (!failures.isEmpty()) {
+            throw new RuntimeException("部分楼栋计算失败 " + failures);
+        }
+    }
 
-                // --- 步骤 D: 最终计算 (含 H2 智能校验锁) ---
+    /**
+     * 单栋楼的计算任务 (在 progressExecutor 线程中执行)
+     * 计算阶段：逐日执行 V12 清洗，只依赖当天的照片，不访问数据库
+     * 写入阶段：一次读出本楼栋的全部历史，按日期升序在内存中做 H2 校验与棘轮修正，
+     *          有变化的天一次批量 upsert，再做状态分析，整栋楼一个事务
+     * @return 本栋楼耗时 (ms)
+     */
+    private long computeBuilding(Integer projectId, String projectName, SysBuilding buildingInfo,
+                                 Map<String, List<RawData>> dailyData) {
+        long start = System.currentTimeMillis();
+        Integer buildingId = buildingInfo.getId();
+        String tag = "[" + buildingInfo.getName() + "] ";
+        System.out.println("--- 正在计算楼栋: " + buildingInfo.getName() + " (" + Thread.currentThread().getName() + ") ---");
+
+        List<String> sortedDates = new ArrayList<>(dailyData.keySet());
+        Collections.sort(sortedDates);
+
+        // ---------- 计算阶段 ----------
+        List<DailyResult> results = new ArrayList<>();
+        for (String dateStr : sortedDates) {
+            List<RawData> allCandidates = dailyData.get(dateStr);
+            if (allCandidates.isEmpty()) continue;
+            results.add(cleanDailyData(tag, dateStr, allCandidates));
+        }
 
-                // 1. 计算 H1
-                double finalH1 = -1;
-                if (!h1List.isEmpty()) {
-                    finalH1 = h1List.stream().mapToDouble(d -> d.dist).average().orElse(-1);
-                }
+        // ---------- 写入阶段 ----------
+        List<BuildingFloorInfo> floorRuler = floorInfoMapper.selectList(
+            new QueryWrapper<BuildingFloorInfo>().eq("building_id", buildingId).orderByAsc("floor_number")
+        );
+        String planName = buildingInfo.getPlanBuildingName();
+        boolean hasPlan = planName != null && !planName.isEmpty();
+        PlanSchedule schedule = hasPlan ? loadPlanSchedule(planName) : PlanSchedule.empty();
+        int[] written = new int[1];
+        transactionTemplate.executeWithoutResult(status -> {
+            // 棘轮与理论 H2 基准都用重算起点之前的记录做种子，之后只随本轮算出的结果滚动
+            BuildingHistory history = new BuildingHistory(actualProgressMapper.selectList(
+                    new QueryWrapper<ActualProgress>().eq("building_id", buildingId)),
+                    results.isEmpty() ? null : results.get(0).date);
+
+            List<ActualProgress> dayRows = new ArrayList<>(results.size());
+            List<ActualProgress> changed = new ArrayList<>();
+            for (DailyResult result : results) {
+                ActualProgress existing = history.byDate.get(result.date);
+                ActualProgress row = writeDailyResult(projectId, projectName, buildingInfo, floorRuler, history, result);
+                dayRows.add(row);
+                if (!sameMeasurement(existing, row)) changed.add(row);
+            }
 
-                // 2. 准备计算 H2 的参数
-                // 3. 计算【理论 H2】 (历史回推)
-                double theoreticalH2 = -1;
-                ActualProgress lastRecord = actualProgressMapper.selectOne(new QueryWrapper<ActualProgress>()
-                        .eq("building_id", buildingId)
-                        .eq("is_h2_measured", true) // 必须是以前实测过的真地面
-                        .isNotNull("h2_val").isNotNull("drone_alt")
-                        .lt("measurement_date", measureDate)
-                        .orderByDesc("measurement_date").last("LIMIT 1"));
-
-                if (lastRecord != null) {
-                    double baseH2 = lastRecord.getH2Val().doubleValue();
-                    double baseAlt = lastRecord.getDroneAlt().doubleValue();
-                    // 公式：理论H2 = 历史H2 + (今日飞高 - 历史飞高)
-                    theoreticalH2 = baseH2 + (avgDroneAlt - baseAlt);
-                }
+            for (int i = 0; i < changed.size(); i += UPSERT_BATCH_SIZE) {
+                actualProgressMapper.upsertBatch(changed.subList(i, Math.min(i + UPSERT_BATCH_SIZE, changed.size())));
+            }
+            written[0] = changed.size();
 
-                // 4. 计算【实测 H2】 (如果 H2List 不为空)
-                double measuredH2 = -1;
-                if (!h2List.isEmpty()) {
-                    double tmpAvg = h2List.stream().mapToDouble(d -> d.dist).average().orElse(0);
-                    measuredH2 = h2List.stream().mapToDouble(d -> d.dist)
-                            .filter(d -> Math.abs(d - tmpAvg) < 5.0).average().orElse(tmpAvg);
+            if (hasPlan) {
+                for (ActualProgress row : dayRows) {
+                    analyzeAndSaveStatus(projectId, projectName, buildingInfo.getName(), schedule, row);
                 }
+            }
+        });
 
-                // 5. 关键决策：H2 校验
-                double finalH2 = -1;
-                boolean isH2Measured = false;
-
-                if (measuredH2 != -1) {
-                    // 如果有历史数据，且 实测H2 远小于 理论H2 (差距 > 2m)
-                    // 说明：实测到的距离太短了，打到了裙楼或别的楼顶，不是真地面
-                    if (theoreticalH2 != -1 && (theoreticalH2 - measuredH2) > 2.0) {
-                        System.out.println("   [警告] 剔除伪地面数据(串扰/裙楼)! 实测H2=" + measuredH2 + " 理论H2=" + theoreticalH2);
-                        // 强制使用理论值
-                        finalH2 = theoreticalH2;
-                        isH2Measured = false; // 标记为非实测
-                    } else {
-                        // 正常情况，采纳实测值
-                        finalH2 = measuredH2;
-                        isH2Measured = true;
-                    }
-                } else {
-                    // 没测到 H2，直接用理论值
-                    if (theoreticalH2 != -1) {
-                        finalH2 = theoreticalH2;
-                        System.out.println("   -> 使用历史基准补偿 H2: " + finalH2);
-                    } else {
-                        System.out.println("   -> ⚠️ 无 H2 数据且无历史基准！");
-                    }
-                }
+        long cost = System.currentTimeMillis() - start;
+        System.out.println(tag + "完成 " + results.size() + " 天 (写入 " + written[0] + " 天)，耗时 " + cost + "ms");
+        return cost;
+    }
 
-                // 入库
-                double actualHeight = 0.0;
-                if (finalH1 != -1 && finalH2 != -1) {
-                    actualHeight = finalH2 - finalH1;
-                }
-                if (actualHeight < 0) actualHeight = 0;
+    /**
+     * V12 单日清洗：混合清洗[中位数/P25] -> 距离分层 -> H1 均值迭代 -> H2 截尾均值
+     * 纯内存计算 (见 ProgressKernel)，结果中的 H2 还是"实测值"，是否采纳要到写入阶段结合历史判断
+     */
+    private DailyResult cleanDailyData(String tag, String dateStr, List<RawData> allCandidates) {
+        int photoCount = allCandidates.size();
+        double[] distances = ProgressKernel.distanceBuffer(photoCount);
+        double[] droneAlts = ProgressKernel.altitudeBuffer(photoCount);
+        for (int i = 0; i < photoCount; i++) {
+            RawData d = allCandidates.get(i);
+            distances[i] = d.dist;
+            droneAlts[i] = d.droneAlt;
+        }
+        ProgressKernel.DailyStats stats = ProgressKernel.clean(distances, droneAlts, photoCount);
 
-                int preciseFloor = calculateFloorLevel(actualHeight, floorRuler);
+        if (stats.noiseRemoved() > 0) {
+            System.out.println(tag + "   [清洗] 剔除高空噪点 " + stats.noiseRemoved() + " 个 (Benchmark=" + stats.benchmark() + ")");
+        }
+        // 调试日志
+        System.out.printf("%s[%s] D_min=%.2f | H1数量=%d | H2数量=%d%n", tag, dateStr, stats.dMin(), stats.h1Count(), stats.h2Count());
+
+        DailyResult result = new DailyResult();
+        result.date = LocalDate.parse(dateStr);
+        result.avgDroneAlt = stats.avgDroneAlt();
+        // 记录照片数量 (用于前端展示和算法分支)
+        result.photoCount = stats.photoCount();
+        result.finalH1 = stats.finalH1();
+        result.measuredH2 = stats.measuredH2();
+        return result;
+    }
 
-                // 🔴 注意：此处增加了 photoCount 参数，如果实体类未更新，请在这一行去掉 photoCount 参数
-                saveOrUpdateProgress(projectId, projectName, buildingId, LocalDate.parse(dateStr),
-                                     actualHeight, finalH1, finalH2, avgDroneAlt, preciseFloor, isH2Measured, photoCount);
+    /**
+     * 写入阶段 (单日)：理论 H2 回推 -> H2 智能校验锁 -> 楼层换算 -> 棘轮修正
+     * 必须按日期升序调用，因为理论 H2 和棘轮都要用到前一天刚算出的记录 (由 history 在内存中顺推)
+     * @return 当天应写入的记录 (已记入 history)
+     */
+    private ActualProgress writeDailyResult(Integer projectId, String projectName, SysBuilding buildingInfo,
+                                            List<BuildingFloorInfo> floorRuler, BuildingHistory history,
+                                            DailyResult r) {
+        String tag = "[" + buildingInfo.getName() + "] ";
+        LocalDate measureDate = r.date;
+        double avgDroneAlt = r.avgDroneAlt;
+        double measuredH2 = r.measuredH2;
+
+        // 3. 计算【理论 H2】 (历史回推：以前最近一次实测过的真地面)
+        double theoreticalH2 = history.h2Baseline.theoreticalH2(avgDroneAlt);
+
+        // 5. 关键决策：H2 校验
+        double finalH2 = -1;
+        boolean isH2Measured = false;
+
+        if (measuredH2 != -1) {
+            // 如果有历史数据，且 实测H2 远小于 理论H2 (差距 > 2m)
+            // 说明：实测到的距离太短了，打到了裙楼或别的楼顶，不是真地面
+            if (theoreticalH2 != -1 && (theoreticalH2 - measuredH2) > 2.0) {
+                System.out.println(tag + "   [警告] 剔除伪地面数据(串扰/裙楼)! 实测H2=" + measuredH2 + " 理论H2=" + theoreticalH2);
+                // 强制使用理论值
+                finalH2 = theoreticalH2;
+                isH2Measured = false; // 标记为非实测
+            } else {
+                // 正常情况，采纳实测值
+                finalH2 = measuredH2;
+                isH2Measured = true;
+            }
+        } else {
+            // 没测到 H2，直接用理论值
+            if (theoreticalH2 != -1) {
+                finalH2 = theoreticalH2;
+                System.out.println(tag + "   -> 使用历史基准补偿 H2: " + finalH2);
+            } else {
+                System.out.println(tag + "   -> ⚠️ 无 H2 数据且无历史基准！");
+            }
+        }
 
-                if (planName != null && !planName.isEmpty()) {
-                    analyzeAndSaveStatus(projectId, projectName, buildingId,buildingInfo.getName(), planName, LocalDate.parse(dateStr), preciseFloor);
-                }
+        // 入库
+        double actualHeight = 0.0;
+        if (r.finalH1 != -1 && finalH2 != -1) {
+            actualHeight = finalH2 - r.finalH1;
+        }
+        if (actualHeight < 0) actualHeight = 0;
 
+        int preciseFloor = calculateFloorLevel(actualHeight, floorRuler);
 
-            }
-        }
-        System.out.println(">>> 进度计算完成。");
+        ActualProgress row = buildProgressRow(projectId, projectName, buildingInfo.getId(), measureDate, history,
+                actualHeight, r.finalH1, finalH2, avgDroneAlt, preciseFloor, isH2Measured, r.photoCount);
+        history.record(row);
+        return row;
     }
 
     // =========================================================
     // 3. 辅助计算方法 (保留原业务逻辑 + 新增缓冲区判定)
     // =========================================================
 
-    private boolean isInsideOrBuffered(double lat, double lng, List<Coordinate> polygon, double bufferMeters) {
-        if (polygon == null || polygon.size() < 3) return false;
-        if (isPointInPolygon(lat, lng, polygon)) return true;
-        return getMinDistanceToBoundary(lat, lng, polygon) <= bufferMeters;
-    }
-
-    private boolean isPointInPolygon(double lat, double lng, List<Coordinate> polygon) {
-        boolean result = false;
-        for (int i = 0, j = polygon.size() - 1; i < polygon.size(); j = i++) {
-            if ((polygon.get(i).getLat() > lat) != (polygon.get(j).getLat() > lat) &&
-                (lng < (polygon.get(j).getLng() - polygon.get(i).getLng()) * (lat - polygon.get(i).getLat()) / (polygon.get(j).getLat() - polygon.get(i).getLat()) + polygon.get(i).getLng())) {
-                result = !result;
-            }
-        }
-        return result;
-    }
-
-    private double getMinDistanceToBoundary(double lat, double lng, List<Coordinate> polygon) {
-        double minDistance = Double.MAX_VALUE;
-        double mPerLat = 111132.92;
-        double mPerLng = 111412.84 * Math.cos(Math.toRadians(lat));
-        for (int i = 0; i < polygon.size(); i++) {
-            Coordinate p1 = polygon.get(i);
-            Coordinate p2 = polygon.get((i + 1) % polygon.size());
-            double x1 = (p1.getLng() - lng) * mPerLng;
-            double y1 = (p1.getLat() - lat) * mPerLat;
-            double x2 = (p2.getLng() - lng) * mPerLng;
-            double y2 = (p2.getLat() - lat) * mPerLat;
-            double dist = pointToSegmentDistance(0, 0, x1, y1, x2, y2);
-            if (dist < minDistance) minDistance = dist;
-        }
-        return minDistance;
-    }
-
-    private double pointToSegmentDistance(double px, double py, double x1, double y1, double x2, double y2) {
-        double dx = x2 - x1;
-        double dy = y2 - y1;
-        if (dx == 0 && dy == 0) return Math.hypot(px - x1, py - y1);
-        double t = ((px - x1) * dx + (py - y1) * dy) / (dx * dx + dy * dy);
-        if (t < 0) t = 0;
-        if (t > 1) t = 1;
-        double nearestX = x1 + t * dx;
-        double nearestY = y1 + t * dy;
-        return Math.hypot(px - nearestX, py - nearestY);
+    /**
+     * 参与进度计算的照片条件：有激光距离、有飞机海拔、且不是围栏拐点照片
+     */
+    private QueryWrapper<ProjectPhoto> validPhotoQuery(Integer projectId) {
+        QueryWrapper<ProjectPhoto> query = new QueryWrapper<>();
+        query.eq("project_id", projectId);
+        query.isNotNull("laser_distance").isNotNull("absolute_altitude").isNotNull("shoot_time");
+        query.and(w -> w.eq("is_marker", 0).or().isNull("is_marker"));
+        return query;
     }
 
-    private int calculateFloorLevel(double currentHeight, List<BuildingFloorInfo> ruler) {
+    /**
+     * 按楼层标尺换算楼层 (纯计算，包级可见供基准测试调用)
+     */
+    static int calculateFloorLevel(double currentHeight, List<BuildingFloorInfo> ruler) {
         if (ruler == null || ruler.isEmpty()) return Math.max(0, (int) (currentHeight / 3.0));
         if (currentHeight <= 0) return 0;
         int floor = 0;
@@ -410,35 +528,32 @@ public class ProgressServiceImpl implements ProgressService {
     public String analyzeStatus(String navisworksName, int actualFloor, LocalDate date) {
         List<PlanProgress> plans = planProgressMapper.selectList(new QueryWrapper<PlanProgress>()
                 .eq("Building", navisworksName).le("PlannedEnd", date.atTime(23, 59, 59)));
-        int plannedFloor = 0;
-        for (PlanProgress p : plans) {
-            try {
-                String fStr = p.getFloor().replaceAll("[^0-9]", "");
-                if(!fStr.isEmpty()){
-                    int f = Integer.parseInt(fStr);
-                    if (f > plannedFloor) plannedFloor = f;
-                }
-            } catch (NumberFormatException e) {}
-        }
-        if (plans.isEmpty()) return "暂无计划";
-        int diff = actualFloor - plannedFloor;
-        if (diff >= 0) return diff == 0 ? "正常" : "超前 " + diff + " 层";
-        else return Math.abs(diff) > 2 ? "严重滞后" : "滞后 " + Math.abs(diff) + " 层";
+        return PlanSchedule.of(plans).statusAt(actualFloor, date);
+    }
+
+    /**
+     * 一栋楼的全部计划行 (statusAt 自己按日期截取，整栋楼只查一次)
+     */
+    private PlanSchedule loadPlanSchedule(String navisworksName) {
+        return PlanSchedule.of(planProgressMapper.selectList(new QueryWrapper<PlanProgress>()
+                .eq("Building", navisworksName)));
     }
 
-    private void analyzeAndSaveStatus(Integer projectId, String projectName, Integer buildingId, String buildingName, String planName, LocalDate date, int actualFloor) {
-            String status = analyzeStatus(planName, actualFloor, date);
+    /**
+     * 滞后预警：对比当天实际楼层与计划，滞后且未发过邮件时通知项目负责人
+     * @param record 当天刚写入的记录 (内存中的那份，is_alert_sent 来自读取的历史)
+     */
+    private void analyzeAndSaveStatus(Integer projectId, String projectName, String buildingName,
+                                      PlanSchedule schedule, ActualProgress record) {
+            LocalDate date = record.getMeasurementDate();
+            int actualFloor = record.getFloorLevel() != null ? record.getFloorLevel() : 0;
+            String status = schedule.statusAt(actualFloor, date);
 
             // 仅在进度滞后时触发
             if (status.contains("滞后")) {
 
-                // 1. 去数据库查一下这一天的计算记录
-                QueryWrapper<ActualProgress> query = new QueryWrapper<>();
-                query.eq("building_id", buildingId).eq("measurement_date", date);
-                ActualProgress record = actualProgressMapper.selectOne(query);
-
-                // 2. 精准拦截：只有当记录存在，且 isAlertSent 为空或为 0 时（代表还没发过邮件），才发！
-                if (record != null && (record.getIsAlertSent() == null || record.getIsAlertSent() == 0)) {
+                // 1. 精准拦截：只有当 isAlertSent 为空或为 0 时（代表还没发过邮件），才发！
+                if (record.getIsAlertSent() == null || record.getIsAlertSent() == 0) {
                     try {
                         SysProject project = sysProjectMapper.selectById(projectId);
                         if (project != null && project.getCreatedBy() != null) {
@@ -463,9 +578,9 @@ public class ProgressServiceImpl implements ProgressService {
                                 emailService.sendSimpleMail(manager.getEmail(), subject, content);
                                 System.out.println("   [主动预警] 已向项目负责人发送进度滞后告警邮件: " + manager.getEmail());
 
-                                // 3. 发送成功后，更新标记为 1 (已发送)
+                                // 2. 发送成功后，更新标记为 1 (已发送)
                                 record.setIsAlertSent(1);
-                                actualProgressMapper.updateById(record);
+                                actualProgressMapper.markAlertSent(record.getBuildingId(), date);
                             }
                         }
                     } catch (Exception e) {
@@ -481,23 +596,17 @@ public class ProgressServiceImpl implements ProgressService {
         }
 
     /**
-     * 保存进度记录 (带"单调递增"棘轮修正)
+     * 生成当天的进度记录 (带"单调递增"棘轮修正)
      * 修复：防止因无人机GPS误差导致出现"楼层变矮"的异常数据
      * 修复：记录照片数量 photoCount (V12新增)
+     * 已有记录时沿用其 id / created_at / is_alert_sent，由批量 upsert 统一写库
      */
-    private void saveOrUpdateProgress(Integer projectId, String projectName, Integer buildingId, LocalDate date,
-                                      double rawHeight, double h1, double h2, double droneAlt, Integer rawFloor, boolean isH2Measured,
-                                      Integer photoCount) { // 👈 新增参数
-
-        // 1. 获取该楼栋截止到昨天的"历史最大高度"
-        // 我们查出该楼栋所有日期的记录，按高度降序排，取第一条
-        QueryWrapper<ActualProgress> maxQuery = new QueryWrapper<>();
-        maxQuery.eq("building_id", buildingId)
-                .lt("measurement_date", date) // 只看今天之前的
-                .orderByDesc("actual_height") // 找最高的
-                .last("LIMIT 1");
+    private ActualProgress buildProgressRow(Integer projectId, String projectName, Integer buildingId, LocalDate date,
+                                            BuildingHistory history, double rawHeight, double h1, double h2, double droneAlt,
+                                            Integer rawFloor, boolean isH2Measured, Integer photoCount) {
 
-        ActualProgress maxRecord = actualProgressMapper.selectOne(maxQuery);
+        // 1. 该楼栋截止到昨天的"历史最大高度" (history 已顺推到今天之前)
+        ActualProgress maxRecord = history.maxRecord;
 
         double finalHeight = rawHeight;
         int finalFloor = rawFloor;
@@ -522,48 +631,51 @@ public class ProgressServiceImpl implements ProgressService {
             }
         }
 
-        // 3. 执行数据库更新或插入 (保持原有逻辑)
-        QueryWrapper<ActualProgress> query = new QueryWrapper<>();
-        query.eq("building_id", buildingId).eq("measurement_date", date);
-        ActualProgress exist = actualProgressMapper.selectOne(query);
-
-        if (exist != null) {
-            exist.setProjectName(projectName);
-            exist.setFloorLevel(finalFloor); // 使用修正后的楼层
-            exist.setActualHeight(BigDecimal.valueOf(finalHeight).setScale(2, RoundingMode.HALF_UP)); // 使用修正后的高度
+        // 3. 组装记录
+        ActualProgress exist = history.byDate.get(date);
+        ActualProgress progress = new ActualProgress();
+        progress.setProjectId(exist != null ? exist.getProjectId() : projectId);
+        progress.setProjectName(projectName);
+        progress.setBuildingId(buildingId);
+        progress.setMeasurementDate(date);
 
-            // 【关键】保留原始的测量数据 h1/h2 供排查，但 actual_height 存修正后的
-            exist.setH1Val(h1 != -1 ? BigDecimal.valueOf(h1).setScale(2, RoundingMode.HALF_UP) : null);
-            exist.setH2Val(h2 != -1 ? BigDecimal.valueOf(h2).setScale(2, RoundingMode.HALF_UP) : null);
-            exist.setDroneAlt(BigDecimal.valueOf(droneAlt).setScale(2, RoundingMode.HALF_UP));
-            exist.setIsH2Measured(isH2Measured);
+        progress.setFloorLevel(finalFloor); // 使用修正后的楼层
+        progress.setActualHeight(BigDecimal.valueOf(finalHeight).setScale(2, RoundingMode.HALF_UP)); // 使用修正后的高度
 
-            // 🔴 关键修改：保存 photoCount。如果你的实体类没加字段，这行会报红，请去实体类加字段
-            exist.setPhotoCount(photoCount);
+        // 【关键】保留原始的测量数据 h1/h2 供排查，但 actual_height 存修正后的
+        progress.setH1Val(h1 != -1 ? BigDecimal.valueOf(h1).setScale(2, RoundingMode.HALF_UP) : null);
+        progress.setH2Val(h2 != -1 ? BigDecimal.valueOf(h2).setScale(2, RoundingMode.HALF_UP) : null);
+        progress.setDroneAlt(BigDecimal.valueOf(droneAlt).setScale(2, RoundingMode.HALF_UP));
+        progress.setIsH2Measured(isH2Measured);
+        progress.setPhotoCount(photoCount);
 
-            actualProgressMapper.updateById(exist);
+        if (exist != null) {
+            progress.setId(exist.getId());
+            progress.setCreatedAt(exist.getCreatedAt());
+            progress.setIsAlertSent(exist.getIsAlertSent());
         } else {
-            ActualProgress progress = new ActualProgress();
-            progress.setProjectId(projectId);
-            progress.setProjectName(projectName);
-            progress.setBuildingId(buildingId);
-            progress.setMeasurementDate(date);
-
-            progress.setFloorLevel(finalFloor); // 使用修正后的楼层
-            progress.setActualHeight(BigDecimal.valueOf(finalHeight).setScale(2, RoundingMode.HALF_UP)); // 使用修正后的高度
-
-            progress.setH1Val(h1 != -1 ? BigDecimal.valueOf(h1).setScale(2, RoundingMode.HALF_UP) : null);
-            progress.setH2Val(h2 != -1 ? BigDecimal.valueOf(h2).setScale(2, RoundingMode.HALF_UP) : null);
-            progress.setDroneAlt(BigDecimal.valueOf(droneAlt).setScale(2, RoundingMode.HALF_UP));
-            progress.setIsH2Measured(isH2Measured);
-
-            // 🔴 关键修改：保存 photoCount
-            progress.setPhotoCount(photoCount);
-
             progress.setCreatedAt(LocalDateTime.now());
-
-            actualProgressMapper.insert(progress);
         }
+        return progress;
+    }
+
+    /**
+     * 与库里已有记录相比测量结果是否没变 (没变的天不写库)
+     */
+    private static boolean sameMeasurement(ActualProgress a, ActualProgress b) {
+        return a != null
+                && Objects.equals(a.getProjectName(), b.getProjectName())
+                && Objects.equals(a.getFloorLevel(), b.getFloorLevel())
+                && sameDecimal(a.getActualHeight(), b.getActualHeight())
+                && sameDecimal(a.getH1Val(), b.getH1Val())
+                && sameDecimal(a.getH2Val(), b.getH2Val())
+                && sameDecimal(a.getDroneAlt(), b.getDroneAlt())
+                && Objects.equals(a.getIsH2Measured(), b.getIsH2Measured())
+                && Objects.equals(a.getPhotoCount(), b.getPhotoCount());
+    }
+
+    private static boolean sameDecimal(BigDecimal a, BigDecimal b) {
+        return a == null ? b == null : b != null && a.compareTo(b) == 0;
     }
 
     // =========================================================
@@ -581,6 +693,94 @@ public class ProgressServiceImpl implements ProgressService {
         public RawData() {}
     }
 
+    /**
+     * 一栋楼的实际进度历史 (写入阶段开始时一次读出)
+     * 棘轮最大值和理论 H2 基准用同一规则维护：先用重算起点之前的记录做种子，之后只并入本轮算出的记录。
+     * 重算范围内库里的旧记录 (即将被覆盖，或这一轮已经没有照片的天) 两者都不认，一轮之内前后一致；
+     * 旧记录仍留在 byDate 里，供同一天沿用 id / created_at / is_alert_sent。
+     * 包级可见供单元测试调用。
+     */
+    static class BuildingHistory {
+        final TreeMap<LocalDate, ActualProgress> byDate = new TreeMap<>();
+        ActualProgress maxRecord;       // 已并入部分中 actual_height 最高的记录 (棘轮基准)
+        final H2Baseline h2Baseline = new H2Baseline();
+
+        /**
+         * @param from 本轮重算的第一天；为 null 表示本轮没有要写的天
+         */
+        BuildingHistory(List<ActualProgress> rows, LocalDate from) {
+            for (ActualProgress row : rows) {
+                if (row.getMeasurementDate() != null) byDate.put(row.getMeasurementDate(), row);
+            }
+            if (from == null) return;
+            for (ActualProgress row : byDate.headMap(from, false).values()) {
+                absorb(row);
+            }
+        }
+
+        /**
+         * 本轮算完的一天 (调用的日期必须递增)：放回 byDate，并入棘轮和 H2 基准，后面的日期就能读到
+         */
+        void record(ActualProgress row) {
+            byDate.put(row.getMeasurementDate(), row);
+            absorb(row);
+        }
+
+        private void absorb(ActualProgress row) {
+            if (row.getActualHeight() != null
+                    && (maxRecord == null || row.getActualHeight().compareTo(maxRecord.getActualHeight()) > 0)) {
+                maxRecord = row;
+            }
+            h2Baseline.roll(row);
+        }
+    }
+
+    /**
+     * 理论 H2 的滚动基准：最近一次实测地面的 H2 与当时的飞高
+     * 由 BuildingHistory 按日期推进时就地更新，不再每天回查数据库。
+     * 基准取入库后的两位小数，与从库里读出的值一致。
+     */
+    static class H2Baseline {
+        private boolean present;
+        private double h2;
+        private double droneAlt;
+
+        /**
+         * 理论H2 = 历史H2 + (今日飞高 - 历史飞高)；没有基准返回 -1
+         */
+        double theoreticalH2(double avgDroneAlt) {
+            return present ? h2 + (avgDroneAlt - droneAlt) : -1;
+        }
+
+        /**
+         * 当天结果是实测地面 (通过了校验) 时成为新的基准
+         */
+        void roll(ActualProgress row) {
+            if (accepts(row)) take(row);
+        }
+
+        private boolean accepts(ActualProgress row) {
+            return Boolean.TRUE.equals(row.getIsH2Measured()) && row.getH2Val() != null && row.getDroneAlt() != null;
+        }
+
+        private void take(ActualProgress row) {
+            present = true;
+            h2 = row.getH2Val().doubleValue();
+            droneAlt = row.getDroneAlt().doubleValue();
+        }
+    }
+
+    /**
+     * 单日清洗结果 (计算阶段产出，写入阶段消费)
+     */
+    private static class DailyResult {
+        LocalDate date;
+        int photoCount;
+        double avgDroneAlt;
+        double finalH1;
+        double measuredH2;
+    }
+
     private enum DataType {
         H1_ROOF,
         H2_GROUND
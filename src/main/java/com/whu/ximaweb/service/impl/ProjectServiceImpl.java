@@ -10,9 +10,14 @@ import com.whu.ximaweb.model.ProjectPhoto;
 import com.whu.ximaweb.model.SysBuilding;
 import com.whu.ximaweb.model.SysProject;
 import com.whu.ximaweb.model.SysUserProject;
+import com.whu.ximaweb.service.DashboardService;
+import com.whu.ximaweb.service.DjiSyncWatermarkService;
+import com.whu.ximaweb.service.GeofenceService;
+import com.whu.ximaweb.service.ObsKeyIndex;
 import com.whu.ximaweb.service.ProjectService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value; // ✅ 新增：读取配置
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils; // ✅ 新增：工具类
@@ -39,6 +44,18 @@ public class ProjectServiceImpl implements ProjectService {
     @Autowired
     private ProjectPhotoMapper projectPhotoMapper;
 
+    @Autowired
+    private GeofenceService geofenceService;
+
+    @Autowired
+    private ObsKeyIndex obsKeyIndex;
+
+    @Autowired
+    private DjiSyncWatermarkService djiSyncWatermarkService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher; // 项目数据变更后通知看板快照失效
+
     // =========================================================================
     // ✅ 核心修改：注入系统默认配置 (来自 application.properties)
     // =========================================================================
@@ -138,16 +155,32 @@ public class ProjectServiceImpl implements ProjectService {
         relationQuery.eq("project_id", projectId);
         sysUserProjectMapper.delete(relationQuery);
 
+        djiSyncWatermarkService.deleteByProject(projectId);
         sysProjectMapper.deleteById(projectId);
+        obsKeyIndex.evict(projectId);
+        eventPublisher.publishEvent(new DashboardService.ProjectDataChangedEvent(projectId, "删除项目"));
     }
 
     @Override
     public boolean updateProjectInfo(SysProject project) {
         SysProject old = sysProjectMapper.selectById(project.getId());
         if (old == null) return false;
+        // 关键词变了，旧水位之前可能有新关键词匹配的任务，水位作废
+        boolean keywordChanged = !java.util.Objects.equals(old.getPhotoFolderKeyword(), project.getPhotoFolderKeyword());
         old.setProjectName(project.getProjectName());
         old.setPhotoFolderKeyword(project.getPhotoFolderKeyword());
-        return sysProjectMapper.updateById(old) > 0;
+        if (project.getSyncIntervalMinutes() != null) {
+            old.setSyncIntervalMinutes(project.getSyncIntervalMinutes() > 0 ? project.getSyncIntervalMinutes() : null);
+        }
+        boolean updated = sysProjectMapper.updateById(old) > 0;
+        if (updated && keywordChanged) {
+            djiSyncWatermarkService.deleteByProject(old.getId());
+        }
+        if (updated) {
+            // 看板上显示项目名称
+            eventPublisher.publishEvent(new DashboardService.ProjectDataChangedEvent(old.getId(), "项目信息修改"));
+        }
+        return updated;
     }
 
     // ⚠️ 注意：此处移除了 @Override，因为接口 ProjectService 中没有定义此方法
@@ -171,6 +204,8 @@ public class ProjectServiceImpl implements ProjectService {
                 building.setBoundaryCoords(jsonCoords);
                 sysBuildingMapper.updateById(building);
             }
+            geofenceService.evict(building.getId());
+            eventPublisher.publishEvent(new DashboardService.ProjectDataChangedEvent(projectId, "围栏修改"));
         } catch (Exception e) {
             throw new RuntimeException("坐标保存失败: " + e.getMessage());
         }
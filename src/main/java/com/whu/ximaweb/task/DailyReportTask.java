@@ -10,10 +10,13 @@ import com.whu.ximaweb.model.SysProject;
 import com.whu.ximaweb.model.SysTaskLog; // ✅ 新增
 import com.whu.ximaweb.model.SysUser;
 import com.whu.ximaweb.service.EmailService; // ✅ 新增
+import com.whu.ximaweb.service.JobLeaseService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
@@ -37,6 +40,9 @@ public class DailyReportTask {
     @Autowired
     private AiController aiController; // 复用分析逻辑
 
+    @Autowired
+    private JobLeaseService jobLeaseService; // 多节点部署时保证每份日报只发一次
+
     // 每分钟检查一次，看是否有用户的设定时间到了
     @Scheduled(cron = "0 * * * * ?")
     public void executeDailyReport() {
@@ -57,6 +63,12 @@ public class DailyReportTask {
             );
 
             for (SysProject project : projects) {
+                // 租约 Key 含日期和发送时刻，拿到的节点才发送；执行完不释放，防止其他节点稍晚触发时重复发送
+                String leaseKey = "daily-report:" + project.getId() + ":" + user.getId() + ":" + LocalDate.now() + " " + nowStr;
+                if (!jobLeaseService.tryAcquire(leaseKey, Duration.ofHours(2))) {
+                    System.out.println("   -> 项目 [" + project.getProjectName() + "] 的报告已由其他节点处理，跳过");
+                    continue;
+                }
                 try {
                     System.out.println("   -> 正在为用户 " + user.getUsername() + " 生成项目 [" + project.getProjectName() + "] 的报告...");
 
@@ -4,13 +4,17 @@ import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.whu.ximaweb.mapper.SysProjectMapper;
 import com.whu.ximaweb.model.SysProject;
 import com.whu.ximaweb.service.EzvizService;
+import com.whu.ximaweb.service.JobLeaseService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct; // 🔥 关键新增 1：引入 PostConstruct 注解
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.Calendar;
 import java.util.List;
 
@@ -23,20 +27,41 @@ public class EzvizTokenTask {
 
     private static final Logger log = LoggerFactory.getLogger(EzvizTokenTask.class);
 
+    // 开机时 Token 剩余有效期不足这个时长也刷新 (保证撑到下一次凌晨刷新)
+    private static final Duration STARTUP_REFRESH_MARGIN = Duration.ofDays(1);
+
     @Autowired
     private SysProjectMapper sysProjectMapper;
 
     @Autowired
     private EzvizService ezvizService;
 
+    @Autowired
+    private JobLeaseService jobLeaseService;
+
+    // 定时任务总开关关闭时 (离线压测等)，开机自检也不执行
+    @Value("${xima.scheduling.enabled:true}")
+    private boolean schedulingEnabled;
+
     /**
-     * 🔥 [关键新增 2] 开机自启机制：项目每次启动时，强制执行一次 Token 刷新
+     * 🔥 [关键新增 2] 开机自启机制：项目每次启动时，检查并刷新缺失或即将过期的 Token
      * 解决开发阶段/服务器重启后，未到凌晨2点导致 Token 过期黑屏的问题
+     * 不走租约：租约保留 10 分钟，刚重启的节点会被自己或别的节点留下的租约挡住；
+     * 只刷新确实需要刷新的项目，多个节点同时启动时最多重复请求几次
      */
     @PostConstruct
     public void initTokenOnStartup() {
+        if (!schedulingEnabled) return;
         log.info("🚀 [系统启动] 触发萤石云 Token 开机自检与自动刷新...");
-        refreshTokenTask();
+        try {
+            QueryWrapper<SysProject> query = configuredProjects();
+            query.and(w -> w.isNull("ezviz_access_token").or().eq("ezviz_access_token", "")
+                    .or().isNull("ezviz_token_expire_time")
+                    .or().lt("ezviz_token_expire_time", LocalDateTime.now().plus(STARTUP_REFRESH_MARGIN)));
+            refreshProjects(sysProjectMapper.selectList(query));
+        } catch (Exception e) {
+            log.error("💥 [萤石云保活] 开机自检异常", e);
+        }
     }
 
     /**
@@ -44,60 +69,71 @@ public class EzvizTokenTask {
      */
     @Scheduled(cron = "0 0 2 * * ?")
     public void refreshTokenTask() {
+        // 多节点部署时只需一个节点刷新；租约保留 10 分钟，其他节点同一时刻触发时直接跳过
+        if (!jobLeaseService.tryAcquire("ezviz-token-refresh", Duration.ofMinutes(10))) {
+            log.info("⏭️ [萤石云保活] 其他节点已在刷新 Token，本节点跳过。");
+            return;
+        }
         log.info("🕒 [萤石云保活] 开始执行 Token 自动刷新任务...");
 
         try {
-            // 1. 查出所有配置了萤石云 AppKey 的项目
-            QueryWrapper<SysProject> query = new QueryWrapper<>();
-            query.isNotNull("ezviz_app_key").ne("ezviz_app_key", "");
+            refreshProjects(sysProjectMapper.selectList(configuredProjects()));
+        } catch (Exception e) {
+            log.error("💥 [萤石云保活] 任务执行异常", e);
+        }
+    }
 
-            List<SysProject> projectList = sysProjectMapper.selectList(query);
+    /**
+     * 配置了萤石云 AppKey 的项目
+     */
+    private QueryWrapper<SysProject> configuredProjects() {
+        QueryWrapper<SysProject> query = new QueryWrapper<>();
+        query.isNotNull("ezviz_app_key").ne("ezviz_app_key", "");
+        return query;
+    }
 
-            if (projectList == null || projectList.isEmpty()) {
-                log.info("📭 [萤石云保活] 没有配置萤石云的项目，任务结束。");
-                return;
-            }
+    private void refreshProjects(List<SysProject> projectList) {
+        if (projectList == null || projectList.isEmpty()) {
+            log.info("📭 [萤石云保活] 没有需要刷新 Token 的项目，任务结束。");
+            return;
+        }
 
-            int successCount = 0;
-            int failCount = 0;
+        int successCount = 0;
+        int failCount = 0;
 
-            // 2. 遍历每个项目，单独刷新
-            for (SysProject project : projectList) {
-                String appKey = project.getEzvizAppKey();
-                String secret = project.getEzvizAppSecret();
+        // 遍历每个项目，单独刷新
+        for (SysProject project : projectList) {
+            String appKey = project.getEzvizAppKey();
+            String secret = project.getEzvizAppSecret();
 
-                // 双重检查：确保 Secret 也是有的
-                if (secret == null || secret.isEmpty()) {
-                    continue;
-                }
+            // 双重检查：确保 Secret 也是有的
+            if (secret == null || secret.isEmpty()) {
+                continue;
+            }
 
-                try {
-                    // 3. 调用萤石云接口获取最新 Token
-                    String newToken = ezvizService.getAccessToken(appKey, secret);
+            try {
+                // 调用萤石云接口获取最新 Token
+                String newToken = ezvizService.getAccessToken(appKey, secret);
 
-                    // 4. 更新内存数据
-                    project.setEzvizAccessToken(newToken);
+                // 更新内存数据
+                project.setEzvizAccessToken(newToken);
 
-                    // 重新设置过期时间为 7 天后
-                    Calendar cal = Calendar.getInstance();
-                    cal.add(Calendar.DAY_OF_YEAR, 7);
-                    project.setEzvizTokenExpireTime(cal.getTime());
+                // 重新设置过期时间为 7 天后
+                Calendar cal = Calendar.getInstance();
+                cal.add(Calendar.DAY_OF_YEAR, 7);
+                project.setEzvizTokenExpireTime(cal.getTime());
 
-                    // 5. 更新数据库
-                    sysProjectMapper.updateById(project);
+                // 更新数据库
+                sysProjectMapper.updateById(project);
 
-                    successCount++;
-                    log.info("✅ [萤石云保活] 项目 [{}] Token 刷新成功", project.getProjectName());
+                successCount++;
+                log.info("✅ [萤石云保活] 项目 [{}] Token 刷新成功", project.getProjectName());
 
-                } catch (Exception e) {
-                    failCount++;
-                    log.error("❌ [萤石云保活] 项目 [{}] Token 刷新失败: {}", project.getProjectName(), e.getMessage());
-                }
+            } catch (Exception e) {
+                failCount++;
+                log.error("❌ [萤石云保活] 项目 [{}] Token 刷新失败: {}", project.getProjectName(), e.getMessage());
             }
-            log.info("🏁 [萤石云保活] 任务完成。成功: {}, 失败: {}", successCount, failCount);
-
-        } catch (Exception e) {
-            log.error("💥 [萤石云保活] 任务执行异常", e);
         }
+        log.info("🏁 [萤石云保活] 任务完成。成功: {}, 失败: {}", successCount, failCount);
     }
-}
\ No newline at end of file
+}
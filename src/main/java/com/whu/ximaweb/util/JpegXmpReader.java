@@ -0,0 +1,139 @@
+package com.whu.ximaweb.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JPEG 头部 XMP 读取工具
+ * 只按段 (marker + length) 顺序跳读，找到 APP1 里的 XMP 包就停下，不读图像数据；
+ * 因此传入文件的前几十 KB (如 Range 下载的头部) 也能解析。
+ */
+public final class JpegXmpReader {
+
+    /** XMP 所在 APP1 段的命名空间头 */
+    private static final byte[] XMP_HEADER = "http://ns.adobe.com/xap/1.0/\0".getBytes(StandardCharsets.US_ASCII);
+
+    /** 单个 JPEG 段最大 65535 字节，XMP 包不会比这更大 (不处理 Extended XMP) */
+    public static final int MAX_SEGMENT_BYTES = 65535;
+
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_EOI = 0xD9;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_APP1 = 0xE1;
+
+    private JpegXmpReader() {
+    }
+
+    /**
+     * 判断是否为 JPEG (以 FF D8 开头)
+     */
+    public static boolean isJpeg(byte[] head) {
+        return head != null && head.length >= 2 && (head[0] & 0xFF) == 0xFF && (head[1] & 0xFF) == MARKER_SOI;
+    }
+
+    /**
+     * 从 JPEG 流中读取 XMP 包
+     * @param in 已经读过 SOI (FF D8) 两个字节的流
+     * @return XMP 字符串；遇到图像数据 (SOS)、流提前结束或没有 XMP 段时返回 null
+     */
+    public static String readXmpAfterSoi(InputStream in) throws IOException {
+        try {
+            while (true) {
+                int b = in.read();
+                if (b < 0) return null;
+                if (b != 0xFF) continue; // 容错：跳过段间填充
+                int marker = in.read();
+                while (marker == 0xFF) marker = in.read(); // 连续的 FF 填充
+                if (marker < 0 || marker == MARKER_EOI || marker == MARKER_SOS) return null;
+                if (marker == MARKER_SOI || (marker >= 0xD0 && marker <= 0xD7)) continue; // 无长度的标记
+
+                int length = (readByte(in) << 8) | readByte(in);
+                int payload = length - 2;
+                if (payload < 0) return null;
+
+                if (marker == MARKER_APP1 && payload > XMP_HEADER.length) {
+                    byte[] data = in.readNBytes(payload);
+                    if (data.length < payload) return null; // 头部截断
+                    if (startsWith(data, XMP_HEADER)) {
+                        return new String(data, XMP_HEADER.length, data.length - XMP_HEADER.length, StandardCharsets.UTF_8);
+                    }
+                    // EXIF 等其他 APP1 段，继续往后找
+                } else {
+                    skipFully(in, payload);
+                }
+            }
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 单遍扫描 XMP 中形如 prefix:Name="value" 的属性
+     * 只保留指定命名空间前缀 (如 drone-dji:) 下的属性以及额外列出的属性名；同名属性取第一次出现的值
+     */
+    public static Map<String, String> scanAttributes(String xmp, String namespacePrefix, String... extraNames) {
+        Map<String, String> result = new HashMap<>();
+        if (xmp == null) return result;
+        int n = xmp.length();
+        int i = 0;
+        while (i < n) {
+            int eq = xmp.indexOf("=\"", i);
+            if (eq < 0) break;
+            int valueStart = eq + 2;
+            int valueEnd = xmp.indexOf('"', valueStart);
+            if (valueEnd < 0) break;
+
+            // 向前找属性名 (字母、数字、: _ - .)
+            int nameStart = eq;
+            while (nameStart > 0 && isNameChar(xmp.charAt(nameStart - 1))) nameStart--;
+            if (nameStart < eq) {
+                String name = xmp.substring(nameStart, eq);
+                if (name.startsWith(namespacePrefix) || contains(extraNames, name)) {
+                    result.putIfAbsent(name, xmp.substring(valueStart, valueEnd));
+                }
+            }
+            i = valueEnd + 1;
+        }
+        return result;
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == ':' || c == '_' || c == '-' || c == '.';
+    }
+
+    private static boolean contains(String[] names, String name) {
+        for (String candidate : names) {
+            if (candidate.equals(name)) return true;
+        }
+        return false;
+    }
+
+    private static boolean startsWith(byte[] data, byte[] prefix) {
+        if (data.length < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) throw new EOFException();
+        return b;
+    }
+
+    private static void skipFully(InputStream in, long n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                if (in.read() < 0) throw new EOFException();
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+}
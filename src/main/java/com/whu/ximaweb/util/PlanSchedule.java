@@ -0,0 +1,98 @@
+package com.whu.ximaweb.util;
+
+import com.whu.ximaweb.model.PlanProgress;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 计划进度阶梯函数
+ * 把一栋楼的全部计划行按 PlannedEnd 排序并做前缀最大楼层，
+ * 之后"截至某天应建到几层"只需一次二分查找，不再每个日期查一次库。
+ * 语义与原先的 SQL 写法一致：PlannedEnd <= 当天 23:59:59 的计划中取最大楼层号。
+ */
+public final class PlanSchedule {
+
+    private static final PlanSchedule EMPTY = new PlanSchedule(new LocalDateTime[0], new int[0]);
+
+    private final LocalDateTime[] ends;   // 升序
+    private final int[] maxFloorUpTo;     // maxFloorUpTo[i] = ends[0..i] 对应楼层的最大值
+
+    private PlanSchedule(LocalDateTime[] ends, int[] maxFloorUpTo) {
+        this.ends = ends;
+        this.maxFloorUpTo = maxFloorUpTo;
+    }
+
+    /**
+     * 由同一模型名下的计划行构建 (PlannedEnd 为空的行不参与，和 SQL 比较的结果一致)
+     */
+    public static PlanSchedule of(List<PlanProgress> plans) {
+        if (plans == null || plans.isEmpty()) return EMPTY;
+        List<PlanProgress> sorted = new ArrayList<>();
+        for (PlanProgress p : plans) {
+            if (p.getPlannedEnd() != null) sorted.add(p);
+        }
+        sorted.sort(Comparator.comparing(PlanProgress::getPlannedEnd));
+
+        LocalDateTime[] ends = new LocalDateTime[sorted.size()];
+        int[] maxFloorUpTo = new int[sorted.size()];
+        int max = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            ends[i] = sorted.get(i).getPlannedEnd();
+            max = Math.max(max, parseFloor(sorted.get(i).getFloor()));
+            maxFloorUpTo[i] = max;
+        }
+        return new PlanSchedule(ends, maxFloorUpTo);
+    }
+
+    public static PlanSchedule empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 截至某天已到期的计划条数 (0 表示"暂无计划")
+     */
+    public int countDueBy(LocalDate date) {
+        LocalDateTime limit = date.atTime(23, 59, 59);
+        int idx = Arrays.binarySearch(ends, limit);
+        if (idx < 0) return -idx - 1;
+        // 同一时刻可能有多条，取最后一条
+        while (idx + 1 < ends.length && ends[idx + 1].equals(limit)) idx++;
+        return idx + 1;
+    }
+
+    /**
+     * 截至某天计划应完成的最高楼层
+     */
+    public int floorAt(LocalDate date) {
+        int n = countDueBy(date);
+        return n == 0 ? 0 : maxFloorUpTo[n - 1];
+    }
+
+    /**
+     * 进度状态文案 (滞后 / 正常 / 超前 / 暂无计划)
+     */
+    public String statusAt(int actualFloor, LocalDate date) {
+        int n = countDueBy(date);
+        if (n == 0) return "暂无计划";
+        int diff = actualFloor - maxFloorUpTo[n - 1];
+        if (diff >= 0) return diff == 0 ? "正常" : "超前 " + diff + " 层";
+        else return Math.abs(diff) > 2 ? "严重滞后" : "滞后 " + Math.abs(diff) + " 层";
+    }
+
+    // 从 "1F", "F1", "1" 中提取数字；提取不到按 0 处理
+    private static int parseFloor(String floor) {
+        if (floor == null) return 0;
+        String fStr = floor.replaceAll("[^0-9]", "");
+        if (fStr.isEmpty()) return 0;
+        try {
+            return Integer.parseInt(fStr);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.whu.ximaweb.util;
+
+/**
+ * V12 单日清洗算法的纯计算内核 (不依赖 Spring / 数据库，可单独测试)
+ * 混合清洗[中位数/P25] -> 距离分层 -> H1 均值迭代 -> H2 截尾均值，
+ * 全程在 double[] 上完成：分位数用快速选择，过滤与分层都是原地、保序的压缩，
+ * 工作缓冲区按线程复用，一天的计算不产生装箱对象和中间集合。
+ *
+ * 结果与原先基于 List/Stream 的写法逐位一致：
+ * 元素保持原始顺序参与求和，均值用与 DoubleStream.average() 相同的补偿求和。
+ */
+public final class ProgressKernel {
+
+    // 每个线程一组缓冲区：[0]/[1] 供调用方填入距离 / 飞高，[2]/[3] 内核自用
+    private static final ThreadLocal<double[][]> BUFFERS = ThreadLocal.withInitial(() -> new double[4][64]);
+
+    private ProgressKernel() {
+    }
+
+    /**
+     * 单日清洗结果
+     * @param benchmark 基准锚点 (小样本中位数 / 大样本 P25)
+     * @param noiseRemoved 低于 基准-5米 被剔除的高空噪点数
+     * @param finalH1 H1 (楼顶) 距离均值，没有 H1 时为 -1
+     * @param measuredH2 实测 H2 (地面) 截尾均值，没有 H2 时为 -1
+     */
+    public record DailyStats(int photoCount, double avgDroneAlt, double benchmark, int noiseRemoved,
+                             double dMin, int h1Count, int h2Count, double finalH1, double measuredH2) {
+    }
+
+    /**
+     * 当前线程的距离输入缓冲区 (容量至少 n，内容不保留)
+     */
+    public static double[] distanceBuffer(int n) {
+        return buffer(0, n);
+    }
+
+    /**
+     * 当前线程的飞高输入缓冲区 (容量至少 n，内容不保留)
+     */
+    public static double[] altitudeBuffer(int n) {
+        return buffer(1, n);
+    }
+
+    /**
+     * 执行单日清洗，不修改输入数组
+     * @param distances 激光距离，前 n 个有效 (按照片顺序)
+     * @param droneAlts 飞机海拔，前 n 个有效
+     */
+    public static DailyStats clean(double[] distances, double[] droneAlts, int n) {
+        double avgDroneAlt = n > 0 ? average(droneAlts, 0, n) : 0.0;
+        if (n == 0) {
+            return new DailyStats(0, avgDroneAlt, 0, 0, 0, 0, 0, -1, -1);
+        }
+
+        double[] work = buffer(2, n);
+        double[] scratch = buffer(3, n);
+        System.arraycopy(distances, 0, work, 0, n);
+
+        // 步骤 A: 混合清洗 —— 小样本取中位数，大样本取 P25，剔除比基准还小 5 米的点 (塔吊/干扰)
+        System.arraycopy(distances, 0, scratch, 0, n);
+        double benchmark;
+        if (n <= 3) {
+            if (n % 2 == 0) {
+                double lower = select(scratch, n, n / 2 - 1);
+                double upper = select(scratch, n, n / 2);
+                benchmark = (lower + upper) / 2.0;
+            } else {
+                benchmark = select(scratch, n, n / 2);
+            }
+        } else {
+            benchmark = select(scratch, n, (int) Math.floor(n * 0.25));
+        }
+        double safeThreshold = benchmark - 5.0;
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (work[i] >= safeThreshold) work[count++] = work[i];
+        }
+        if (count == 0) {
+            // 不会发生 (基准本身总能留下)，保持原逻辑：全被剔除时沿用原始数据
+            System.arraycopy(distances, 0, work, 0, n);
+            count = n;
+        }
+        int noiseRemoved = n - count;
+
+        // 步骤 B: 距离分层 —— D_min + 5 米以内为 H1 (原地压缩到 work 前部)，其余为 H2 (放到 scratch)
+        double dMin = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            dMin = Math.min(dMin, work[i]);
+        }
+        int h1Count = 0;
+        int h2Count = 0;
+        for (int i = 0; i < count; i++) {
+            double d = work[i];
+            if (d <= dMin + 5.0) {
+                work[h1Count++] = d;
+            } else if (d > dMin + 5.0) {
+                scratch[h2Count++] = d;
+            }
+        }
+        int h1Layered = h1Count;
+
+        // 步骤 C: H1 均值清洗 —— 最多三轮，每轮剔除偏离均值超过 2 米的点
+        if (h1Count > 2) {
+            for (int round = 0; round < 3; round++) {
+                double avgH1 = h1Count > 0 ? average(work, 0, h1Count) : 0;
+                int kept = 0;
+                for (int i = 0; i < h1Count; i++) {
+                    if (!(Math.abs(work[i] - avgH1) > 2.0)) work[kept++] = work[i];
+                }
+                if (kept == h1Count) break;
+                h1Count = kept;
+            }
+        }
+
+        // 步骤 D: H1 均值与实测 H2 截尾均值 (只取偏离均值 5 米以内的点)
+        double finalH1 = h1Count > 0 ? average(work, 0, h1Count) : -1;
+        double measuredH2 = -1;
+        if (h2Count > 0) {
+            double tmpAvg = average(scratch, 0, h2Count);
+            int kept = 0;
+            for (int i = 0; i < h2Count; i++) {
+                if (Math.abs(scratch[i] - tmpAvg) < 5.0) scratch[kept++] = scratch[i];
+            }
+            measuredH2 = kept > 0 ? average(scratch, 0, kept) : tmpAvg;
+        }
+
+        return new DailyStats(n, avgDroneAlt, benchmark, noiseRemoved, dMin, h1Layered, h2Count, finalH1, measuredH2);
+    }
+
+    /**
+     * 快速选择：把 a[0..n) 中第 k 小 (从 0 起) 的值放到 a[k] 并返回，会打乱 a 的顺序
+     */
+    static double select(double[] a, int n, int k) {
+        int lo = 0;
+        int hi = n - 1;
+        while (hi > lo) {
+            // 三数取中作枢轴，避免已排序数据退化
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < a[lo]) swap(a, mid, lo);
+            if (a[hi] < a[lo]) swap(a, hi, lo);
+            if (a[hi] < a[mid]) swap(a, hi, mid);
+            double pivot = a[mid];
+
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (a[i] < pivot) i++;
+                while (a[j] > pivot) j--;
+                if (i <= j) {
+                    swap(a, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return a[k];
+            }
+        }
+        return a[k];
+    }
+
+    /**
+     * 与 DoubleStream.average() 相同的 Kahan 补偿求和，保证结果逐位一致
+     */
+    static double average(double[] a, int from, int to) {
+        double sum = 0;
+        double compensation = 0;
+        double simpleSum = 0;
+        for (int i = from; i < to; i++) {
+            double tmp = a[i] - compensation;
+            double velvel = sum + tmp;
+            compensation = (velvel - sum) - tmp;
+            sum = velvel;
+            simpleSum += a[i];
+        }
+        double total = sum - compensation;
+        if (Double.isNaN(total) && Double.isInfinite(simpleSum)) total = simpleSum;
+        return total / (to - from);
+    }
+
+    private static double[] buffer(int slot, int n) {
+        double[][] buffers = BUFFERS.get();
+        if (buffers[slot].length < n) {
+            buffers[slot] = new double[Math.max(n, buffers[slot].length * 2)];
+        }
+        return buffers[slot];
+    }
+
+    private static void swap(double[] a, int i, int j) {
+        double t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+}
@@ -0,0 +1,5 @@
+-- 照片按天查询 (图库、生长历史)：project_id = ? AND shoot_time >= ? AND shoot_time < ?
+CREATE INDEX idx_photo_project_time ON project_photo (project_id, shoot_time);
+
+-- 进度计算取照片：project_id = ? AND (is_marker = 0 OR is_marker IS NULL) [AND shoot_time >= ?] ORDER BY shoot_time
+CREATE INDEX idx_photo_project_marker_time ON project_photo (project_id, is_marker, shoot_time);
@@ -0,0 +1,2 @@
+-- 每个项目可单独设置照片同步间隔 (分钟)，为空时使用 xima.sync.default-interval-minutes
+ALTER TABLE sys_project ADD COLUMN sync_interval_minutes INT NULL;
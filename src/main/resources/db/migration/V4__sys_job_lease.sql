@@ -0,0 +1,9 @@
+-- 多节点部署时的定时任务租约：同一 lease_key 同一时刻只属于一个节点，到期未续约可被其他节点接管
+CREATE TABLE IF NOT EXISTS sys_job_lease (
+    lease_key   VARCHAR(191) NOT NULL PRIMARY KEY,
+    owner       VARCHAR(128) NOT NULL,
+    expires_at  DATETIME(3)  NOT NULL,
+    acquired_at DATETIME(3)  NOT NULL,
+    renewed_at  DATETIME(3)  NOT NULL,
+    KEY idx_job_lease_expires (expires_at)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
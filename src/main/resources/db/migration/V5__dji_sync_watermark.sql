@@ -0,0 +1,11 @@
+-- 大疆任务同步水位：每个项目、每个设备记录一个时间点，之前开始的任务都已完整入库
+-- ingested_tasks 为 JSON 对象 {任务UUID: 开始时间(epoch 秒)}，只保存水位之后已完整入库的任务
+CREATE TABLE IF NOT EXISTS dji_sync_watermark (
+    id                 INT          NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    project_id         INT          NOT NULL,
+    device_sn          VARCHAR(64)  NOT NULL,
+    last_task_begin_at BIGINT       NOT NULL,
+    ingested_tasks     MEDIUMTEXT   NULL,
+    updated_at         DATETIME     NOT NULL,
+    UNIQUE KEY uk_watermark_project_sn (project_id, device_sn)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
@@ -0,0 +1,19 @@
+-- 每栋楼每天只允许一条实际进度记录 (进度计算按该键批量 INSERT ... ON DUPLICATE KEY UPDATE)
+
+-- 1. 历史重复记录每栋楼每天保留最新的一条，其余先整行备份到 actual_progress_v6_duplicates 再删除
+--    (building_id 或 measurement_date 为空的行不受唯一索引约束，不动；迁移日志会打印备份与删除的行数)
+CREATE TABLE IF NOT EXISTS actual_progress_v6_duplicates LIKE actual_progress;
+
+INSERT INTO actual_progress_v6_duplicates
+SELECT a.* FROM actual_progress a
+JOIN (
+    SELECT building_id, measurement_date, MAX(id) AS keep_id FROM actual_progress
+    WHERE building_id IS NOT NULL AND measurement_date IS NOT NULL
+    GROUP BY building_id, measurement_date HAVING COUNT(*) > 1
+) d ON a.building_id = d.building_id AND a.measurement_date = d.measurement_date AND a.id <> d.keep_id
+WHERE a.id NOT IN (SELECT id FROM actual_progress_v6_duplicates);
+
+DELETE a FROM actual_progress a JOIN actual_progress_v6_duplicates b ON b.id = a.id;
+
+-- 2. 唯一索引 (同时服务于按楼栋读取全部历史)
+CREATE UNIQUE INDEX uk_actual_building_day ON actual_progress (building_id, measurement_date);
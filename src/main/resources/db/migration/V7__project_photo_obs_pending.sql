@@ -0,0 +1,3 @@
+-- 元数据优先入库的照片在原图传到 OBS 之前标记为待传输 (1)，传完清零
+-- 后台传输最终失败或进程重启时标记保留，下次同步列出该文件时用新的下载地址重新传输
+ALTER TABLE project_photo ADD COLUMN obs_pending TINYINT(1) NOT NULL DEFAULT 0;
@@ -0,0 +1,6 @@
+-- 项目看板数据版本号：项目数据每变更一次 +1，所有节点共用，看板快照和 ETag 都以它为准
+CREATE TABLE IF NOT EXISTS sys_dashboard_version (
+    project_id INT         NOT NULL PRIMARY KEY,
+    version    BIGINT      NOT NULL,
+    updated_at DATETIME(3) NOT NULL
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
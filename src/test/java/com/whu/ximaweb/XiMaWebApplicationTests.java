@@ -3,7 +3,8 @@ package com.whu.ximaweb;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+// 只检查上下文装配，不连数据库 (结构迁移在数据库不可用时会让启动失败)
+@SpringBootTest(properties = "xima.db.migrate.enabled=false")
 class XiMaWebApplicationTests {
 
 	@Test
@@ -0,0 +1,51 @@
+package com.whu.ximaweb.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.util.StreamUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SchemaMigrationRunnerTest {
+
+    @Test
+    void splitsOnSemicolonsOutsideQuotesAndComments() {
+        String script = "-- 说明; 这里的分号不算\n"
+                + "CREATE TABLE t (id INT COMMENT 'a;b -- c') ENGINE=InnoDB;\n"
+                + "/* 块注释; */ INSERT INTO t VALUES (1), (2);  # 行尾注释;\n"
+                + "UPDATE t SET `na;me` = 'it''s \\'x\\';' WHERE id = 1\n";
+
+        List<String> statements = SchemaMigrationRunner.splitStatements(script);
+
+        assertEquals(3, statements.size());
+        assertEquals("CREATE TABLE t (id INT COMMENT 'a;b -- c') ENGINE=InnoDB", statements.get(0));
+        assertEquals("INSERT INTO t VALUES (1), (2)", statements.get(1));
+        assertEquals("UPDATE t SET `na;me` = 'it''s \\'x\\';' WHERE id = 1", statements.get(2));
+    }
+
+    @Test
+    void blankAndCommentOnlyScriptsHaveNoStatements() {
+        assertTrue(SchemaMigrationRunner.splitStatements("").isEmpty());
+        assertTrue(SchemaMigrationRunner.splitStatements(" ;\n-- 只有注释\n/* 未闭合").isEmpty());
+    }
+
+    @Test
+    void bundledMigrationsSplitIntoStatements() throws Exception {
+        Resource[] scripts = new PathMatchingResourcePatternResolver().getResources("classpath*:db/migration/V*__*.sql");
+        assertFalse(scripts.length == 0);
+        for (Resource script : scripts) {
+            List<String> statements = SchemaMigrationRunner.splitStatements(
+                    StreamUtils.copyToString(script.getInputStream(), StandardCharsets.UTF_8));
+            assertFalse(statements.isEmpty(), script.getFilename());
+            for (String sql : statements) {
+                assertFalse(sql.contains("--"), script.getFilename() + ": " + sql);
+            }
+        }
+    }
+}
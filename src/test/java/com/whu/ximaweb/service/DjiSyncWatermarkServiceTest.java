@@ -0,0 +1,203 @@
+package com.whu.ximaweb.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.whu.ximaweb.dto.dji.DjiMediaFileDto;
+import com.whu.ximaweb.dto.dji.DjiTaskDto;
+import com.whu.ximaweb.dto.dji.DjiTaskMedia;
+import com.whu.ximaweb.mapper.DjiSyncWatermarkMapper;
+import com.whu.ximaweb.model.DjiSyncWatermark;
+import com.whu.ximaweb.model.SysProject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DjiSyncWatermarkServiceTest {
+
+    private static final String SN = "DOCK-1";
+    /** 远早于 settle-hours 的时间基准 (整秒) */
+    private static final long BASE = Instant.now().minus(3, ChronoUnit.DAYS).getEpochSecond();
+
+    private final DjiSyncWatermarkMapper mapper = mock(DjiSyncWatermarkMapper.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final DjiSyncWatermarkService service = new DjiSyncWatermarkService();
+    private final SysProject project = new SysProject();
+
+    @BeforeEach
+    void setUp() {
+        project.setId(7);
+        project.setProjectName("测试项目");
+        when(mapper.selectList(any())).thenReturn(Collections.emptyList());
+        ReflectionTestUtils.setField(service, "djiSyncWatermarkMapper", mapper);
+        ReflectionTestUtils.setField(service, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "settleHours", 6L);
+    }
+
+    @Test
+    void allSettledMovesWatermarkToLatestTask() throws Exception {
+        service.advance(project, service.load(project.getId()),
+                Arrays.asList(task("t1", "success", BASE), task("t2", "terminated", BASE + 60)), Collections.emptySet());
+
+        DjiSyncWatermark row = savedRow();
+        assertEquals(project.getId(), row.getProjectId());
+        assertEquals(SN, row.getDeviceSn());
+        assertEquals(BASE + 60, row.getLastTaskBeginAt());
+        // 水位之前的任务下次查不到，不再记录
+        assertEquals(Map.of("t2", BASE + 60), tasks(row));
+    }
+
+    @Test
+    void unfinishedTaskHoldsWatermarkAndKeepsLaterSettledTasks() throws Exception {
+        service.advance(project, service.load(project.getId()), Arrays.asList(
+                task("t1", "success", BASE),
+                task("t2", "in_progress", BASE + 60),
+                task("t3", "success", BASE + 120)), Collections.emptySet());
+
+        DjiSyncWatermark row = savedRow();
+        assertEquals(BASE + 60, row.getLastTaskBeginAt());
+        assertEquals(Map.of("t3", BASE + 120), tasks(row));
+    }
+
+    @Test
+    void recentlyFinishedTaskIsNotSettledYet() throws Exception {
+        // 刚飞完 1 小时，媒体可能还没回传齐
+        long recent = Instant.now().minus(1, ChronoUnit.HOURS).getEpochSecond();
+        service.advance(project, service.load(project.getId()),
+                Arrays.asList(task("t1", "success", BASE), task("t2", "success", recent)), Collections.emptySet());
+
+        DjiSyncWatermark row = savedRow();
+        assertEquals(recent, row.getLastTaskBeginAt());
+        assertTrue(tasks(row).isEmpty());
+    }
+
+    @Test
+    void failedFileOrIncompleteMediaKeepsTaskPending() throws Exception {
+        DjiTaskMedia failed = task("t2", "success", BASE + 60);
+        DjiTaskMedia incomplete = new DjiTaskMedia(SN, taskDto("t3", "success", BASE + 120), Collections.emptyList(), false);
+        Set<String> failedKeys = Set.of(PhotoIngestPipeline.toObjectKey(project, failed.getFiles().get(0)));
+
+        service.advance(project, service.load(project.getId()),
+                Arrays.asList(task("t1", "success", BASE), failed, incomplete), failedKeys);
+
+        DjiSyncWatermark row = savedRow();
+        assertEquals(BASE + 60, row.getLastTaskBeginAt());
+        assertTrue(tasks(row).isEmpty());
+    }
+
+    @Test
+    void unchangedWatermarkIsNotRewritten() throws Exception {
+        stored(BASE + 60, Map.of("t2", BASE + 60));
+
+        // 已入库的任务被跳过，本次什么都没扫到；水位和已入库任务都不变
+        service.advance(project, service.load(project.getId()), Collections.emptyList(), Collections.emptySet());
+
+        verify(mapper, never()).upsert(any());
+    }
+
+    @Test
+    void newSettledTaskExtendsPreviousState() throws Exception {
+        stored(BASE, Map.of("t1", BASE, "t2", BASE + 60));
+
+        service.advance(project, service.load(project.getId()),
+                Collections.singletonList(task("t3", "success", BASE + 120)), Collections.emptySet());
+
+        DjiSyncWatermark row = savedRow();
+        assertEquals(BASE + 120, row.getLastTaskBeginAt());
+        assertEquals(Map.of("t3", BASE + 120), tasks(row));
+    }
+
+    @Test
+    void deepRescanRebuildsFromScanResultOnly() throws Exception {
+        stored(BASE + 600, Map.of("stale", BASE + 600));
+
+        // 深度重扫不带旧水位：旧记录里的任务不能再当作已入库
+        service.advance(project, null, Arrays.asList(
+                task("t1", "success", BASE),
+                task("t2", "success", BASE + 60),
+                task("t3", "ready", BASE + 30)), Collections.emptySet());
+
+        DjiSyncWatermark row = savedRow();
+        assertEquals(BASE + 30, row.getLastTaskBeginAt());
+        assertEquals(Map.of("t2", BASE + 60), tasks(row));
+    }
+
+    @Test
+    void unparsableBeginTimeIsIgnored() {
+        DjiTaskMedia broken = new DjiTaskMedia(SN, new DjiTaskDto(), Collections.emptyList(), true);
+        broken.getTask().setUuid("t1");
+        broken.getTask().setStatus("success");
+        broken.getTask().setBeginAt("昨天");
+
+        service.advance(project, null, Collections.singletonList(broken), Collections.emptySet());
+
+        verify(mapper, never()).upsert(any());
+    }
+
+    @Test
+    void disabledSkipsLoadAndAdvance() {
+        ReflectionTestUtils.setField(service, "enabled", false);
+
+        assertNull(service.load(project.getId()));
+        service.advance(project, null, Collections.singletonList(task("t1", "success", BASE)), Collections.emptySet());
+
+        verify(mapper, never()).selectList(any());
+        verify(mapper, never()).upsert(any());
+    }
+
+    private DjiSyncWatermark savedRow() {
+        ArgumentCaptor<DjiSyncWatermark> captor = ArgumentCaptor.forClass(DjiSyncWatermark.class);
+        verify(mapper, times(1)).upsert(captor.capture());
+        return captor.getValue();
+    }
+
+    private Map<String, Long> tasks(DjiSyncWatermark row) throws Exception {
+        return objectMapper.readValue(row.getIngestedTasks(), new TypeReference<HashMap<String, Long>>() {});
+    }
+
+    private void stored(long since, Map<String, Long> known) throws Exception {
+        DjiSyncWatermark row = new DjiSyncWatermark();
+        row.setProjectId(project.getId());
+        row.setDeviceSn(SN);
+        row.setLastTaskBeginAt(since);
+        row.setIngestedTasks(objectMapper.writeValueAsString(known));
+        when(mapper.selectList(any())).thenReturn(new ArrayList<>(Collections.singletonList(row)));
+    }
+
+    private static DjiTaskMedia task(String uuid, String status, long beginAt) {
+        DjiMediaFileDto file = new DjiMediaFileDto();
+        file.setFileName("DJI_" + uuid + "_W.JPG");
+        file.setFilePath("wayline/" + uuid);
+        return new DjiTaskMedia(SN, taskDto(uuid, status, beginAt), Collections.singletonList(file), true);
+    }
+
+    private static DjiTaskDto taskDto(String uuid, String status, long beginAt) {
+        DjiTaskDto task = new DjiTaskDto();
+        task.setUuid(uuid);
+        task.setStatus(status);
+        task.setBeginAt(Instant.ofEpochSecond(beginAt).atOffset(ZoneOffset.ofHours(8)).toString());
+        return task;
+    }
+}
@@ -0,0 +1,139 @@
+package com.whu.ximaweb.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.whu.ximaweb.dto.Coordinate;
+import com.whu.ximaweb.model.SysBuilding;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GeofenceServiceTest {
+
+    // 约 100m x 100m 的正方形围栏 (武汉附近)
+    private static final double LAT0 = 30.5;
+    private static final double LNG0 = 114.3;
+    private static final double DEG_LAT_PER_M = 1 / 111132.92;
+    private static final double DEG_LNG_PER_M = 1 / (111412.84 * Math.cos(Math.toRadians(LAT0 + 50 * DEG_LAT_PER_M)));
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final GeofenceService service = new GeofenceService();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "objectMapper", objectMapper);
+    }
+
+    @Test
+    void insideAndBufferedZone() throws Exception {
+        GeofenceService.CompiledFence fence = service.getFence(building(1, square(false)));
+
+        assertNotNull(fence);
+        assertTrue(fence.isInside(lat(50), lng(50)));
+        assertTrue(fence.isInsideOrBuffered(lat(50), lng(50)));
+        // 边界上算在内部
+        assertTrue(fence.isInside(lat(0), lng(50)));
+
+        // 东侧 10m：不在多边形内，但在 20m 缓冲区内
+        assertFalse(fence.isInside(lat(50), lng(110)));
+        assertTrue(fence.isInsideOrBuffered(lat(50), lng(110)));
+        // 东侧 30m：超出缓冲区
+        assertFalse(fence.isInsideOrBuffered(lat(50), lng(130)));
+    }
+
+    @Test
+    void bufferIsDistanceToBoundaryNotBoundingBox() throws Exception {
+        GeofenceService.CompiledFence fence = service.getFence(building(1, square(false)));
+
+        // 角点外斜向各 10m：距离约 14m，在缓冲区内
+        assertTrue(fence.isInsideOrBuffered(lat(110), lng(110)));
+        // 角点外斜向各 16m：仍在外扩矩形内，但距离约 22.6m，超出缓冲区
+        assertFalse(fence.isInsideOrBuffered(lat(116), lng(116)));
+        assertTrue(fence.getLatLngEnvelope().contains(lng(116), lat(116)));
+    }
+
+    @Test
+    void closedAndOpenRingsAreEquivalent() throws Exception {
+        GeofenceService.CompiledFence open = service.getFence(building(1, square(false)));
+        GeofenceService.CompiledFence closed = service.getFence(building(2, square(true)));
+
+        for (double m : new double[]{-25, -15, 0, 50, 100, 115, 125}) {
+            assertEquals(open.isInsideOrBuffered(lat(50), lng(m)), closed.isInsideOrBuffered(lat(50), lng(m)));
+            assertEquals(open.isInside(lat(m), lng(50)), closed.isInside(lat(m), lng(50)));
+        }
+    }
+
+    @Test
+    void invalidBoundariesCompileToNull() throws Exception {
+        assertNull(service.getFence(building(1, null)));
+        assertNull(service.getFence(building(2, "")));
+        assertNull(service.getFence(building(3, "not json")));
+        assertNull(service.getFence(building(4, json(Arrays.asList(point(0, 0), point(0, 100))))));
+        // 3 个点但首尾相同：只有 2 个不同的点
+        assertNull(service.getFence(building(5, json(Arrays.asList(point(0, 0), point(0, 100), point(0, 0))))));
+        assertNull(service.getFence(null));
+        assertNull(service.getFence(building(null, square(false))));
+    }
+
+    @Test
+    void cachedUntilBoundaryChangesOrEvicted() throws Exception {
+        SysBuilding building = building(1, square(false));
+        GeofenceService.CompiledFence first = service.getFence(building);
+
+        assertSame(first, service.getFence(building(1, square(false))));
+
+        // JSON 变了自动重编译
+        building.setBoundaryCoords(square(true));
+        GeofenceService.CompiledFence changed = service.getFence(building);
+        assertNotSame(first, changed);
+        assertSame(changed, service.getFence(building));
+
+        service.evict(1);
+        assertNotSame(changed, service.getFence(building));
+        service.evict(null);
+    }
+
+    private String square(boolean closed) throws Exception {
+        List<Coordinate> coords = new ArrayList<>(Arrays.asList(
+                point(0, 0), point(0, 100), point(100, 100), point(100, 0)));
+        if (closed) coords.add(point(0, 0));
+        return json(coords);
+    }
+
+    private String json(List<Coordinate> coords) throws Exception {
+        return objectMapper.writeValueAsString(coords);
+    }
+
+    private static SysBuilding building(Integer id, String boundary) {
+        SysBuilding building = new SysBuilding();
+        building.setId(id);
+        building.setBoundaryCoords(boundary);
+        return building;
+    }
+
+    /**
+     * 以 (LAT0, LNG0) 为西南角，向北 north 米、向东 east 米的点
+     */
+    private static Coordinate point(double north, double east) {
+        return new Coordinate(lat(north), lng(east));
+    }
+
+    private static double lat(double north) {
+        return LAT0 + north * DEG_LAT_PER_M;
+    }
+
+    private static double lng(double east) {
+        return LNG0 + east * DEG_LNG_PER_M;
+    }
+}
@@ -0,0 +1,183 @@
+package com.whu.ximaweb.service;
+
+import com.whu.ximaweb.mapper.SysJobLeaseMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class JobLeaseServiceTest {
+
+    private static final String KEY = "daily-report:2025-03-01";
+    private static final Duration TTL = Duration.ofMinutes(10);
+
+    private final SysJobLeaseMapper mapper = mock(SysJobLeaseMapper.class);
+    private final ScheduledExecutorService renewalExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final JobLeaseService service = new JobLeaseService();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "sysJobLeaseMapper", mapper);
+        ReflectionTestUtils.setField(service, "renewalExecutor", renewalExecutor);
+        ReflectionTestUtils.setField(service, "enabled", true);
+    }
+
+    @AfterEach
+    void shutdown() {
+        renewalExecutor.shutdownNow();
+    }
+
+    @Test
+    void acquiresByInsertOrTakeOver() {
+        when(mapper.insertIfAbsent(eq(KEY), anyString(), anyLong())).thenReturn(1);
+        assertTrue(service.tryAcquire(KEY, TTL));
+        verify(mapper, never()).takeOver(anyString(), anyString(), anyLong());
+
+        // 行已存在：自己持有或已过期时接管
+        when(mapper.insertIfAbsent(eq(KEY), anyString(), anyLong())).thenReturn(0);
+        when(mapper.takeOver(KEY, service.getNodeId(), TTL.toMillis())).thenReturn(1);
+        assertTrue(service.tryAcquire(KEY, TTL));
+    }
+
+    @Test
+    void leaseHeldElsewhereOrDatabaseDownIsNotAcquired() {
+        assertFalse(service.tryAcquire(KEY, TTL));
+
+        when(mapper.insertIfAbsent(anyString(), anyString(), anyLong())).thenThrow(new IllegalStateException("db down"));
+        assertFalse(service.tryAcquire(KEY, TTL));
+    }
+
+    @Test
+    void runExclusiveSkipsTaskWithoutLease() {
+        AtomicInteger runs = new AtomicInteger();
+
+        assertFalse(service.runExclusive(KEY, TTL, true, lease -> runs.incrementAndGet()));
+
+        assertEquals(0, runs.get());
+        verify(mapper, never()).release(anyString(), anyString());
+    }
+
+    @Test
+    void releaseOnlyWhenRequestedEvenIfTaskFails() {
+        when(mapper.insertIfAbsent(anyString(), anyString(), anyLong())).thenReturn(1);
+
+        assertTrue(service.runExclusive(KEY, TTL, false, lease -> { }));
+        verify(mapper, never()).release(anyString(), anyString());
+
+        // 互斥型任务抛异常也要释放
+        assertThrows(IllegalStateException.class, () -> service.runExclusive(KEY, TTL, true, lease -> {
+            throw new IllegalStateException("boom");
+        }));
+        verify(mapper).release(KEY, service.getNodeId());
+    }
+
+    @Test
+    void renewsWhileRunningAndStopsAfterwards() throws Exception {
+        Duration ttl = Duration.ofSeconds(3); // 每 1 秒续约一次
+        when(mapper.insertIfAbsent(anyString(), anyString(), anyLong())).thenReturn(1);
+        CountDownLatch renewed = new CountDownLatch(2);
+        AtomicInteger renewals = new AtomicInteger();
+        when(mapper.renew(KEY, service.getNodeId(), ttl.toMillis())).thenAnswer(invocation -> {
+            renewals.incrementAndGet();
+            renewed.countDown();
+            // 第一次续约失败不影响后续续约
+            if (renewed.getCount() == 1) throw new IllegalStateException("db down");
+            return 1;
+        });
+
+        assertTrue(service.runExclusive(KEY, ttl, true, lease -> {
+            try {
+                assertTrue(renewed.await(10, TimeUnit.SECONDS));
+                assertTrue(lease.isHeld());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        int afterRun = renewals.get();
+        Thread.sleep(1500);
+        assertEquals(afterRun, renewals.get());
+    }
+
+    @Test
+    void leaseTakenOverAbortsTaskAtNextCheck() {
+        Duration ttl = Duration.ofSeconds(3);
+        when(mapper.insertIfAbsent(anyString(), anyString(), anyLong())).thenReturn(1);
+        // 续约返回 0：其他节点已接管
+        when(mapper.renew(KEY, service.getNodeId(), ttl.toMillis())).thenReturn(0);
+        AtomicInteger writes = new AtomicInteger();
+
+        assertThrows(JobLeaseService.LeaseLostException.class, () -> service.runExclusive(KEY, ttl, true, lease -> {
+            lease.check();
+            writes.incrementAndGet();
+            awaitLost(lease);
+            lease.check();
+            writes.incrementAndGet();
+        }));
+
+        assertEquals(1, writes.get());
+        verify(mapper).release(KEY, service.getNodeId());
+    }
+
+    @Test
+    void leaseNotRenewedWithinTtlIsTreatedAsLost() {
+        // 数据库一直不可用：续约全部失败，超过一个 TTL 后其他节点可能已接管
+        Duration ttl = Duration.ofMillis(1500);
+        when(mapper.insertIfAbsent(anyString(), anyString(), anyLong())).thenReturn(1);
+        when(mapper.renew(anyString(), anyString(), anyLong())).thenThrow(new IllegalStateException("db down"));
+
+        assertThrows(JobLeaseService.LeaseLostException.class, () -> service.runExclusive(KEY, ttl, false, lease -> {
+            awaitLost(lease);
+            lease.check();
+        }));
+    }
+
+    @Test
+    void disabledAlwaysRunsWithoutTouchingDatabase() {
+        ReflectionTestUtils.setField(service, "enabled", false);
+        AtomicInteger runs = new AtomicInteger();
+
+        assertTrue(service.tryAcquire(KEY, TTL));
+        assertTrue(service.runExclusive(KEY, TTL, true, lease -> {
+            runs.incrementAndGet();
+            lease.check();
+        }));
+        service.release(KEY);
+        service.purgeExpired();
+
+        assertEquals(1, runs.get());
+        verifyNoInteractions(mapper);
+    }
+
+    private static void awaitLost(JobLeaseService.Lease lease) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (lease.isHeld() && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
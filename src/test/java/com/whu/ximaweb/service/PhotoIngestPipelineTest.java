@@ -0,0 +1,207 @@
+package com.whu.ximaweb.service;
+
+import com.whu.ximaweb.dto.dji.DjiMediaFileDto;
+import com.whu.ximaweb.mapper.ProjectPhotoMapper;
+import com.whu.ximaweb.model.SysProject;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PhotoIngestPipelineTest {
+
+    private final ExecutorService worker = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    void shutdown() {
+        worker.shutdownNow();
+    }
+
+    @Test
+    void fallbackRejectedAfterHeadFailureIsCountedAsFailed() {
+        // 头部请求能提交 (连不上服务器而失败)，退回完整流程时下载线程池已拒绝任务
+        PhotoIngestPipeline pipeline = pipeline(new RejectingAfter(worker, 1));
+        List<DjiMediaFileDto> files = files(1);
+
+        PhotoIngestPipeline.IngestResult result = assertTimeoutPreemptively(Duration.ofSeconds(20),
+                () -> pipeline.ingest(project(), files, false));
+
+        assertEquals(1, result.getFailed());
+        assertEquals(1, result.getFailedKeys().size());
+    }
+
+    @Test
+    void rejectedSubmissionsReleaseInFlightPermits() {
+        // 在途上限 2，线程池一开始就拒绝：名额不归还的话第 3 个文件就会卡住
+        PhotoIngestPipeline pipeline = pipeline(new RejectingAfter(worker, 0));
+        List<DjiMediaFileDto> files = files(5);
+
+        PhotoIngestPipeline.IngestResult result = assertTimeoutPreemptively(Duration.ofSeconds(20),
+                () -> pipeline.ingest(project(), files, false));
+
+        assertEquals(5, result.getFailed());
+        assertEquals(5, result.getFailedKeys().size());
+        assertTrue(result.getNewPhotoIds().isEmpty());
+    }
+
+    @Test
+    void unparsedFileDroppedByManualSyncIsReportedAsFailedKey() {
+        // 手动同步不保留无 XMP 的照片：没入库的路径必须进 failedKeys，所在任务不能推进水位
+        PhotoIngestPipeline pipeline = pipeline(worker, new OkHttpClient.Builder()
+                .addInterceptor(chain -> new Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .message("OK")
+                        .body(ResponseBody.create(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xD9}, null))
+                        .build())
+                .build());
+        List<DjiMediaFileDto> files = files(2);
+
+        PhotoIngestPipeline.IngestResult result = assertTimeoutPreemptively(Duration.ofSeconds(20),
+                () -> pipeline.ingest(project(), files, false));
+
+        assertEquals(2, result.getFailed());
+        assertEquals(2, result.getFailedKeys().size());
+        assertTrue(result.getFailedKeys().contains(PhotoIngestPipeline.toObjectKey(project(), files.get(0))));
+        assertTrue(result.getNewPhotoIds().isEmpty());
+    }
+
+    @Test
+    void failingCheckpointAbortsBeforeSubmitting() {
+        // 同步租约已丢失：不再提交下载，也不写库
+        PhotoIngestPipeline pipeline = pipeline(new RejectingAfter(worker, 0));
+        List<DjiMediaFileDto> files = files(3);
+
+        assertThrows(JobLeaseService.LeaseLostException.class, () -> pipeline.ingest(project(), files, true, () -> {
+            throw new JobLeaseService.LeaseLostException("photo-sync:run:1");
+        }));
+    }
+
+    @Test
+    void limitedStreamStopsAtLimitForReadsAndSkips() throws Exception {
+        byte[] data = new byte[100];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) i;
+
+        try (InputStream in = new PhotoIngestPipeline.LimitedInputStream(new ByteArrayInputStream(data), 10)) {
+            assertEquals(0, in.read());
+            assertEquals(5, in.skip(5));
+            byte[] buffer = new byte[50];
+            assertEquals(4, in.read(buffer, 0, buffer.length));
+            assertEquals(9, buffer[3]);
+            // 达到上限后视为流结束，跳读也不再前进
+            assertEquals(-1, in.read());
+            assertEquals(-1, in.read(buffer, 0, buffer.length));
+            assertEquals(0, in.skip(20));
+        }
+        // 上限超过内容时按原流结束
+        try (InputStream in = new PhotoIngestPipeline.LimitedInputStream(new ByteArrayInputStream(data), 1000)) {
+            assertEquals(100, in.readAllBytes().length);
+        }
+    }
+
+    private PhotoIngestPipeline pipeline(ExecutorService downloadExecutor) {
+        return pipeline(downloadExecutor, new OkHttpClient.Builder().connectTimeout(2, TimeUnit.SECONDS).build());
+    }
+
+    private PhotoIngestPipeline pipeline(ExecutorService downloadExecutor, OkHttpClient okHttpClient) {
+        ProjectPhotoMapper mapper = mock(ProjectPhotoMapper.class);
+        when(mapper.selectMaps(any())).thenReturn(Collections.emptyList());
+        ObsKeyIndex obsKeyIndex = mock(ObsKeyIndex.class);
+        // 对象已在 OBS，不用上传
+        ObsService obsService = mock(ObsService.class);
+        when(obsService.doesObjectExist(any(), any(), any(), any(), anyString())).thenReturn(true);
+        // 照片里没有 XMP
+        PhotoProcessor photoProcessor = mock(PhotoProcessor.class);
+        when(photoProcessor.process(any(), anyString())).thenReturn(Optional.empty());
+
+        PhotoIngestPipeline pipeline = new PhotoIngestPipeline();
+        ReflectionTestUtils.setField(pipeline, "projectPhotoMapper", mapper);
+        ReflectionTestUtils.setField(pipeline, "obsKeyIndex", obsKeyIndex);
+        ReflectionTestUtils.setField(pipeline, "obsService", obsService);
+        ReflectionTestUtils.setField(pipeline, "photoProcessor", photoProcessor);
+        ReflectionTestUtils.setField(pipeline, "okHttpClient", okHttpClient);
+        ReflectionTestUtils.setField(pipeline, "downloadExecutor", downloadExecutor);
+        ReflectionTestUtils.setField(pipeline, "uploadExecutor", worker);
+        ReflectionTestUtils.setField(pipeline, "parseExecutor", worker);
+        ReflectionTestUtils.setField(pipeline, "maxInFlight", 2);
+        ReflectionTestUtils.setField(pipeline, "memoryBudgetMb", 16);
+        ReflectionTestUtils.setField(pipeline, "batchSize", 50);
+        ReflectionTestUtils.setField(pipeline, "metadataFirst", true);
+        ReflectionTestUtils.setField(pipeline, "headBytes", 1024);
+        ReflectionTestUtils.setField(pipeline, "parseMaxBytes", 1024 * 1024);
+        pipeline.init();
+        return pipeline;
+    }
+
+    private static SysProject project() {
+        SysProject project = new SysProject();
+        project.setId(1);
+        return project;
+    }
+
+    private static List<DjiMediaFileDto> files(int n) {
+        List<DjiMediaFileDto> files = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            DjiMediaFileDto file = new DjiMediaFileDto();
+            file.setFileName("DJI_000" + i + "_W.JPG");
+            file.setFilePath("flight");
+            file.setDownloadUrl("http://127.0.0.1:1/DJI_000" + i + "_W.JPG");
+            files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     * 前 accepted 个任务交给真实线程池，之后全部拒绝 (模拟停机时线程池已关闭)
+     */
+    private static class RejectingAfter extends AbstractExecutorService {
+        private final ExecutorService delegate;
+        private final AtomicInteger remaining;
+
+        RejectingAfter(ExecutorService delegate, int accepted) {
+            this.delegate = delegate;
+            this.remaining = new AtomicInteger(accepted);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (remaining.getAndDecrement() <= 0) {
+                throw new RejectedExecutionException("executor shut down");
+            }
+            delegate.execute(command);
+        }
+
+        @Override public void shutdown() { }
+        @Override public List<Runnable> shutdownNow() { return Collections.emptyList(); }
+        @Override public boolean isShutdown() { return false; }
+        @Override public boolean isTerminated() { return false; }
+        @Override public boolean awaitTermination(long timeout, TimeUnit unit) { return true; }
+    }
+}
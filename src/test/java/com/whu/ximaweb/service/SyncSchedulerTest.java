@@ -0,0 +1,126 @@
+package com.whu.ximaweb.service;
+
+import com.whu.ximaweb.mapper.SysProjectMapper;
+import com.whu.ximaweb.model.SysProject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SyncSchedulerTest {
+
+    private final SysProjectMapper projectMapper = mock(SysProjectMapper.class);
+    private final JobLeaseService jobLeaseService = mock(JobLeaseService.class);
+    private final HeldExecutor executor = new HeldExecutor();
+    private final SyncScheduler scheduler = new SyncScheduler();
+    private final SysProject project = new SysProject();
+
+    @BeforeEach
+    void setUp() {
+        project.setId(3);
+        project.setProjectName("测试项目");
+        project.setPhotoFolderKeyword("激光测距");
+        when(projectMapper.selectList(any())).thenReturn(Collections.singletonList(project));
+        when(jobLeaseService.tryAcquire(anyString(), any(Duration.class))).thenReturn(true);
+        ReflectionTestUtils.setField(scheduler, "sysProjectMapper", projectMapper);
+        ReflectionTestUtils.setField(scheduler, "jobLeaseService", jobLeaseService);
+        ReflectionTestUtils.setField(scheduler, "syncExecutor", executor);
+        ReflectionTestUtils.setField(scheduler, "maxConcurrent", 4);
+        ReflectionTestUtils.setField(scheduler, "defaultIntervalMinutes", 60);
+    }
+
+    @Test
+    void manualRequestIsNotMergedIntoQueuedScheduledJob() {
+        // 第一次定时任务已派发 (项目运行中)，第二次排队
+        scheduler.enqueueDueProjects();
+        ((Map<?, ?>) ReflectionTestUtils.getField(scheduler, "lastScheduledAt")).clear();
+        scheduler.enqueueDueProjects();
+        assertEquals(1, executor.tasks.size());
+
+        CompletableFuture<SyncScheduler.SyncOutcome> manual = scheduler.submitManual(project, null, false);
+        CompletableFuture<SyncScheduler.SyncOutcome> again = scheduler.submitManual(project, "激光测距", false);
+
+        // 手动请求单独排队；同样的手动请求之间仍然合并
+        assertSame(manual, again);
+        assertEquals(2, queuedJobs());
+    }
+
+    @Test
+    void identicalManualRequestsAreMerged() {
+        CompletableFuture<SyncScheduler.SyncOutcome> running = scheduler.submitManual(project, null, false);
+        CompletableFuture<SyncScheduler.SyncOutcome> first = scheduler.submitManual(project, null, false);
+        CompletableFuture<SyncScheduler.SyncOutcome> deep = scheduler.submitManual(project, null, true);
+        CompletableFuture<SyncScheduler.SyncOutcome> second = scheduler.submitManual(project, null, false);
+
+        assertNotSame(running, first);
+        assertSame(first, second);
+        assertNotSame(first, deep);
+        assertEquals(2, queuedJobs());
+    }
+
+    @Test
+    void rejectedDispatchFailsJobAndFreesProject() {
+        ReflectionTestUtils.setField(scheduler, "syncExecutor", new RejectingExecutor());
+
+        CompletableFuture<SyncScheduler.SyncOutcome> manual = scheduler.submitManual(project, null, false);
+
+        // 线程池拒绝后调用方立即拿到异常，项目不会一直停在"运行中"
+        ExecutionException e = assertThrows(ExecutionException.class, () -> manual.get(1, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+        assertTrue(((Set<?>) ReflectionTestUtils.getField(scheduler, "runningProjects")).isEmpty());
+
+        // 线程池恢复后同一项目可以正常派发
+        ReflectionTestUtils.setField(scheduler, "syncExecutor", executor);
+        scheduler.submitManual(project, null, false);
+        assertEquals(1, executor.tasks.size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private int queuedJobs() {
+        Map<Integer, ArrayDeque<?>> queues = (Map<Integer, ArrayDeque<?>>) ReflectionTestUtils.getField(scheduler, "queues");
+        return queues.get(project.getId()).size();
+    }
+
+    /**
+     * 停机中的线程池：拒绝所有任务
+     */
+    private static class RejectingExecutor extends HeldExecutor {
+        @Override public void execute(Runnable command) { throw new RejectedExecutionException("executor shut down"); }
+    }
+
+    /**
+     * 只记录派发的任务，不执行 (项目一直处于运行中，后续请求都进队列)
+     */
+    private static class HeldExecutor extends AbstractExecutorService {
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override public void execute(Runnable command) { tasks.add(command); }
+        @Override public void shutdown() { }
+        @Override public List<Runnable> shutdownNow() { return tasks; }
+        @Override public boolean isShutdown() { return false; }
+        @Override public boolean isTerminated() { return false; }
+        @Override public boolean awaitTermination(long timeout, TimeUnit unit) { return true; }
+    }
+}
@@ -0,0 +1,211 @@
+package com.whu.ximaweb.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.whu.ximaweb.dto.dji.DjiMediaFileDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DjiPagedIteratorTest {
+
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void shutdown() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    @Test
+    void stopsWhenTotalReachedWithoutExtraRequest() {
+        FakeApi api = new FakeApi(25, true);
+
+        List<Integer> items = drain(new DjiPagedIterator<>("任务", api, 10, 100, null));
+
+        assertEquals(25, items.size());
+        assertEquals(List.of(1, 2, 3), api.requestedPages);
+    }
+
+    @Test
+    void exactMultipleOfPageSizeWithTotalStopsAtLastFullPage() {
+        FakeApi api = new FakeApi(20, true);
+
+        assertEquals(20, drain(new DjiPagedIterator<>("任务", api, 10, 100, null)).size());
+        assertEquals(List.of(1, 2), api.requestedPages);
+    }
+
+    @Test
+    void withoutTotalStopsOnShortPage() {
+        FakeApi api = new FakeApi(25, false);
+
+        assertEquals(25, drain(new DjiPagedIterator<>("任务", api, 10, 100, null)).size());
+        assertEquals(List.of(1, 2, 3), api.requestedPages);
+    }
+
+    @Test
+    void withoutTotalFullLastPageNeedsOneEmptyPage() {
+        FakeApi api = new FakeApi(20, false);
+
+        assertEquals(20, drain(new DjiPagedIterator<>("任务", api, 10, 100, null)).size());
+        assertEquals(List.of(1, 2, 3), api.requestedPages);
+    }
+
+    @Test
+    void pageLargerThanPageSizeMeansParametersIgnored() {
+        // 接口忽略分页参数一次返回全部 (没有 total)：不能继续翻页
+        FakeApi api = new FakeApi(30, false);
+        api.ignorePageSize = true;
+
+        assertEquals(30, drain(new DjiPagedIterator<>("任务", api, 10, 100, null)).size());
+        assertEquals(List.of(1), api.requestedPages);
+    }
+
+    @Test
+    void emptyFirstPage() {
+        FakeApi api = new FakeApi(0, true);
+
+        DjiPagedIterator<Integer> iterator = new DjiPagedIterator<>("任务", api, 10, 100, null);
+
+        assertFalse(iterator.hasNext());
+        assertEquals(List.of(1), api.requestedPages);
+    }
+
+    @Test
+    void exceedingMaxPagesFailsInsteadOfTruncating() {
+        FakeApi api = new FakeApi(100, true);
+        DjiPagedIterator<Integer> iterator = new DjiPagedIterator<>("任务", api, 10, 3, null);
+
+        List<Integer> seen = new ArrayList<>();
+        RuntimeException e = assertThrows(RuntimeException.class, () -> {
+            while (iterator.hasNext()) seen.add(iterator.next());
+        });
+        assertTrue(e.getMessage().contains("超过最大页数 3"), e.getMessage());
+        assertEquals(20, seen.size());
+    }
+
+    @Test
+    void fetchFailureSurfacesFromHasNext() {
+        FakeApi api = new FakeApi(25, true);
+        api.failOnPage = 2;
+        DjiPagedIterator<Integer> iterator = new DjiPagedIterator<>("任务", api, 10, 100, null);
+
+        for (int i = 0; i < 10; i++) iterator.next();
+        RuntimeException e = assertThrows(RuntimeException.class, iterator::hasNext);
+        assertTrue(e.getMessage().contains("第 2 页请求失败"), e.getMessage());
+        assertTrue(e.getMessage().contains("code=500"), e.getMessage());
+    }
+
+    @Test
+    void prefetchReturnsSameItemsInOrder() {
+        FakeApi api = new FakeApi(45, true);
+
+        List<Integer> items = drain(new DjiPagedIterator<>("任务", api, 10, 100, prefetchExecutor));
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 45; i++) expected.add(i);
+        assertEquals(expected, items);
+        assertEquals(List.of(1, 2, 3, 4, 5), api.requestedPages);
+    }
+
+    @Test
+    void prefetchFailureSurfacesWhenPageIsNeeded() {
+        FakeApi api = new FakeApi(25, true);
+        api.failOnPage = 2;
+        DjiPagedIterator<Integer> iterator = new DjiPagedIterator<>("任务", api, 10, 100, prefetchExecutor);
+
+        // 第 2 页在后台预取时已经失败，第 1 页仍能完整消费
+        for (int i = 0; i < 10; i++) iterator.next();
+        RuntimeException e = assertThrows(RuntimeException.class, iterator::hasNext);
+        assertTrue(e.getMessage().contains("第 2 页请求失败"), e.getMessage());
+    }
+
+    @Test
+    void readPageParsesListAndTotalSkippingOtherFields() throws IOException {
+        String json = "{\"request_id\":\"r1\",\"data\":{\"extra\":{\"nested\":[1,2,{\"a\":null}]},"
+                + "\"list\":[{\"name\":\"DJI_0001_W.JPG\",\"original_url\":\"http://h/1\",\"unknown\":{\"x\":1}},"
+                + "{\"name\":\"DJI_0002_W.JPG\",\"original_url\":\"http://h/2\"}],"
+                + "\"pagination\":{\"page\":1,\"page_size\":2,\"total\":7}},\"code\":0,\"message\":\"ok\"}";
+
+        DjiPagedIterator.Page<DjiMediaFileDto> page = readPage(json);
+
+        assertEquals(2, page.items().size());
+        assertEquals("DJI_0001_W.JPG", page.items().get(0).getFileName());
+        assertEquals("http://h/2", page.items().get(1).getDownloadUrl());
+        assertEquals(7L, page.total());
+    }
+
+    @Test
+    void readPageWithoutPaginationHasNullTotal() throws IOException {
+        DjiPagedIterator.Page<DjiMediaFileDto> page = readPage("{\"code\":0,\"data\":{\"list\":[]}}");
+
+        assertTrue(page.items().isEmpty());
+        assertNull(page.total());
+    }
+
+    @Test
+    void readPageRejectsNonZeroCode() {
+        // code 在 data 之后出现也要识别
+        IOException e = assertThrows(IOException.class, () -> readPage(
+                "{\"data\":{\"list\":[{\"name\":\"a\"}]},\"code\":401,\"message\":\"token expired\"}"));
+        assertTrue(e.getMessage().contains("code=401"), e.getMessage());
+        assertTrue(e.getMessage().contains("token expired"), e.getMessage());
+    }
+
+    @Test
+    void readPageRejectsMissingListOrNonObject() {
+        assertThrows(IOException.class, () -> readPage("{\"code\":0,\"data\":{\"pagination\":{\"total\":0}}}"));
+        assertThrows(IOException.class, () -> readPage("{\"code\":0,\"data\":null}"));
+        assertThrows(IOException.class, () -> readPage("[]"));
+    }
+
+    private static DjiPagedIterator.Page<DjiMediaFileDto> readPage(String json) throws IOException {
+        return DjiPagedIterator.readPage(new ObjectMapper(),
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), DjiMediaFileDto.class);
+    }
+
+    private static List<Integer> drain(DjiPagedIterator<Integer> iterator) {
+        List<Integer> items = new ArrayList<>();
+        while (iterator.hasNext()) items.add(iterator.next());
+        return items;
+    }
+
+    /**
+     * 按页返回 0..total-1 的假接口
+     */
+    private static class FakeApi implements DjiPagedIterator.PageFetcher<Integer> {
+        final int total;
+        final boolean reportTotal;
+        final List<Integer> requestedPages = Collections.synchronizedList(new ArrayList<>());
+        boolean ignorePageSize;
+        int failOnPage = -1;
+
+        FakeApi(int total, boolean reportTotal) {
+            this.total = total;
+            this.reportTotal = reportTotal;
+        }
+
+        @Override
+        public DjiPagedIterator.Page<Integer> fetch(int page, int pageSize) throws IOException {
+            requestedPages.add(page);
+            if (page == failOnPage) throw new IOException("code=500, message=internal error");
+            int from = ignorePageSize ? 0 : (page - 1) * pageSize;
+            int to = ignorePageSize ? total : Math.min(total, from + pageSize);
+            List<Integer> items = new ArrayList<>();
+            for (int i = from; i < to; i++) items.add(i);
+            return new DjiPagedIterator.Page<>(items, reportTotal ? (long) total : null);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.whu.ximaweb.service.impl;
+
+import com.whu.ximaweb.mapper.SysBuildingMapper;
+import com.whu.ximaweb.mapper.SysProjectMapper;
+import com.whu.ximaweb.model.ActualProgress;
+import com.whu.ximaweb.service.DashboardService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProgressServiceImplTest {
+
+    private final SysBuildingMapper buildingMapper = mock(SysBuildingMapper.class);
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final ProgressServiceImpl service = new ProgressServiceImpl();
+
+    @BeforeEach
+    void setUp() {
+        // 没有楼栋：引擎查完楼栋就返回，用楼栋查询次数判断引擎是否跑过
+        when(buildingMapper.selectList(any())).thenReturn(Collections.emptyList());
+        ReflectionTestUtils.setField(service, "sysBuildingMapper", buildingMapper);
+        ReflectionTestUtils.setField(service, "sysProjectMapper", mock(SysProjectMapper.class));
+        ReflectionTestUtils.setField(service, "eventPublisher", eventPublisher);
+        ReflectionTestUtils.setField(service, "transactionTemplate", new TransactionTemplate(transactionManager));
+    }
+
+    @AfterEach
+    void clearTransaction() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+    }
+
+    @Test
+    void runsImmediatelyWithoutTransaction() {
+        service.calculateProjectProgress(1);
+
+        verify(buildingMapper, times(1)).selectList(any());
+    }
+
+    @Test
+    void earlyReturnStillInvalidatesDashboard() {
+        service.calculateProjectProgress(1);
+
+        verify(eventPublisher, times(1)).publishEvent(argThat((Object e) -> e instanceof DashboardService.ProjectDataChangedEvent
+                && ((DashboardService.ProjectDataChangedEvent) e).projectId() == 1));
+    }
+
+    @Test
+    void deferredUntilCallerTransactionCommits() {
+        beginTransaction();
+
+        service.calculateProjectProgress(1);
+        service.calculateProjectProgressIncremental(1, Collections.singletonList(10L));
+        verify(buildingMapper, never()).selectList(any());
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+        }
+        verify(buildingMapper, times(2)).selectList(any());
+        // 提交后的计算挂起原事务执行
+        verify(transactionManager, times(2)).getTransaction(argThat(definition ->
+                definition.getPropagationBehavior() == TransactionDefinition.PROPAGATION_NOT_SUPPORTED));
+        verify(eventPublisher, times(2)).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void skippedWhenCallerTransactionRollsBack() {
+        beginTransaction();
+
+        service.calculateProjectProgress(1);
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+
+        verify(buildingMapper, never()).selectList(any());
+    }
+
+    @Test
+    void failureAfterCommitIsNotRethrown() {
+        when(buildingMapper.selectList(any())).thenThrow(new IllegalStateException("db down"));
+        beginTransaction();
+
+        service.calculateProjectProgress(1);
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+        }
+
+        verify(buildingMapper, times(1)).selectList(any());
+    }
+
+    @Test
+    void historySeedsRatchetAndH2FromRowsBeforeRecomputeStart() {
+        // 1 日在重算范围之前；3 日是范围内的旧记录 (本轮没有照片)，棘轮和 H2 基准都不能认它
+        ActualProgress day1 = row(1, 10.0, 50.0, 100.0);
+        ActualProgress staleDay3 = row(3, 30.0, 40.0, 100.0);
+        ProgressServiceImpl.BuildingHistory history = new ProgressServiceImpl.BuildingHistory(Arrays.asList(staleDay3, day1), LocalDate.of(2025, 1, 2));
+
+        assertSame(day1, history.maxRecord);
+        assertEquals(52.0, history.h2Baseline.theoreticalH2(102.0), 1e-9);
+
+        ActualProgress day2 = row(2, 12.0, 51.0, 101.0);
+        history.record(day2);
+        // 到 4 日时：棘轮是本轮的 2 日 (12m)，不是旧的 3 日 (30m)；H2 基准同样滚到 2 日
+        assertSame(day2, history.maxRecord);
+        assertEquals(51.0, history.h2Baseline.theoreticalH2(101.0), 1e-9);
+        // 旧记录仍可按日期查到 (沿用 id 等)
+        assertSame(staleDay3, history.byDate.get(LocalDate.of(2025, 1, 3)));
+    }
+
+    @Test
+    void historyWithoutRecomputeRangeHasNoBaseline() {
+        ProgressServiceImpl.BuildingHistory history = new ProgressServiceImpl.BuildingHistory(Collections.singletonList(row(1, 10.0, 50.0, 100.0)), null);
+
+        assertNull(history.maxRecord);
+        assertEquals(-1.0, history.h2Baseline.theoreticalH2(100.0), 1e-9);
+    }
+
+    @Test
+    void unmeasuredGroundDoesNotMoveH2Baseline() {
+        ActualProgress day1 = row(1, 10.0, 50.0, 100.0);
+        ProgressServiceImpl.BuildingHistory history = new ProgressServiceImpl.BuildingHistory(Collections.singletonList(day1), LocalDate.of(2025, 1, 2));
+
+        ActualProgress day2 = row(2, 11.0, 45.0, 100.0);
+        day2.setIsH2Measured(false);
+        history.record(day2);
+
+        assertSame(day2, history.maxRecord);
+        assertEquals(50.0, history.h2Baseline.theoreticalH2(100.0), 1e-9);
+    }
+
+    private static ActualProgress row(int day, double height, double h2, double droneAlt) {
+        ActualProgress row = new ActualProgress();
+        row.setMeasurementDate(LocalDate.of(2025, 1, day));
+        row.setActualHeight(BigDecimal.valueOf(height));
+        row.setH2Val(BigDecimal.valueOf(h2));
+        row.setDroneAlt(BigDecimal.valueOf(droneAlt));
+        row.setIsH2Measured(true);
+        return row;
+    }
+
+    private static void beginTransaction() {
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+    }
+}
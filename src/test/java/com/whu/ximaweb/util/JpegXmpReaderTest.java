@@ -0,0 +1,151 @@
+package com.whu.ximaweb.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JpegXmpReaderTest {
+
+    private static final String XMP = "<x:xmpmeta><rdf:Description drone-dji:LRFTargetDistance=\"42.5\" "
+            + "drone-dji:AbsoluteAltitude=\"+120.30\" tiff:Model=\"M3TD\" other:Ignored=\"1\"/></x:xmpmeta>";
+
+    @Test
+    void readsXmpAfterExifSegment() throws IOException {
+        byte[] jpeg = jpeg(exifSegment(2000), xmpSegment(XMP), sos());
+
+        assertTrue(JpegXmpReader.isJpeg(jpeg));
+        assertEquals(XMP, readFromHead(jpeg, jpeg.length));
+    }
+
+    @Test
+    void headEndingRightAfterXmpSegmentIsEnough() throws IOException {
+        byte[] exif = exifSegment(2000);
+        byte[] xmp = xmpSegment(XMP);
+        byte[] jpeg = jpeg(exif, xmp, sos());
+
+        // 头部恰好截到 XMP 段末尾，后面的图像数据一个字节都没有
+        assertEquals(XMP, readFromHead(jpeg, 2 + exif.length + xmp.length));
+    }
+
+    @Test
+    void xmpSegmentSplitAcrossHeadBoundaryReturnsNull() throws IOException {
+        byte[] exif = exifSegment(2000);
+        byte[] xmp = xmpSegment(XMP);
+        byte[] jpeg = jpeg(exif, xmp, sos());
+
+        // 段头完整但内容只到一半：不能返回半截 XMP，交给调用方退回完整下载
+        assertNull(readFromHead(jpeg, 2 + exif.length + xmp.length / 2));
+        // 只截到 XMP 段的长度字段中间
+        assertNull(readFromHead(jpeg, 2 + exif.length + 3));
+    }
+
+    @Test
+    void headTruncatedInsidePrecedingSegmentReturnsNull() throws IOException {
+        byte[] jpeg = jpeg(exifSegment(60_000), xmpSegment(XMP), sos());
+
+        assertNull(readFromHead(jpeg, 32 * 1024));
+        assertNull(readFromHead(jpeg, 2));
+    }
+
+    @Test
+    void stopsAtImageDataWithoutXmp() throws IOException {
+        byte[] jpeg = jpeg(exifSegment(100), sos(), xmpSegment(XMP));
+
+        // SOS 之后是图像数据，即使后面碰巧出现 XMP 样式的字节也不再读
+        assertNull(readFromHead(jpeg, jpeg.length));
+    }
+
+    @Test
+    void toleratesFillBytesBetweenSegments() throws IOException {
+        byte[] jpeg = jpeg(exifSegment(10), new byte[]{(byte) 0xFF, (byte) 0xFF}, xmpSegment(XMP), sos());
+
+        assertEquals(XMP, readFromHead(jpeg, jpeg.length));
+    }
+
+    @Test
+    void nonJpegInputIsRejected() throws IOException {
+        byte[] png = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+        assertFalse(JpegXmpReader.isJpeg(png));
+        assertFalse(JpegXmpReader.isJpeg(new byte[]{(byte) 0xFF}));
+        assertFalse(JpegXmpReader.isJpeg(null));
+        // 即使调用方没先判断，把非 JPEG 内容当作 SOI 之后的流读也只会返回 null
+        assertNull(JpegXmpReader.readXmpAfterSoi(new ByteArrayInputStream("plain text, not an image".getBytes(StandardCharsets.US_ASCII))));
+        assertNull(JpegXmpReader.readXmpAfterSoi(new ByteArrayInputStream(new byte[0])));
+    }
+
+    @Test
+    void scansNamespaceAndExtraAttributes() {
+        Map<String, String> attrs = JpegXmpReader.scanAttributes(XMP, "drone-dji:", "tiff:Model");
+
+        assertEquals("42.5", attrs.get("drone-dji:LRFTargetDistance"));
+        assertEquals("+120.30", attrs.get("drone-dji:AbsoluteAltitude"));
+        assertEquals("M3TD", attrs.get("tiff:Model"));
+        assertEquals(3, attrs.size());
+        assertTrue(JpegXmpReader.scanAttributes(null, "drone-dji:").isEmpty());
+    }
+
+    /**
+     * 模拟 PhotoProcessor 解析头部：判断 SOI 后从第 3 个字节开始读
+     */
+    private static String readFromHead(byte[] jpeg, int headBytes) throws IOException {
+        byte[] head = Arrays.copyOf(jpeg, Math.min(headBytes, jpeg.length));
+        if (!JpegXmpReader.isJpeg(head)) return null;
+        return JpegXmpReader.readXmpAfterSoi(new ByteArrayInputStream(head, 2, head.length - 2));
+    }
+
+    private static byte[] jpeg(byte[]... segments) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xD8);
+        for (byte[] segment : segments) out.write(segment);
+        return out.toByteArray();
+    }
+
+    private static byte[] xmpSegment(String xmp) {
+        byte[] header = "http://ns.adobe.com/xap/1.0/\0".getBytes(StandardCharsets.US_ASCII);
+        byte[] body = xmp.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = new byte[header.length + body.length];
+        System.arraycopy(header, 0, payload, 0, header.length);
+        System.arraycopy(body, 0, payload, header.length, body.length);
+        return segment(0xE1, payload);
+    }
+
+    private static byte[] exifSegment(int size) {
+        byte[] payload = new byte[size];
+        byte[] exif = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(exif, 0, payload, 0, exif.length);
+        return segment(0xE1, payload);
+    }
+
+    /**
+     * SOS 段头 + 几个字节的"图像数据"
+     */
+    private static byte[] sos() {
+        byte[] header = segment(0xDA, new byte[10]);
+        byte[] data = Arrays.copyOf(header, header.length + 16);
+        Arrays.fill(data, header.length, data.length, (byte) 0x5A);
+        return data;
+    }
+
+    private static byte[] segment(int marker, byte[] payload) {
+        int length = payload.length + 2;
+        byte[] segment = new byte[payload.length + 4];
+        segment[0] = (byte) 0xFF;
+        segment[1] = (byte) marker;
+        segment[2] = (byte) (length >> 8);
+        segment[3] = (byte) length;
+        System.arraycopy(payload, 0, segment, 4, payload.length);
+        return segment;
+    }
+}
@@ -0,0 +1,117 @@
+package com.whu.ximaweb.util;
+
+import com.whu.ximaweb.model.PlanProgress;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PlanScheduleTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 3, 1);
+
+    @Test
+    void floorIsPrefixMaxOfDuePlans() {
+        // 计划行乱序，楼层不单调 (后到期的计划楼层更低也不能拉低结果)
+        PlanSchedule schedule = PlanSchedule.of(Arrays.asList(
+                plan("5F", DAY.plusDays(4).atTime(12, 0)),
+                plan("F1", DAY.atTime(8, 0)),
+                plan("3", DAY.plusDays(2).atStartOfDay()),
+                plan("2F", DAY.plusDays(3).atTime(9, 0))));
+
+        assertEquals(0, schedule.floorAt(DAY.minusDays(1)));
+        assertEquals(1, schedule.floorAt(DAY));
+        assertEquals(1, schedule.floorAt(DAY.plusDays(1)));
+        assertEquals(3, schedule.floorAt(DAY.plusDays(2)));
+        assertEquals(3, schedule.floorAt(DAY.plusDays(3)));
+        assertEquals(5, schedule.floorAt(DAY.plusDays(4)));
+        assertEquals(5, schedule.floorAt(DAY.plusDays(30)));
+    }
+
+    @Test
+    void plansEndingAtLastSecondOfDayAreDue() {
+        LocalDateTime limit = DAY.atTime(23, 59, 59);
+        PlanSchedule schedule = PlanSchedule.of(Arrays.asList(
+                plan("1F", limit), plan("4F", limit), plan("2F", limit), plan("9F", DAY.plusDays(1).atStartOfDay())));
+
+        // 同一时刻的多条计划都算到期
+        assertEquals(3, schedule.countDueBy(DAY));
+        assertEquals(4, schedule.floorAt(DAY));
+        assertEquals(4, schedule.countDueBy(DAY.plusDays(1)));
+    }
+
+    @Test
+    void missingEndOrUnparsableFloor() {
+        PlanSchedule schedule = PlanSchedule.of(Arrays.asList(
+                plan("8F", null), plan("屋面", DAY.atTime(10, 0)), plan(null, DAY.atTime(11, 0))));
+
+        // 没有结束时间的行不参与；提取不到数字的楼层按 0
+        assertEquals(2, schedule.countDueBy(DAY));
+        assertEquals(0, schedule.floorAt(DAY));
+    }
+
+    @Test
+    void emptySchedule() {
+        assertEquals(0, PlanSchedule.of(null).countDueBy(DAY));
+        assertEquals(0, PlanSchedule.of(Collections.emptyList()).floorAt(DAY));
+        assertEquals("暂无计划", PlanSchedule.empty().statusAt(3, DAY));
+    }
+
+    @Test
+    void statusText() {
+        PlanSchedule schedule = PlanSchedule.of(Collections.singletonList(plan("6F", DAY.atTime(9, 0))));
+
+        assertEquals("暂无计划", schedule.statusAt(6, DAY.minusDays(1)));
+        assertEquals("正常", schedule.statusAt(6, DAY));
+        assertEquals("超前 2 层", schedule.statusAt(8, DAY));
+        assertEquals("滞后 1 层", schedule.statusAt(5, DAY));
+        assertEquals("滞后 2 层", schedule.statusAt(4, DAY));
+        assertEquals("严重滞后", schedule.statusAt(3, DAY));
+    }
+
+    @Test
+    void matchesPerDayQuerySemantics() {
+        // 与原先每天一次的 SQL (PlannedEnd <= 当天 23:59:59 取最大楼层) 对比
+        Random random = new Random(11);
+        for (int round = 0; round < 100; round++) {
+            List<PlanProgress> plans = new ArrayList<>();
+            int n = random.nextInt(30);
+            for (int i = 0; i < n; i++) {
+                LocalDateTime end = random.nextInt(10) == 0 ? null
+                        : DAY.atStartOfDay().plusMinutes(random.nextInt(20 * 24 * 60));
+                if (end != null && random.nextInt(5) == 0) end = end.toLocalDate().atTime(23, 59, 59);
+                plans.add(plan((1 + random.nextInt(30)) + "F", end));
+            }
+            PlanSchedule schedule = PlanSchedule.of(plans);
+            for (int d = -1; d <= 21; d++) {
+                LocalDate date = DAY.plusDays(d);
+                assertEquals(naiveFloor(plans, date), schedule.floorAt(date));
+            }
+        }
+    }
+
+    private static int naiveFloor(List<PlanProgress> plans, LocalDate date) {
+        LocalDateTime limit = date.atTime(23, 59, 59);
+        int max = 0;
+        for (PlanProgress p : plans) {
+            if (p.getPlannedEnd() != null && !p.getPlannedEnd().isAfter(limit)) {
+                max = Math.max(max, Integer.parseInt(p.getFloor().replaceAll("[^0-9]", "")));
+            }
+        }
+        return max;
+    }
+
+    private static PlanProgress plan(String floor, LocalDateTime plannedEnd) {
+        PlanProgress plan = new PlanProgress();
+        plan.setFloor(floor);
+        plan.setPlannedEnd(plannedEnd);
+        return plan;
+    }
+}
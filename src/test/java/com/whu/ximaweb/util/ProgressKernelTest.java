@@ -0,0 +1,131 @@
+package com.whu.ximaweb.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ProgressKernelTest {
+
+    @Test
+    void selectMatchesSortedOrder() {
+        Random random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            int n = 1 + random.nextInt(60);
+            double[] values = new double[n];
+            for (int i = 0; i < n; i++) values[i] = random.nextInt(20); // 大量重复值
+            double[] sorted = values.clone();
+            Arrays.sort(sorted);
+            int k = random.nextInt(n);
+            assertEquals(sorted[k], ProgressKernel.select(values.clone(), n, k));
+        }
+    }
+
+    @Test
+    void typicalFlightDay() {
+        // 楼顶 3 个点 (含一个 2 米外的杂物)、地面 2 个点、一个塔吊噪点
+        double[] dist = {40.0, 40.5, 43.0, 80.0, 80.4, 30.0, 40.2};
+        double[] alt = {100, 100, 100, 100, 100, 100, 100};
+        ProgressKernel.DailyStats stats = ProgressKernel.clean(dist, alt, dist.length);
+
+        assertEquals(40.0, stats.benchmark());
+        assertEquals(1, stats.noiseRemoved());
+        assertEquals(40.0, stats.dMin());
+        assertEquals(4, stats.h1Count());
+        assertEquals(2, stats.h2Count());
+        assertEquals((40.0 + 40.5 + 40.2) / 3, stats.finalH1(), 1e-9);
+        assertEquals(80.2, stats.measuredH2(), 1e-9);
+        assertEquals(100.0, stats.avgDroneAlt());
+    }
+
+    @Test
+    void noH2AndSmallSamples() {
+        ProgressKernel.DailyStats single = ProgressKernel.clean(new double[]{55.5}, new double[]{120}, 1);
+        assertEquals(55.5, single.finalH1());
+        assertEquals(-1, single.measuredH2());
+
+        ProgressKernel.DailyStats empty = ProgressKernel.clean(new double[0], new double[0], 0);
+        assertEquals(0, empty.photoCount());
+        assertEquals(-1, empty.finalH1());
+        assertEquals(-1, empty.measuredH2());
+    }
+
+    @Test
+    void matchesListBasedImplementationBitForBit() {
+        Random random = new Random(42);
+        for (int round = 0; round < 2000; round++) {
+            int n = 1 + random.nextInt(round % 10 == 0 ? 400 : 12);
+            double roof = 20 + random.nextDouble() * 60;
+            double ground = roof + 5 + random.nextDouble() * 60;
+            double[] dist = new double[n];
+            double[] alt = new double[n];
+            for (int i = 0; i < n; i++) {
+                double r = random.nextDouble();
+                if (r < 0.55) dist[i] = roof + random.nextGaussian() * 1.5;
+                else if (r < 0.9) dist[i] = ground + random.nextGaussian() * 3;
+                else dist[i] = roof - 3 - random.nextDouble() * 15; // 塔吊 / 干扰
+                alt[i] = 100 + random.nextGaussian();
+            }
+            assertEquals(reference(dist, alt), ProgressKernel.clean(dist, alt, n), "round " + round);
+        }
+    }
+
+    /**
+     * 改写前的 List/Stream 版本，用作对照
+     */
+    private static ProgressKernel.DailyStats reference(double[] dist, double[] alt) {
+        List<Double> all = Arrays.stream(dist).boxed().collect(Collectors.toList());
+        int photoCount = all.size();
+        double avgDroneAlt = Arrays.stream(alt).average().orElse(0.0);
+
+        List<Double> distances = all.stream().sorted().toList();
+        double benchmark;
+        if (photoCount <= 3) {
+            benchmark = photoCount % 2 == 0
+                    ? (distances.get(photoCount / 2 - 1) + distances.get(photoCount / 2)) / 2.0
+                    : distances.get(photoCount / 2);
+        } else {
+            benchmark = distances.get((int) Math.floor(photoCount * 0.25));
+        }
+        double safeThreshold = benchmark - 5.0;
+        List<Double> clean = all.stream().filter(d -> d >= safeThreshold).collect(Collectors.toList());
+        int removed = 0;
+        if (!clean.isEmpty()) {
+            removed = all.size() - clean.size();
+            all = clean;
+        }
+
+        double dMin = all.stream().mapToDouble(d -> d).min().orElse(0);
+        List<Double> h1 = new ArrayList<>();
+        List<Double> h2 = new ArrayList<>();
+        for (double d : all) {
+            if (d <= dMin + 5.0) h1.add(d);
+            else if (d > dMin + 5.0) h2.add(d);
+        }
+        int h1Layered = h1.size();
+        if (h1.size() > 2) {
+            for (int i = 0; i < 3; i++) {
+                double avgH1 = h1.stream().mapToDouble(d -> d).average().orElse(0);
+                List<Double> noise = new ArrayList<>();
+                for (double d : h1) {
+                    if (Math.abs(d - avgH1) > 2.0) noise.add(d);
+                }
+                if (noise.isEmpty()) break;
+                h1.removeAll(noise);
+            }
+        }
+        double finalH1 = h1.isEmpty() ? -1 : h1.stream().mapToDouble(d -> d).average().orElse(-1);
+        double measuredH2 = -1;
+        if (!h2.isEmpty()) {
+            double tmpAvg = h2.stream().mapToDouble(d -> d).average().orElse(0);
+            measuredH2 = h2.stream().mapToDouble(d -> d).filter(d -> Math.abs(d - tmpAvg) < 5.0).average().orElse(tmpAvg);
+        }
+        return new ProgressKernel.DailyStats(photoCount, avgDroneAlt, benchmark, removed, dMin,
+                h1Layered, h2.size(), finalH1, measuredH2);
+    }
+}
@@ -0,0 +1,91 @@
+-- =====================================================================
+-- project_photo 按天查询基准 (手动执行，不参与自动化测试)
+-- 用法: mysql -uroot -p ximalu < project_photo_day_query.sql
+-- 在独立的 bench_project_photo 表上构造 100 万行 (20 个项目 x 约 2 年)，
+-- 分别在 无索引 / 有索引 两种情况下对比 DATE_FORMAT 写法与半开区间写法的执行计划和耗时。
+-- MariaDB 没有 EXPLAIN ANALYZE：把 cte_max_recursion_depth 换成 max_recursive_iterations，
+-- EXPLAIN ANALYZE 换成 ANALYZE FORMAT=JSON 即可执行。
+--
+-- 实测 (MariaDB 11.4.5，单机，innodb_buffer_pool_size=512M，数据全部在缓冲池内；每个项目约 5 万行，目标日 69 行)：
+--   查询                         | 无索引                           | 有索引
+--   当天照片 DATE_FORMAT 写法     | 全表扫描 100 万行, 416 ms         | ref(project_id 前缀) 读 5 万行, 20.6 ms
+--   当天照片 半开区间写法          | 全表扫描 100 万行, 609 ms         | range(idx_photo_project_time) 读 69 行, 0.28 ms
+--   进度取照片 (6/1 之后)          | -                                | range(idx_photo_project_time) 读 39577 行, 141 ms
+--   去重 photo_url IN (3 个)       | -                                | range(uk_photo_url) 读 2 行, 0.06 ms
+-- 结论：只加索引不改写法，按天查询仍要扫描整个项目；两者一起才从 400 ms 级降到 1 ms 以内。
+-- =====================================================================
+
+DROP TABLE IF EXISTS bench_project_photo;
+CREATE TABLE bench_project_photo (
+    id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    project_id INT NOT NULL,
+    photo_url VARCHAR(768) NULL,
+    laser_distance DECIMAL(10, 3) NULL,
+    absolute_altitude DECIMAL(10, 3) NULL,
+    shoot_time DATETIME NULL,
+    gps_lat DECIMAL(12, 8) NULL,
+    gps_lng DECIMAL(12, 8) NULL,
+    lrf_target_lat DECIMAL(12, 8) NULL,
+    lrf_target_lng DECIMAL(12, 8) NULL,
+    is_marker TINYINT(1) NULL
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+
+SET SESSION cte_max_recursion_depth = 1000000;
+
+INSERT INTO bench_project_photo (project_id, photo_url, laser_distance, absolute_altitude, shoot_time,
+                                 gps_lat, gps_lng, lrf_target_lat, lrf_target_lng, is_marker)
+WITH RECURSIVE seq (n) AS (SELECT 1 UNION ALL SELECT n + 1 FROM seq WHERE n < 1000000)
+SELECT 1 + (n % 20),
+       CONCAT('projects/', 1 + (n % 20), '/bench/', n, '.jpeg'),
+       20 + (n % 50),
+       60 + (n % 40),
+       TIMESTAMP('2024-01-01 00:00:00') + INTERVAL (n DIV 20) * 21 MINUTE,
+       30.5 + (n % 1000) / 100000, 114.3 + (n % 1000) / 100000,
+       30.5 + (n % 1000) / 100000, 114.3 + (n % 1000) / 100000,
+       IF(n % 97 = 0, 1, 0)
+FROM seq;
+
+ANALYZE TABLE bench_project_photo;
+
+-- ---------------------------------------------------------------------
+-- 1. 无索引
+-- ---------------------------------------------------------------------
+EXPLAIN ANALYZE
+SELECT photo_url, gps_lat, gps_lng, lrf_target_lat, lrf_target_lng FROM bench_project_photo
+WHERE project_id = 7 AND DATE_FORMAT(shoot_time, '%Y-%m-%d') = '2024-06-15' ORDER BY shoot_time;
+
+EXPLAIN ANALYZE
+SELECT photo_url, gps_lat, gps_lng, lrf_target_lat, lrf_target_lng FROM bench_project_photo
+WHERE project_id = 7 AND shoot_time >= '2024-06-15 00:00:00' AND shoot_time < '2024-06-16 00:00:00' ORDER BY shoot_time;
+
+-- ---------------------------------------------------------------------
+-- 2. 按 V1 / V2 迁移脚本建索引
+-- ---------------------------------------------------------------------
+CREATE INDEX idx_photo_project_time ON bench_project_photo (project_id, shoot_time);
+CREATE INDEX idx_photo_project_marker_time ON bench_project_photo (project_id, is_marker, shoot_time);
+CREATE UNIQUE INDEX uk_photo_url ON bench_project_photo (photo_url);
+ANALYZE TABLE bench_project_photo;
+
+-- 旧写法：函数包住列，仍只能用 project_id 前缀，再逐行计算 DATE_FORMAT (约 5 万行)
+EXPLAIN ANALYZE
+SELECT photo_url, gps_lat, gps_lng, lrf_target_lat, lrf_target_lng FROM bench_project_photo
+WHERE project_id = 7 AND DATE_FORMAT(shoot_time, '%Y-%m-%d') = '2024-06-15' ORDER BY shoot_time;
+
+-- 新写法：(project_id, shoot_time) 范围扫描，只读当天的行，且无需额外排序
+EXPLAIN ANALYZE
+SELECT photo_url, gps_lat, gps_lng, lrf_target_lat, lrf_target_lng FROM bench_project_photo
+WHERE project_id = 7 AND shoot_time >= '2024-06-15 00:00:00' AND shoot_time < '2024-06-16 00:00:00' ORDER BY shoot_time;
+
+-- 进度计算取照片：可走 (project_id, is_marker, shoot_time) 的 ref_or_null，也可走 (project_id, shoot_time) 的范围扫描
+-- (增量区间较短时后者更省，实测 MariaDB 选了后者)
+EXPLAIN ANALYZE
+SELECT id, shoot_time FROM bench_project_photo
+WHERE project_id = 7 AND laser_distance IS NOT NULL AND absolute_altitude IS NOT NULL AND shoot_time IS NOT NULL
+  AND (is_marker = 0 OR is_marker IS NULL) AND shoot_time >= '2024-06-01 00:00:00' ORDER BY shoot_time;
+
+-- 去重：photo_url IN (...) 走唯一索引
+EXPLAIN ANALYZE
+SELECT photo_url FROM bench_project_photo
+WHERE photo_url IN ('projects/8/bench/7.jpeg', 'projects/9/bench/8.jpeg', 'projects/1/bench/999999.jpeg');
+
+DROP TABLE bench_project_photo;